@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Long-running analysis server. Runs analyzer jobs one at a time in a
+ * single warm JVM, so that JVM startup, Spring context construction,
+ * class loading and JIT warm-up are paid once instead of once per game.
+ * Parsed boot records also stay cached between jobs.
+ *
+ * The server listens on the loopback interface only. A job is one line of
+ * tab-separated fields: the analyzer class name followed by its usual
+ * command-line args, typically input file and output file. The daemon
+ * keeps one instance of each analyzer class and runs every job for that
+ * class on it, so its logtool context is built once. Before each job the
+ * repos are recycled and the instance's per-game state is reset (see
+ * GameRecycler.prepare()). The analyzer writes its messages to the
+ * connection, and the daemon then sends a final status line,
+ * <code>OK elapsed-ms</code> or <code>FAILED reason</code>.
+ *
+ * Usage:
+ * <pre>
+ * AnalysisDaemon [--port n]                  start the server
+ * AnalysisDaemon [--port n] --submit class args...   run a job
+ * </pre>
+ * Relative paths in a job are resolved against the server's working
+ * directory. Only classes in this package that implement ResidentAnalyzer
+ * can be run. Anything else is refused with <code>FAILED no analyzer</code>.
+ */
+public class AnalysisDaemon
+{
+  static private Logger log =
+      LogManager.getLogger(AnalysisDaemon.class.getName());
+
+  public static final int DEFAULT_PORT = 7474;
+
+  private int port = DEFAULT_PORT;
+
+  // one instance per analyzer class, kept between jobs
+  private Map<Class<?>, ResidentAnalyzer> analyzers = new HashMap<>();
+
+  public static void main (String[] args)
+  {
+    new AnalysisDaemon().cli(args);
+  }
+
+  private void cli (String[] args)
+  {
+    int argOffset = 0;
+    if (args.length >= 2 && args[0].equals("--port")) {
+      port = Integer.parseInt(args[1]);
+      argOffset = 2;
+    }
+    try {
+      if (args.length > argOffset && args[argOffset].equals("--submit")) {
+        System.exit(submit(Arrays.copyOfRange(args, argOffset + 1,
+                                              args.length)));
+      }
+      else if (args.length == argOffset) {
+        serve();
+      }
+      else {
+        System.out.println("Usage: AnalysisDaemon [--port n] [--submit analyzer-class args...]");
+      }
+    }
+    catch (IOException e) {
+      log.error("Daemon failed: " + e.toString());
+      System.out.println(e.toString());
+    }
+  }
+
+  // Accepts one connection at a time; others wait in the backlog
+  private void serve () throws IOException
+  {
+    try (ServerSocket server =
+        new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      log.info("Analysis daemon listening on port {}", port);
+      System.out.println("Analysis daemon listening on port " + port);
+      while (true) {
+        try (Socket client = server.accept()) {
+          handle(client);
+        }
+        catch (IOException e) {
+          log.warn("Lost client: " + e.toString());
+        }
+      }
+    }
+  }
+
+  private void handle (Socket client) throws IOException
+  {
+    BufferedReader in =
+        new BufferedReader(new InputStreamReader(client.getInputStream(),
+                                                 StandardCharsets.UTF_8));
+    PrintStream out =
+        new PrintStream(client.getOutputStream(), true, "UTF-8");
+    String[] job = parseJob(in.readLine());
+    if (null == job) {
+      out.println("FAILED empty job");
+      return;
+    }
+    String[] jobArgs = Arrays.copyOfRange(job, 1, job.length);
+    log.info("Job {} {}", job[0], Arrays.toString(jobArgs));
+    out.println(runJob(job[0], jobArgs, out));
+  }
+
+  // Splits a job line into the analyzer name and its args; null if the
+  // line is missing or blank
+  static String[] parseJob (String line)
+  {
+    if (null == line || line.trim().isEmpty()) {
+      return null;
+    }
+    String[] result = line.split("\t");
+    result[0] = result[0].trim();
+    return result;
+  }
+
+  // Runs one job on the kept instance of its analyzer, with messages going
+  // to out, and returns the status line
+  String runJob (String name, String[] args, PrintStream out)
+  {
+    long start = System.currentTimeMillis();
+    try {
+      ResidentAnalyzer analyzer = analyzer(name);
+      if (null == analyzer) {
+        log.warn("Refused job for {}", name);
+        return "FAILED no analyzer " + name;
+      }
+      GameRecycler.prepare(analyzer);
+      analyzer.cli(args, out);
+      return "OK " + (System.currentTimeMillis() - start);
+    }
+    catch (Exception e) {
+      log.error("Job " + name + " failed", e);
+      return "FAILED " + e;
+    }
+    finally {
+      out.flush();
+    }
+  }
+
+  // The kept instance for an allowed class, created on its first job
+  private ResidentAnalyzer analyzer (String name)
+    throws ReflectiveOperationException
+  {
+    Class<?> analyzerClass = allowedClass(name);
+    if (null == analyzerClass) {
+      return null;
+    }
+    ResidentAnalyzer result = analyzers.get(analyzerClass);
+    if (null == result) {
+      result = (ResidentAnalyzer) analyzerClass.getConstructor().newInstance();
+      analyzers.put(analyzerClass, result);
+    }
+    return result;
+  }
+
+  // Returns the class named by a job if it is a ResidentAnalyzer in this
+  // package, otherwise null. The name is checked before the class is
+  // loaded, so a job cannot trigger static initialization of arbitrary
+  // classes.
+  static Class<?> allowedClass (String name)
+  {
+    String prefix = AnalysisDaemon.class.getPackage().getName() + ".";
+    if (!name.startsWith(prefix)
+        || name.indexOf('.', prefix.length()) >= 0
+        || name.indexOf('$') >= 0) {
+      return null;
+    }
+    try {
+      Class<?> result = Class.forName(name, false,
+                                      AnalysisDaemon.class.getClassLoader());
+      if (ResidentAnalyzer.class.isAssignableFrom(result)
+          && !result.isInterface()
+          && !Modifier.isAbstract(result.getModifiers()))
+        return result;
+    }
+    catch (ClassNotFoundException | LinkageError e) {
+      // not an analyzer
+    }
+    return null;
+  }
+
+  // Sends one job and copies the response to stdout. Returns 0 on success.
+  private int submit (String[] job) throws IOException
+  {
+    if (job.length == 0) {
+      System.out.println("Nothing to submit");
+      return 1;
+    }
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      PrintWriter out =
+          new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                                                 StandardCharsets.UTF_8));
+      out.println(String.join("\t", job));
+      out.flush();
+      BufferedReader in =
+          new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                   StandardCharsets.UTF_8));
+      String line;
+      String last = null;
+      while (null != (line = in.readLine())) {
+        System.out.println(line);
+        last = line;
+      }
+      return (null != last && last.startsWith("OK")) ? 0 : 1;
+    }
+  }
+}
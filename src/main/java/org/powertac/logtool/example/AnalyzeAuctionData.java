@@ -96,8 +96,6 @@ public class AnalyzeAuctionData extends LogtoolContext implements Analyzer {
 	private String dataFilename = "clearedTrades.arff";
 	private int ignoreInitial = 0; // timeslots to ignore at the beginning
 	private int ignoreCount = 0;
-	public TreeMap<Integer, TreeMap<Integer, ArrayList<Order>>> producerOrders = new TreeMap<Integer, TreeMap<Integer, ArrayList<Order>>>();
-	public TreeMap<Integer, TreeMap<Integer, WeatherForecastPrediction>> weatherPredictions = new TreeMap<Integer,TreeMap<Integer, WeatherForecastPrediction>>();
 
 	/**
 	 * Main method just creates an instance and passes command-line args to its
@@ -117,7 +115,10 @@ public class AnalyzeAuctionData extends LogtoolContext implements Analyzer {
 			return;
 		}
 		dataFilename = args[1];
-		super.cli(args[0], this);
+		LogLineFilter.read(args[0],
+				LogLineFilter.neededClasses(this,
+					Order.class, TimeslotUpdate.class, ClearedTrade.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/*
@@ -159,32 +160,8 @@ public class AnalyzeAuctionData extends LogtoolContext implements Analyzer {
 		//			output.println();
 		//		}
 
-		/*
-		for(Map.Entry<Integer, TreeMap<Integer, ArrayList<Order>>> entry : producerOrders.entrySet()) {
-			Integer hour = entry.getKey();
-			TreeMap<Integer, ArrayList<Order>> hourvalue = entry.getValue();
-			for(Map.Entry<Integer, ArrayList<Order>> subentry : hourvalue.entrySet()) {
-				Integer HA = subentry.getKey();
-				ArrayList<Order> orders = subentry.getValue();
-				WeatherForecastPrediction wfp = weatherPredictions.get(hour).get(HA);
-				if(orders != null && wfp != null)
-					for(Order o : orders){
-						output.println(hour + "," + HA + "," + o.getMWh() + "," + o.getLimitPrice() + "," + 
-								wfp.getCloudCover() + "," + wfp.getTemperature() + "," + 
-								wfp.getWindDirection() + "," + wfp.getWindSpeed());
-					}
-				else{
-					if(orders == null && wfp == null)
-						output.println(hour + "," + HA + ", BOTH_NULL");
-					else if(orders == null)
-						output.println(hour + "," + HA + ", ORDERS_NULL");
-					else{
-						output.println(hour + "," + HA + ", WFP_NULL");
-					}
-				}
-			}
-		}
-		 */
+		// orders and cleared trades are written as they arrive; see
+		// GenerateProducerData for orders joined with forecasts
 		output.close();
 	}
 
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes rows of numbers to a delimited text file from a background
+ * thread. The analyzer puts a row's values, which go straight into a
+ * bounded ring of doubles, and returns; the writer thread formats the
+ * rows and writes them through a large buffer. So event handlers never
+ * wait on formatting or on the disk, unless the ring is full.
+ *
+ * Each column has a fixed number of decimal places, or INTEGER. Values
+ * are formatted as String.format("%.nf") or "%d" would, so the output
+ * matches what a PrintWriter would have written. Usage:
+ * <pre>
+ * data = new AsyncRowWriter(file, "slot, dow, kwh", ", ",
+ *                           AsyncRowWriter.INTEGER, AsyncRowWriter.INTEGER, 3);
+ * data.put(slot).put(dow).put(kwh).endRow();
+ * data.close();
+ * </pre>
+ * Rows must be built by one thread. Each side parks while it has nothing
+ * to do, and the other side unparks it when it publishes a row, frees
+ * ring space or closes. Errors from the writer thread are reported by
+ * close(); rows put after an error are dropped.
+ */
+public class AsyncRowWriter implements Closeable
+{
+  static private Logger log =
+      LogManager.getLogger(AsyncRowWriter.class.getName());
+
+  /** Column format for whole numbers */
+  public static final int INTEGER = -1;
+
+  static final int RING_ROWS = 8192;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private Writer out;
+  private String separator;
+  private String[] formats;
+  private boolean[] whole;
+  private int columns;
+
+  // ring of rows; rows [head, tail) are complete and not yet written
+  private double[] ring;
+  private volatile long head = 0;
+  private volatile long tail = 0;
+  private int column = 0; // next column of the row being built
+
+  // set by a side just before it parks, so the other knows to unpark it
+  private volatile boolean writerWaiting = false;
+  private volatile boolean producerWaiting = false;
+  private volatile Thread producer = null;
+
+  private volatile boolean closing = false;
+  private boolean closed = false;
+  private volatile IOException failure = null;
+  private Thread writer;
+
+  public AsyncRowWriter (String filename, String header, String separator,
+                         int... decimals)
+    throws IOException
+  {
+    this(new BufferedWriter(new FileWriter(filename), BUFFER_SIZE),
+         header, separator, decimals);
+  }
+
+  // Writes to out, which is closed by close()
+  AsyncRowWriter (Writer out, String header, String separator,
+                  int... decimals)
+    throws IOException
+  {
+    super();
+    this.out = out;
+    this.separator = separator;
+    columns = decimals.length;
+    formats = new String[columns];
+    whole = new boolean[columns];
+    for (int i = 0; i < columns; i++) {
+      whole[i] = (decimals[i] == INTEGER);
+      formats[i] = whole[i] ? "%d" : "%." + decimals[i] + "f";
+    }
+    ring = new double[RING_ROWS * columns];
+    if (null != header) {
+      out.write(header);
+      out.write('\n');
+    }
+    writer = new Thread(this::drain, "row-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Sets the next column of the current row.
+   */
+  public AsyncRowWriter put (double value)
+  {
+    if (0 == column && tail - head >= RING_ROWS) {
+      awaitSpace();
+    }
+    ring[(int) (tail % RING_ROWS) * columns + column] = value;
+    column += 1;
+    return this;
+  }
+
+  /**
+   * Completes the current row and hands it to the writer thread.
+   * @throws IllegalStateException if the row does not have one value per
+   *         column
+   */
+  public void endRow ()
+  {
+    if (column != columns) {
+      throw new IllegalStateException("Row has " + column + " values, expected "
+                                      + columns);
+    }
+    column = 0;
+    tail = tail + 1;
+    if (writerWaiting) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  // Parks the producer until the writer frees a row. After a writer
+  // failure nothing is written any more, so the ring is emptied instead.
+  private void awaitSpace ()
+  {
+    producer = Thread.currentThread();
+    while (tail - head >= RING_ROWS) {
+      if (null != failure) {
+        // the writer thread has exited, so head is ours now
+        head = tail;
+        return;
+      }
+      producerWaiting = true;
+      if (tail - head >= RING_ROWS && null == failure) {
+        LockSupport.park(this);
+      }
+      producerWaiting = false;
+    }
+  }
+
+  // Writer thread: formats rows as they are published
+  private void drain ()
+  {
+    StringBuilder line = new StringBuilder();
+    Formatter formatter = new Formatter(line, Locale.getDefault());
+    try {
+      while (true) {
+        long end = tail;
+        if (head == end) {
+          if (closing) {
+            if (head == tail)
+              break;
+            continue;
+          }
+          writerWaiting = true;
+          if (head == tail && !closing) {
+            LockSupport.park(this);
+          }
+          writerWaiting = false;
+          continue;
+        }
+        for (long row = head; row < end; row++) {
+          int base = (int) (row % RING_ROWS) * columns;
+          line.setLength(0);
+          for (int i = 0; i < columns; i++) {
+            if (i > 0)
+              line.append(separator);
+            double value = ring[base + i];
+            if (whole[i])
+              formatter.format("%d", (long) value);
+            else
+              formatter.format(formats[i], value);
+          }
+          line.append('\n');
+          out.append(line);
+        }
+        head = end;
+        if (producerWaiting) {
+          LockSupport.unpark(producer);
+        }
+      }
+      out.flush();
+    }
+    catch (IOException e) {
+      log.error("Row writer failed: " + e.toString());
+      // the producer drops its rows from now on
+      failure = e;
+      Thread waiting = producer;
+      if (null != waiting) {
+        LockSupport.unpark(waiting);
+      }
+    }
+  }
+
+  /**
+   * Writes out all completed rows and closes the file. May be called
+   * more than once.
+   */
+  @Override
+  public void close () throws IOException
+  {
+    if (closed)
+      return;
+    closed = true;
+    closing = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    }
+    catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+    finally {
+      out.close();
+    }
+    if (null != failure)
+      throw failure;
+  }
+}
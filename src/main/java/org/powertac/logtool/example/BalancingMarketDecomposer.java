@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.Map;
 import java.util.TreeMap;
@@ -69,7 +70,7 @@ import org.powertac.common.BankTransaction;
  *
  * @author John Collins
  */
-public class BalancingMarketDecomposer extends LogtoolContext implements Analyzer {
+public class BalancingMarketDecomposer extends LogtoolContext implements Analyzer, ResidentAnalyzer {
 //	static private Logger log = Logger.getLogger(MktPriceStats.class.getName());
 
 	// service references
@@ -94,10 +95,11 @@ public class BalancingMarketDecomposer extends LogtoolContext implements Analyze
 	private int ignoreCount = 0;
 	private int indexOffset = 0; // should be
 									// Competition.deactivateTimeslotsAhead - 1
-	public static int numberofbrokers = 0;
+	private int numberofbrokers = 0;
 	private PrintWriter output = null;
 	private PrintWriter debug = null;
 	private String dataFilename = "clearedTrades.arff";
+	private Object listenerReader = null; // reader our listeners are on
 	public double brokerID;
 
 
@@ -107,19 +109,37 @@ public class BalancingMarketDecomposer extends LogtoolContext implements Analyze
 	 */
 	public static void main(String[] args) {
 		System.out.println("I am running");
-		new BalancingMarketDecomposer().cli(args);
+		new BalancingMarketDecomposer().cli(args, System.out);
 	}
 
 	/**
 	 * Takes two args, input filename and output filename
 	 */
-	private void cli(String[] args) {
+	@Override
+	public void cli(String[] args, PrintStream out) {
 		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+			out.println("Usage: <analyzer> input-file output-file");
 			return;
 		}
 		dataFilename = args[1];
-		super.cli(args[0], this);
+		LogLineFilter.read(args[0],
+				LogLineFilter.neededClasses(this,
+					Competition.class, Broker.class, TimeslotUpdate.class,
+					BalancingTransaction.class, Timeslot.class),
+				(input) -> super.cli(input, this));
+	}
+
+	@Override
+	public void resetGame() {
+		orderbookCounter = new TreeMap<Integer, Integer>();
+		counter = 0;
+		brokers = new double[12];
+		brokernames = new String[12];
+		brokerCounter = 0;
+		numberofbrokers = 0;
+		ignoreCount = ignoreInitial;
+		data = new TreeMap<Integer, ClearedTrade[]>();
+		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
 	}
 
 	/*
@@ -129,30 +149,34 @@ public class BalancingMarketDecomposer extends LogtoolContext implements Analyze
 	 */
 	@Override
 	public void setup() {
+		resetGame();
 		//dor = (DomainObjectReader) SpringApplicationContext.getBean("reader");
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		timeService = (TimeService) getBean("timeService");
 		brokerRepo = (BrokerRepo) SpringApplicationContext
 				.getBean("brokerRepo");
-		//registerNewObjectListener(new TariffTransactionHandler(), TariffTransaction.class);
-		//registerNewObjectListener(new CapacityTransactionHandler(), CapacityTransaction.class);
-		registerNewObjectListener(new CompetitionHandler(), Competition.class);
-		registerNewObjectListener(new BrokerHandler(), Broker.class);
-		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
-		//registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
-		registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
-		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
-		//registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
-		//registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
-		//registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
-		//registerNewObjectListener(new DistributionTransactionHandler(), DistributionTransaction.class);
-		//registerNewObjectListener(new CashPositionHandler(), CashPosition.class);
-		//registerNewObjectListener(new BankTransactionHandler(), BankTransaction.class);
+		// a kept instance is set up once per game, but its listeners
+		// stay registered with the reader
+		Object reader = getBean("reader");
+		if (reader != listenerReader) {
+			listenerReader = reader;
+			//registerNewObjectListener(new TariffTransactionHandler(), TariffTransaction.class);
+			//registerNewObjectListener(new CapacityTransactionHandler(), CapacityTransaction.class);
+			registerNewObjectListener(new CompetitionHandler(), Competition.class);
+			registerNewObjectListener(new BrokerHandler(), Broker.class);
+			registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
+			//registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
+			registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
+			registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
+			//registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
+			//registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
+			//registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
+			//registerNewObjectListener(new DistributionTransactionHandler(), DistributionTransaction.class);
+			//registerNewObjectListener(new CashPositionHandler(), CashPosition.class);
+			//registerNewObjectListener(new BankTransactionHandler(), BankTransaction.class);
+		}
 
 
-		ignoreCount = ignoreInitial;
-		data = new TreeMap<Integer, ClearedTrade[]>();
-		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
 		try {
 			//output = new PrintWriter(new File(dataFilename));
 			FileWriter fw = new FileWriter(dataFilename, true);
@@ -248,7 +272,7 @@ public class BalancingMarketDecomposer extends LogtoolContext implements Analyze
 		public void handleNewObject(Object comp){
 			// Working System.out.println("2");
 			Competition competition = (Competition) comp;
-			BalancingMarketDecomposer.numberofbrokers = competition.getBrokers().size();
+			numberofbrokers = competition.getBrokers().size();
 			System.out.println("Number of brokers : " + competition.getBrokers().size() + " Simulation " + competition.toString());
 
 		}
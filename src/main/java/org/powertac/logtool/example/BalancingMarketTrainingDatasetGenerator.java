@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.Map;
 import java.util.TreeMap;
@@ -73,7 +74,7 @@ import org.powertac.common.BankTransaction;
  *
  * @author John Collins
  */
-public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext implements Analyzer {
+public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext implements Analyzer, ResidentAnalyzer {
 //	static private Logger log = Logger.getLogger(MktPriceStats.class.getName());
 
 	// service references
@@ -98,11 +99,20 @@ public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext impl
 	private int ignoreCount = 0;
 	private int indexOffset = 0; // should be
 									// Competition.deactivateTimeslotsAhead - 1
-	public static int numberofbrokers = 0;
+	private int numberofbrokers = 0;
 	private PrintWriter output = null;
 	private PrintWriter debug = null;
 	private String dataFilename = "clearedTrades.arff";
+	private Object listenerReader = null; // reader our listeners are on
 	public double brokerID;
+	private NpyColumnWriter columns = null; // set in --npy mode
+	private boolean npy = false;
+
+	// latest weather report, for the columnar rows
+	private double lastTemperature;
+	private double lastCloudCover;
+	private double lastWindDirection;
+	private double lastWindSpeed;
 
 
 	/**
@@ -111,19 +121,46 @@ public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext impl
 	 */
 	public static void main(String[] args) {
 		System.out.println("I am running");
-		new BalancingMarketTrainingDatasetGenerator().cli(args);
+		new BalancingMarketTrainingDatasetGenerator().cli(args, System.out);
 	}
 
 	/**
-	 * Takes two args, input filename and output filename
+	 * Takes two args, input filename and output filename, optionally
+	 * preceded by --npy to write a directory of .npy columns (see
+	 * NpyColumnWriter) instead of text. In that case each row is one
+	 * balancing transaction with the latest weather report, and rows are
+	 * added to any already in the directory.
 	 */
-	private void cli(String[] args) {
-		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+	@Override
+	public void cli(String[] args, PrintStream out) {
+		npy = false;
+		int argOffset = 0;
+		if (args.length > 0 && args[0].equals("--npy")) {
+			npy = true;
+			argOffset = 1;
+		}
+		if (args.length - argOffset != 2) {
+			out.println("Usage: <analyzer> [--npy] input-file output-file");
 			return;
 		}
-		dataFilename = args[1];
-		super.cli(args[0], this);
+		dataFilename = args[argOffset + 1];
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					Competition.class, Broker.class, TimeslotUpdate.class,
+					BalancingTransaction.class, Timeslot.class,
+					WeatherReport.class),
+				(input) -> super.cli(input, this));
+	}
+
+	@Override
+	public void resetGame() {
+		orderbookCounter = new TreeMap<Integer, Integer>();
+		counter = 0;
+		brokers = new double[12];
+		brokernames = new String[12];
+		brokerCounter = 0;
+		numberofbrokers = 0;
+		ignoreCount = ignoreInitial;
 	}
 
 	/*
@@ -133,21 +170,41 @@ public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext impl
 	 */
 	@Override
 	public void setup() {
+		resetGame();
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		timeService = (TimeService) getBean("timeService");
 		brokerRepo = (BrokerRepo) SpringApplicationContext
 				.getBean("brokerRepo");
-		registerNewObjectListener(new CompetitionHandler(), Competition.class);
-		registerNewObjectListener(new BrokerHandler(), Broker.class);
-		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
-		registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
-		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
-		registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
+		// a kept instance is set up once per game, but its listeners
+		// stay registered with the reader
+		Object reader = getBean("reader");
+		if (reader != listenerReader) {
+			listenerReader = reader;
+			registerNewObjectListener(new CompetitionHandler(), Competition.class);
+			registerNewObjectListener(new BrokerHandler(), Broker.class);
+			registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
+			registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
+			registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
+			registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
+		}
 
 		try {
-			//output = new PrintWriter(new File(dataFilename));
-			FileWriter fw = new FileWriter(dataFilename, true);
-			output = new PrintWriter(new BufferedWriter(fw));
+			if (npy) {
+				columns = new NpyColumnWriter(dataFilename, true)
+						.column("timeslot", NpyColumnWriter.Dtype.INT32)
+						.column("numberofbrokers", NpyColumnWriter.Dtype.INT32)
+						.column("temperature", NpyColumnWriter.Dtype.FLOAT64)
+						.column("cloudCover", NpyColumnWriter.Dtype.FLOAT64)
+						.column("windDirection", NpyColumnWriter.Dtype.FLOAT64)
+						.column("windSpeed", NpyColumnWriter.Dtype.FLOAT64)
+						.column("mwh", NpyColumnWriter.Dtype.FLOAT64)
+						.column("price", NpyColumnWriter.Dtype.FLOAT64);
+			}
+			else {
+				//output = new PrintWriter(new File(dataFilename));
+				FileWriter fw = new FileWriter(dataFilename, true);
+				output = new PrintWriter(new BufferedWriter(fw));
+			}
 			debug =  new PrintWriter(new File("debug.txt"));
 		} catch (Exception e) {
 			System.out.println("Cannot open file " + dataFilename);
@@ -161,7 +218,16 @@ public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext impl
 	 */
 	@Override
 	public void report() {
-		output.close();
+		if (npy) {
+			try {
+				columns.close();
+			} catch (IOException e) {
+				System.out.println("Cannot write " + dataFilename + ": " + e.toString());
+			}
+		}
+		else {
+			output.close();
+		}
 		debug.close();
 		System.out.println("Finished");
 	}
@@ -171,7 +237,7 @@ public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext impl
 		public void handleNewObject(Object comp){
 			// Working System.out.println("2");
 			Competition competition = (Competition) comp;
-			BalancingMarketTrainingDatasetGenerator.numberofbrokers = competition.getBrokers().size();
+			numberofbrokers = competition.getBrokers().size();
 			System.out.println("Number of brokers : " + competition.getBrokers().size() + " Simulation " + competition.toString());
 
 		}
@@ -253,7 +319,19 @@ public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext impl
 			int brokerIndex = getBrokerIndex(brokerid);
 			
 			if (brokerIndex > 0 && !brokernames[brokerIndex].equalsIgnoreCase("MISO")&&!brokernames[brokerIndex].equalsIgnoreCase("LMP")) {
-				output.format((bt.getKWh()/1000) + "," + (bt.getCharge()*1000)/Math.abs(bt.getKWh()) + "\n"); 
+				if (npy) {
+					try {
+						columns.put(bt.getPostedTimeslot().getSerialNumber()).put(numberofbrokers)
+								.put(lastTemperature).put(lastCloudCover).put(lastWindDirection).put(lastWindSpeed)
+								.put(bt.getKWh()/1000).put((bt.getCharge()*1000)/Math.abs(bt.getKWh()))
+								.endRow();
+					} catch (IOException e) {
+						System.out.println("Cannot write " + dataFilename + ": " + e.toString());
+					}
+				}
+				else {
+					output.format((bt.getKWh()/1000) + "," + (bt.getCharge()*1000)/Math.abs(bt.getKWh()) + "\n");
+				}
 			}
 		}
 	}
@@ -291,7 +369,15 @@ public class BalancingMarketTrainingDatasetGenerator extends LogtoolContext impl
 				//marketData.put(timeslotSerial, cmt);
 				//System.out.print("WeatherReportHandler : Currenttimeslot :" + currenttimeslot + " Weather Report for : " + timeslotSerial);
 				//debug.println("Currenttimeslot :" + currenttimeslot + " Weather Report for : " + timeslotSerial);
-				output.format(numberofbrokers + " nbroker," + temperature + " t," + cloudcover + " cc," + windDir + " wd," + windSpeed + " ws,");
+				if (npy) {
+					lastTemperature = temperature;
+					lastCloudCover = cloudcover;
+					lastWindDirection = windDir;
+					lastWindSpeed = windSpeed;
+				}
+				else {
+					output.format(numberofbrokers + " nbroker," + temperature + " t," + cloudcover + " cc," + windDir + " wd," + windSpeed + " ws,");
+				}
 			}
 		}
 	}
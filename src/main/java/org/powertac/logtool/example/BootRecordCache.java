@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.Competition;
+import org.powertac.common.msg.CustomerBootstrapData;
+import org.powertac.common.repo.BootstrapDataRepo;
+
+/**
+ * Content-keyed cache of the parts of a boot record that analyzers use.
+ * Boot records are identified by the SHA-256 of their bytes, so the same
+ * record found under different names in a tournament is parsed only once.
+ * Parsed records are held in memory for the life of the JVM, and are also
+ * written in a compact binary form to a cache directory so that later runs
+ * can skip the XML parse entirely.
+ *
+ * The cache directory is given by the system property
+ * <code>logtool.bootcache</code>, and defaults to
+ * <code>logtool-bootcache</code> under <code>java.io.tmpdir</code>.
+ */
+public class BootRecordCache
+{
+  static private Logger log =
+      LogManager.getLogger(BootRecordCache.class.getName());
+
+  // bump when the on-disk layout changes
+  private static final int FORMAT_VERSION = 1;
+
+  private static ConcurrentHashMap<String, BootRecord> records =
+      new ConcurrentHashMap<>();
+
+  private BootRecordCache ()
+  {
+    super();
+  }
+
+  /**
+   * Returns the summarized boot record at bootLoc, from memory, from the
+   * disk cache, or by parsing it with the given repo, in that order. If
+   * the record cannot be hashed it is parsed without caching. Returns null
+   * if the record cannot be read or parsed.
+   */
+  public static BootRecord get (URL bootLoc, BootstrapDataRepo repo)
+  {
+    String key = contentHash(bootLoc);
+    if (null == key) {
+      return parse(bootLoc, repo);
+    }
+    return records.computeIfAbsent(key, k -> load(k, bootLoc, repo));
+  }
+
+  // Forgets the records held in memory; the disk cache is kept
+  static void clear ()
+  {
+    records.clear();
+  }
+
+  // Tries the disk cache, then falls back to parsing the XML.
+  private static BootRecord load (String key, URL bootLoc,
+                                  BootstrapDataRepo repo)
+  {
+    File cacheFile = new File(cacheDir(), key + ".boot");
+    if (cacheFile.canRead()) {
+      try {
+        BootRecord result = readCacheFile(cacheFile);
+        log.info("Boot record {} loaded from {}", bootLoc, cacheFile);
+        return result;
+      }
+      catch (IOException e) {
+        log.warn("Cannot read cached boot record {}: {}",
+                 cacheFile, e.toString());
+      }
+    }
+    BootRecord result = parse(bootLoc, repo);
+    if (null != result) {
+      writeCacheFile(cacheFile, result);
+    }
+    return result;
+  }
+
+  // Reads the XML record into the repo and summarizes it, or returns null
+  // if it could not be parsed
+  private static BootRecord parse (URL bootLoc, BootstrapDataRepo repo)
+  {
+    log.info("Parsing boot record {}", bootLoc);
+    try {
+      repo.readBootRecord(bootLoc);
+    }
+    catch (RuntimeException e) {
+      log.error("Cannot parse boot record {}: {}", bootLoc, e.toString());
+      return null;
+    }
+    if (null == repo.getBootstrapCompetition()) {
+      log.error("No competition in boot record {}", bootLoc);
+      return null;
+    }
+    return summarize(repo);
+  }
+
+  // Pulls what we need out of a freshly-loaded repo
+  private static BootRecord summarize (BootstrapDataRepo repo)
+  {
+    BootRecord result = new BootRecord();
+    Competition bootCompetition = repo.getBootstrapCompetition();
+    result.bootstrapTimeslotCount =
+        bootCompetition.getBootstrapTimeslotCount();
+    result.bootstrapDiscardedTimeslots =
+        bootCompetition.getBootstrapDiscardedTimeslots();
+
+    List<Object> usage = repo.getData(CustomerBootstrapData.class);
+    if (null == usage || 0 == usage.size()) {
+      // boot session, nothing more to do
+      result.customerNames = new String[0];
+      result.customerNetUsage = new double[0][];
+      result.netDemand = new double[0];
+      return result;
+    }
+    result.customerNames = new String[usage.size()];
+    result.customerNetUsage = new double[usage.size()][];
+    // data contains usage array for each customer. Should be 14 days, 336 hrs
+    double[] first = ((CustomerBootstrapData) usage.get(0)).getNetUsage();
+    if (336 != first.length) {
+      // note error but use it
+      log.warn("First item in customer bootstrap data is {} hrs long",
+               first.length);
+    }
+    // aggregate the usage numbers across all customers
+    double[] netDemand = new double[first.length];
+    for (int c = 0; c < usage.size(); c++) {
+      CustomerBootstrapData item = (CustomerBootstrapData) usage.get(c);
+      double[] data = item.getNetUsage();
+      if (data.length != first.length) {
+        log.warn("Length inconsistency for record {}, length = {}",
+                 item.getCustomerName(), data.length);
+      }
+      result.customerNames[c] = item.getCustomerName();
+      result.customerNetUsage[c] = data.clone();
+      for (int i = 0; i < Math.min(first.length, data.length); i += 1) {
+        netDemand[i] -= data[i];
+      }
+    }
+    result.netDemand = netDemand;
+    // Initialize running mean, sigma
+    for (int i = 0; i < netDemand.length; i++) {
+      result.updateStats(netDemand[i]);
+    }
+    return result;
+  }
+
+  // -------------- disk cache --------------
+  private static File cacheDir ()
+  {
+    String dir = System.getProperty("logtool.bootcache");
+    if (null == dir) {
+      dir = new File(System.getProperty("java.io.tmpdir"),
+                     "logtool-bootcache").getPath();
+    }
+    return new File(dir);
+  }
+
+  private static BootRecord readCacheFile (File file) throws IOException
+  {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (FORMAT_VERSION != in.readInt()) {
+        throw new IOException("stale cache format");
+      }
+      BootRecord result = new BootRecord();
+      result.bootstrapTimeslotCount = in.readInt();
+      result.bootstrapDiscardedTimeslots = in.readInt();
+      result.runningCount = in.readInt();
+      result.runningMean = in.readDouble();
+      result.runningVar = in.readDouble();
+      result.runningSigma = in.readDouble();
+      result.netDemand = readArray(in);
+      int customers = in.readInt();
+      result.customerNames = new String[customers];
+      result.customerNetUsage = new double[customers][];
+      for (int c = 0; c < customers; c++) {
+        result.customerNames[c] = in.readUTF();
+        result.customerNetUsage[c] = readArray(in);
+      }
+      return result;
+    }
+  }
+
+  private static double[] readArray (DataInputStream in) throws IOException
+  {
+    double[] result = new double[in.readInt()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = in.readDouble();
+    }
+    return result;
+  }
+
+  // Writes to a temp file and renames it, so concurrent runs never see
+  // a partial record. Failure to write is not fatal.
+  private static void writeCacheFile (File file, BootRecord record)
+  {
+    File dir = file.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      log.warn("Cannot create boot cache directory {}", dir);
+      return;
+    }
+    try {
+      File tmp = File.createTempFile("boot", ".tmp", dir);
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(record.bootstrapTimeslotCount);
+        out.writeInt(record.bootstrapDiscardedTimeslots);
+        out.writeInt(record.runningCount);
+        out.writeDouble(record.runningMean);
+        out.writeDouble(record.runningVar);
+        out.writeDouble(record.runningSigma);
+        writeArray(out, record.netDemand);
+        out.writeInt(record.customerNames.length);
+        for (int c = 0; c < record.customerNames.length; c++) {
+          out.writeUTF(record.customerNames[c]);
+          writeArray(out, record.customerNetUsage[c]);
+        }
+      }
+      Files.move(tmp.toPath(), file.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      log.warn("Cannot write boot cache file {}: {}", file, e.toString());
+    }
+  }
+
+  private static void writeArray (DataOutputStream out, double[] data)
+      throws IOException
+  {
+    out.writeInt(data.length);
+    for (double value: data) {
+      out.writeDouble(value);
+    }
+  }
+
+  // SHA-256 of the record contents, as a hex string
+  private static String contentHash (URL bootLoc)
+  {
+    try (InputStream in = bootLoc.openStream()) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] buffer = new byte[65536];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, n);
+      }
+      StringBuilder sb = new StringBuilder();
+      for (byte b: digest.digest()) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    }
+    catch (IOException | NoSuchAlgorithmException e) {
+      log.error("Cannot read boot record {}: {}", bootLoc, e.toString());
+      return null;
+    }
+  }
+
+  /**
+   * Parsed boot-record data. Arrays are shared between all users of a
+   * record, so callers must copy before modifying them.
+   */
+  public static class BootRecord
+  {
+    int bootstrapTimeslotCount = 0;
+    int bootstrapDiscardedTimeslots = 0;
+    String[] customerNames;
+    double[][] customerNetUsage;
+    double[] netDemand;
+
+    // running stats over netDemand
+    int runningCount = 0;
+    double runningMean = 0.0;
+    double runningVar = 0.0;
+    double runningSigma = 0.0;
+
+    public int getBootstrapTimeslotCount ()
+    {
+      return bootstrapTimeslotCount;
+    }
+
+    public int getBootstrapDiscardedTimeslots ()
+    {
+      return bootstrapDiscardedTimeslots;
+    }
+
+    public String[] getCustomerNames ()
+    {
+      return customerNames;
+    }
+
+    public double[][] getCustomerNetUsage ()
+    {
+      return customerNetUsage;
+    }
+
+    /** Aggregate net demand, the negated sum of customer net usage */
+    public double[] getNetDemand ()
+    {
+      return netDemand;
+    }
+
+    public int getRunningCount ()
+    {
+      return runningCount;
+    }
+
+    public double getRunningMean ()
+    {
+      return runningMean;
+    }
+
+    public double getRunningVar ()
+    {
+      return runningVar;
+    }
+
+    public double getRunningSigma ()
+    {
+      return runningSigma;
+    }
+
+    // Runs the recurrence formula for computing mean, sigma
+    private void updateStats (double netConsumption)
+    {
+      double lastM = runningMean;
+      runningCount += 1;
+      runningMean = lastM + (netConsumption - lastM) / runningCount;
+      runningVar = runningVar +
+          (netConsumption - lastM) * (netConsumption - runningMean);
+      runningSigma = Math.sqrt(runningVar / (runningCount - 1.0));
+    }
+  }
+}
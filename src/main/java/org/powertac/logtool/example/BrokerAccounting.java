@@ -19,9 +19,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -68,13 +66,17 @@ import org.powertac.logtool.ifc.Analyzer;
  * followed by the broker's CashPosition. Line continues with the next broker
  * unless the per-broker option is given.
  * 
+ * Each line is written when its timeslot is finalized, and market
+ * transactions for that timeslot are then dropped, so only the open
+ * trading window is kept in memory.
+ * 
  * Usage: BrokerAccounting [--per-broker] state-log-filename output-data-filename
  * 
  * @author John Collins
  */
 public class BrokerAccounting
 extends LogtoolContext
-implements Analyzer
+implements Analyzer, TimeslotFinalizer.FinalizeListener
 {
   static private Logger log = LogManager.getLogger(BrokerAccounting.class.getName());
 
@@ -84,12 +86,12 @@ implements Analyzer
 
   // Data
   private List<Broker> brokerList;
-  private HashMap<Broker, TreeMap<Integer, ArrayList<MarketTransaction>>> data;
-  private HashMap<Broker, BrokerData> brokerData;
+  private MarketTxCube data;
+  private DenseIndex<Broker> brokerIndex;
+  private BrokerData[] brokerData;
+  private TimeslotFinalizer finalizer;
 
   private boolean started = false;
-  private boolean firstTx = false;
-  private int timeslot = 0;
   private boolean perBroker = false;
   private PrintWriter output = null;
   private String dataFilename = "broker-accounting.data";
@@ -118,7 +120,9 @@ implements Analyzer
       return;
     }
     dataFilename = args[1 + offset];
-    super.cli(args[offset], this);
+    LogLineFilter.read(args[offset],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /* (non-Javadoc)
@@ -130,7 +134,9 @@ implements Analyzer
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
     timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
     brokerList = new ArrayList<>();
-    data = new HashMap<>();
+    brokerIndex = new DenseIndex<>();
+    finalizer = new TimeslotFinalizer();
+    finalizer.addListener(this);
     try {
       output = new PrintWriter(new File(dataFilename));
     }
@@ -142,9 +148,11 @@ implements Analyzer
   private void firstLine ()
   {
     brokerList = brokerRepo.findRetailBrokers();
-    brokerData = new HashMap<>();
-    for (Broker broker: brokerList) {
-      brokerData.put(broker, new BrokerData());
+    brokerIndex = new DenseIndex<>(brokerList);
+    brokerData = new BrokerData[brokerIndex.size()];
+    data = new MarketTxCube(brokerIndex.size(), 1);
+    for (int b = 0; b < brokerData.length; b++) {
+      brokerData[b] = new BrokerData();
     }
     if (perBroker) {
       output.println("ts,dow,hod,broker,ttx-sc,ttx-sd,ttx-uc,ttx-ud,mtx-c,mtx-d,btx-c,btx-d,dtx-c,dtx-d,ctx-c,ctx-d,bce-c,bce-d,bank-c,bank-d,cash");
@@ -168,48 +176,45 @@ implements Analyzer
     output.close();
   }
 
+  /* (non-Javadoc)
+   * @see org.powertac.logtool.example.TimeslotFinalizer.FinalizeListener#timeslotFinalized(int)
+   */
+  @Override
+  public void timeslotFinalized (int ts)
+  {
+    summarizeTimeslot(ts);
+    data.dropBefore(ts + 1);
+  }
+
   // Dump collected data to output. Format depends on perBroker setting.
-  private void summarizeTimeslot ()
+  private void summarizeTimeslot (int timeslot)
   {
     if (perBroker) {
       for (Broker broker: brokerList) {
-        dumpTS();
-        dumpData(broker);
+        dumpTS(timeslot);
+        dumpData(broker, timeslot);
         output.println();
       }
     }
     else {
-      dumpTS();
+      dumpTS(timeslot);
       for (Broker broker: brokerList)
-        dumpData(broker);
+        dumpData(broker, timeslot);
       output.println();
     }
   }
 
-  private void dumpData (Broker broker)
+  private void dumpData (Broker broker, int timeslot)
   {
     output.format(",%s",broker.getUsername());
-    BrokerData bd = brokerData.get(broker);
+    int b = brokerIndex.indexOf(broker);
+    BrokerData bd = brokerData[b];
     // TariffTransaction, state and usage
     output.format(",%.4f,%.4f,%.4f,%.4f",
                   bd.ttxSC, bd.ttxSD, bd.ttxUC, bd.ttxUD);
     // Handle deferred market transactions for this timeslot
-    TreeMap<Integer, ArrayList<MarketTransaction>> brokerTxMap =
-        data.get(broker);
-    double mtxD = 0.0;
-    double mtxC = 0.0;
-    if (null != brokerTxMap) {
-      List<MarketTransaction> txList = brokerTxMap.get(timeslot);
-      if (null != txList) {
-        for (MarketTransaction tx: txList) {
-          double money = Math.abs(tx.getMWh()) * tx.getPrice();
-          if (money >= 0.0)
-            mtxC += money;
-          else
-            mtxD += money;
-        }
-      }
-    }
+    double mtxD = data.getMoney(b, timeslot, 0, MarketTxCube.DEBIT);
+    double mtxC = data.getMoney(b, timeslot, 0, MarketTxCube.CREDIT);
     output.format(",%.4f,%.4f", mtxC, mtxD);
     // balancing, distribution, capacity
     output.format(",%.4f,%.4f,%.4f,%.4f,%.4f,%.4f",
@@ -220,7 +225,7 @@ implements Analyzer
     bd.clear();
   }
 
-  private void dumpTS ()
+  private void dumpTS (int timeslot)
   {
     // print ts,dow,hod
     DateTime dt = timeslotRepo.getDateTimeForIndex(timeslot);
@@ -242,7 +247,7 @@ implements Analyzer
   public void handleMessage (SimEnd end)
   {
     System.out.println("SimEnd");
-    summarizeTimeslot();
+    finalizer.finish();
   }
 
   // -----------------------------------
@@ -250,9 +255,10 @@ implements Analyzer
   public void handleMessage (TariffTransaction tx)
   {
     Broker broker = tx.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(broker);
+    if (b < 0)
       return;
-    BrokerData bd = brokerData.get(broker);
+    BrokerData bd = brokerData[b];
     double amount = tx.getCharge();
     // separate state from produce/consume tx
     if (tx.getTxType() == Type.PRODUCE || tx.getTxType() == Type.CONSUME) {
@@ -273,25 +279,18 @@ implements Analyzer
   // catch MarketTransaction messages
   public void handleMessage (MarketTransaction tx)
   {
-    Broker broker = tx.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(tx.getBroker());
+    if (b < 0)
       return;
     //System.out.printf("Market tx %s, ts %d, mwh %.4f, price %.4f\n",
     //                  tx.getBroker().getUsername(), tx.getTimeslotIndex(),
     //                  tx.getMWh(), tx.getPrice());
-    Integer target = tx.getTimeslotIndex();
-    TreeMap<Integer, ArrayList<MarketTransaction>> brokerData =
-        data.get(broker);
-    if (null == brokerData) {
-      brokerData = new TreeMap<>();
-      data.put(broker, brokerData);
-    }
-    ArrayList<MarketTransaction> list = brokerData.get(target);
-    if (null == list) {
-      list = new ArrayList<>();
-      brokerData.put(target, list);
-    }
-    list.add(tx);
+    // aggregated by target timeslot, dumped when that timeslot closes
+    double money = Math.abs(tx.getMWh()) * tx.getPrice();
+    int side = MarketTxCube.DEBIT;
+    if (money >= 0.0)
+      side = MarketTxCube.CREDIT;
+    data.add(b, tx.getTimeslotIndex(), 0, side, money, Math.abs(tx.getMWh()));
   }
 
   // -----------------------------------
@@ -299,9 +298,10 @@ implements Analyzer
   public void handleMessage (BalancingTransaction bt)
   {
     Broker broker = bt.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(broker);
+    if (b < 0)
       return;
-    BrokerData bd = brokerData.get(broker);
+    BrokerData bd = brokerData[b];
     double amount = bt.getCharge();
     if (amount < 0.0)
       bd.btxD += amount;
@@ -314,9 +314,10 @@ implements Analyzer
   public void handleMessage (DistributionTransaction dt)
   {
     Broker broker = dt.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(broker);
+    if (b < 0)
       return;
-    BrokerData bd = brokerData.get(broker);
+    BrokerData bd = brokerData[b];
     double amount = dt.getCharge();
     if (amount < 0.0)
       bd.dtxD += amount;
@@ -329,9 +330,10 @@ implements Analyzer
   public void handleMessage (CapacityTransaction ct)
   {
     Broker broker = ct.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(broker);
+    if (b < 0)
       return;
-    BrokerData bd = brokerData.get(broker);
+    BrokerData bd = brokerData[b];
     double amount = ct.getCharge();
     if (amount < 0.0)
       bd.ctxD += amount;
@@ -344,9 +346,10 @@ implements Analyzer
   public void handleMessage (BalancingControlEvent bce)
   {
     Broker broker = bce.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(broker);
+    if (b < 0)
       return;
-    BrokerData bd = brokerData.get(broker);
+    BrokerData bd = brokerData[b];
     double amount = bce.getPayment();
     if (amount < 0.0)
       bd.bceD += amount;
@@ -359,9 +362,10 @@ implements Analyzer
   public void handleMessage (BankTransaction bt)
   {
     Broker broker = bt.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(broker);
+    if (b < 0)
       return;
-    BrokerData bd = brokerData.get(broker);
+    BrokerData bd = brokerData[b];
     double amount = bt.getAmount();
     if (amount < 0.0)
       bd.bankD += amount;
@@ -374,27 +378,28 @@ implements Analyzer
   public void handleMessage (CashPosition cp)
   {
     Broker broker = cp.getBroker();
-    if (!brokerList.contains(broker))
+    int b = brokerIndex.indexOf(broker);
+    if (b < 0)
       return;
-    BrokerData bd = brokerData.get(broker);
+    BrokerData bd = brokerData[b];
     bd.cash = cp.getBalance();
   }
 
   // -----------------------------------
   // catch TimeslotUpdate events
+  // The first one after SimStart writes the header line; each one after
+  // that finalizes the previous timeslot.
   private int skip = 1; // Skip the first one
   public void handleMessage (TimeslotUpdate tu)
   {
-    if (started)
-      if (skip == 0) {
-        summarizeTimeslot();
-      }
-      else {
+    if (started) {
+      if (skip > 0) {
         skip -= 1;
         firstLine();
       }
-    timeslot = tu.getFirstEnabled() -
-        Competition.currentCompetition().getDeactivateTimeslotsAhead();
+      finalizer.startTimeslot(tu.getFirstEnabled() -
+          Competition.currentCompetition().getDeactivateTimeslotsAhead());
+    }
   }
 
   class BrokerData
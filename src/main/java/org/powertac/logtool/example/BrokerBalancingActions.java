@@ -165,7 +165,9 @@ implements Analyzer
     }
     traceFilename = stateFilename.replace(".state", ".trace");
     dataFilename = fileArgs[1];
-    super.cli(fileArgs[0], this);
+    LogLineFilter.read(fileArgs[0],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
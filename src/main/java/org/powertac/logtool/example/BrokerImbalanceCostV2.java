@@ -107,7 +107,13 @@ implements Analyzer
       return;
     }
     dataFilename = args[1];
-    super.cli(args[0], this);
+    // orderbooks refer to their orders, which are logged separately
+    LogLineFilter.read(args[0],
+                       LogLineFilter.neededClasses(this,
+                           TimeslotUpdate.class, BalancingTransaction.class,
+                           TariffTransaction.class, MarketTransaction.class,
+                           Orderbook.class, OrderbookOrder.class),
+                       (input) -> super.cli(input, this));
   }
 
   /**
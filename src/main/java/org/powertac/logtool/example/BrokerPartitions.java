@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * A set of output files, one per broker, filled in a single pass over the
+ * game. The file for broker b is the base filename with the broker name
+ * inserted before the extension, so <code>game.csv</code> becomes
+ * <code>game.SPOT.csv</code>. Each file starts with the given header line.
+ *
+ * Each file is an AsyncRowWriter with the same columns, so rows are
+ * formatted and written off the analyzer's thread. Usage:
+ * <pre>
+ * partitions = new BrokerPartitions(file, "slot, cash", ", ",
+ *                                   AsyncRowWriter.INTEGER, 2);
+ * partitions.get(broker).put(slot).put(cash).endRow();
+ * partitions.close();
+ * </pre>
+ */
+public class BrokerPartitions implements Closeable
+{
+  private String baseFilename;
+  private String header;
+  private String separator;
+  private int[] decimals;
+  private LinkedHashMap<String, AsyncRowWriter> partitions =
+      new LinkedHashMap<>();
+
+  public BrokerPartitions (String baseFilename, String header,
+                           String separator, int... decimals)
+  {
+    super();
+    this.baseFilename = baseFilename;
+    this.header = header;
+    this.separator = separator;
+    this.decimals = decimals;
+  }
+
+  /**
+   * Returns the name of the file written for the given broker.
+   */
+  public static String partitionFilename (String baseFilename, String broker)
+  {
+    String safe = broker.replaceAll("[^A-Za-z0-9_-]", "_");
+    int slash = Math.max(baseFilename.lastIndexOf('/'),
+                         baseFilename.lastIndexOf('\\'));
+    int dot = baseFilename.lastIndexOf('.');
+    if (dot <= slash + 1) {
+      return baseFilename + "." + safe;
+    }
+    return baseFilename.substring(0, dot) + "." + safe
+        + baseFilename.substring(dot);
+  }
+
+  /**
+   * Returns the writer for the given broker's file, creating the file on
+   * first use.
+   */
+  public AsyncRowWriter get (String broker) throws IOException
+  {
+    AsyncRowWriter partition = partitions.get(broker);
+    if (null == partition) {
+      partition = new AsyncRowWriter(partitionFilename(baseFilename, broker),
+                                     header, separator, decimals);
+      partitions.put(broker, partition);
+    }
+    return partition;
+  }
+
+  /** Brokers written so far, in order of their first row */
+  public Set<String> getBrokers ()
+  {
+    return partitions.keySet();
+  }
+
+  /**
+   * Closes all files, and throws the first error from any of them.
+   */
+  @Override
+  public void close () throws IOException
+  {
+    IOException failure = null;
+    for (AsyncRowWriter partition: partitions.values()) {
+      try {
+        partition.close();
+      }
+      catch (IOException e) {
+        if (null == failure)
+          failure = e;
+      }
+    }
+    if (null != failure) {
+      throw failure;
+    }
+  }
+}
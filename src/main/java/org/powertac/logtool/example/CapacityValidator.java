@@ -36,7 +36,6 @@ import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.CapacityTransaction;
 import org.powertac.common.Competition;
 import org.powertac.common.TariffTransaction;
-import org.powertac.common.msg.CustomerBootstrapData;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
@@ -70,6 +69,7 @@ implements Analyzer
   //private TimeslotRepo timeslotRepo;
   private BrokerRepo brokerRepo;
   private URL bootLoc;
+  private BootRecordCache.BootRecord bootRecord;
   //private Competition competition;
 
   // option flag
@@ -157,6 +157,10 @@ implements Analyzer
         Files.newDirectoryStream(dir, "*boot.xml")) {
       for (Path entry: stream)
         bootPath = entry;
+      if (null == bootPath) {
+        System.out.println("Could not find boot record in " + dir);
+        return;
+      }
       bootLoc = new URL("file://" + bootPath.toString());
     }
     catch (IOException e) {
@@ -177,7 +181,9 @@ implements Analyzer
     }
     if (null != bootPath && null != statefile) {
       
-      super.cli(statefile.toString(), this);
+      LogLineFilter.read(statefile.toString(),
+                         LogLineFilter.neededClasses(this),
+                         (input) -> super.cli(input, this));
     }
   }
 
@@ -189,13 +195,15 @@ implements Analyzer
   @Override
   public void setup ()
   {
-    // Read the boot record
+    // Read the boot record, or find it in the cache
     bootstrapRepo = (BootstrapDataRepo)getBean("bootstrapDataRepo");
-    bootstrapRepo.readBootRecord(bootLoc);
-    Competition bootCompetition =
-        bootstrapRepo.getBootstrapCompetition();
-    timeslot = bootCompetition.getBootstrapTimeslotCount() +
-        bootCompetition.getBootstrapDiscardedTimeslots();
+    bootRecord = BootRecordCache.get(bootLoc, bootstrapRepo);
+    if (null == bootRecord) {
+      System.out.println("Cannot read boot record " + bootLoc);
+      throw new IllegalStateException("Cannot read boot record " + bootLoc);
+    }
+    timeslot = bootRecord.getBootstrapTimeslotCount() +
+        bootRecord.getBootstrapDiscardedTimeslots();
 
     //timeService = (TimeService)getBean("timeService");
     //timeslotRepo = (TimeslotRepo)getBean("timeslotRepo");
@@ -212,38 +220,19 @@ implements Analyzer
     dataInit = false;
   }
 
-  // copied from DistributionUtilityService
+  // Initializes running mean, sigma from the cached bootstrap net demand.
+  // The aggregation itself is copied from DistributionUtilityService and
+  // lives in BootRecordCache.
   private void processBootstrapRecord ()
   {
-    List<Object> usage = bootstrapRepo.getData(CustomerBootstrapData.class);
-    if (null == usage || 0 == usage.size()) {
+    if (0 == bootRecord.getNetDemand().length) {
       // boot session, ignore
       return;
     }
-    // data contains usage array for each customer. Should be 14 days, 336 hrs
-    double[] first = ((CustomerBootstrapData) usage.get(0)).getNetUsage();
-    if (336 != first.length) {
-      // note error but use it
-      log.warn("First item in customer bootstrap data is {} hrs long",
-               first.length);
-    }
-    // aggregate the usage numbers across all customers
-    double[] result = new double[first.length];
-    for (Object item: usage) {
-      double[] data = ((CustomerBootstrapData) item).getNetUsage();
-      if (data.length != first.length) {
-        log.warn("Length inconsistency for record {}, length = {}",
-                 ((CustomerBootstrapData) item).getCustomerName(),
-                 data.length);
-      }
-      for (int i = 0; i < Math.min(first.length, data.length); i += 1) {
-        result[i] -= data[i];
-      }
-    }
-    // Initialize running mean, sigma
-    for (int i = 0; i < result.length; i++) {
-      updateStats(result[i]);
-    }
+    runningCount = bootRecord.getRunningCount();
+    runningMean = bootRecord.getRunningMean();
+    runningVar = bootRecord.getRunningVar();
+    runningSigma = bootRecord.getRunningSigma();
     log.info("Bootstrap data: n = {}, mean = {}, sigma = {}",
              runningCount, runningMean, runningSigma);
   }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+import org.powertac.common.ClearedTrade;
+
+/**
+ * Market clearing results for a whole game, stored as execution price and
+ * MWh in flat [timeslot][leadtime] primitive arrays. Replaces the
+ * TreeMap&lt;Integer, ClearedTrade[]&gt; that the wholesale-market analyzers
+ * used to keep, so ClearedTrade instances do not stay on the heap until
+ * report() time. Rows are created either explicitly by addTimeslot(),
+ * typically on TimeslotUpdate, or implicitly by add(). Analyzers that
+ * write out each timeslot as it is finalized (see TimeslotFinalizer) call
+ * dropBefore() after it, so only the open window is kept. Iterate with
+ *
+ * <pre>
+ * for (int ts = m.getFirstTimeslot(); ts &lt;= m.getLastTimeslot(); ts++)
+ *   if (m.hasTimeslot(ts)) ...
+ * </pre>
+ */
+public class ClearedTradeMatrix
+{
+  private static final int INITIAL_ROWS = 2048;
+
+  private int leadTimes;
+  private int base = -1; // timeslot index of row 0
+  private int rows = 0; // allocated rows
+  private int first = Integer.MAX_VALUE;
+  private int last = -1;
+  private int floor = -1; // timeslots before this have been dropped
+
+  private double[] price;
+  private double[] mwh;
+  private boolean[] cleared;
+  private boolean[] rowPresent;
+
+  public ClearedTradeMatrix ()
+  {
+    this(24);
+  }
+
+  public ClearedTradeMatrix (int leadTimes)
+  {
+    super();
+    this.leadTimes = leadTimes;
+  }
+
+  public int getLeadTimes ()
+  {
+    return leadTimes;
+  }
+
+  /**
+   * Ensures a row exists for timeslot ts, even if nothing clears for it.
+   */
+  public void addTimeslot (int ts)
+  {
+    if (ts < floor)
+      return;
+    int row = ensureRow(ts);
+    rowPresent[row] = true;
+    first = Math.min(first, ts);
+    last = Math.max(last, ts);
+  }
+
+  /**
+   * Records a clearing for timeslot ts at the given leadtime, replacing any
+   * previous one.
+   */
+  public void add (int ts, int lead, double executionPrice,
+                   double executionMWh)
+  {
+    if (ts < floor)
+      return;
+    addTimeslot(ts);
+    int i = (ts - base) * leadTimes + lead;
+    price[i] = executionPrice;
+    mwh[i] = executionMWh;
+    cleared[i] = true;
+  }
+
+  public void add (ClearedTrade ct, int lead)
+  {
+    add(ct.getTimeslotIndex(), lead,
+        ct.getExecutionPrice(), ct.getExecutionMWh());
+  }
+
+  /** First timeslot with a row, or Integer.MAX_VALUE if none */
+  public int getFirstTimeslot ()
+  {
+    return first;
+  }
+
+  /** Last timeslot with a row, or -1 if none */
+  public int getLastTimeslot ()
+  {
+    return last;
+  }
+
+  public boolean hasTimeslot (int ts)
+  {
+    return inRange(ts) && rowPresent[ts - base];
+  }
+
+  /** True just in case a ClearedTrade was recorded at (ts, lead) */
+  public boolean isCleared (int ts, int lead)
+  {
+    return inRange(ts) && cleared[(ts - base) * leadTimes + lead];
+  }
+
+  /** Execution price at (ts, lead), 0.0 if nothing cleared */
+  public double getPrice (int ts, int lead)
+  {
+    if (!inRange(ts))
+      return 0.0;
+    return price[(ts - base) * leadTimes + lead];
+  }
+
+  /** Execution MWh at (ts, lead), 0.0 if nothing cleared */
+  public double getMWh (int ts, int lead)
+  {
+    if (!inRange(ts))
+      return 0.0;
+    return mwh[(ts - base) * leadTimes + lead];
+  }
+
+  private boolean inRange (int ts)
+  {
+    return base >= 0 && ts >= base && ts >= floor && ts < base + rows;
+  }
+
+  // Returns the row for ts, growing or re-basing the arrays if needed
+  private int ensureRow (int ts)
+  {
+    if (base < 0) {
+      // first use; leave a little room below for out-of-order rows
+      base = Math.max(0, ts - leadTimes);
+      rows = INITIAL_ROWS;
+      price = new double[rows * leadTimes];
+      mwh = new double[rows * leadTimes];
+      cleared = new boolean[rows * leadTimes];
+      rowPresent = new boolean[rows];
+    }
+    if (ts < base) {
+      int shift = base - Math.max(0, ts - leadTimes);
+      resize(rows + shift, shift);
+      base -= shift;
+    }
+    else if (ts >= base + rows) {
+      resize(Math.max(rows * 2, ts - base + 1), 0);
+    }
+    return ts - base;
+  }
+
+  // Re-allocates with newRows rows, moving existing rows up by shift
+  private void resize (int newRows, int shift)
+  {
+    double[] newPrice = new double[newRows * leadTimes];
+    double[] newMwh = new double[newRows * leadTimes];
+    boolean[] newCleared = new boolean[newRows * leadTimes];
+    boolean[] newPresent = new boolean[newRows];
+    System.arraycopy(price, 0, newPrice, shift * leadTimes, rows * leadTimes);
+    System.arraycopy(mwh, 0, newMwh, shift * leadTimes, rows * leadTimes);
+    System.arraycopy(cleared, 0, newCleared, shift * leadTimes,
+                     rows * leadTimes);
+    System.arraycopy(rowPresent, 0, newPresent, shift, rows);
+    price = newPrice;
+    mwh = newMwh;
+    cleared = newCleared;
+    rowPresent = newPresent;
+    rows = newRows;
+  }
+
+  /**
+   * Drops the rows for timeslots before ts. Later adds for them are
+   * ignored. Storage is reclaimed once the dropped rows fill half the
+   * arrays.
+   */
+  public void dropBefore (int ts)
+  {
+    if (ts <= floor)
+      return;
+    floor = ts;
+    if (last < ts) {
+      first = Integer.MAX_VALUE;
+      last = -1;
+    }
+    else {
+      first = Math.max(first, ts);
+    }
+    if (base >= 0 && (floor - base) * 2 >= rows)
+      compact();
+  }
+
+  // Moves the rows at and after floor to the start of the arrays
+  private void compact ()
+  {
+    int shift = floor - base;
+    if (shift >= rows) {
+      Arrays.fill(price, 0.0);
+      Arrays.fill(mwh, 0.0);
+      Arrays.fill(cleared, false);
+      Arrays.fill(rowPresent, false);
+    }
+    else {
+      int keep = rows - shift;
+      System.arraycopy(price, shift * leadTimes, price, 0, keep * leadTimes);
+      System.arraycopy(mwh, shift * leadTimes, mwh, 0, keep * leadTimes);
+      System.arraycopy(cleared, shift * leadTimes, cleared, 0,
+                       keep * leadTimes);
+      System.arraycopy(rowPresent, shift, rowPresent, 0, keep);
+      Arrays.fill(price, keep * leadTimes, rows * leadTimes, 0.0);
+      Arrays.fill(mwh, keep * leadTimes, rows * leadTimes, 0.0);
+      Arrays.fill(cleared, keep * leadTimes, rows * leadTimes, false);
+      Arrays.fill(rowPresent, keep, rows, false);
+    }
+    base = floor;
+  }
+
+  public void clear ()
+  {
+    if (base >= 0) {
+      Arrays.fill(price, 0.0);
+      Arrays.fill(mwh, 0.0);
+      Arrays.fill(cleared, false);
+      Arrays.fill(rowPresent, false);
+    }
+    first = Integer.MAX_VALUE;
+    last = -1;
+    floor = -1;
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.ClearedTrade;
+
+/**
+ * Distributions of wholesale clearing price and cleared MWh, by leadtime
+ * and by hour of day of the target timeslot, kept as QuantileSketches
+ * while the log is read. Memory is fixed by the number of sketches, not by
+ * the number of clearings, and sketches from many games merge exactly.
+ *
+ * Analyzers that take the option <code>--quantiles report-file</code> add
+ * each ClearedTrade here, then write the quantile report to report-file
+ * and the sketches to report-file.bin. Saved sketches from any number of
+ * games are combined, read in parallel, by
+ * <pre>
+ * ClearingPriceSketches output-file sketch-file...
+ * </pre>
+ * The report has one line per leadtime and per hour for each variable:
+ *   by, index, variable, count, min, p05, p25, p50, p75, p95, max
+ * where by is "lead" or "hour", and variable is "price" or "mwh".
+ */
+public class ClearingPriceSketches
+{
+  static private Logger log =
+      LogManager.getLogger(ClearingPriceSketches.class.getName());
+
+  public static final int LEADS = 24;
+  public static final int HOURS = 24;
+  private static final double ACCURACY = 0.01;
+  private static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+  private static final long MAGIC = 0x434C5250524331L; // "CLRPRC1"
+
+  private QuantileSketch[] priceByLead = sketches(LEADS);
+  private QuantileSketch[] mwhByLead = sketches(LEADS);
+  private QuantileSketch[] priceByHour = sketches(HOURS);
+  private QuantileSketch[] mwhByHour = sketches(HOURS);
+
+  public ClearingPriceSketches ()
+  {
+    super();
+  }
+
+  /**
+   * Merges saved sketch files and writes their quantile report.
+   */
+  public static void main (String[] args)
+  {
+    if (args.length < 2) {
+      System.out.println("Usage: ClearingPriceSketches output-file sketch-file...");
+      return;
+    }
+    String[] files = new String[args.length - 1];
+    System.arraycopy(args, 1, files, 0, files.length);
+    try {
+      merge(files).writeReport(args[0]);
+    }
+    catch (InterruptedException e) {
+      log.error("Merge interrupted");
+    }
+  }
+
+  /**
+   * Adds a ClearedTrade that cleared lead timeslots ahead of its target,
+   * binned by the hour of day of the target timeslot. Analyzers add trades
+   * through here so that they all bin hours the same way.
+   */
+  public void add (int lead, ClearedTrade trade)
+  {
+    add(lead, trade.getTimeslot().slotInDay(), trade.getExecutionPrice(),
+        trade.getExecutionMWh());
+  }
+
+  /**
+   * Adds one clearing. Leads or hours out of range are ignored.
+   */
+  public void add (int lead, int hour, double price, double mwh)
+  {
+    if (lead >= 0 && lead < LEADS) {
+      priceByLead[lead].add(price);
+      mwhByLead[lead].add(mwh);
+    }
+    if (hour >= 0 && hour < HOURS) {
+      priceByHour[hour].add(price);
+      mwhByHour[hour].add(mwh);
+    }
+  }
+
+  public QuantileSketch getPriceByLead (int lead)
+  {
+    return priceByLead[lead];
+  }
+
+  public QuantileSketch getMWhByLead (int lead)
+  {
+    return mwhByLead[lead];
+  }
+
+  public QuantileSketch getPriceByHour (int hour)
+  {
+    return priceByHour[hour];
+  }
+
+  public QuantileSketch getMWhByHour (int hour)
+  {
+    return mwhByHour[hour];
+  }
+
+  public void merge (ClearingPriceSketches other)
+  {
+    for (int i = 0; i < LEADS; i++) {
+      priceByLead[i].merge(other.priceByLead[i]);
+      mwhByLead[i].merge(other.mwhByLead[i]);
+    }
+    for (int i = 0; i < HOURS; i++) {
+      priceByHour[i].merge(other.priceByHour[i]);
+      mwhByHour[i].merge(other.mwhByHour[i]);
+    }
+  }
+
+  /**
+   * Writes the quantile report to filename and the sketches to
+   * filename.bin.
+   */
+  public void save (String filename)
+  {
+    writeReport(filename);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename + ".bin")))) {
+      out.writeLong(MAGIC);
+      for (QuantileSketch[] group: groups())
+        for (QuantileSketch sketch: group)
+          sketch.write(out);
+    }
+    catch (IOException e) {
+      log.error("Cannot write " + filename + ".bin: " + e.toString());
+    }
+  }
+
+  public void writeReport (String filename)
+  {
+    try (PrintWriter out = new PrintWriter(filename)) {
+      out.println("by, index, variable, count, min, p05, p25, p50, p75, p95, max");
+      writeLines(out, "lead", "price", priceByLead);
+      writeLines(out, "lead", "mwh", mwhByLead);
+      writeLines(out, "hour", "price", priceByHour);
+      writeLines(out, "hour", "mwh", mwhByHour);
+    }
+    catch (FileNotFoundException e) {
+      log.error("Cannot open file " + filename);
+    }
+  }
+
+  private void writeLines (PrintWriter out, String by, String variable,
+                           QuantileSketch[] group)
+  {
+    for (int i = 0; i < group.length; i++) {
+      QuantileSketch sketch = group[i];
+      out.format("%s, %d, %s, %d, %.4f", by, i, variable, sketch.getCount(),
+                 sketch.getMin());
+      for (double q: QUANTILES)
+        out.format(", %.4f", sketch.getQuantile(q));
+      out.format(", %.4f", sketch.getMax());
+      out.println();
+    }
+  }
+
+  public static ClearingPriceSketches read (String filename)
+    throws IOException
+  {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+      if (in.readLong() != MAGIC)
+        throw new IOException(filename + " is not a clearing price sketch file");
+      ClearingPriceSketches result = new ClearingPriceSketches();
+      for (QuantileSketch[] group: result.groups())
+        for (int i = 0; i < group.length; i++)
+          group[i] = QuantileSketch.read(in);
+      return result;
+    }
+  }
+
+  /**
+   * Reads the saved files in parallel and returns their combined
+   * sketches. Files that cannot be read are reported and skipped.
+   */
+  public static ClearingPriceSketches merge (String[] filenames)
+    throws InterruptedException
+  {
+    return SavedFiles.merge(filenames, ClearingPriceSketches::read,
+                            new ClearingPriceSketches(),
+                            ClearingPriceSketches::merge);
+  }
+
+  private QuantileSketch[][] groups ()
+  {
+    return new QuantileSketch[][] {priceByLead, mwhByLead,
+                                   priceByHour, mwhByHour};
+  }
+
+  private static QuantileSketch[] sketches (int n)
+  {
+    QuantileSketch[] result = new QuantileSketch[n];
+    for (int i = 0; i < n; i++)
+      result[i] = new QuantileSketch(ACCURACY);
+    return result;
+  }
+}
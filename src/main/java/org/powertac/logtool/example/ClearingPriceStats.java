@@ -98,6 +98,8 @@ public class ClearingPriceStats extends LogtoolContext implements Analyzer {
 	public ArrayList<String> probrokers = new ArrayList<String>();
 	public double netUsage = 0;
 	public int counter = 0;
+	private String quantilesFilename = null;
+	private ClearingPriceSketches sketches = null;
 	/**
 	 * Main method just creates an instance and passes command-line args to its
 	 * inherited cli() method.
@@ -108,15 +110,26 @@ public class ClearingPriceStats extends LogtoolContext implements Analyzer {
 	}
 
 	/**
-	 * Takes two args, input filename and output filename
+	 * Takes two args, input filename and output filename, optionally
+	 * preceded by --quantiles report-file to also write clearing price and
+	 * MWh quantiles by leadtime and hour (see ClearingPriceSketches).
 	 */
 	private void cli(String[] args) {
-		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+		int argOffset = 0;
+		if (args.length > 1 && args[0].equals("--quantiles")) {
+			quantilesFilename = args[1];
+			argOffset = 2;
+		}
+		if (args.length - argOffset != 2) {
+			System.out.println("Usage: <analyzer> [--quantiles report-file] input-file output-file");
 			return;
 		}
-		dataFilename = args[1];
-		super.cli(args[0], this);
+		dataFilename = args[argOffset + 1];
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					ClearedTrade.class, Order.class, TimeslotUpdate.class,
+					Timeslot.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/*
@@ -136,6 +149,8 @@ public class ClearingPriceStats extends LogtoolContext implements Analyzer {
 		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
 		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
 		ignoreCount = ignoreInitial;
+		if (quantilesFilename != null)
+			sketches = new ClearingPriceSketches();
 		try {
 			//output = new PrintWriter(new File(dataFilename));
 			FileWriter fw = new FileWriter(dataFilename, true);
@@ -163,6 +178,8 @@ public class ClearingPriceStats extends LogtoolContext implements Analyzer {
 			output.println(s);
 		}
 		output.close();
+		if (sketches != null)
+			sketches.save(quantilesFilename);
 	}
 
 	// -----------------------------------
@@ -264,6 +281,8 @@ public class ClearingPriceStats extends LogtoolContext implements Analyzer {
 					sumClearingPrices[offset] += ct.getExecutionPrice();
 					sumClearingMWh[offset] += ct.getExecutionMWh();
 					countAuction[offset]++;
+					if (sketches != null)
+						sketches.add(offset, ct);
 				}
 				
 //				if(offset == 23){
@@ -15,10 +15,9 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -41,6 +40,7 @@ import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.TariffRepo;
 //import org.powertac.common.spring.SpringApplicationContext;
 import org.powertac.logtool.LogtoolContext;
+import org.powertac.logtool.example.TimeslotPhaseTracker.Phase;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -55,15 +55,16 @@ import org.powertac.logtool.ifc.Analyzer;
  *     [--customer-names n1,n2,...] ||
  *     [--power-type pt] ||
  *     [--with-bo]
- *     customer-name input output
+ *     input output
  * where the options are filters on the data that's collected. Only one option
- * is allowed.
+ * is allowed. With --customer-names, usage is kept per customer in a
+ * CustomerUsageMatrix and each row is sliced from it.
  *
  * @author John Collins
  */
 public class CustomerBalancingCapacity
 extends LogtoolContext
-implements Analyzer
+implements Analyzer, TimeslotPhaseTracker.PhaseListener
 {
   static private Logger log = LogManager.getLogger(CustomerBalancingCapacity.class.getName());
 
@@ -73,7 +74,8 @@ implements Analyzer
   // customer data
   //private String gameId = null;
   private List<String> customerNames = new ArrayList<>();
-  private Set<CustomerInfo> namedCustomers = null;
+  private CustomerUsageMatrix usage = null; // for --customer-names
+  private int[] namedCustomers = null;
   private PowerType powerType = null;
   private boolean withBO = false;
   private Set<Long> boTariffIds;
@@ -89,10 +91,12 @@ implements Analyzer
   private double imbalance = 0.0;
 
   // data output file
-  private PrintWriter data = null;
+  private AsyncRowWriter data = null;
   private String dataFilename = "data.txt";
   private boolean dataInit = false;
   private boolean started = false; // wait for SimStart
+  private TimeslotPhaseTracker phases;
+  private Instant posted; // of the latest TimeslotUpdate
 
   /**
    * Constructor does nothing. Call setup() before reading a file to
@@ -119,7 +123,12 @@ implements Analyzer
   private void cli (String[] args)
   {
     int offset = 0;
-    if (args.length == 4 && "--power-type".equals(args[0])) {
+    if (args.length == 4 && "--customer-names".equals(args[0])) {
+      customerNames = Arrays.asList(args[1].split(","));
+      usage = new CustomerUsageMatrix();
+      offset = 2;
+    }
+    else if (args.length == 4 && "--power-type".equals(args[0])) {
       powerType = PowerType.valueOf(args[1]);
       offset = 2;
     }
@@ -129,11 +138,13 @@ implements Analyzer
       offset = 1;
     }
     else if (args.length != 2) {
-      System.out.println("Usage: <analyzer> [--customer-names n1,... || --power-type pt] input output");
+      System.out.println("Usage: <analyzer> [--customer-names n1,... || --power-type pt || --with-bo] input output");
       return;
     }
     dataFilename = args[offset + 1];
-    super.cli(args[offset], this);
+    LogLineFilter.read(args[offset],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -146,18 +157,31 @@ implements Analyzer
   {
     tariffRepo = (TariffRepo) getBean("tariffRepo");
     try {
-      data = new PrintWriter(new File(dataFilename));
+      data = new AsyncRowWriter(dataFilename,
+                                "slot, dow, hod, prod, cons, imb, offer-up, offer-down, use-up, use-down",
+                                ", ",
+                                AsyncRowWriter.INTEGER, AsyncRowWriter.INTEGER,
+                                AsyncRowWriter.INTEGER, 3, 3, 3, 3, 3, 3, 3);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       e.printStackTrace();
     }
+    phases = new TimeslotPhaseTracker();
+    phases.addListener(this);
     dataInit = false;
   }
 
   @Override
   public void report ()
   {
-    data.close();
+    try {
+      data.close();
+      if (null != usage)
+        usage.close();
+    }
+    catch (IOException e) {
+      log.error("Cannot write " + dataFilename + ": " + e.toString());
+    }
   }
 
   // Called on timeslotUpdate. Note that there are two of these before
@@ -165,27 +189,34 @@ implements Analyzer
   // the second timeslot (the third call to this method), and so customer
   // consumption against non-default broker tariffs first occurs after
   // four calls.
-  private void summarizeTimeslot (Instant instant)
+  private void summarizeTimeslot (Instant instant, int previous)
   {
     if (!started)
       return;
 
     if (!dataInit) {
-      // first time through nothing to but print header
-      data.println("slot, dow, hod, prod, cons, imb, offer-up, offer-down, use-up, use-down");
+      // first time through nothing to do, header is already written
       dataInit = true;
       return;
     }
 
-    // print timeslot, dow, hod,
-    data.print(String.format("%d, %d, %d, ",
-                             timeslot,
-                             instant.get(DateTimeFieldType.dayOfWeek()),
-                             instant.get(DateTimeFieldType.hourOfDay())));
-    // print customer data
-    data.println(String.format("%.3f, %.3f, %.3f, %.3f, %.3f, %.3f, %.3f",
-                               produced, consumed, imbalance,
-                               offerUp, offerDown, useUp, useDown));
+    if (null != usage) {
+      // named customers, sliced from the matrix
+      if (null == namedCustomers)
+        namedCustomers = usage.named(customerNames);
+      produced = usage.sum(previous, namedCustomers, CustomerUsageMatrix.PRODUCTION);
+      consumed = usage.sum(previous, namedCustomers, CustomerUsageMatrix.CONSUMPTION);
+      useUp = usage.sum(previous, namedCustomers, CustomerUsageMatrix.UP_REGULATION);
+      useDown = usage.sum(previous, namedCustomers, CustomerUsageMatrix.DOWN_REGULATION);
+    }
+
+    // timeslot, dow, hod, then customer data
+    data.put(timeslot)
+        .put(instant.get(DateTimeFieldType.dayOfWeek()))
+        .put(instant.get(DateTimeFieldType.hourOfDay()))
+        .put(produced).put(consumed).put(imbalance)
+        .put(offerUp).put(offerDown).put(useUp).put(useDown)
+        .endRow();
     produced = 0.0;
     consumed = 0.0;
     imbalance = 0.0;
@@ -198,14 +229,30 @@ implements Analyzer
   // catch TimeslotUpdate events
   public void handleMessage (TimeslotUpdate msg)
   {
-    timeslot = msg.getFirstEnabled() - 1;
+    posted = msg.getPostedTime();
+    phases.timeslotUpdate(msg);
+  }
+
+  // Each TimeslotUpdate ends the previous timeslot
+  @Override
+  public void onPhaseEnd (Phase phase, int ts)
+  {
+    if (Phase.TsUpd != phase)
+      return;
+    int previous = timeslot;
+    timeslot = ts;
     log.info("Timeslot " + timeslot);
-    summarizeTimeslot(msg.getPostedTime());
+    summarizeTimeslot(posted, previous);
   }
 
   // catch TariffTransactions
   public void handleMessage (TariffTransaction tx)
   {
+    if (null != usage) {
+      usage.add(timeslot, tx);
+      return;
+    }
+
     // filter by powerType 
     if (null != powerType && tx.getTariffSpec().getPowerType() != powerType)
       return;
@@ -236,6 +283,12 @@ implements Analyzer
   // RegulationCapacity is associated with TariffSubscriptions
   public void handleMessage (RegulationCapacity rc)
   {
+    // filter by customer name
+    if (null != usage
+        && !customerNames.contains(rc.getSubscription().getCustomer().getName())) {
+      return;
+    }
+
     // filter by powerType
     if (null != powerType) {
       TariffSpecification spec =
@@ -274,11 +327,10 @@ implements Analyzer
     report();
   }
 
-  // find our customer
+  // record customers for --customer-names
   public void handleMessage (CustomerInfo ci)
   {
-    //if (customerName.equals(ci.getName())) {
-    //  customer = ci;
-    //}
+    if (null != usage)
+      usage.addCustomer(ci);
   }
 }
@@ -15,9 +15,10 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -25,6 +26,7 @@ import org.joda.time.DateTimeFieldType;
 import org.joda.time.Instant;
 import org.powertac.common.CustomerInfo;
 import org.powertac.common.TariffTransaction;
+import org.powertac.common.enumerations.PowerType;
 import org.powertac.common.msg.SimEnd;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
@@ -34,11 +36,19 @@ import org.powertac.logtool.ifc.Analyzer;
 
 /**
  * Example analysis class.
- * Gathers production and consumption data for a single customer in kWh.
+ * Gathers production and consumption data for customers in kWh.
  * Output is one row per timeslot:
  *   timeslot index, day of week, hour, total production, total consumption
  *
- * Usage: CustomerProductionConsumption customer-name input output
+ * Usage: CustomerProductionConsumption [--power-type pt] customers input output
+ *
+ * where customers is a customer name, a comma-separated list of names, or
+ * "all". Every customer's usage is recorded in a CustomerUsageMatrix in a
+ * single pass, and the output is sliced from it at the end. For a single
+ * name the output goes to the output file, and for several names or "all"
+ * to one file per customer, with the customer name inserted before the
+ * extension as in BrokerPartitions. With --power-type, the output file
+ * gives the totals over all customers of that power type instead.
  *
  * @author John Collins
  */
@@ -50,19 +60,21 @@ implements Analyzer
 
   // customer data
   //private String gameId = null;
-  private String customerName = "";
-  private CustomerInfo customer = null;
+  private List<String> customerNames = new ArrayList<>();
+  private boolean allCustomers = false;
+  private PowerType powerType = null;
+  private CustomerUsageMatrix usage;
 
-  // data collectors for current timeslot
+  // timeslot and its start time, from each TimeslotUpdate
   private int timeslot;
-  private double used = 0.0;
-  private double produced = 0.0;
+  private int firstTimeslot = -1;
+  private int[] dow = new int[0];
+  private int[] hod = new int[0];
 
   // data output file
-  private PrintWriter data = null;
   private String dataFilename = "data.txt";
-  private boolean dataInit = false;
   private boolean started = false; // wait for SimStart
+  private boolean reported = false;
 
   /**
    * Constructor does nothing. Call setup() before reading a file to
@@ -83,69 +95,94 @@ implements Analyzer
   }
   
   /**
-   * Takes at least two args, input filename and output filename.
-   * The --by-broker option changes the output format.
+   * Takes three args, customer names, input filename and output filename,
+   * or --power-type pt and then input and output filenames.
    */
   private void cli (String[] args)
   {
-    if (args.length < 3 || args.length > 3) {
-      System.out.println("Usage: <analyzer> customer-name input-file output-file");
+    if (args.length == 4 && "--power-type".equals(args[0])) {
+      powerType = PowerType.valueOf(args[1]);
+    }
+    else if (args.length == 3) {
+      if ("all".equals(args[0]))
+        allCustomers = true;
+      else
+        customerNames = Arrays.asList(args[0].split(","));
+    }
+    else {
+      System.out.println("Usage: <analyzer> [--power-type pt] customer-name[,name...]|all input-file output-file");
       return;
     }
-    customerName = args[0];
-    dataFilename = args[2];
-    super.cli(args[1], this);
+    dataFilename = args[args.length - 1];
+    LogLineFilter.read(args[args.length - 2],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
-   * Creates data structures, opens output file. It would be nice to dump
-   * the broker names at this point, but they are not known until we hit the
-   * first timeslotUpdate while reading the file.
+   * Creates data structures.
    */
   @Override
   public void setup ()
   {
-    try {
-      data = new PrintWriter(new File(dataFilename));
-    }
-    catch (FileNotFoundException e) {
-      e.printStackTrace();
-    }
-    dataInit = false;
+    usage = new CustomerUsageMatrix();
+    firstTimeslot = -1;
+    started = false;
+    reported = false;
   }
 
   @Override
   public void report ()
   {
-    data.close();
+    if (reported)
+      return;
+    reported = true;
+    try {
+      if (null != powerType) {
+        writeCustomers(dataFilename, usage.ofType(powerType));
+      }
+      else if (!allCustomers && customerNames.size() == 1) {
+        writeCustomers(dataFilename, usage.named(customerNames));
+      }
+      else {
+        int[] selected = allCustomers ? usage.all() : usage.named(customerNames);
+        for (int c: selected) {
+          String name = usage.getCustomer(c).getName();
+          writeCustomers(BrokerPartitions.partitionFilename(dataFilename, name),
+                         new int[] {c});
+        }
+      }
+      usage.close();
+    }
+    catch (IOException e) {
+      log.error("Cannot write " + dataFilename + ": " + e.toString());
+    }
   }
 
-  // Called on timeslotUpdate. Note that there are two of these before
-  // the first "real" timeslot. Incoming tariffs are published at the end of
-  // the second timeslot (the third call to this method), and so customer
-  // consumption against non-default broker tariffs first occurs after
-  // four calls.
-  private void summarizeTimeslot (Instant instant)
+  // Writes the total production and consumption of the selected
+  // customers. As when the rows were written at each TimeslotUpdate, a
+  // row is labeled with the timeslot whose update ended it, and the
+  // first update after SimStart only starts the data. Regulation is
+  // included, as it always was.
+  private void writeCustomers (String filename, int[] selected)
+    throws IOException
   {
-    if (!started)
-      return;
-
-    if (!dataInit) {
-      // first time through nothing to but print header
-      data.println("slot, dow, hod, production, consumption");
-      dataInit = true;
-      return;
+    try (AsyncRowWriter data =
+        new AsyncRowWriter(filename, "slot, dow, hod, production, consumption",
+                           ", ", AsyncRowWriter.INTEGER, AsyncRowWriter.INTEGER,
+                           AsyncRowWriter.INTEGER, 3, 3)) {
+      if (firstTimeslot < 0)
+        return;
+      for (int ts = firstTimeslot; ts < timeslot; ts++) {
+        int next = ts + 1 - firstTimeslot;
+        data.put(ts + 1).put(dow[next]).put(hod[next])
+            .put(usage.sum(ts, selected, CustomerUsageMatrix.PRODUCTION)
+                 + usage.sum(ts, selected, CustomerUsageMatrix.UP_REGULATION))
+            .put(usage.sum(ts, selected, CustomerUsageMatrix.CONSUMPTION)
+                 + usage.sum(ts, selected, CustomerUsageMatrix.DOWN_REGULATION))
+            .endRow();
+      }
     }
-
-    // print timeslot, dow, hod, production, consumption
-    data.print(String.format("%d, %d, %d, ",
-                             timeslot,
-                             instant.get(DateTimeFieldType.dayOfWeek()),
-                             instant.get(DateTimeFieldType.hourOfDay())));
-    // print customer usage, production
-    data.println(String.format("%.3f, %.3f", produced, used));
-    produced = 0.0;
-    used = 0.0;
   }
 
   // catch TimeslotUpdate events
@@ -153,21 +190,26 @@ implements Analyzer
   {
     timeslot = msg.getFirstEnabled() - 1;
     log.info("Timeslot " + timeslot);
-    summarizeTimeslot(msg.getPostedTime());
+    if (!started)
+      return;
+    if (firstTimeslot < 0)
+      firstTimeslot = timeslot;
+    int row = timeslot - firstTimeslot;
+    if (row >= dow.length) {
+      dow = Arrays.copyOf(dow, Math.max(row + 1, dow.length * 2 + 256));
+      hod = Arrays.copyOf(hod, dow.length);
+    }
+    Instant instant = msg.getPostedTime();
+    dow[row] = instant.get(DateTimeFieldType.dayOfWeek());
+    hod[row] = instant.get(DateTimeFieldType.hourOfDay());
   }
 
   // catch TariffTransactions
   public void handleMessage (TariffTransaction tx)
   {
-    if (tx.getCustomerInfo() != customer)
+    if (firstTimeslot < 0)
       return;
-
-    if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
-      used += tx.getKWh();
-    }
-    else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-      produced += tx.getKWh();
-    }
+    usage.add(timeslot, tx);
   }
 
   // catch SimStart and SimEnd messages
@@ -181,11 +223,9 @@ implements Analyzer
     report();
   }
 
-  // find our customer
+  // record every customer
   public void handleMessage (CustomerInfo ci)
   {
-    if (customerName.equals(ci.getName())) {
-      customer = ci;
-    }
+    usage.addCustomer(ci);
   }
 }
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.CustomerInfo;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.enumerations.PowerType;
+
+/**
+ * Production and consumption of every customer in every timeslot, in kWh,
+ * gathered in one pass over the log. Each timeslot is a row of
+ * customers x quantities doubles; ordinary PRODUCE and CONSUME
+ * transactions go to PRODUCTION and CONSUMPTION, and those for regulation
+ * to UP_REGULATION and DOWN_REGULATION. Any customer, list of customers or
+ * power type can then be sliced out without reading the log again.
+ *
+ * Rows are held off the heap, in blocks of a week of timeslots. The first
+ * blocks are direct buffers; once they reach DIRECT_LIMIT bytes, further
+ * blocks are mapped from a temporary file, so a large population does not
+ * need a large heap. close() unmaps and deletes the file, so it must be
+ * called when the matrix is no longer needed.
+ *
+ * Customers must be added before the first transaction, as they are when
+ * the CustomerInfo records at the start of a log are read. Customers added
+ * later are ignored.
+ */
+public class CustomerUsageMatrix implements Closeable
+{
+  static private Logger log =
+      LogManager.getLogger(CustomerUsageMatrix.class.getName());
+
+  public static final int PRODUCTION = 0;
+  public static final int CONSUMPTION = 1;
+  public static final int UP_REGULATION = 2;
+  public static final int DOWN_REGULATION = 3;
+  public static final int QUANTITIES = 4;
+
+  public static final long DIRECT_LIMIT = 256L << 20;
+  private static final int BLOCK_ROWS = 168;
+
+  private DenseIndex<CustomerInfo> customers = new DenseIndex<>();
+  private int width = -1; // doubles per row, fixed by the first transaction
+
+  private int base = -1; // timeslot of row 0
+  private int lastTimeslot = -1;
+  private ArrayList<DoubleBuffer> blocks = new ArrayList<>();
+  private long directLimit;
+  private long directBytes = 0;
+  private File spillFile = null;
+  private FileChannel spill = null;
+  private long spillBytes = 0;
+  private ArrayList<ByteBuffer> mapped = new ArrayList<>();
+
+  public CustomerUsageMatrix ()
+  {
+    this(DIRECT_LIMIT);
+  }
+
+  // Lets tests switch to the spill file without 256MB of data
+  CustomerUsageMatrix (long directLimit)
+  {
+    super();
+    this.directLimit = directLimit;
+  }
+
+  /**
+   * Adds a customer, returning its index.
+   */
+  public int addCustomer (CustomerInfo customer)
+  {
+    if (width >= 0 && !customers.contains(customer)) {
+      log.warn("Customer {} arrived after the first transaction, ignored",
+               customer.getName());
+      return -1;
+    }
+    return customers.add(customer);
+  }
+
+  /**
+   * Adds a PRODUCE or CONSUME transaction to the given timeslot. Other
+   * types, and customers that were not added, are ignored.
+   */
+  public void add (int timeslot, TariffTransaction tx)
+  {
+    int quantity;
+    if (tx.getTxType() == TariffTransaction.Type.PRODUCE)
+      quantity = tx.isRegulation() ? UP_REGULATION : PRODUCTION;
+    else if (tx.getTxType() == TariffTransaction.Type.CONSUME)
+      quantity = tx.isRegulation() ? DOWN_REGULATION : CONSUMPTION;
+    else
+      return;
+    int c = customers.indexOf(tx.getCustomerInfo());
+    if (c < 0)
+      return;
+    if (width < 0) {
+      width = customers.size() * QUANTITIES;
+      base = timeslot;
+    }
+    if (timeslot < base) {
+      log.warn("Transaction for timeslot {} before {}, ignored", timeslot, base);
+      return;
+    }
+    try {
+      DoubleBuffer block = allocate(timeslot);
+      int i = offset(timeslot, c, quantity);
+      block.put(i, block.get(i) + tx.getKWh());
+      lastTimeslot = Math.max(lastTimeslot, timeslot);
+    }
+    catch (IOException e) {
+      log.error("Cannot extend customer matrix: " + e.toString());
+    }
+  }
+
+  public int getCustomerCount ()
+  {
+    return customers.size();
+  }
+
+  public CustomerInfo getCustomer (int c)
+  {
+    return customers.get(c);
+  }
+
+  /** First timeslot with data, or -1 if there is none */
+  public int getFirstTimeslot ()
+  {
+    return base;
+  }
+
+  /** Last timeslot with data, or -1 if there is none */
+  public int getLastTimeslot ()
+  {
+    return lastTimeslot;
+  }
+
+  /** Quantity for one customer and timeslot; zero if there is no data */
+  public double get (int timeslot, int customer, int quantity)
+  {
+    DoubleBuffer block = block(timeslot);
+    if (null == block || customer < 0 || customer * QUANTITIES >= width)
+      return 0.0;
+    return block.get(offset(timeslot, customer, quantity));
+  }
+
+  /** Sum of a quantity over the given customers in one timeslot */
+  public double sum (int timeslot, int[] selected, int quantity)
+  {
+    DoubleBuffer block = block(timeslot);
+    if (null == block)
+      return 0.0;
+    double result = 0.0;
+    for (int c: selected) {
+      if (c >= 0 && c * QUANTITIES < width)
+        result += block.get(offset(timeslot, c, quantity));
+    }
+    return result;
+  }
+
+  /** Indices of all customers */
+  public int[] all ()
+  {
+    int[] result = new int[customers.size()];
+    for (int c = 0; c < result.length; c++)
+      result[c] = c;
+    return result;
+  }
+
+  /** Indices of the customers with the given names, in index order */
+  public int[] named (Collection<String> names)
+  {
+    int n = 0;
+    int[] result = new int[customers.size()];
+    for (int c = 0; c < customers.size(); c++) {
+      if (names.contains(customers.get(c).getName()))
+        result[n++] = c;
+    }
+    return Arrays.copyOf(result, n);
+  }
+
+  /** Indices of the customers of the given power type, in index order */
+  public int[] ofType (PowerType type)
+  {
+    int n = 0;
+    int[] result = new int[customers.size()];
+    for (int c = 0; c < customers.size(); c++) {
+      if (customers.get(c).getPowerType() == type)
+        result[n++] = c;
+    }
+    return Arrays.copyOf(result, n);
+  }
+
+  /**
+   * Releases the blocks, then unmaps and deletes the spill file, if any.
+   * The matrix is empty afterwards.
+   */
+  @Override
+  public void close () throws IOException
+  {
+    blocks.clear();
+    if (null != spill) {
+      for (ByteBuffer buffer: mapped) {
+        unmap(buffer);
+      }
+      mapped.clear();
+      spill.close();
+      spill = null;
+      if (!spillFile.delete())
+        log.warn("Cannot delete {}", spillFile);
+      spillFile = null;
+      spillBytes = 0;
+    }
+  }
+
+  // The spill file, or null if all blocks are direct buffers
+  File getSpillFile ()
+  {
+    return spillFile;
+  }
+
+  // -------------------------------
+  // storage
+
+  private int offset (int timeslot, int customer, int quantity)
+  {
+    return ((timeslot - base) % BLOCK_ROWS) * width
+        + customer * QUANTITIES + quantity;
+  }
+
+  private DoubleBuffer block (int timeslot)
+  {
+    if (base < 0 || timeslot < base)
+      return null;
+    int b = (timeslot - base) / BLOCK_ROWS;
+    if (b >= blocks.size())
+      return null;
+    return blocks.get(b);
+  }
+
+  // Returns the block holding the timeslot, allocating blocks up to it
+  private DoubleBuffer allocate (int timeslot) throws IOException
+  {
+    int b = (timeslot - base) / BLOCK_ROWS;
+    while (blocks.size() <= b) {
+      blocks.add(newBlock());
+    }
+    return blocks.get(b);
+  }
+
+  // Direct buffer until directLimit, then a new region of the spill
+  // file; both start out zeroed
+  private DoubleBuffer newBlock () throws IOException
+  {
+    long bytes = (long) BLOCK_ROWS * width * 8;
+    ByteBuffer buffer;
+    if (directBytes + bytes <= directLimit) {
+      buffer = ByteBuffer.allocateDirect((int) bytes);
+      directBytes += bytes;
+    }
+    else {
+      if (null == spill) {
+        spillFile = File.createTempFile("customer-matrix", ".bin");
+        spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ,
+                                 StandardOpenOption.WRITE);
+        log.info("Mapping customer matrix from {}", spillFile);
+      }
+      buffer = spill.map(FileChannel.MapMode.READ_WRITE, spillBytes, bytes);
+      spillBytes += bytes;
+      mapped.add(buffer);
+    }
+    return buffer.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+  }
+
+  // Unmaps a mapped buffer now instead of when it is collected, so that
+  // its file can be deleted on every platform. There is no public API for
+  // this: Java 9 and later have Unsafe.invokeCleaner(), Java 8 the
+  // buffer's own cleaner. If neither works the buffer stays mapped until
+  // it is collected.
+  private static void unmap (ByteBuffer buffer)
+  {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      }
+      catch (NoSuchMethodException e) {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    }
+    catch (ReflectiveOperationException | RuntimeException e) {
+      log.debug("Cannot unmap buffer: " + e.toString());
+    }
+  }
+}
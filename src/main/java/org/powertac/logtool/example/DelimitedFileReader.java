@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a delimited text file, such as the wide CSVs written by
+ * HourAheadTradingV2, one record at a time without creating a String per
+ * line or per field. The file is memory-mapped, each record is tokenized
+ * into field offsets, and numeric fields are parsed straight from the
+ * bytes. Only getString() allocates.
+ *
+ * Blank lines are skipped. Fields are not quoted. Files must be smaller
+ * than 2GB.
+ */
+public class DelimitedFileReader implements Closeable
+{
+  private static final double[] POW10 = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  private FileChannel channel;
+  private ByteBuffer buffer;
+  private byte delimiter;
+  private int limit;
+  private int pos = 0; // start of the next line
+  private int lineNumber = 0;
+
+  // field boundaries of the current record
+  private int[] starts = new int[128];
+  private int[] ends = new int[128];
+  private int fields = 0;
+
+  public DelimitedFileReader (File file, char delimiter) throws IOException
+  {
+    super();
+    this.delimiter = (byte) delimiter;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      channel.close();
+      throw new IOException("File too large to map: " + file);
+    }
+    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    limit = (int) size;
+  }
+
+  /**
+   * Advances to the next non-blank record. Returns false at end of file.
+   */
+  public boolean nextRecord ()
+  {
+    while (pos < limit) {
+      int start = pos;
+      int end = start;
+      while (end < limit && buffer.get(end) != '\n')
+        end += 1;
+      pos = end + 1;
+      lineNumber += 1;
+      if (end > start && buffer.get(end - 1) == '\r')
+        end -= 1;
+      if (end > start) {
+        split(start, end);
+        return true;
+      }
+    }
+    fields = 0;
+    return false;
+  }
+
+  // Records field boundaries for the line in [start, end)
+  private void split (int start, int end)
+  {
+    fields = 0;
+    int fieldStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || buffer.get(i) == delimiter) {
+        if (fields == starts.length) {
+          starts = Arrays.copyOf(starts, fields * 2);
+          ends = Arrays.copyOf(ends, fields * 2);
+        }
+        starts[fields] = fieldStart;
+        ends[fields] = i;
+        fields += 1;
+        fieldStart = i + 1;
+      }
+    }
+  }
+
+  /** Number of fields in the current record */
+  public int getFieldCount ()
+  {
+    return fields;
+  }
+
+  /** One-based line number of the current record */
+  public int getLineNumber ()
+  {
+    return lineNumber;
+  }
+
+  public boolean isEmpty (int field)
+  {
+    return starts[field] == ends[field];
+  }
+
+  public String getString (int field)
+  {
+    return new String(bytes(starts[field], ends[field]),
+                      StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Returns the numeric value of the given field, or dflt if it is empty.
+   * Plain decimal values are converted directly from the buffer; anything
+   * else, including NaN, goes through Double.parseDouble().
+   * @throws NumberFormatException if the field is not a number
+   */
+  public double getDouble (int field, double dflt)
+  {
+    int start = starts[field];
+    int end = ends[field];
+    if (start == end)
+      return dflt;
+    double result = parseSimple(start, end);
+    if (Double.isNaN(result)) {
+      // not something we handle here, or really NaN
+      result = Double.parseDouble(new String(bytes(start, end),
+                                             StandardCharsets.ISO_8859_1));
+    }
+    return result;
+  }
+
+  // Converts [+-]digits[.digits][(e|E)[+-]digits] exactly when the
+  // mantissa has at most 15 significant digits and the decimal exponent is
+  // within 22, since both are then exact doubles. Returns NaN otherwise.
+  private double parseSimple (int start, int end)
+  {
+    int i = start;
+    boolean negative = false;
+    byte b = buffer.get(i);
+    if (b == '-' || b == '+') {
+      negative = (b == '-');
+      i += 1;
+    }
+    long mantissa = 0;
+    int significant = 0;
+    int scale = 0;
+    boolean digits = false;
+    boolean point = false;
+    for (; i < end; i++) {
+      b = buffer.get(i);
+      if (b >= '0' && b <= '9') {
+        digits = true;
+        if (mantissa != 0 || b != '0')
+          significant += 1;
+        if (significant > 15)
+          return Double.NaN;
+        mantissa = mantissa * 10 + (b - '0');
+        if (point)
+          scale -= 1;
+      }
+      else if (b == '.' && !point) {
+        point = true;
+      }
+      else {
+        break;
+      }
+    }
+    if (!digits)
+      return Double.NaN;
+    if (i < end) {
+      if (b != 'e' && b != 'E')
+        return Double.NaN;
+      i += 1;
+      boolean negExp = false;
+      if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+        negExp = (buffer.get(i) == '-');
+        i += 1;
+      }
+      if (i == end)
+        return Double.NaN;
+      int exp = 0;
+      for (; i < end; i++) {
+        b = buffer.get(i);
+        if (b < '0' || b > '9' || exp > 1000)
+          return Double.NaN;
+        exp = exp * 10 + (b - '0');
+      }
+      scale += negExp ? -exp : exp;
+    }
+    double result = mantissa;
+    if (mantissa != 0) {
+      if (scale < -22 || scale > 22)
+        return Double.NaN;
+      if (scale < 0)
+        result /= POW10[-scale];
+      else
+        result *= POW10[scale];
+    }
+    return negative ? -result : result;
+  }
+
+  private byte[] bytes (int start, int end)
+  {
+    byte[] result = new byte[end - start];
+    for (int i = start; i < end; i++)
+      result[i - start] = buffer.get(i);
+    return result;
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    buffer = null;
+    channel.close();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Assigns dense integer indices 0..n-1 to objects, typically brokers, in
+ * the order they are added. Analyzers use the index to address
+ * primitive arrays instead of keeping per-object maps of boxed values.
+ * Lookups do not allocate.
+ */
+public class DenseIndex<T>
+{
+  private HashMap<T, Integer> index = new HashMap<>();
+  private ArrayList<T> items = new ArrayList<>();
+
+  public DenseIndex ()
+  {
+    super();
+  }
+
+  /**
+   * Creates an index over the given items, in list order.
+   */
+  public DenseIndex (List<T> initial)
+  {
+    super();
+    for (T item: initial) {
+      add(item);
+    }
+  }
+
+  /**
+   * Returns the index of item, adding it if it's not already there.
+   */
+  public int add (T item)
+  {
+    Integer result = index.get(item);
+    if (null == result) {
+      result = items.size();
+      items.add(item);
+      index.put(item, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the index of item, or -1 if it has not been added.
+   */
+  public int indexOf (T item)
+  {
+    Integer result = index.get(item);
+    if (null == result) {
+      return -1;
+    }
+    return result;
+  }
+
+  public boolean contains (T item)
+  {
+    return index.containsKey(item);
+  }
+
+  public T get (int i)
+  {
+    return items.get(i);
+  }
+
+  public int size ()
+  {
+    return items.size();
+  }
+
+  /** Indexed items, in index order */
+  public List<T> items ()
+  {
+    return Collections.unmodifiableList(items);
+  }
+
+  public void clear ()
+  {
+    index.clear();
+    items.clear();
+  }
+}
@@ -18,7 +18,6 @@ package org.powertac.logtool.example;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.HashMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -33,6 +32,7 @@ import org.powertac.common.spring.SpringApplicationContext;
 import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
+import org.powertac.logtool.example.TimeslotPhaseTracker.Phase;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -48,7 +48,8 @@ import org.powertac.logtool.ifc.Analyzer;
  * If the --with-gameid option is given, then the first column is the 
  * integer portion of the gameid.
  *
- * To gather this data, we run through a series of states in each timeslot:
+ * To gather this data, a TimeslotPhaseTracker runs through a series of
+ * states in each timeslot:
  * 1. Wait for TimeslotUpdate
  * 2. Gather MarketTransaction instances until the first TariffTransaction
  *    shows up. Each MarketTransaction gives price and quantity for a
@@ -72,19 +73,20 @@ import org.powertac.logtool.ifc.Analyzer;
  */
 public class EnergyMixStats
 extends LogtoolContext
-implements Analyzer
+implements Analyzer, TimeslotPhaseTracker.PhaseListener
 {
   static private Logger log = LogManager.getLogger(EnergyMixStats.class.getName());
 
   //private BrokerRepo brokerRepo;
 
   // Current state
-  private enum stateId {TsUpd, MktTx, CustTx, RegTx, BalTx}
-  private stateId state;
+  private TimeslotPhaseTracker phases;
 
-  // data collectors for current timeslot
+  // data collectors for current timeslot. Market transactions are kept
+  // in a ring indexed by target timeslot, cleared as each timeslot closes.
+  private static final int MKT_RING = 48;
   private int timeslot;
-  private HashMap<Integer, QtyCost> mktTxSummary;
+  private QtyCostAccumulator mktTxSummary;
   private QtyCost used;
   private QtyCost produced;
   private QtyCost upRegulation;
@@ -115,7 +117,6 @@ implements Analyzer
   public EnergyMixStats ()
   {
     super();
-    state = stateId.TsUpd;
   }
   
   /**
@@ -142,7 +143,9 @@ implements Analyzer
       printGameid = true;
     }
     dataFilename = args[argOffset + 1];
-    super.cli(args[argOffset], this);
+    LogLineFilter.read(args[argOffset],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -153,7 +156,13 @@ implements Analyzer
   @Override
   public void setup ()
   {
-    mktTxSummary = new HashMap<Integer, QtyCost>();
+    mktTxSummary = new QtyCostAccumulator(MKT_RING);
+    initSummaryData();
+    used = new QtyCost();
+    produced = new QtyCost();
+    upRegulation = new QtyCost();
+    downRegulation = new QtyCost();
+    balanceEnergy = new QtyCost();
     try {
       data = new PrintWriter(new File(dataFilename));
     }
@@ -162,7 +171,8 @@ implements Analyzer
       e.printStackTrace();
     }
     dataInit = false;
-    state = stateId.TsUpd;
+    phases = new TimeslotPhaseTracker();
+    phases.addListener(this);
   }
 
   @Override
@@ -189,6 +199,7 @@ implements Analyzer
   // four calls.
   private void summarizeTimeslot ()
   {
+    int mktSlot = timeslot % MKT_RING;
     if (!dataInit) {
       // first time through nothing to but print header
       if (printGameid) {
@@ -202,11 +213,13 @@ implements Analyzer
       data.println("slot, import, cost, cons, revenue, prod, cost, "
                    + "up-reg, cost, down-reg, revenue, imbalance, cost");
       initSummaryData();
+      mktTxSummary.clear(mktSlot);
       return;
     }
     // skip initial timeslot(s) without data
     if (0.0 == used.quantity) {
       log.warn("skipping ts " + timeslot);
+      mktTxSummary.clear(mktSlot);
       return;
     }
 
@@ -217,14 +230,16 @@ implements Analyzer
     // print timeslot index
     data.print(timeslot + ", ");
     // print market data
-    QtyCost mktData = mktTxSummary.get(timeslot);
-    if (null != mktData) {
-      data.print(String.format("%.3f, %.3f, ", mktData.quantity, mktData.cost));
-      totalImports.add(mktData);
+    if (!mktTxSummary.isEmpty(mktSlot)) {
+      double qty = mktTxSummary.getQty(mktSlot);
+      double cost = mktTxSummary.getCost(mktSlot);
+      data.print(String.format("%.3f, %.3f, ", qty, cost));
+      totalImports.add(qty, cost);
     }
     else {
       data.print("0.0, 0.0, ");
     }
+    mktTxSummary.clear(mktSlot);
     // print customer usage, production
     data.print(String.format("%.3f, %.3f, %.3f, %.3f, ",
                              used.quantity, used.cost,
@@ -253,45 +268,47 @@ implements Analyzer
     totalImbalance = new QtyCost();
   }
 
+  // collectors are reused from one timeslot to the next
   private void initTimeslotData ()
   {
-    used = new QtyCost();
-    produced = new QtyCost();
-    upRegulation = new QtyCost();
-    downRegulation = new QtyCost();
-    balanceEnergy = new QtyCost();
+    used.clear();
+    produced.clear();
+    upRegulation.clear();
+    downRegulation.clear();
+    balanceEnergy.clear();
     dataInit = true;
   }
 
+  // Start of a new timeslot
+  @Override
+  public void onPhaseEnd (Phase phase, int timeslot)
+  {
+    if (Phase.TsUpd == phase) {
+      this.timeslot = timeslot;
+      log.info("Timeslot " + timeslot);
+      summarizeTimeslot();
+      initTimeslotData();
+    }
+  }
+
   // -----------------------------------
   // catch TimeslotUpdate events
   public void handleMessage (TimeslotUpdate msg)
   {
-    timeslot = msg.getFirstEnabled() - 1;
-    log.info("Timeslot " + timeslot);
-    summarizeTimeslot();
-    initTimeslotData();
-    state = stateId.MktTx;
-    log.info("Set state to " + state);
+    phases.timeslotUpdate(msg);
   }
 
   // -----------------------------------
   // catch MarketTransactions
   public void handleMessage (MarketTransaction tx)
   {
-    if (stateId.MktTx != state) {
-      log.error("incorrect state for mkt tx " + state);
+    if (Phase.MktTx != phases.marketTransaction(tx)) {
       return;
     }
     if (!tx.getBroker().isWholesale()) {
       int ts = tx.getTimeslot().getSerialNumber();
-      QtyCost data = mktTxSummary.get(ts);
-      if (null == data) {
-        data = new QtyCost();
-        mktTxSummary.put(ts, data);
-      }
-      data.addQty(tx.getMWh());
-      data.addCost(tx.getPrice() * Math.abs(tx.getMWh()));
+      mktTxSummary.add(ts % MKT_RING, tx.getMWh(),
+                       tx.getPrice() * Math.abs(tx.getMWh()));
     }
   }
 
@@ -299,13 +316,8 @@ implements Analyzer
   // catch TariffTransactions
   public void handleMessage (TariffTransaction tx)
   {
-    if (state == stateId.MktTx) {
-      // state transition
-      state = stateId.CustTx;
-      log.info("Set state to " + state);
-    }
-
-    if (state == stateId.CustTx) {
+    Phase phase = phases.tariffTransaction(tx);
+    if (phase == Phase.CustTx) {
       // customer transactions
       if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
         used.addQty(tx.getKWh() / 1000.0);
@@ -316,7 +328,7 @@ implements Analyzer
         produced.addCost(tx.getCharge());
       }
     }
-    else if (state == stateId.RegTx) {
+    else if (phase == Phase.RegTx) {
       // regulating transactions
       if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
         upRegulation.addQty(tx.getKWh() / 1000.0);
@@ -330,46 +342,26 @@ implements Analyzer
     else if (tx.getTxType() == TariffTransaction.Type.CONSUME
         || tx.getTxType() == TariffTransaction.Type.PRODUCE) {
       // should not happen
-      log.error("Bad state for tariff tx " + tx.getId() + ": " + state);
+      log.error("Bad state for tariff tx " + tx.getId() + ": "
+                + phases.getPhase());
     }
   } 
 
   // -----------------------------------
   // catch the BalanceReport
-  // Note that this exists in logs starting with server release 1.2.
-  // For earlier logs, we depend on BalancingTransaction to detect the
-  // state change.
   public void handleMessage (BalanceReport rpt)
   {
-    if (state != stateId.CustTx) {
-      log.error("Bad state for balance report: " + state);
-    }
-    else {
-      state = stateId.RegTx;
-      log.info("Set state to " + state);
-    }
+    phases.balanceReport(rpt);
   }
 
   // -------------------------------
   // catch BalancingTransactions
   public void handleMessage (BalancingTransaction tx)
   {
-    if (state == stateId.CustTx) {
-      // Should only happen in logs prior to server release 1.2
-      state = stateId.RegTx;
-      log.info("Set state (pre-1.2) to " + state);
-    }
-    if (state == stateId.RegTx) {
-      state = stateId.BalTx;
-      log.info("Set state to " + state);
-    }
-    if (state == stateId.BalTx) {
+    if (Phase.BalTx == phases.balancingTransaction(tx)) {
       balanceEnergy.addQty(tx.getKWh() / 1000.0);
       balanceEnergy.addCost(tx.getCharge());
     }
-    else {
-      log.warn("Bad state for Bal TX " + tx.getId() + ": " + state);
-    }
   }
 
   class QtyCost
@@ -392,5 +384,17 @@ implements Analyzer
       quantity += val.quantity;
       cost += val.cost;
     }
+
+    void add (double qty, double money)
+    {
+      quantity += qty;
+      cost += money;
+    }
+
+    void clear ()
+    {
+      quantity = 0.0;
+      cost = 0.0;
+    }
   }
 }
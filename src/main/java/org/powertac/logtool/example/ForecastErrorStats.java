@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.WeatherForecast;
+import org.powertac.common.WeatherForecastPrediction;
+import org.powertac.common.WeatherReport;
+import org.powertac.logtool.LogtoolContext;
+import org.powertac.logtool.ifc.Analyzer;
+
+/**
+ * Weather forecast error by variable and leadtime, computed while the log
+ * is read. Each forecast prediction is held until the WeatherReport for
+ * its timeslot arrives, then its error (forecast - observed) is added to
+ * the accumulator for its variable and leadtime, and dropped. Only the
+ * next 24 timeslots are ever held, so memory does not grow with the game.
+ * Wind direction errors are taken the short way around the circle.
+ *
+ * For each variable and leadtime, output is one line of
+ * variable, lead, count, bias, mae, rmse, p05, p25, p50, p75, p95
+ * where the quantiles are those of the signed error.
+ *
+ * Usage:
+ * <pre>
+ * ForecastErrorStats [--save stats-file] input-file output-file
+ * ForecastErrorStats --merge output-file stats-file...
+ * </pre>
+ * --save also writes the accumulators in binary form. --merge reads any
+ * number of saved files in parallel and reports their combined errors, so
+ * a tournament can be summarized by running games separately and merging.
+ */
+public class ForecastErrorStats
+extends LogtoolContext
+implements Analyzer
+{
+  static private Logger log =
+      LogManager.getLogger(ForecastErrorStats.class.getName());
+
+  private static final String[] VARIABLE_NAMES =
+    {"temperature", "windSpeed", "windDirection", "cloudCover"};
+  private static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+
+  // predictions waiting for their observation, by target timeslot
+  private static final int RING = 32;
+  private double[] pending =
+      new double[RING * (WeatherStore.HORIZON + 1) * WeatherStore.VARIABLES];
+  private int[] pendingTs = new int[RING];
+
+  private Accumulator errors;
+  private String dataFilename;
+  private String saveFilename = null;
+
+  public ForecastErrorStats ()
+  {
+    super();
+  }
+
+  public static void main (String[] args)
+  {
+    new ForecastErrorStats().cli(args);
+  }
+
+  private void cli (String[] args)
+  {
+    if (args.length >= 3 && args[0].equals("--merge")) {
+      merge(args[1], Arrays.copyOfRange(args, 2, args.length));
+      return;
+    }
+    int argOffset = 0;
+    if (args.length > 1 && args[0].equals("--save")) {
+      saveFilename = args[1];
+      argOffset = 2;
+    }
+    if (args.length - argOffset != 2) {
+      System.out.println("Usage: <analyzer> [--save stats-file] input-file output-file");
+      System.out.println("       <analyzer> --merge output-file stats-file...");
+      return;
+    }
+    dataFilename = args[argOffset + 1];
+    // forecasts refer to their predictions, which are logged separately
+    LogLineFilter.read(args[argOffset],
+                       LogLineFilter.neededClasses(this,
+                           WeatherForecastPrediction.class),
+                       (input) -> super.cli(input, this));
+  }
+
+  @Override
+  public void setup ()
+  {
+    errors = new Accumulator();
+    Arrays.fill(pendingTs, -1);
+  }
+
+  @Override
+  public void report ()
+  {
+    writeReport(errors, dataFilename);
+    if (null != saveFilename) {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(saveFilename)))) {
+        errors.write(out);
+      }
+      catch (IOException e) {
+        log.error("Cannot write " + saveFilename + ": " + e.toString());
+      }
+    }
+  }
+
+  // -------------------------------
+  // catch WeatherForecasts; hold each prediction until its timeslot is
+  // observed
+  public void handleMessage (WeatherForecast fcst)
+  {
+    int ts = fcst.getTimeslotIndex();
+    for (WeatherForecastPrediction pred: fcst.getPredictions()) {
+      int lead = pred.getForecastTime();
+      if (lead < 1 || lead > WeatherStore.HORIZON)
+        continue;
+      int i = slot(ts + lead) + lead * WeatherStore.VARIABLES;
+      pending[i + WeatherStore.TEMPERATURE] = pred.getTemperature();
+      pending[i + WeatherStore.WIND_SPEED] = pred.getWindSpeed();
+      pending[i + WeatherStore.WIND_DIRECTION] = pred.getWindDirection();
+      pending[i + WeatherStore.CLOUD_COVER] = pred.getCloudCover();
+    }
+  }
+
+  // catch WeatherReports; score and release the predictions for the
+  // observed timeslot
+  public void handleMessage (WeatherReport rpt)
+  {
+    int ts = rpt.getTimeslotIndex();
+    int r = ts % RING;
+    if (pendingTs[r] != ts)
+      return; // nothing was forecast for it
+    double[] observed = new double[WeatherStore.VARIABLES];
+    observed[WeatherStore.TEMPERATURE] = rpt.getTemperature();
+    observed[WeatherStore.WIND_SPEED] = rpt.getWindSpeed();
+    observed[WeatherStore.WIND_DIRECTION] = rpt.getWindDirection();
+    observed[WeatherStore.CLOUD_COVER] = rpt.getCloudCover();
+    int base = r * (WeatherStore.HORIZON + 1) * WeatherStore.VARIABLES;
+    for (int lead = 1; lead <= WeatherStore.HORIZON; lead++) {
+      for (int v = 0; v < WeatherStore.VARIABLES; v++) {
+        double forecast = pending[base + lead * WeatherStore.VARIABLES + v];
+        if (Double.isNaN(forecast))
+          continue;
+        double error = forecast - observed[v];
+        if (v == WeatherStore.WIND_DIRECTION)
+          error = Math.IEEEremainder(error, 360.0);
+        errors.add(v, lead, error);
+      }
+    }
+    pendingTs[r] = -1;
+  }
+
+  // Returns the start of the pending row for timeslot ts, claiming and
+  // clearing it if it held an older timeslot
+  private int slot (int ts)
+  {
+    int r = ts % RING;
+    int base = r * (WeatherStore.HORIZON + 1) * WeatherStore.VARIABLES;
+    if (pendingTs[r] != ts) {
+      Arrays.fill(pending, base,
+                  base + (WeatherStore.HORIZON + 1) * WeatherStore.VARIABLES,
+                  Double.NaN);
+      pendingTs[r] = ts;
+    }
+    return base;
+  }
+
+  // -------------------------------
+  // merging saved results
+
+  private void merge (String outputFilename, String[] statsFiles)
+  {
+    try {
+      Accumulator total =
+          SavedFiles.merge(statsFiles, ForecastErrorStats::readAccumulator,
+                           new Accumulator(), Accumulator::merge);
+      writeReport(total, outputFilename);
+    }
+    catch (InterruptedException e) {
+      log.error("Merge interrupted");
+    }
+  }
+
+  private static Accumulator readAccumulator (String filename)
+    throws IOException
+  {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+      return Accumulator.read(in);
+    }
+  }
+
+  private void writeReport (Accumulator result, String filename)
+  {
+    try (PrintWriter out = new PrintWriter(filename)) {
+      out.println("variable, lead, count, bias, mae, rmse, p05, p25, p50, p75, p95");
+      for (int v = 0; v < WeatherStore.VARIABLES; v++) {
+        for (int lead = 1; lead <= WeatherStore.HORIZON; lead++) {
+          out.format("%s, %d, %d, %.4f, %.4f, %.4f",
+                     VARIABLE_NAMES[v], lead, result.getCount(v, lead),
+                     result.getBias(v, lead), result.getMae(v, lead),
+                     result.getRmse(v, lead));
+          for (double q: QUANTILES) {
+            out.format(", %.4f", result.getQuantile(v, lead, q));
+          }
+          out.println();
+        }
+      }
+    }
+    catch (FileNotFoundException e) {
+      log.error("Cannot open file " + filename);
+    }
+  }
+
+  /**
+   * Error totals and quantile sketches for each variable and leadtime.
+   * Accumulators from different games merge exactly, in any order.
+   */
+  public static class Accumulator
+  {
+    private static final double ACCURACY = 0.01;
+    private static final int CELLS =
+        WeatherStore.VARIABLES * (WeatherStore.HORIZON + 1);
+
+    private long[] count = new long[CELLS];
+    private double[] sum = new double[CELLS];
+    private double[] sumAbs = new double[CELLS];
+    private double[] sumSquares = new double[CELLS];
+    private QuantileSketch[] sketches = new QuantileSketch[CELLS];
+
+    public Accumulator ()
+    {
+      super();
+      for (int i = 0; i < CELLS; i++)
+        sketches[i] = new QuantileSketch(ACCURACY);
+    }
+
+    public void add (int variable, int lead, double error)
+    {
+      int i = cell(variable, lead);
+      count[i] += 1;
+      sum[i] += error;
+      sumAbs[i] += Math.abs(error);
+      sumSquares[i] += error * error;
+      sketches[i].add(error);
+    }
+
+    public void merge (Accumulator other)
+    {
+      for (int i = 0; i < CELLS; i++) {
+        count[i] += other.count[i];
+        sum[i] += other.sum[i];
+        sumAbs[i] += other.sumAbs[i];
+        sumSquares[i] += other.sumSquares[i];
+        sketches[i].merge(other.sketches[i]);
+      }
+    }
+
+    public long getCount (int variable, int lead)
+    {
+      return count[cell(variable, lead)];
+    }
+
+    /** Mean signed error, or NaN if there are no errors */
+    public double getBias (int variable, int lead)
+    {
+      int i = cell(variable, lead);
+      return sum[i] / count[i];
+    }
+
+    /** Mean absolute error, or NaN if there are no errors */
+    public double getMae (int variable, int lead)
+    {
+      int i = cell(variable, lead);
+      return sumAbs[i] / count[i];
+    }
+
+    /** Root mean square error, or NaN if there are no errors */
+    public double getRmse (int variable, int lead)
+    {
+      int i = cell(variable, lead);
+      return Math.sqrt(sumSquares[i] / count[i]);
+    }
+
+    public double getQuantile (int variable, int lead, double q)
+    {
+      return sketches[cell(variable, lead)].getQuantile(q);
+    }
+
+    public void write (DataOutput out) throws IOException
+    {
+      out.writeInt(CELLS);
+      for (int i = 0; i < CELLS; i++) {
+        out.writeLong(count[i]);
+        out.writeDouble(sum[i]);
+        out.writeDouble(sumAbs[i]);
+        out.writeDouble(sumSquares[i]);
+        sketches[i].write(out);
+      }
+    }
+
+    public static Accumulator read (DataInput in) throws IOException
+    {
+      if (in.readInt() != CELLS)
+        throw new IOException("Not a forecast error file");
+      Accumulator result = new Accumulator();
+      for (int i = 0; i < CELLS; i++) {
+        result.count[i] = in.readLong();
+        result.sum[i] = in.readDouble();
+        result.sumAbs[i] = in.readDouble();
+        result.sumSquares[i] = in.readDouble();
+        result.sketches[i] = QuantileSketch.read(in);
+      }
+      return result;
+    }
+
+    private int cell (int variable, int lead)
+    {
+      return variable * (WeatherStore.HORIZON + 1) + lead;
+    }
+  }
+}
@@ -82,7 +82,9 @@ implements Analyzer
       return;
     }
     dataFilename = args[1];
-    super.cli(args[0], this);
+    LogLineFilter.read(args[0],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -20,8 +20,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.TreeMap;
 
 
@@ -34,6 +35,7 @@ import org.powertac.common.ClearedTrade;
 import org.powertac.common.Competition;
 import org.powertac.common.MarketTransaction;
 import org.powertac.common.Orderbook;
+import org.powertac.common.OrderbookOrder;
 import org.powertac.common.TimeService;
 import org.powertac.common.WeatherForecast;
 import org.powertac.common.msg.TimeslotUpdate;
@@ -68,9 +70,14 @@ import org.powertac.common.BankTransaction;
  *
  * Usage: MktPriceStats state-log-filename output-data-filename
  *
+ * Per-timeslot records are added to the game totals, and written to the
+ * broker partitions, as soon as their timeslot is finalized, then dropped;
+ * only the open trading window is kept in memory.
+ *
  * @author John Collins
  */
-public class GameDecomposer extends LogtoolContext implements Analyzer {
+public class GameDecomposer extends LogtoolContext
+		implements Analyzer, ResidentAnalyzer, TimeslotFinalizer.FinalizeListener {
 //	static private Logger log = Logger.getLogger(MktPriceStats.class.getName());
 
 	// service references
@@ -82,12 +89,15 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 	private BrokerRepo brokerRepo;
 
 	// Data
-	private TreeMap<Integer, ClearedTrade[]> data;
+	private ClearedTradeMatrix data;
 	private TreeMap<Integer, SimulationDataPerTimeSlot> marketData;
+	private TimeslotFinalizer finalizer;
+	private GameTotals totals;
+	private BrokerPartitions partitions = null;
 	TreeMap<Integer, Integer> orderbookCounter = new TreeMap<Integer, Integer>();
 	private int counter = 0;
-	private double[] brokers = new double[12];
-	private String[] brokernames = new String[12];
+	private double[] brokers = new double[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
+	private String[] brokernames = new String[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
 	int brokerCounter = 0;
 
 
@@ -95,11 +105,15 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 	private int ignoreCount = 0;
 	private int indexOffset = 0; // should be
 									// Competition.deactivateTimeslotsAhead - 1
-	public static int numberofbrokers = 0;
+	private int numberofbrokers = 0;
 	private PrintWriter output = null;
 	private PrintWriter debug = null;
 	private String dataFilename = "clearedTrades.arff";
+	private Object listenerReader = null; // reader our listeners are on
 	public double brokerID;
+	private String focalBroker = "SPOT";
+	private String brokerFilter = null; // if set, other brokers are ignored
+	private boolean partitioned = false;
 
 
 	/**
@@ -107,20 +121,73 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 	 * inherited cli() method.
 	 */
 	public static void main(String[] args) {
-		System.out.println("I am running");
-		new GameDecomposer().cli(args);
+		new GameDecomposer().cli(args, System.out);
 	}
 
 	/**
-	 * Takes two args, input filename and output filename
+	 * Takes two args, input filename and output filename, optionally
+	 * preceded by
+	 * <ul>
+	 * <li>--broker name: the focal broker, default SPOT; events for all
+	 *     other brokers are dropped</li>
+	 * <li>--partition: also writes one per-timeslot file per broker, named
+	 *     after the output file (see BrokerPartitions)</li>
+	 * </ul>
 	 */
-	private void cli(String[] args) {
-		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+	@Override
+	public void cli(String[] args, PrintStream out) {
+		focalBroker = "SPOT";
+		brokerFilter = null;
+		partitioned = false;
+		int argOffset = 0;
+		while (argOffset < args.length && args[argOffset].startsWith("--")) {
+			if (args[argOffset].equals("--broker") && argOffset + 1 < args.length) {
+				brokerFilter = args[argOffset + 1].toUpperCase();
+				focalBroker = brokerFilter;
+				argOffset += 2;
+			}
+			else if (args[argOffset].equals("--partition")) {
+				partitioned = true;
+				argOffset += 1;
+			}
+			else {
+				break;
+			}
+		}
+		if (args.length - argOffset != 2) {
+			out.println("Usage: <analyzer> [--broker name] [--partition] input-file output-file");
 			return;
 		}
-		dataFilename = args[1];
-		super.cli(args[0], this);
+		dataFilename = args[argOffset + 1];
+		// forecasts refer to their predictions and orderbooks to their
+		// orders, which are logged separately
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					TariffTransaction.class, CapacityTransaction.class,
+					Competition.class, Broker.class, TimeslotUpdate.class,
+					MarketTransaction.class, BalancingTransaction.class,
+					Timeslot.class, WeatherReport.class, Orderbook.class,
+					WeatherForecast.class, CashPosition.class,
+					BankTransaction.class, WeatherForecastPrediction.class,
+					OrderbookOrder.class),
+				(input) -> super.cli(input, this));
+	}
+
+	@Override
+	public void resetGame() {
+		orderbookCounter = new TreeMap<Integer, Integer>();
+		counter = 0;
+		brokers = new double[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
+		brokernames = new String[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
+		brokerCounter = 0;
+		numberofbrokers = 0;
+		ignoreCount = ignoreInitial;
+		data = new ClearedTradeMatrix();
+		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
+		finalizer = new TimeslotFinalizer();
+		finalizer.addListener(this);
+		totals = new GameTotals();
+		partitions = null;
 	}
 
 	/*
@@ -130,30 +197,34 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 	 */
 	@Override
 	public void setup() {
+		resetGame();
 		//dor = (DomainObjectReader) SpringApplicationContext.getBean("reader");
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		timeService = (TimeService) getBean("timeService");
 		brokerRepo = (BrokerRepo) SpringApplicationContext
 				.getBean("brokerRepo");
-		registerNewObjectListener(new TariffTransactionHandler(), TariffTransaction.class);
-		registerNewObjectListener(new CapacityTransactionHandler(), CapacityTransaction.class);
-		registerNewObjectListener(new CompetitionHandler(), Competition.class);
-		registerNewObjectListener(new BrokerHandler(), Broker.class);
-		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
-		registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
-		registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
-		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
-		registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
-		registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
-		registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
-		//registerNewObjectListener(new DistributionTransactionHandler(), DistributionTransaction.class);
-		registerNewObjectListener(new CashPositionHandler(), CashPosition.class);
-		registerNewObjectListener(new BankTransactionHandler(), BankTransaction.class);
+		// a kept instance is set up once per game, but its listeners
+		// stay registered with the reader
+		Object reader = getBean("reader");
+		if (reader != listenerReader) {
+			listenerReader = reader;
+			registerNewObjectListener(new TariffTransactionHandler(), TariffTransaction.class);
+			registerNewObjectListener(new CapacityTransactionHandler(), CapacityTransaction.class);
+			registerNewObjectListener(new CompetitionHandler(), Competition.class);
+			registerNewObjectListener(new BrokerHandler(), Broker.class);
+			registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
+			registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
+			registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
+			registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
+			registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
+			registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
+			registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
+			//registerNewObjectListener(new DistributionTransactionHandler(), DistributionTransaction.class);
+			registerNewObjectListener(new CashPositionHandler(), CashPosition.class);
+			registerNewObjectListener(new BankTransactionHandler(), BankTransaction.class);
+		}
 
 
-		ignoreCount = ignoreInitial;
-		data = new TreeMap<Integer, ClearedTrade[]>();
-		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
 		try {
 			//output = new PrintWriter(new File(dataFilename));
 			FileWriter fw = new FileWriter(dataFilename, true);
@@ -171,38 +242,130 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 	 */
 	@Override
 	public void report() {
-		double arroverallMktNet[] = new double[12];
-		double arroverallBalNet[] = new double[12];
-		//double arroverallDistNet[] = new double[12];
-		double arroverallTariffNet[] = new double[12];
-		double arroverallBankNet[] = new double[12];
-		double arroverallCapacityTransaction[] = new double[12];
-
-		double [] arrTOTenergyBought = new double[12];
-		double [] arrTOTenergySold = new double[12];
-		double [] arrTOTnetEnergy = new double[12];
-		double [] arrTOTnetPrice = new double[12];
-		double [] arrTOTmarketCost = new double[12];
-		double [] arrTOTmarketGain = new double[12];
-		double [] arrTOTnetBalEnergy = new double[12];
-		double [] arrToTnetEngUsage = new double[12];
-		
-		double arroverallNet[] = new double[12];
-		double cashposition[] = new double[12];
+		// whatever is left: the last timeslot, and forecasts and orderbooks
+		// for timeslots that never opened
+		TimeslotFinalizer.emitThrough(marketData, Integer.MAX_VALUE, this::emitTimeslot);
+		totals.ensure(brokers.length);
+
+		double arroverallMktNet[] = totals.arroverallMktNet;
+		double arroverallBalNet[] = totals.arroverallBalNet;
+		double arroverallTariffNet[] = totals.arroverallTariffNet;
+		double arroverallBankNet[] = totals.arroverallBankNet;
+		double arroverallCapacityTransaction[] = totals.arroverallCapacityTransaction;
+
+		double [] arrTOTenergyBought = totals.arrTOTenergyBought;
+		double [] arrTOTenergySold = totals.arrTOTenergySold;
+		double [] arrTOTnetEnergy = totals.arrTOTnetEnergy;
+		double [] arrTOTnetPrice = totals.arrTOTnetPrice;
+		double [] arrTOTmarketCost = totals.arrTOTmarketCost;
+		double [] arrTOTmarketGain = totals.arrTOTmarketGain;
+		double [] arrTOTnetBalEnergy = totals.arrTOTnetBalEnergy;
+		double [] arrToTnetEngUsage = totals.arrToTnetEngUsage;
+
+		double arroverallNet[] = new double[totals.size()];
+		double cashposition[] = totals.cashposition;
+
+		output.format("Broker, Wholesale, Tariff, Balancing, Capacity, Bank, Distribution, OverallBalance, CashPosition,"
+				+ "TotEnrgVolBuy,TotEnrgVolSell,TotWSCost,TotWSGain,UnitWSCost,UnitWSGain,NetVOL,NetUsage,NetBalVol,MyCalcNetVol,NetPrice,MyCalcNetPrice"
+				+ "\n");
+		for(int i = 1; i <= numberofbrokers; i++){
+			arroverallNet[i] += arroverallMktNet[i] + arroverallBalNet[i] + //arroverallDistNet[i] +
+					arroverallBankNet[i] + arroverallTariffNet[i] + arroverallCapacityTransaction[i];
+
+			double mycalnetWholesalePrice = arrTOTmarketGain[i] + arrTOTmarketCost[i];   
+			double mycalnetWholesaleEnergy = arrTOTenergyBought[i] - arrTOTenergySold[i];
+			
+			output.format(brokernames[i] + ", " + "%.2f, %.2f, %.2f, %.2f, %.2f, %.2f, %.2f, %.2f,"
+					+ "%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f"
+					+ "\n",
+				arroverallMktNet[i], arroverallTariffNet[i], arroverallBalNet[i], arroverallCapacityTransaction[i], arroverallBankNet[i], 0.0, arroverallNet[i], cashposition[i],
+				arrTOTenergyBought[i], arrTOTenergySold[i],arrTOTmarketCost[i],arrTOTmarketGain[i],arrTOTmarketCost[i]/arrTOTenergyBought[i],arrTOTmarketGain[i]/arrTOTenergySold[i],arrTOTnetEnergy[i], arrToTnetEngUsage[i], arrTOTnetBalEnergy[i], mycalnetWholesaleEnergy,arrTOTnetPrice[i],mycalnetWholesalePrice);
+		}
+		output.close();
+		debug.close();
+		if (null != partitions) {
+			try {
+				partitions.close();
+			} catch (IOException e) {
+				System.out.println("Cannot write broker files: " + e.toString());
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.powertac.logtool.example.TimeslotFinalizer.FinalizeListener#timeslotFinalized(int)
+	 */
+	@Override
+	public void timeslotFinalized(int timeslot) {
+		TimeslotFinalizer.emitThrough(marketData, timeslot, this::emitTimeslot);
+		TimeslotFinalizer.emitThrough(orderbookCounter, timeslot, null);
+	}
+
+	// Adds a finished timeslot to the totals and, if partitioned, writes
+	// its row to each broker's file
+	private void emitTimeslot(int timeslot, SimulationDataPerTimeSlot trades) {
+		totals.add(trades, numberofbrokers, brokers.length);
+		if (partitioned) {
+			writePartitions(timeslot, trades);
+		}
+	}
 
-		for (Map.Entry<Integer, SimulationDataPerTimeSlot> entry : marketData
-				.entrySet()) {
+	// One file per broker, one row per timeslot
+	private void writePartitions(int timeslot, SimulationDataPerTimeSlot trades) {
+		try {
+			if (null == partitions) {
+				partitions = new BrokerPartitions(dataFilename,
+						"Timeslot, Wholesale, Tariff, Balancing, Capacity, Bank, EnrgVolBuy, EnrgVolSell, NetVOL, NetUsage, NetBalVol, CashPosition",
+						", ", AsyncRowWriter.INTEGER, 2, 2, 2, 2, 2, 4, 4, 4, 4, 4, 2);
+			}
+			for (int i = 1; i <= numberofbrokers; i++) {
+				partitions.get(brokernames[i]).put(timeslot)
+						.put(trades.market[i]).put(trades.tariff[i])
+						.put(trades.balancing[i]).put(trades.arrCapacityTransaction[i])
+						.put(trades.bank[i]).put(trades.arrenergyBought[i])
+						.put(trades.arrenergySold[i]).put(trades.arrnetEnergy[i])
+						.put(trades.tariffUsage[i]).put(trades.balancingKWH[i])
+						.put(trades.arrcashPosition[i]).endRow();
+			}
+		} catch (IOException e) {
+			System.out.println("Cannot write broker files: " + e.toString());
+		}
+	}
 
-			SimulationDataPerTimeSlot trades = entry.getValue();
+	// Per-broker totals over the finished timeslots, indexed like brokers[]
+	private static class GameTotals {
+		double arroverallMktNet[] = new double[0];
+		double arroverallBalNet[] = new double[0];
+		double arroverallTariffNet[] = new double[0];
+		double arroverallBankNet[] = new double[0];
+		double arroverallCapacityTransaction[] = new double[0];
+
+		double [] arrTOTenergyBought = new double[0];
+		double [] arrTOTenergySold = new double[0];
+		double [] arrTOTnetEnergy = new double[0];
+		double [] arrTOTnetPrice = new double[0];
+		double [] arrTOTmarketCost = new double[0];
+		double [] arrTOTmarketGain = new double[0];
+		double [] arrTOTnetBalEnergy = new double[0];
+		double [] arrToTnetEngUsage = new double[0];
+
+		double cashposition[] = new double[0];
+
+		int size() {
+			return cashposition.length;
+		}
 
+		void add(SimulationDataPerTimeSlot trades, int numberofbrokers, int slots) {
+			ensure(slots);
 			for(int i = 1; i <= numberofbrokers; i++){
 				arroverallMktNet[i] += trades.market[i];
 				arroverallBalNet[i] += trades.balancing[i];
-				//arroverallDistNet[i] += trades.distribution[i];
 				arroverallBankNet[i] += trades.bank[i];
 				arroverallTariffNet[i] += trades.tariff[i];
 				arroverallCapacityTransaction[i] += trades.arrCapacityTransaction[i];
-				
+
 				arrTOTenergyBought[i] += trades.arrenergyBought[i];
 				arrTOTenergySold[i] += trades.arrenergySold[i];
 				arrTOTmarketCost[i] += trades.arrmarketCost[i];
@@ -211,32 +374,31 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 				arrTOTnetBalEnergy[i]+= trades.balancingKWH[i];
 				arrToTnetEngUsage[i] += trades.tariffUsage[i];
 				arrTOTnetPrice[i] += trades.arrnetPrice[i];
-				
-				
+
 				if(trades.arrcashPosition[i] != 0)
 					cashposition[i] = trades.arrcashPosition[i];
 			}
 		}
-		
-		output.format("Broker, Wholesale, Tariff, Balancing, Capacity, Bank, Distribution, OverallBalance, CashPosition,"
-				+ "TotEnrgVolBuy,TotEnrgVolSell,TotWSCost,TotWSGain,UnitWSCost,UnitWSGain,NetVOL,NetUsage,NetBalVol,MyCalcNetVol,NetPrice,MyCalcNetPrice"
-				+ "\n");
-		for(int i = 1; i <= numberofbrokers; i++){
-			arroverallNet[i] += arroverallMktNet[i] + arroverallBalNet[i] + //arroverallDistNet[i] +
-					arroverallBankNet[i] + arroverallTariffNet[i] + arroverallCapacityTransaction[i];
 
-			double mycalnetWholesalePrice = arrTOTmarketGain[i] + arrTOTmarketCost[i];   
-			double mycalnetWholesaleEnergy = arrTOTenergyBought[i] - arrTOTenergySold[i];
-			
-			output.format(brokernames[i] + ", " + "%.2f, %.2f, %.2f, %.2f, %.2f, %.2f, %.2f, %.2f,"
-					+ "%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f"
-					+ "\n",
-				arroverallMktNet[i], arroverallTariffNet[i], arroverallBalNet[i], arroverallCapacityTransaction[i], arroverallBankNet[i], 0.0, arroverallNet[i], cashposition[i],
-				arrTOTenergyBought[i], arrTOTenergySold[i],arrTOTmarketCost[i],arrTOTmarketGain[i],arrTOTmarketCost[i]/arrTOTenergyBought[i],arrTOTmarketGain[i]/arrTOTenergySold[i],arrTOTnetEnergy[i], arrToTnetEngUsage[i], arrTOTnetBalEnergy[i], mycalnetWholesaleEnergy,arrTOTnetPrice[i],mycalnetWholesalePrice);
+		void ensure(int slots) {
+			if (slots <= size()) {
+				return;
+			}
+			arroverallMktNet = Arrays.copyOf(arroverallMktNet, slots);
+			arroverallBalNet = Arrays.copyOf(arroverallBalNet, slots);
+			arroverallTariffNet = Arrays.copyOf(arroverallTariffNet, slots);
+			arroverallBankNet = Arrays.copyOf(arroverallBankNet, slots);
+			arroverallCapacityTransaction = Arrays.copyOf(arroverallCapacityTransaction, slots);
+			arrTOTenergyBought = Arrays.copyOf(arrTOTenergyBought, slots);
+			arrTOTenergySold = Arrays.copyOf(arrTOTenergySold, slots);
+			arrTOTnetEnergy = Arrays.copyOf(arrTOTnetEnergy, slots);
+			arrTOTnetPrice = Arrays.copyOf(arrTOTnetPrice, slots);
+			arrTOTmarketCost = Arrays.copyOf(arrTOTmarketCost, slots);
+			arrTOTmarketGain = Arrays.copyOf(arrTOTmarketGain, slots);
+			arrTOTnetBalEnergy = Arrays.copyOf(arrTOTnetBalEnergy, slots);
+			arrToTnetEngUsage = Arrays.copyOf(arrToTnetEngUsage, slots);
+			cashposition = Arrays.copyOf(cashposition, slots);
 		}
-		output.close();
-		debug.close();
-		System.out.println("Finished");
 	}
 
 	// -----------------------------------
@@ -258,12 +420,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 				// problem
 //				log.error("ClearedTrade index error: " + offset);
 			} else {
-				ClearedTrade[] targetArray = data.get(target);
-				if (null == targetArray) {
-					targetArray = new ClearedTrade[24];
-					data.put(target, targetArray);
-				}
-				targetArray[offset] = ct;
+				data.add(ct, offset);
 			}
 		}
 	}
@@ -273,7 +430,8 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 		public void handleNewObject(Object comp){
 			// Working System.out.println("2");
 			Competition competition = (Competition) comp;
-			GameDecomposer.numberofbrokers = competition.getBrokers().size();
+			// numberofbrokers counts only the brokers BrokerHandler indexed,
+			// which is fewer than the competition has when --broker is set
 			System.out.println("Number of brokers : " + competition.getBrokers().size() + " Simulation " + competition.toString());
 
 		}
@@ -297,7 +455,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 				int dayHour = timeslotRepo.currentTimeslot().slotInDay();
 				counter = 0;
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 				cmt.day_date = timeslotRepo.currentTimeslot().getStartTime().getDayOfMonth();
 				cmt.month_date = timeslotRepo.currentTimeslot().getStartTime().getMonthOfYear();
@@ -307,6 +465,8 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 				marketData.put(timeslotSerial, cmt);
 
 			}
+			// everything before the current timeslot has settled
+			finalizer.startTimeslot(timeslotRepo.currentSerialNumber());
 		}
 	}
 
@@ -327,7 +487,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 
 
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 
 				}
 
@@ -371,7 +531,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 				int timeslotSerial = wr.getTimeslotIndex();
 				SimulationDataPerTimeSlot cmt = marketData.get(timeslotSerial);
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 				double temperature = wr.getTemperature();
 				cmt.temp = temperature;
@@ -408,7 +568,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 
 				SimulationDataPerTimeSlot cmt = marketData.get(timeslotSerial);
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 
 				for(int i = 0; i < wf.getPredictions().size(); i++)
@@ -444,7 +604,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 			int target = ct.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 
 			}
 			if (ct.getBroker().getId() == brokerID) {
@@ -476,11 +636,19 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 				// ignore that broker
 			}
 			else{
+				if (null != brokerFilter && !username.equalsIgnoreCase(brokerFilter)) {
+					// not indexed, so its transactions are dropped on arrival
+					return;
+				}
 				System.out.print(broker.getUsername() + " ");
 				brokerCounter++;
-				if (username.equalsIgnoreCase("SPOT")) {
+				if (username.equalsIgnoreCase(focalBroker)) {
 					brokerID = broker.getId();
 				}
+				if (brokerCounter == brokers.length) {
+					brokers = Arrays.copyOf(brokers, brokers.length * 2);
+					brokernames = Arrays.copyOf(brokernames, brokernames.length * 2);
+				}
 	
 				//output.println(username + " ");
 				//output.println();
@@ -497,6 +665,11 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 		}
 	}
 
+	// Per-timeslot record with room for every broker seen so far
+	private SimulationDataPerTimeSlot newSlot() {
+		return new SimulationDataPerTimeSlot(brokers.length);
+	}
+
 	public int getBrokerIndex(double brokerid){
 		for(int i = 1; i <= numberofbrokers; i++){
 			if(brokers[i] == brokerid)
@@ -525,7 +698,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 
 			}
 			double brokerid = mt.getBroker().getId();
@@ -584,7 +757,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (brokerIndex > 0) {
 				if (bt.getCharge() > 0) {
@@ -625,7 +798,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 			int target = dt.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (dt.getBroker().getId() == brokerID) {
 				cmt.netDistributionFee += dt.getCharge();
@@ -656,7 +829,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 			int target = tt.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (tt.getBroker().getId() == brokerID){
 				if (tt.getCharge() >= 0) {
@@ -694,7 +867,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 				int target = cp.getPostedTimeslot().getSerialNumber();
 				SimulationDataPerTimeSlot cmt = marketData.get(target);
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 				cmt.arrcashPosition[brokerIndex] = cp.getBalance();
 				//System.out.println("Cashposition " + cp.getBalance() + " at timeslot " + target);
@@ -714,7 +887,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 			int target = bt.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (bt.getBroker().getId() == brokerID){
 
@@ -748,7 +921,7 @@ public class GameDecomposer extends LogtoolContext implements Analyzer {
 			int target = ts.getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 
 			}
 			marketData.put(target, cmt);
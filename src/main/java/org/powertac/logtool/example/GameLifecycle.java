@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+/**
+ * Lifecycle hook for analyzers that may process more than one game in the
+ * same JVM, or with the same instance. resetGame() must return the
+ * analyzer to its just-constructed state for everything that is collected
+ * from a game: counters, broker tables, per-timeslot data. Configuration
+ * from the command line, such as output filenames, is kept.
+ *
+ * Analyzers call it at the start of setup(), and GameRecycler.prepare()
+ * calls it between games after recycling the repos, as AnalysisDaemon
+ * does before each job.
+ */
+public interface GameLifecycle
+{
+  /**
+   * Discards all state collected from the previous game.
+   */
+  public void resetGame ();
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.repo.DomainRepo;
+import org.powertac.common.spring.SpringApplicationContext;
+
+/**
+ * Prepares a warm JVM for the next game: every DomainRepo in the Spring
+ * context (TimeslotRepo, BrokerRepo, TariffRepo, ...) is recycled, and the
+ * analyzer is told to drop its per-game state. AnalysisDaemon calls it
+ * before each job, since it runs every game for a class on one instance.
+ */
+public class GameRecycler
+{
+  static private Logger log =
+      LogManager.getLogger(GameRecycler.class.getName());
+
+  private GameRecycler ()
+  {
+    super();
+  }
+
+  /**
+   * Recycles all repos, then resets the analyzer.
+   */
+  public static void prepare (GameLifecycle analyzer)
+  {
+    recycleRepos();
+    analyzer.resetGame();
+  }
+
+  /**
+   * Recycles every DomainRepo bean. Does nothing if the Spring context
+   * has not been created yet, as before the first game.
+   */
+  public static void recycleRepos ()
+  {
+    List<DomainRepo> repos;
+    try {
+      repos = SpringApplicationContext.listBeansOfType(DomainRepo.class);
+    }
+    catch (RuntimeException e) {
+      log.debug("No context to recycle: " + e.toString());
+      return;
+    }
+    if (null == repos) {
+      return;
+    }
+    for (DomainRepo repo: repos) {
+      log.debug("Recycling " + repo.getClass().getName());
+      repo.recycle();
+    }
+  }
+}
@@ -94,10 +94,12 @@ public class GenerateProducerData extends LogtoolContext implements Analyzer {
 	// Competition.deactivateTimeslotsAhead - 1
 	private PrintWriter output = null;
 	private String dataFilename = "clearedTrades.arff";
+	private boolean npy = false;
 	private int ignoreInitial = 0; // timeslots to ignore at the beginning
 	private int ignoreCount = 0;
-	public TreeMap<Integer, TreeMap<Integer, ArrayList<Order>>> producerOrders = new TreeMap<Integer, TreeMap<Integer, ArrayList<Order>>>();
-	public TreeMap<Integer, TreeMap<Integer, WeatherForecastPrediction>> weatherPredictions = new TreeMap<Integer,TreeMap<Integer, WeatherForecastPrediction>>();
+	// producer orders joined with forecasts as they arrive
+	private OrderForecastJoin join;
+	private NpyColumnWriter columns = null;
 
 	/**
 	 * Main method just creates an instance and passes command-line args to its
@@ -109,15 +111,28 @@ public class GenerateProducerData extends LogtoolContext implements Analyzer {
 	}
 
 	/**
-	 * Takes two args, input filename and output filename
+	 * Takes two args, input filename and output filename, optionally
+	 * preceded by --npy to write a directory of .npy columns (see
+	 * NpyColumnWriter) instead of text. Rows are added to any already in
+	 * the directory; orders without forecasts are left out.
 	 */
 	private void cli(String[] args) {
-		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+		int argOffset = 0;
+		if (args.length > 0 && args[0].equals("--npy")) {
+			npy = true;
+			argOffset = 1;
+		}
+		if (args.length - argOffset != 2) {
+			System.out.println("Usage: <analyzer> [--npy] input-file output-file");
 			return;
 		}
-		dataFilename = args[1];
-		super.cli(args[0], this);
+		dataFilename = args[argOffset + 1];
+		// forecasts refer to their predictions, which are logged separately
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					Order.class, WeatherForecast.class, TimeslotUpdate.class,
+					Timeslot.class, WeatherForecastPrediction.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/*
@@ -137,6 +152,19 @@ public class GenerateProducerData extends LogtoolContext implements Analyzer {
 		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
 		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
 		ignoreCount = ignoreInitial;
+		join = new OrderForecastJoin(new ProducerRows());
+		if (npy) {
+			columns = new NpyColumnWriter(dataFilename, true)
+					.column("hour", NpyColumnWriter.Dtype.INT32)
+					.column("hourAhead", NpyColumnWriter.Dtype.INT32)
+					.column("mwh", NpyColumnWriter.Dtype.FLOAT64)
+					.column("limitPrice", NpyColumnWriter.Dtype.FLOAT64)
+					.column("cloudCover", NpyColumnWriter.Dtype.FLOAT64)
+					.column("temperature", NpyColumnWriter.Dtype.FLOAT64)
+					.column("windDirection", NpyColumnWriter.Dtype.FLOAT64)
+					.column("windSpeed", NpyColumnWriter.Dtype.FLOAT64);
+			return;
+		}
 		try {
 			//output = new PrintWriter(new File(dataFilename));
 			FileWriter fw = new FileWriter(dataFilename, true);
@@ -159,34 +187,50 @@ public class GenerateProducerData extends LogtoolContext implements Analyzer {
 		//			output.println();
 		//		}
 
-		for(Map.Entry<Integer, TreeMap<Integer, ArrayList<Order>>> entry : producerOrders.entrySet()) {
-			Integer hour = entry.getKey();
-			TreeMap<Integer, ArrayList<Order>> hourvalue = entry.getValue();
-			for(Map.Entry<Integer, ArrayList<Order>> subentry : hourvalue.entrySet()) {
-				Integer HA = subentry.getKey();
-				ArrayList<Order> orders = subentry.getValue();
-				WeatherForecastPrediction wfp = weatherPredictions.get(hour).get(HA);
-				if(orders != null && wfp != null)
-					for(Order o : orders){
-						output.println(hour + "," + HA + "," + o.getMWh() + "," + o.getLimitPrice() + "," + 
-								wfp.getCloudCover() + "," + wfp.getTemperature() + "," + 
-								wfp.getWindDirection() + "," + wfp.getWindSpeed());
-					}
-				else{
-					if(orders == null && wfp == null)
-						output.println(hour + "," + HA + ", BOTH_NULL");
-					else if(orders == null)
-						output.println(hour + "," + HA + ", ORDERS_NULL");
-					else{
-						output.println(hour + "," + HA + ", WFP_NULL");
-					}
-				}
+		// orders still waiting for forecasts
+		join.closeAll();
+		if (npy) {
+			try {
+				columns.close();
+			} catch (IOException e) {
+				System.out.println("Cannot write " + dataFilename + ": " + e.toString());
 			}
+			return;
 		}
-
 		output.close();
 	}
 
+	// Rows are written as soon as an order and its forecast are both in
+	class ProducerRows implements OrderForecastJoin.JoinListener {
+
+		@Override
+		public void joined(int target, int HA, Order o, WeatherForecastPrediction wfp) {
+			int hour = target - 384;
+			if (!npy) {
+				output.println(hour + "," + HA + "," + o.getMWh() + "," + o.getLimitPrice() + "," + 
+						wfp.getCloudCover() + "," + wfp.getTemperature() + "," + 
+						wfp.getWindDirection() + "," + wfp.getWindSpeed());
+				return;
+			}
+			try {
+				Double limitPrice = o.getLimitPrice();
+				columns.put(hour).put(HA).put(o.getMWh())
+						.put(null == limitPrice ? Double.NaN : limitPrice)
+						.put(wfp.getCloudCover()).put(wfp.getTemperature())
+						.put(wfp.getWindDirection()).put(wfp.getWindSpeed())
+						.endRow();
+			} catch (IOException e) {
+				System.out.println("Cannot write " + dataFilename + ": " + e.toString());
+			}
+		}
+
+		@Override
+		public void unmatched(int target, int HA, ArrayList<Order> orders) {
+			if (!npy)
+				output.println((target - 384) + "," + HA + ", WFP_NULL");
+		}
+	}
+
 
 	// -----------------------------------
 	// catch TimeslotUpdate events
@@ -197,6 +241,8 @@ public class GenerateProducerData extends LogtoolContext implements Analyzer {
 			// SimulationDataPerTimeSlot cmt;
 			// Working System.out.println("3");
 			TimeslotUpdate tsu = (TimeslotUpdate) thing;
+			// no more orders for timeslots that are no longer enabled
+			join.closeBefore(tsu.getFirstEnabled());
 			if (ignoreCount-- <= 0) {
 				int timeslotSerial = timeslotRepo.currentSerialNumber();
 				System.out.println("TimeslotUpdateHandler " + timeslotSerial);
@@ -246,23 +292,7 @@ public class GenerateProducerData extends LogtoolContext implements Analyzer {
 				String username = o.getBroker().getUsername();
 				if(username.equalsIgnoreCase("lmp") || username.equalsIgnoreCase("miso") || username.equalsIgnoreCase("buyer")){
 					if(hour >= 0 && HA >= 0){
-						TreeMap<Integer,ArrayList<Order>> producerHAOrders = producerOrders.get(hour);
-						if(producerHAOrders == null){
-							producerHAOrders = new TreeMap<Integer,ArrayList<Order>>();
-							ArrayList<Order> orders = new ArrayList<Order>();
-							orders.add(o);
-							producerHAOrders.put(HA, orders);
-						}
-						else
-						{
-							ArrayList<Order> orders = producerHAOrders.get(HA);
-							if(orders == null)
-								orders = new ArrayList<Order>();
-							orders.add(o);
-							producerHAOrders.put(HA, orders);
-						}
-						producerOrders.put(hour, producerHAOrders);
-						//System.out.println("o " + hour + "," + HA);// + "," + currentTS + "," + targetTS + "," + o.getMWh() + "," + o.getLimitPrice());
+						join.addOrder(targetTS, HA, o);
 					}
 				}
 			}
@@ -289,14 +319,7 @@ public class GenerateProducerData extends LogtoolContext implements Analyzer {
 				int HA = targetTS - currentTS - indexOffset;
 
 				if(HA >= 0 && hour >= 0){
-					TreeMap<Integer,WeatherForecastPrediction> weatherHAFP = weatherPredictions.get(hour);
-
-					if(weatherHAFP == null)
-						weatherHAFP = new TreeMap<Integer,WeatherForecastPrediction>();
-
-					weatherHAFP.put(HA, wfp);
-					weatherPredictions.put(hour, weatherHAFP);
-					//System.out.println("W" + hour + "," + HA);// + "," + currentTS + "," + targetTS);// + "," + o.getMWh() + "," + o.getLimitPrice());
+					join.addForecast(targetTS, HA, wfp);
 				}
 			}
 
@@ -19,10 +19,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -58,11 +55,14 @@ import org.powertac.logtool.ifc.Analyzer;
  * 
  * Usage: MktPriceStats [--no-headers] state-log-filename output-data-filename
  * 
+ * Each timeslot is written out and dropped as soon as it is finalized, so
+ * only the open trading window is kept in memory.
+ * 
  * @author John Collins
  */
 public class HourAheadBidSuccess
 extends LogtoolContext
-implements Analyzer
+implements Analyzer, TimeslotFinalizer.FinalizeListener
 {
 	static private Logger log = LogManager.getLogger(MktPriceStats.class.getName());
 
@@ -73,8 +73,11 @@ implements Analyzer
 	// Data
 	private List<Broker> brokerList;
 	private BrokerRepo brokerRepo;
-	private TreeMap<Integer, ClearedTrade[]> data;
-	private HashMap<Broker, HashMap<Integer, HashMap<Integer, Trade>>> dataMtx;
+	private ClearedTradeMatrix data;
+	private DenseIndex<Broker> brokerIndex;
+	private MarketTxCube dataMtx;
+	private MarketTxCube dataOrders;
+	private TimeslotFinalizer finalizer;
 	
 
 	private int ignoreInitial = 5; // timeslots to ignore at the beginning
@@ -113,7 +116,11 @@ implements Analyzer
 			omitHeaders = true;
 		}
 		dataFilename = args[argOffset + 1];
-		super.cli(args[argOffset], this);
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					TimeslotUpdate.class, ClearedTrade.class,
+					MarketTransaction.class, Order.class, SimStart.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/* (non-Javadoc)
@@ -124,6 +131,7 @@ implements Analyzer
 	{
 		brokerRepo = (BrokerRepo) getBean("brokerRepo");
 		brokerList = new ArrayList<>();
+		brokerIndex = new DenseIndex<>();
 		
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		timeService = (TimeService) getBean("timeService");
@@ -139,7 +147,9 @@ implements Analyzer
 				SimStart.class);
 		
 		ignoreCount = ignoreInitial;
-		data = new TreeMap<Integer, ClearedTrade[]>();
+		data = new ClearedTradeMatrix();
+		finalizer = new TimeslotFinalizer();
+		finalizer.addListener(this);
 
 		try {
 			outputCr = new PrintWriter(new File("Cr."+dataFilename));
@@ -158,174 +168,94 @@ implements Analyzer
 	@Override
 	public void report ()
 	{
-		for (Map.Entry<Integer, ClearedTrade[]> entry : data.entrySet()) {
-			String delim = "";
-
-			// Printing market clearing prices first
-			int ts = entry.getKey();
-			ClearedTrade[] trades = entry.getValue();
-			if (trades.length != 24)
-				log.error("short array " + trades.length);
-			for (int i = 0; i < trades.length; i++) {
-				if (null == trades[i]) {
-					outputCr.print(delim);
-					outputCrVol.print(delim);
-					outputDr.print(delim);
-					outputDrVol.print(delim);
-				}
-				else {
-					printtofile(outputCr, delim, trades[i].getExecutionPrice());
-					printtofile(outputDr, delim, trades[i].getExecutionPrice());
-					printtofile(outputCrVol, delim, trades[i].getExecutionMWh());
-					printtofile(outputDrVol, delim, trades[i].getExecutionMWh());
-				}
-				delim = ",";
-			}
-			
-			// Now print broker informations
-			for (Broker broker: brokerList){
-				dumpDataSimEnd(broker, ts);
-				//output.println();
-			}
-			outputCr.println();
-			outputCrVol.println();
-			outputDr.println();
-			outputDrVol.println();
-		}
+		finalizer.finish();
+		// rows for timeslots still open at the end of the game
+		writeThrough(data.getLastTimeslot());
 		outputCr.close();
 		outputCrVol.close();
 		outputDr.close();
 		outputDrVol.close();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.powertac.logtool.example.TimeslotFinalizer.FinalizeListener#timeslotFinalized(int)
+	 */
+	@Override
+	public void timeslotFinalized (int timeslot)
+	{
+		writeThrough(timeslot);
+	}
+
+	// Writes out the rows through ts, then drops them
+	private void writeThrough (int ts)
+	{
+		int last = Math.min(ts, data.getLastTimeslot());
+		for (int t = data.getFirstTimeslot(); t <= last; t++) {
+			if (data.hasTimeslot(t))
+				writeTimeslot(t);
+		}
+		data.dropBefore(ts + 1);
+		if (null != dataMtx) {
+			dataMtx.dropBefore(ts + 1);
+			dataOrders.dropBefore(ts + 1);
+		}
+	}
+
+	private void writeTimeslot (int ts)
+	{
+		String delim = "";
+
+		// Printing market clearing prices first
+		for (int i = 0; i < data.getLeadTimes(); i++) {
+			if (!data.isCleared(ts, i)) {
+				outputCr.print(delim);
+				outputCrVol.print(delim);
+				outputDr.print(delim);
+				outputDrVol.print(delim);
+			}
+			else {
+				printtofile(outputCr, delim, data.getPrice(ts, i));
+				printtofile(outputDr, delim, data.getPrice(ts, i));
+				printtofile(outputCrVol, delim, data.getMWh(ts, i));
+				printtofile(outputDrVol, delim, data.getMWh(ts, i));
+			}
+			delim = ",";
+		}
+
+		// Now print broker informations
+		for (Broker broker: brokerList){
+			dumpDataSimEnd(broker, ts);
+			//output.println();
+		}
+		outputCr.println();
+		outputCrVol.println();
+		outputDr.println();
+		outputDrVol.println();
+	}
+
 	public void printtofile(PrintWriter o, String delim, Double val){
 		o.format("%s%.4f", delim, val);
 	}
 	
 	private void dumpDataSimEnd(Broker broker, int ts){
-		
-		HashMap<Integer, HashMap<Integer, Trade>> tsmtx = dataMtx.get(broker);
-		
+		int b = brokerIndex.indexOf(broker);
 		outputCr.format(",%s",broker.getUsername());
 		outputCrVol.format(",%s",broker.getUsername());
 		outputDr.format(",%s",broker.getUsername());
 		outputDrVol.format(",%s",broker.getUsername());
-		
-		if(tsmtx == null)
-		{
-			printTSEmptyValsForBroker();
-			return;
-		}
-		HashMap<Integer, Trade> hamtx = tsmtx.get(ts);
-		
-		// Handle deferred market transactions for this timeslot
-		double mtxD = 0.0;
-		double mtxC = 0.0;
-		double mtxDVol = 0.0;
-		double mtxCVol = 0.0;
-		
-		// Handle deferred market transactions for this timeslot
-		double oD = 0.0;
-		double oC = 0.0;
-		double oDVol = 0.0;
-		double oCVol = 0.0;
-				
-		
-		if(hamtx == null){
-			printTSEmptyValsForBroker();
-		}
-		else
-		{
-			for(int offset=0; offset<=23; offset++){
-				Trade txList = hamtx.get(offset);
-				if (null != txList) {
-					if (null != txList.mtx) {
-						for (MarketTransaction tx: txList.mtx) {
-							double money = tx.getPrice();//Math.abs(tx.getMWh()) * tx.getPrice();
-							if (money >= 0.0){
-								mtxC = money;
-								mtxCVol += Math.abs(tx.getMWh());
-							}
-							else{
-								mtxD = money;
-								mtxDVol += Math.abs(tx.getMWh());
-							}
-						}
-					}
-					
-					if (null != txList.o) {
-						int oCount = 0;
-						for (Order tx: txList.o) {
-							Double money = tx.getLimitPrice();//Math.abs(tx.getMWh()) * tx.getPrice();
-							if(money == null)
-							{
-								
-								Double w = tx.getMWh();
-								if(w >= 0.0){
-									//debit
-									oD += ((-100)*Math.abs(tx.getMWh()));
-									oDVol += Math.abs(tx.getMWh());
-								}
-								else{
-									//credit
-									oC += ((100)*Math.abs(tx.getMWh()));
-									oCVol += Math.abs(tx.getMWh());
-								}
-								
-							}
-							else {
-								if (money >= 0.0){
-									// credit
-									oC += money*Math.abs(tx.getMWh());
-									oCVol += Math.abs(tx.getMWh());
-								}
-								else{
-									// debit
-									oD += money*Math.abs(tx.getMWh());
-									oDVol += Math.abs(tx.getMWh());
-								}
-							}
-							oCount++;
-						}
-					}
-				}
-				// Print the hourAhead transactions
-				// orders
-				printVals(outputDr, oD/oDVol);
-				printVals(outputDrVol, oDVol);
-				printVals(outputCr, oC/oCVol);
-				printVals(outputCrVol, oCVol);
-				// mtxs
-				printVals(outputDr, mtxD);
-				printVals(outputDrVol, mtxDVol);
-				printVals(outputCr, mtxC);
-				printVals(outputCrVol, mtxCVol);
-				
-				// reset
-				mtxD = 0;
-				mtxC = 0;
-				mtxDVol = 0;
-				mtxCVol = 0;
-				oD = 0.0;
-				oC = 0.0;
-				oDVol = 0.0;
-				oCVol = 0.0;
-			}
-		}
-	}
-	
-	public void printTSEmptyValsForBroker(){
+
 		for(int offset=0; offset<=23; offset++){
-			//order
-			printVals(outputDr, 0);
-			printVals(outputDrVol, 0);
-			printVals(outputCr, 0);
-			printVals(outputCrVol, 0);
-			//mtx
-			printVals(outputDr, 0);
-			printVals(outputDrVol, 0);
-			printVals(outputCr, 0);
-			printVals(outputCrVol, 0);
+			// Print the hourAhead transactions
+			// orders, at volume-weighted limit price
+			printVals(outputDr, dataOrders.getUnitPrice(b, ts, offset, MarketTxCube.DEBIT));
+			printVals(outputDrVol, dataOrders.getMWh(b, ts, offset, MarketTxCube.DEBIT));
+			printVals(outputCr, dataOrders.getUnitPrice(b, ts, offset, MarketTxCube.CREDIT));
+			printVals(outputCrVol, dataOrders.getMWh(b, ts, offset, MarketTxCube.CREDIT));
+			// mtxs, at clearing price
+			printVals(outputDr, dataMtx.getUnitPrice(b, ts, offset, MarketTxCube.DEBIT));
+			printVals(outputDrVol, dataMtx.getMWh(b, ts, offset, MarketTxCube.DEBIT));
+			printVals(outputCr, dataMtx.getUnitPrice(b, ts, offset, MarketTxCube.CREDIT));
+			printVals(outputCrVol, dataMtx.getMWh(b, ts, offset, MarketTxCube.CREDIT));
 		}
 	}
 
@@ -345,10 +275,9 @@ implements Analyzer
 		{
 			System.out.println("Simulation Started");
 			brokerList = brokerRepo.findRetailBrokers();
-			dataMtx = new HashMap<>();
-			for (Broker broker: brokerList) {
-				dataMtx.put(broker, null);
-			}
+			brokerIndex = new DenseIndex<>(brokerList);
+			dataMtx = new MarketTxCube(brokerIndex.size(), 24);
+			dataOrders = new MarketTxCube(brokerIndex.size(), 24);
 		}
 	}
 	// -----------------------------------
@@ -371,12 +300,7 @@ implements Analyzer
 				log.error("ClearedTrade index error: " + offset);
 			}
 			else {
-				ClearedTrade[] targetArray = data.get(target);
-				if (null == targetArray) {
-					targetArray = new ClearedTrade[24];
-					data.put(target, targetArray);
-				}
-				targetArray[offset] = ct;
+				data.add(ct, offset);
 			}
 		}
 	}
@@ -399,48 +323,38 @@ implements Analyzer
 			int offset = target - now - 1;
 			//System.out.println("target "+ target + " now " + now + " offset " + offset + " posted " + posted);
 			
-			Broker broker = o.getBroker();
-			if (!brokerList.contains(broker)){
-				//System.out.println(broker.getUsername() + " not in the list.");
+			int b = brokerIndex.indexOf(o.getBroker());
+			if (b < 0){
 				return;
 			}
-			
-			HashMap<Integer, HashMap<Integer, Trade>> tsmtx = dataMtx.get(broker);
-			
-			if(tsmtx == null){
-				tsmtx = new HashMap<Integer, HashMap<Integer, Trade>>();
-				HashMap<Integer, Trade> hamtx = new HashMap<Integer, Trade>();
-				Trade arrO = new Trade();
-				arrO.o.add(o);
-				hamtx.put(offset,arrO);
-				tsmtx.put(target, hamtx);
-				dataMtx.put(broker,tsmtx);
-				return;
-			}
-			
-			HashMap<Integer, Trade> hamtx = tsmtx.get(target);
-			
+
 			if (offset < 0 || offset > 23) {
 				// problem
 				System.out.println("Order index error: " + offset);
 			}
 			else {
-				if(hamtx == null){
-					hamtx = new HashMap<Integer, Trade>();
-					Trade arrO = new Trade();
-					arrO.o.add(o);
-					hamtx.put(offset,arrO);
-					tsmtx.put(target, hamtx);
-					return;
+				double mwh = Math.abs(o.getMWh());
+				Double money = o.getLimitPrice();
+				if(money == null)
+				{
+					// market order, valued at +/- 100/MWh
+					if(o.getMWh() >= 0.0){
+						dataOrders.add(b, target, offset, MarketTxCube.DEBIT,
+								-100 * mwh, mwh);
+					}
+					else{
+						dataOrders.add(b, target, offset, MarketTxCube.CREDIT,
+								100 * mwh, mwh);
+					}
 				}
-
-				Trade arrO = hamtx.get(offset);
-				if (null == arrO) {
-					arrO = new Trade();
+				else if (money >= 0.0){
+					dataOrders.add(b, target, offset, MarketTxCube.CREDIT,
+							money * mwh, mwh);
+				}
+				else{
+					dataOrders.add(b, target, offset, MarketTxCube.DEBIT,
+							money * mwh, mwh);
 				}
-				arrO.o.add(o);
-				hamtx.put(offset, arrO);
-				//System.out.println("Mtx added for "+broker.getUsername());
 			}
 		}
 	}
@@ -463,48 +377,22 @@ implements Analyzer
 			int offset = target - now - indexOffset;
 			//System.out.println("target "+ target + " now " + now + " offset " + offset + " posted " + posted);
 			
-			Broker broker = mtx.getBroker();
-			if (!brokerList.contains(broker)){
-				//System.out.println(broker.getUsername() + " not in the list.");
+			int b = brokerIndex.indexOf(mtx.getBroker());
+			if (b < 0){
 				return;
 			}
-			
-			HashMap<Integer, HashMap<Integer, Trade>> tsmtx = dataMtx.get(broker);
-			
-			if(tsmtx == null){
-				tsmtx = new HashMap<Integer, HashMap<Integer, Trade>>();
-				HashMap<Integer, Trade> hamtx = new HashMap<Integer, Trade>();
-				Trade arrmtx = new Trade();
-				arrmtx.mtx.add(mtx);
-				hamtx.put(offset,arrmtx);
-				tsmtx.put(target, hamtx);
-				dataMtx.put(broker,tsmtx);
-				return;
-			}
-			
-			HashMap<Integer, Trade> hamtx = tsmtx.get(target);
-			
+
 			if (offset < 0 || offset > 23) {
 				// problem
 				System.out.println("Market transaction index error: " + offset);
 			}
 			else {
-				if(hamtx == null){
-					hamtx = new HashMap<Integer, Trade>();
-					Trade arrmtx = new Trade();
-					arrmtx.mtx.add(mtx);
-					hamtx.put(offset,arrmtx);
-					tsmtx.put(target, hamtx);
-					return;
-				}
-
-				Trade arrmtx = hamtx.get(offset);
-				if (null == arrmtx) {
-					arrmtx = new Trade();
-				}
-				arrmtx.mtx.add(mtx);
-				hamtx.put(offset, arrmtx);
-				//System.out.println("Mtx added for "+broker.getUsername());
+				int side = MarketTxCube.DEBIT;
+				if (mtx.getPrice() >= 0.0)
+					side = MarketTxCube.CREDIT;
+				dataMtx.add(b, target, offset, side,
+						Math.abs(mtx.getMWh()) * mtx.getPrice(),
+						Math.abs(mtx.getMWh()));
 			}
 		}
 	}
@@ -517,21 +405,11 @@ implements Analyzer
 		@Override
 		public void handleNewObject (Object thing)
 		{
+			int current = timeslotRepo.currentSerialNumber();
 			if (ignoreCount-- <= 0) {
-				int timeslotSerial = timeslotRepo.currentSerialNumber();
-				if (null == data.get(timeslotSerial)) {
-					data.put(timeslotSerial, new ClearedTrade[24]);
-				}
+				data.addTimeslot(current);
 			}
+			finalizer.startTimeslot(current);
 		}
 	}
 }
-
-class Trade{
-	public ArrayList<MarketTransaction> mtx;
-	public ArrayList<Order> o;
-	public Trade(){
-		mtx = new ArrayList<MarketTransaction>();
-		o = new ArrayList<Order>();
-	}
-}
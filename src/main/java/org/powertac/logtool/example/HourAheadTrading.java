@@ -19,10 +19,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -72,8 +69,9 @@ implements Analyzer
 	// Data
 	private List<Broker> brokerList;
 	private BrokerRepo brokerRepo;
-	private TreeMap<Integer, ClearedTrade[]> data;
-	private HashMap<Broker, HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>>> dataMtx;
+	private ClearedTradeMatrix data;
+	private DenseIndex<Broker> brokerIndex;
+	private MarketTxCube dataMtx;
 
 	private int ignoreInitial = 5; // timeslots to ignore at the beginning
 	private int ignoreCount = 0;
@@ -111,7 +109,11 @@ implements Analyzer
 			omitHeaders = true;
 		}
 		dataFilename = args[argOffset + 1];
-		super.cli(args[argOffset], this);
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					TimeslotUpdate.class, ClearedTrade.class,
+					MarketTransaction.class, SimStart.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/* (non-Javadoc)
@@ -122,6 +124,7 @@ implements Analyzer
 	{
 		brokerRepo = (BrokerRepo) getBean("brokerRepo");
 		brokerList = new ArrayList<>();
+		brokerIndex = new DenseIndex<>();
 		
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		timeService = (TimeService) getBean("timeService");
@@ -135,7 +138,7 @@ implements Analyzer
 				SimStart.class);
 		
 		ignoreCount = ignoreInitial;
-		data = new TreeMap<Integer, ClearedTrade[]>();
+		data = new ClearedTradeMatrix();
 
 		try {
 			outputCr = new PrintWriter(new File("Cr."+dataFilename));
@@ -154,26 +157,24 @@ implements Analyzer
 	@Override
 	public void report ()
 	{
-		for (Map.Entry<Integer, ClearedTrade[]> entry : data.entrySet()) {
+		for (int ts = data.getFirstTimeslot(); ts <= data.getLastTimeslot(); ts++) {
+			if (!data.hasTimeslot(ts))
+				continue;
 			String delim = "";
 
 			// Printing market clearing prices first
-			int ts = entry.getKey();
-			ClearedTrade[] trades = entry.getValue();
-			if (trades.length != 24)
-				log.error("short array " + trades.length);
-			for (int i = 0; i < trades.length; i++) {
-				if (null == trades[i]) {
+			for (int i = 0; i < data.getLeadTimes(); i++) {
+				if (!data.isCleared(ts, i)) {
 					outputCr.print(delim);
 					outputCrVol.print(delim);
 					outputDr.print(delim);
 					outputDrVol.print(delim);
 				}
 				else {
-					printtofile(outputCr, delim, trades[i].getExecutionPrice());
-					printtofile(outputDr, delim, trades[i].getExecutionPrice());
-					printtofile(outputCrVol, delim, trades[i].getExecutionMWh());
-					printtofile(outputDrVol, delim, trades[i].getExecutionMWh());
+					printtofile(outputCr, delim, data.getPrice(ts, i));
+					printtofile(outputDr, delim, data.getPrice(ts, i));
+					printtofile(outputCrVol, delim, data.getMWh(ts, i));
+					printtofile(outputDrVol, delim, data.getMWh(ts, i));
 				}
 				delim = ",";
 			}
@@ -199,64 +200,19 @@ implements Analyzer
 	}
 	
 	private void dumpDataSimEnd(Broker broker, int ts){
-		
-		HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>> tsmtx = dataMtx.get(broker);
+		int b = brokerIndex.indexOf(broker);
 		outputCr.format(",%s",broker.getUsername());
 		outputCrVol.format(",%s",broker.getUsername());
 		outputDr.format(",%s",broker.getUsername());
 		outputDrVol.format(",%s",broker.getUsername());
-		if(tsmtx == null)
-		{
-			printTSEmptyValsForBroker();
-			return;
-		}
-		HashMap<Integer, ArrayList<MarketTransaction>> hamtx = tsmtx.get(ts);
-		
-		// Handle deferred market transactions for this timeslot
-		double mtxD = 0.0;
-		double mtxC = 0.0;
-		double mtxDVol = 0.0;
-		double mtxCVol = 0.0;
-		
-		if(hamtx == null)
-			printTSEmptyValsForBroker();
-		else
-		{
-			for(int offset=0; offset<=23; offset++){
-				ArrayList<MarketTransaction> txList = hamtx.get(offset);
-				if (null != txList) {
-					for (MarketTransaction tx: txList) {
-						double money = tx.getPrice();//Math.abs(tx.getMWh()) * tx.getPrice();
-						if (money >= 0.0){
-							mtxC = money;
-							mtxCVol += Math.abs(tx.getMWh());
-						}
-						else{
-							mtxD = money;
-							mtxDVol += Math.abs(tx.getMWh());
-						}
-					}
-				}
-				// Print the hourAhead transactions
-				printVals(outputDr, mtxD);
-				printVals(outputDrVol, mtxDVol);
-				printVals(outputCr, mtxC);
-				printVals(outputCrVol, mtxCVol);
-				// reset
-				mtxD = 0;
-				mtxC = 0;
-				mtxDVol = 0;
-				mtxCVol = 0;
-			}
-		}
-	}
-	
-	public void printTSEmptyValsForBroker(){
+
+		// Deferred market transactions for this timeslot; the market
+		// clears at a single price, so the unit price is the clearing price
 		for(int offset=0; offset<=23; offset++){
-			printVals(outputDr, 0);
-			printVals(outputDrVol, 0);
-			printVals(outputCr, 0);
-			printVals(outputCrVol, 0);
+			printVals(outputDr, dataMtx.getUnitPrice(b, ts, offset, MarketTxCube.DEBIT));
+			printVals(outputDrVol, dataMtx.getMWh(b, ts, offset, MarketTxCube.DEBIT));
+			printVals(outputCr, dataMtx.getUnitPrice(b, ts, offset, MarketTxCube.CREDIT));
+			printVals(outputCrVol, dataMtx.getMWh(b, ts, offset, MarketTxCube.CREDIT));
 		}
 	}
 
@@ -276,10 +232,8 @@ implements Analyzer
 		{
 			System.out.println("Simulation Started");
 			brokerList = brokerRepo.findRetailBrokers();
-			dataMtx = new HashMap<>();
-			for (Broker broker: brokerList) {
-				dataMtx.put(broker, null);
-			}
+			brokerIndex = new DenseIndex<>(brokerList);
+			dataMtx = new MarketTxCube(brokerIndex.size(), 24);
 		}
 	}
 	// -----------------------------------
@@ -302,12 +256,7 @@ implements Analyzer
 				log.error("ClearedTrade index error: " + offset);
 			}
 			else {
-				ClearedTrade[] targetArray = data.get(target);
-				if (null == targetArray) {
-					targetArray = new ClearedTrade[24];
-					data.put(target, targetArray);
-				}
-				targetArray[offset] = ct;
+				data.add(ct, offset);
 			}
 		}
 	}
@@ -330,48 +279,22 @@ implements Analyzer
 			int offset = target - now - indexOffset;
 			//System.out.println("target "+ target + " now " + now + " offset " + offset + " posted " + posted);
 			
-			Broker broker = mtx.getBroker();
-			if (!brokerList.contains(broker)){
-				//System.out.println(broker.getUsername() + " not in the list.");
+			int b = brokerIndex.indexOf(mtx.getBroker());
+			if (b < 0){
 				return;
 			}
-			
-			HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>> tsmtx = dataMtx.get(broker);
-			
-			if(tsmtx == null){
-				tsmtx = new HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>>();
-				HashMap<Integer, ArrayList<MarketTransaction>> hamtx = new HashMap<Integer, ArrayList<MarketTransaction>>();
-				ArrayList<MarketTransaction> arrmtx = new ArrayList<MarketTransaction>();
-				arrmtx.add(mtx);
-				hamtx.put(offset,arrmtx);
-				tsmtx.put(target, hamtx);
-				dataMtx.put(broker,tsmtx);
-				return;
-			}
-			
-			HashMap<Integer, ArrayList<MarketTransaction>> hamtx = tsmtx.get(target);
-			
+
 			if (offset < 0 || offset > 23) {
 				// problem
 				System.out.println("ClearedTrade index error: " + offset);
 			}
 			else {
-				if(hamtx == null){
-					hamtx = new HashMap<Integer, ArrayList<MarketTransaction>>();
-					ArrayList<MarketTransaction> arrmtx = new ArrayList<MarketTransaction>();
-					arrmtx.add(mtx);
-					hamtx.put(offset,arrmtx);
-					tsmtx.put(target, hamtx);
-					return;
-				}
-
-				ArrayList<MarketTransaction> arrmtx = hamtx.get(offset);
-				if (null == arrmtx) {
-					arrmtx = new ArrayList<MarketTransaction>();
-				}
-				arrmtx.add(mtx);
-				hamtx.put(offset, arrmtx);
-				//System.out.println("Mtx added for "+broker.getUsername());
+				int side = MarketTxCube.DEBIT;
+				if (mtx.getPrice() >= 0.0)
+					side = MarketTxCube.CREDIT;
+				dataMtx.add(b, target, offset, side,
+						Math.abs(mtx.getMWh()) * mtx.getPrice(),
+						Math.abs(mtx.getMWh()));
 			}
 		}
 	}
@@ -385,10 +308,7 @@ implements Analyzer
 		public void handleNewObject (Object thing)
 		{
 			if (ignoreCount-- <= 0) {
-				int timeslotSerial = timeslotRepo.currentSerialNumber();
-				if (null == data.get(timeslotSerial)) {
-					data.put(timeslotSerial, new ClearedTrade[24]);
-				}
+				data.addTimeslot(timeslotRepo.currentSerialNumber());
 			}
 		}
 	}
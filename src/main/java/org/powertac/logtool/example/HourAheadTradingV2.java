@@ -22,15 +22,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import org.powertac.common.BalancingTransaction;
 import org.powertac.common.Broker;
-import org.powertac.common.ClearedTrade;
 import org.powertac.common.MarketTransaction;
 import org.powertac.common.TimeService;
 import org.powertac.common.msg.SimStart;
@@ -52,7 +49,13 @@ import org.powertac.logtool.ifc.Analyzer;
  * 
  * If the option '--no-headers' is given, the first three fields are omitted.
  * 
- * Usage: MktPriceStats [--no-headers] state-log-filename output-data-filename
+ * With '--results', the debit/credit comparison of ResultsHATrading is
+ * computed in-process from the same data and written to
+ * Results.output-data-filename, with no need to re-read the csv. With
+ * '--no-csv' the csv itself is not written.
+ * 
+ * Usage: MktPriceStats [--no-headers] [--results] [--no-csv]
+ *        state-log-filename output-data-filename
  * 
  * @author John Collins
  */
@@ -62,6 +65,9 @@ implements Analyzer
 {
 	static private Logger log = LogManager.getLogger(MktPriceStats.class.getName());
 
+	private static final String USAGE =
+			"Usage: <analyzer> [--no-headers] [--results] [--no-csv] input-file output-file";
+
 	// service references
 	private TimeslotRepo timeslotRepo;
 	private TimeService timeService;
@@ -71,8 +77,9 @@ implements Analyzer
 	private HashMap <String, Broker> brokerMap;
 
 	private BrokerRepo brokerRepo;
-	private TreeMap<Integer, ClearedTrade[]> data;
-	private HashMap<Broker, HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>>> dataMtx;
+	private ClearedTradeMatrix data;
+	private DenseIndex<Broker> brokerIndex;
+	private MarketTxCube dataMtx;
 	private HashMap<Broker, HashMap<Integer, BalancingTransaction>> dataBtx;
 	private double totalImbalance;
 
@@ -82,6 +89,8 @@ implements Analyzer
 
 	private PrintWriter output = null;
 	private String dataFilename = "clearedTrades.data";
+	private boolean writeCsv = true;
+	private ResultsHATrading.BalancingAccumulator results = null;
 	private double [] avgBrCr;
 	private double [] avgBrCrVol;
 	private double [] avgBrDr;
@@ -106,16 +115,31 @@ implements Analyzer
 	 */
 	private void cli (String[] args)
 	{
-		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> [--no-headers] input-file output-file");
-			return;
-		}
 		int argOffset = 0;
-		if (args[0].equalsIgnoreCase("--no-headers")) {
-			argOffset = 1;
+		while (argOffset < args.length && args[argOffset].startsWith("--")) {
+			if (args[argOffset].equalsIgnoreCase("--results")) {
+				results = new ResultsHATrading.BalancingAccumulator();
+			}
+			else if (args[argOffset].equalsIgnoreCase("--no-csv")) {
+				writeCsv = false;
+			}
+			else if (!args[argOffset].equalsIgnoreCase("--no-headers")) {
+				System.out.println("Unknown option " + args[argOffset]);
+				System.out.println(USAGE);
+				return;
+			}
+			argOffset += 1;
+		}
+		if (args.length - argOffset != 2) {
+			System.out.println(USAGE);
+			return;
 		}
 		dataFilename = args[argOffset + 1];
-		super.cli(args[argOffset], this);
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					TimeslotUpdate.class, BalancingTransaction.class,
+					MarketTransaction.class, SimStart.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/* (non-Javadoc)
@@ -126,6 +150,7 @@ implements Analyzer
 	{
 		brokerRepo = (BrokerRepo) getBean("brokerRepo");
 		brokerList = new ArrayList<>();
+		brokerIndex = new DenseIndex<>();
 		brokerNamesSorted = new ArrayList<>();
 		brokerMap = new HashMap<>();
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
@@ -140,13 +165,15 @@ implements Analyzer
 				SimStart.class);
 
 		ignoreCount = ignoreInitial;
-		data = new TreeMap<Integer, ClearedTrade[]>();
+		data = new ClearedTradeMatrix();
 
 		avgBrDr = new double[24];
 		avgBrDrVol = new double[24];
 		avgBrCr = new double[24];
 		avgBrCrVol = new double[24];
 
+		if (!writeCsv)
+			return;
 		try {
 			output = new PrintWriter(new File(dataFilename+"Dr.csv"));
 		}
@@ -161,40 +188,43 @@ implements Analyzer
 	@Override
 	public void report ()
 	{
-		for (Map.Entry<Integer, ClearedTrade[]> entry : data.entrySet()) {
-			// Printing market clearing prices first
-			int ts = entry.getKey();
-			ClearedTrade[] trades = entry.getValue();
-			if (trades.length != 24)
-				log.error("short array " + trades.length);
-
-			boolean firstBroker = true;
+		// one row of values per broker, plus the average broker, in the
+		// layout ResultsHATrading reads
+		String[] names = new String[n + 1];
+		double[][] rows = new double[n + 1][ResultsHATrading.BalancingAccumulator.VALUES];
+		for (int i = 0; i < n; i++)
+			names[i] = brokerNamesSorted.get(i);
+		names[n] = "AvgBroker";
+
+		for (int ts = data.getFirstTimeslot(); ts <= data.getLastTimeslot(); ts++) {
+			if (!data.hasTimeslot(ts))
+				continue;
+
 			// Now print broker informations
-			for (String brokerName: brokerNamesSorted){
-				Broker broker = brokerMap.get(brokerName);
-				dumpDataSimEnd(broker, ts, firstBroker);
-				firstBroker = false;
+			for (int i = 0; i < n; i++){
+				Broker broker = brokerMap.get(brokerNamesSorted.get(i));
+				dumpDataSimEnd(broker, ts, rows[i]);
+				printRow((i == 0 ? "" : ",") + names[i], rows[i]);
 			}
 			// print the avg broker values
-			output.format(",AvgBroker");
+			double[] avg = rows[n];
 			for(int k = 0; k < 24; k++)
 			{
-				// print debit
+				// debit
 				if(avgBrDrVol[k] == 0)
 					avgBrDr[k] = 0;
 				else
 					avgBrDr[k] /= Math.abs(avgBrDrVol[k]);
+				avg[4*k] = avgBrDr[k];
+				avg[4*k+1] = avgBrDrVol[k];
 
-				printVals(output, avgBrDr[k]);
-				printVals(output, avgBrDrVol[k]);
-
-				// print credit
+				// credit
 				if(avgBrCrVol[k] == 0)
 					avgBrCr[k] = 0;
 				else
 					avgBrCr[k] /= Math.abs(avgBrCrVol[k]);
-				printVals(output, avgBrCr[k]);
-				printVals(output, avgBrCrVol[k]);
+				avg[4*k+2] = avgBrCr[k];
+				avg[4*k+3] = avgBrCrVol[k];
 				
 				// reset
 				avgBrDr[k] = 0.0;
@@ -202,20 +232,16 @@ implements Analyzer
 				avgBrCr[k] = 0.0;
 				avgBrCrVol[k] = 0.0;
 			}
-			// Bal Tx
-			/*double avgBalDrU = 0;
-			if(avgBalDrVol != 0)
-				avgBalDrU = avgBalDr / Math.abs(avgBalDrVol);*/
-			printVals(output, avgBalDr);
-			printVals(output, avgBalDrVol);
-			
-			/*double avgBalCrU = 0;
-			if(avgBalCrVol != 0)
-				avgBalCrU = avgBalCr /Math.abs(avgBalCrVol);*/
-			printVals(output, avgBalCr);
-			printVals(output, avgBalCrVol);
-			
-			printVals(output, totalImbalance);
+			// Bal Tx; zero is written as a blank, which means none
+			avg[96] = blankIfZero(avgBalDr);
+			avg[97] = blankIfZero(avgBalDrVol);
+			avg[98] = blankIfZero(avgBalCr);
+			avg[99] = blankIfZero(avgBalCrVol);
+			printRow(",AvgBroker", avg);
+			if (output != null)
+				printVals(output, totalImbalance);
+			if (results != null)
+				results.addTimeslot(names, rows);
 			
 			//reset bal
 			avgBalDr = 0;
@@ -223,11 +249,31 @@ implements Analyzer
 			avgBalCr = 0;
 			avgBalCrVol = 0;
 			totalImbalance = 0;
+			if (output != null)
+				output.println();
+		}
+
+		if (output != null) {
 			output.println();
+			output.close();
 		}
+		if (results != null)
+			new ResultsHATrading().writeResults(results.getTotals(), dataFilename);
+	}
+
+	// Writes a label and one row of broker values to the csv, if any
+	private void printRow (String label, double[] row)
+	{
+		if (output == null)
+			return;
+		output.format("%s", label);
+		for (double val: row)
+			printVals(output, val);
+	}
 
-		output.println();
-		output.close();
+	private double blankIfZero (double val)
+	{
+		return (val == 0) ? Double.NaN : val;
 	}
 
 	public void printtofile(PrintWriter o, String delim, Double val){
@@ -242,139 +288,70 @@ implements Analyzer
 	 * +ve energy means energy coming to brokers account
 	 * 
 	 */
-	private void dumpDataSimEnd(Broker broker, int ts, boolean firstBroker){
+	private void dumpDataSimEnd(Broker broker, int ts, double[] row){
 		//System.out.println("ok1");
-		HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>> tsmtx = dataMtx.get(broker);
-		String deli = ",";
-		if(firstBroker)
-			deli ="";
-
-		//outputCr.format(deli+"%s",broker.getUsername());
-		output.format(deli+"%s",broker.getUsername());
+		int b = brokerIndex.indexOf(broker);
 
-		if(tsmtx == null)
-		{
-			printTSEmptyValsForBroker();
-			
-		}
-		else {
-			HashMap<Integer, ArrayList<MarketTransaction>> hamtx = tsmtx.get(ts);
-	
-			// Handle deferred market transactions for this timeslot
-			double mtxD = 0.0;
-			double mtxC = 0.0;
-			double mtxDVol = 0.0;
-			double mtxCVol = 0.0;
-	
-			if(hamtx == null)
-				printTSEmptyValsForBroker();
-			else
-			{
-				for(int offset=0; offset<=23; offset++){
-					ArrayList<MarketTransaction> txList = hamtx.get(offset);
-					if (null != txList) {
-						for (MarketTransaction tx: txList) {
-							double money = tx.getPrice();//Math.abs(tx.getMWh()) * tx.getPrice();
-							if (tx.getMWh() > 0.0){
-								// Energy is coming to my account and money is going
-								// Energy Credit (Buy Vol): +ve; Money -ve 
-								mtxC = money;
-								mtxCVol += tx.getMWh();
-								if(money > 0) {
-									// Abnormal Credit of energy : Getting Free energy plus money
-									System.out.println(broker.getUsername() + ": Money +ve, vol +ve i.e. getting free energy with money");
-								}
-								
-								avgBrCr[offset] += Math.abs(tx.getMWh()) * tx.getPrice();
-								avgBrCrVol[offset] += tx.getMWh();
-							}
-							else{
-								// Energy Debit (Sell Vol): -ve; Money +ve 
-								mtxD = money;
-								mtxDVol += tx.getMWh();
-								if(money < 0) {
-									// Abnormal Debit of energy : Giving away energy plus money
-									System.out.println(broker.getUsername() + ": Money -ve, vol -ve i.e. giving away free energy with money");
-								}
-								
-								avgBrDr[offset] += Math.abs(tx.getMWh()) * tx.getPrice();
-								avgBrDrVol[offset] += tx.getMWh();
-							}
-						}
-					}
-					// Print the hourAhead transactions
-					printVals(output, mtxD);
-					printVals(output, mtxDVol);
-					printVals(output, mtxC);
-					printVals(output, mtxCVol);
-					// reset
-					mtxD = 0;
-					mtxC = 0;
-					mtxDVol = 0;
-					mtxCVol = 0;
-				}
+		// Market transactions for this timeslot. Volume is signed; money is
+		// price * |MWh| so the unit price keeps the sign of the price.
+		for(int offset=0; offset<=23; offset++){
+			// Energy Debit (Sell Vol): -ve; Money +ve
+			double mtxDVol = dataMtx.getMWh(b, ts, offset, MarketTxCube.DEBIT);
+			double mtxD = dataMtx.getUnitPrice(b, ts, offset, MarketTxCube.DEBIT);
+			// Energy Credit (Buy Vol): +ve; Money -ve
+			double mtxCVol = dataMtx.getMWh(b, ts, offset, MarketTxCube.CREDIT);
+			double mtxC = dataMtx.getUnitPrice(b, ts, offset, MarketTxCube.CREDIT);
+			if(mtxCVol != 0 && mtxC > 0) {
+				// Abnormal Credit of energy : Getting Free energy plus money
+				System.out.println(broker.getUsername() + ": Money +ve, vol +ve i.e. getting free energy with money");
 			}
+			if(mtxDVol != 0 && mtxD < 0) {
+				// Abnormal Debit of energy : Giving away energy plus money
+				System.out.println(broker.getUsername() + ": Money -ve, vol -ve i.e. giving away free energy with money");
+			}
+			avgBrCr[offset] += dataMtx.getMoney(b, ts, offset, MarketTxCube.CREDIT);
+			avgBrCrVol[offset] += mtxCVol;
+			avgBrDr[offset] += dataMtx.getMoney(b, ts, offset, MarketTxCube.DEBIT);
+			avgBrDrVol[offset] += mtxDVol;
+
+			// The hourAhead transactions
+			row[4*offset] = mtxD;
+			row[4*offset+1] = mtxDVol;
+			row[4*offset+2] = mtxC;
+			row[4*offset+3] = mtxCVol;
 		}
-		
-		// Now print balancing tx
+
+		// Now the balancing tx; zero is written as a blank, which means none
+		row[96] = Double.NaN;
+		row[97] = Double.NaN;
+		row[98] = Double.NaN;
+		row[99] = Double.NaN;
 		HashMap<Integer, BalancingTransaction> tsbtx = dataBtx.get(broker);
-		if(tsbtx == null) {
-			printVals(output, 0);
-			printVals(output, 0);
-			printVals(output, 0);
-			printVals(output, 0);
-		}
-		else {
+		if(tsbtx != null) {
 			BalancingTransaction btx = tsbtx.get(ts);
 			if(btx != null) {
 				double charge = btx.getCharge();
-				double balDr = 0;
-				double balDrVol = 0;
-				double balCr = 0;
-				double balCrVol = 0;
 				double vol = (btx.getKWh()/1000)*(-1); // changing the volume as negative means deficit in bal
 				if(vol > 0) // Credit of Energy i.e. Have to Buy
 				{
-					balCr = charge;
-					balCrVol = vol;
+					row[98] = blankIfZero(charge);
+					row[99] = blankIfZero(vol);
 					avgBalCr += charge;
 					avgBalCrVol += vol;
 				}
 				else {
-					balDr = charge;
-					balDrVol = vol;
+					row[96] = blankIfZero(charge);
+					row[97] = blankIfZero(vol);
 					avgBalDr += charge;
 					avgBalDrVol += vol;
 				}
 				totalImbalance += vol;
-				printVals(output, balDr);
-				printVals(output, balDrVol);
-				printVals(output, balCr);
-				printVals(output, balCrVol);
 			}
-			else
-			{
-				printVals(output, 0);
-				printVals(output, 0);
-				printVals(output, 0);
-				printVals(output, 0);
-			}
-		}
-	}
-
-	public void printTSEmptyValsForBroker(){
-		for(int offset=0; offset<=23; offset++){
-			// Debit transaction
-			printVals(output, 0);
-			printVals(output, 0);
-			// Credit transaction
-			printVals(output, 0);
-			printVals(output, 0);
 		}
 	}
 
 	public void printVals(PrintWriter output, double vals){
-		if(vals == 0)
+		if(vals == 0 || Double.isNaN(vals))
 			output.format(",");
 		else
 			output.format(",%.4f", vals);
@@ -413,10 +390,10 @@ implements Analyzer
 				}
 			}
 
-			dataMtx = new HashMap<>();
+			brokerIndex = new DenseIndex<>(brokerList);
+			dataMtx = new MarketTxCube(brokerIndex.size(), 24);
 			dataBtx = new HashMap<>();
 			for (Broker broker: brokerList) {
-				dataMtx.put(broker, null);
 				dataBtx.put(broker, null);
 			}
 		}
@@ -468,48 +445,21 @@ implements Analyzer
 			int target = mtx.getTimeslotIndex();
 			int offset = target - now - indexOffset;
 			
-			Broker broker = mtx.getBroker();
-			if (!brokerList.contains(broker)){
-				//System.out.println(broker.getUsername() + " not in the list.");
-				return;
-			}
-
-			HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>> tsmtx = dataMtx.get(broker);
-
-			if(tsmtx == null){
-				tsmtx = new HashMap<Integer, HashMap<Integer, ArrayList<MarketTransaction>>>();
-				HashMap<Integer, ArrayList<MarketTransaction>> hamtx = new HashMap<Integer, ArrayList<MarketTransaction>>();
-				ArrayList<MarketTransaction> arrmtx = new ArrayList<MarketTransaction>();
-				arrmtx.add(mtx);
-				hamtx.put(offset,arrmtx);
-				tsmtx.put(target, hamtx);
-				dataMtx.put(broker,tsmtx);
+			int b = brokerIndex.indexOf(mtx.getBroker());
+			if (b < 0){
 				return;
 			}
 
-			HashMap<Integer, ArrayList<MarketTransaction>> hamtx = tsmtx.get(target);
-
 			if (offset < 0 || offset > 23) {
 				// problem
 				System.out.println("ClearedTrade index error: " + offset);
 			}
 			else {
-				if(hamtx == null){
-					hamtx = new HashMap<Integer, ArrayList<MarketTransaction>>();
-					ArrayList<MarketTransaction> arrmtx = new ArrayList<MarketTransaction>();
-					arrmtx.add(mtx);
-					hamtx.put(offset,arrmtx);
-					tsmtx.put(target, hamtx);
-					return;
-				}
-
-				ArrayList<MarketTransaction> arrmtx = hamtx.get(offset);
-				if (null == arrmtx) {
-					arrmtx = new ArrayList<MarketTransaction>();
-				}
-				arrmtx.add(mtx);
-				hamtx.put(offset, arrmtx);
-				//System.out.println("Mtx added for "+broker.getUsername());
+				int side = MarketTxCube.DEBIT;
+				if (mtx.getMWh() > 0.0)
+					side = MarketTxCube.CREDIT;
+				dataMtx.add(b, target, offset, side,
+						Math.abs(mtx.getMWh()) * mtx.getPrice(), mtx.getMWh());
 			}
 		}
 	}
@@ -523,10 +473,7 @@ implements Analyzer
 		public void handleNewObject (Object thing)
 		{
 			if (ignoreCount-- <= 0) {
-				int timeslotSerial = timeslotRepo.currentSerialNumber();
-				if (null == data.get(timeslotSerial)) {
-					data.put(timeslotSerial, new ClearedTrade[24]);
-				}
+				data.addTimeslot(timeslotRepo.currentSerialNumber());
 				/*if(balTxNum != (n+1))
 					System.out.println("Balancing Tx missmatch: balTxNum " + balTxNum + " Total Broker " + (n+1));*/
 				balTxNum = 0;
@@ -17,8 +17,9 @@ package org.powertac.logtool.example;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.apache.logging.log4j.Logger;
@@ -28,11 +29,12 @@ import org.powertac.common.BalancingTransaction;
 import org.powertac.common.Broker;
 import org.powertac.common.Competition;
 import org.powertac.common.TariffTransaction;
+import org.powertac.common.msg.BalanceReport;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
 import org.powertac.logtool.LogtoolContext;
+import org.powertac.logtool.example.TimeslotPhaseTracker.Phase;
 import org.powertac.logtool.ifc.Analyzer;
-import org.powertac.util.Pair;
 
 /**
  * Example analysis class.
@@ -47,35 +49,44 @@ import org.powertac.util.Pair;
  * 
  * The data file contains per-timeslot imbalance for each broker, along with
  * aggregate imbalance and overall consumption.
+ *
+ * Usage:
+ * <pre>
+ * ImbalanceStats [--save stats-file] input-file output-file
+ * ImbalanceStats --merge stats-file...
+ * </pre>
+ * The summary figures are kept in an ImbalanceTotals. --save also writes
+ * it to a file, and --merge prints the summary for any number of saved
+ * files combined, read in parallel.
+ *
+ * Timeslot boundaries and the phase of each transaction come from a
+ * TimeslotPhaseTracker. Consumption is taken from customer and regulation
+ * TariffTransactions, imbalance from BalancingTransactions.
  * 
  * @author John Collins
  */
 public class ImbalanceStats
 extends LogtoolContext
-implements Analyzer
+implements Analyzer, TimeslotPhaseTracker.PhaseListener
 {
   static private Logger log = LogManager.getLogger(ImbalanceStats.class.getName());
 
   private BrokerRepo brokerRepo;
+  private TimeslotPhaseTracker phases;
 
-  // list of BalancingTransactions for current timeslot
+  // BalancingTransactions and consumption for current timeslot
   private HashMap<Broker, BalancingTransaction> btx;
-  private HashMap<Broker, ArrayList<TariffTransaction>> ttx;
+  private HashMap<Broker, Double> ttx;
 
-  // daily total imbalances, indexed by timeslot
+  // running imbalance statistics
   private int timeslot = 0;
   private int tsIndex = 0; // actual timeslot index 
-  private ArrayList<Double> dailyImbalance;
-
-  // daily per-broker imbalance, cost
-  private HashMap<Broker, ArrayList<Pair<Double, Double>>> dailyBrokerImbalance;
-
-  // daily tariff transactions
-  private HashMap<Broker, ArrayList<ArrayList<TariffTransaction>>> dailyTraffic;
+  private ImbalanceTotals totals;
 
   // data output file
   private PrintWriter data = null;
   private String dataFilename = "data.txt";
+  private String saveFilename = null;
   private boolean dataInit = false;
 
   private Competition competition;
@@ -99,16 +110,29 @@ implements Analyzer
   }
   
   /**
-   * Takes two args, input filename and output filename
+   * Takes two args, input filename and output filename, optionally
+   * preceded by --save stats-file; or --merge and stats files.
    */
   private void cli (String[] args)
   {
-    if (args.length != 2) {
-      System.out.println("Usage: <analyzer> input-file output-file");
+    if (args.length >= 2 && args[0].equals("--merge")) {
+      merge(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    int argOffset = 0;
+    if (args.length > 1 && args[0].equals("--save")) {
+      saveFilename = args[1];
+      argOffset = 2;
+    }
+    if (args.length - argOffset != 2) {
+      System.out.println("Usage: <analyzer> [--save stats-file] input-file output-file");
+      System.out.println("       <analyzer> --merge stats-file...");
       return;
     }
-    dataFilename = args[1];
-    super.cli(args[0], this);
+    dataFilename = args[argOffset + 1];
+    LogLineFilter.read(args[argOffset],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -121,10 +145,11 @@ implements Analyzer
   {
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
     btx = new HashMap<Broker, BalancingTransaction>();
-    ttx = new HashMap<Broker, ArrayList<TariffTransaction>>();
-    dailyImbalance = new ArrayList<Double>();
-    dailyBrokerImbalance = new HashMap<Broker, ArrayList<Pair<Double, Double>>>();
-    dailyTraffic = new HashMap<Broker, ArrayList<ArrayList<TariffTransaction>>>();
+    ttx = new HashMap<Broker, Double>();
+    totals = new ImbalanceTotals();
+    timeslot = 0;
+    phases = new TimeslotPhaseTracker();
+    phases.addListener(this);
 
     try {
       data = new PrintWriter(new File(dataFilename));
@@ -138,55 +163,61 @@ implements Analyzer
   @Override
   public void report ()
   {
-    // compute RMS imbalance
-    double sum = 0.0;
-    double sumsq = 0.0;
-    for (Double imbalance : dailyImbalance) {
-      sum += imbalance;
-      sumsq += imbalance * imbalance;
-    }
+    totals.endGame();
     System.out.println("Game " + Competition.currentCompetition().getName()
                        + ", " + timeslot + " timeslots");
-    System.out.println("Total imbalance = " + sum);
-    System.out.println("RMS imbalance = "
-                       + Math.sqrt(sumsq / dailyImbalance.size()));
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      reportBrokerImbalance(broker);
+    printSummary(totals);
+    data.close();
+    if (null != saveFilename) {
+      try {
+        totals.write(saveFilename);
+      }
+      catch (IOException e) {
+        log.error("Cannot write " + saveFilename + ": " + e.toString());
+      }
     }
   }
-  
+
+  // Prints the summary for saved totals from several games
+  private void merge (String[] statsFiles)
+  {
+    try {
+      ImbalanceTotals merged = ImbalanceTotals.merge(statsFiles);
+      System.out.println(merged.getGames() + " games, "
+                         + merged.getMarket().getCount() + " timeslots");
+      printSummary(merged);
+    }
+    catch (InterruptedException e) {
+      log.error("Merge interrupted");
+    }
+  }
+
+  private void printSummary (ImbalanceTotals result)
+  {
+    ImbalanceTotals.Stats market = result.getMarket();
+    System.out.println("Total imbalance = " + market.getTotal());
+    System.out.println("RMS imbalance = " + market.getRms());
+    for (String broker : result.getBrokerNames()) {
+      reportBrokerImbalance(broker, result.getBroker(broker));
+    }
+  }
+
   // Reports individual broker imbalance stats
   // Results include RMS imbalance, average imbalance,
   // total imbalance cost, and mean contribution to total
   // imbalance
-  private void reportBrokerImbalance (Broker broker)
+  private void reportBrokerImbalance (String broker,
+                                      ImbalanceTotals.Stats stats)
   {
-    double sumsq = 0.0;
-    double imbalanceSum = 0.0;
-    double deliveredSum = 0.0;
-    double contributionSum = 0.0;
-    double cost = 0.0;
-    ArrayList<Pair<Double, Double>> brokerRecord =
-            dailyBrokerImbalance.get(broker);
-    ArrayList<ArrayList<TariffTransaction>> deliveries =
-            dailyTraffic.get(broker);
-    for (int i = 0; i < dailyImbalance.size(); i++) {
-      double total = dailyImbalance.get(i);
-      double individual = brokerRecord.get(i).car();
-      sumsq += individual * individual;
-      imbalanceSum += individual;
-      double sgn = Math.signum(individual) * Math.signum(total);
-      contributionSum += Math.abs(individual) * sgn;
-      cost += brokerRecord.get(i).cdr();
-      for (TariffTransaction tx : deliveries.get(i))
-        deliveredSum += tx.getKWh();
-    }
-    int count = dailyImbalance.size();
-    System.out.println("Broker " + broker.getUsername()
-                       + "\n  RMS imbalance = " + Math.sqrt(sumsq / count)
+    long count = stats.getCount();
+    double imbalanceSum = stats.getTotal();
+    double cost = stats.getCost();
+    System.out.println("Broker " + broker
+                       + "\n  RMS imbalance = " + stats.getRms()
                        + "\n  mean imbalance = " + imbalanceSum / count
-                       + "\n  imbalance ratio = " + imbalanceSum / deliveredSum
-                       + "\n  mean contribution = " + contributionSum / count
+                       + "\n  imbalance std dev = " + Math.sqrt(stats.getVariance())
+                       + "\n  imbalance ratio = " + imbalanceSum / stats.getConsumption()
+                       + "\n  mean contribution = " + stats.getContribution() / count
                        + "\n  mean cost = " + cost / count
                        + "(" + cost / imbalanceSum + "/kwh)");
   }
@@ -199,60 +230,53 @@ implements Analyzer
   private void summarizeTimeslot ()
   {
     // skip initial timeslot(s) without data, initialize data structures
-    if (0 == btx.size() && 0 == dailyImbalance.size()) {
+    if (0 == btx.size() && 0 == timeslot) {
       initTxList();
       initData();
       for (Broker broker : brokerRepo.findRetailBrokers()) {
-        dailyBrokerImbalance.put(broker,
-                                 new ArrayList<Pair<Double, Double>>());
-        dailyTraffic.put(broker,
-                         new ArrayList<ArrayList<TariffTransaction>>());
+        totals.getBroker(broker.getUsername());
       }
       return;
     }
 
-    // iterate through the balancing and tariff transactions
+    // total imbalance first, for the brokers' contributions
     double totalImbalance = 0.0;
+    double totalCost = 0.0;
     double totalConsumption = 0.0;
+    for (Broker broker : brokerRepo.findRetailBrokers()) {
+      BalancingTransaction bx = btx.get(broker);
+      if (null != bx) {
+        totalImbalance += bx.getKWh();
+        totalCost += bx.getCharge();
+      }
+    }
+    ImbalanceTotals.Stats market = totals.getMarket();
+    market.add(totalImbalance, totalCost, totalImbalance);
+
+    // iterate through the balancing and tariff transactions
     // start with game ID and timeslot
     data.printf("%s,%d", competition.getName(), tsIndex);
     for (Broker broker : brokerRepo.findRetailBrokers()) {
-      // capture summary data for printout
-      double balancingQty = 0.0;
-      double consumptionQty = 0.0;
+      ImbalanceTotals.Stats stats = totals.getBroker(broker.getUsername());
       // balancing tx first
       BalancingTransaction bx = btx.get(broker);
-      ArrayList<Pair<Double, Double>> entries = dailyBrokerImbalance.get(broker);
       if (null == bx) {
         // zero entries
-        entries.add(new Pair<Double, Double>(0.0, 0.0));
+        stats.add(0.0, 0.0, totalImbalance);
         data.print("," + "0.0");
       }
       else {
-        entries.add(new Pair<Double, Double>(bx.getKWh(), bx.getCharge()));
-        balancingQty = bx.getKWh();
-        data.print("," + balancingQty);
-        totalImbalance += bx.getKWh();
+        stats.add(bx.getKWh(), bx.getCharge(), totalImbalance);
+        data.print("," + bx.getKWh());
       }
       // tariff tx next
-      ArrayList<TariffTransaction> txs = ttx.get(broker);
-      ArrayList<ArrayList<TariffTransaction>> dailyTxs = 
-              dailyTraffic.get(broker);
-      if (null == txs) {
-        dailyTxs.add(new ArrayList<TariffTransaction>());
-      }
-      else {
-        for (TariffTransaction consumption : txs)
-          consumptionQty += consumption.getKWh();
+      Double consumptionQty = ttx.get(broker);
+      if (null != consumptionQty) {
+        stats.addConsumption(consumptionQty, 0.0);
+        market.addConsumption(consumptionQty, 0.0);
         totalConsumption += consumptionQty;
-        dailyTxs.add(txs);
-        ttx.put(broker, null);
       }
-      //log.info("ts " + timeslot + ", broker " + broker.getUsername()
-      //         + ": consumption = " + consumptionQty
-      //         + ", balance qty = " + balancingQty);
     }
-    dailyImbalance.add(totalImbalance);
     data.println("," + totalImbalance + "," + totalConsumption);
     timeslot += 1;
     initTxList();
@@ -262,12 +286,7 @@ implements Analyzer
   {
     for (Broker broker : brokerRepo.findRetailBrokers()) {
       btx.put(broker, null);
-      ArrayList<TariffTransaction> txList = ttx.get(broker);
-      if (null == txList) {
-        txList = new ArrayList<TariffTransaction>();
-        ttx.put(broker, txList);
-      }
-      txList.clear();
+      ttx.put(broker, null);
     }
   }
   
@@ -287,22 +306,25 @@ implements Analyzer
   // catch BalancingTransactions
   public void handleMessage (BalancingTransaction tx)
   {
-    btx.put(tx.getBroker(), tx);
+    if (Phase.BalTx == phases.balancingTransaction(tx))
+      btx.put(tx.getBroker(), tx);
   } 
 
   // -----------------------------------
   // catch TariffTransactions
   public void handleMessage (TariffTransaction tx)
   {
+    // Transactions before the first TimeslotUpdate belong to no timeslot
+    // and are dropped. They never reached the output before either, since
+    // setting up the lists at the first timeslot cleared them.
+    Phase phase = phases.tariffTransaction(tx);
+    if (Phase.CustTx != phase && Phase.RegTx != phase)
+      return;
     // only include consumption
     if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
       //|| tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-      ArrayList<TariffTransaction> txList = ttx.get(tx.getBroker());
-      if (null == txList) {
-        txList = new ArrayList<TariffTransaction>();
-        ttx.put(tx.getBroker(), txList);
-      }
-      txList.add(tx);
+      Double sum = ttx.get(tx.getBroker());
+      ttx.put(tx.getBroker(), (null == sum) ? tx.getKWh() : sum + tx.getKWh());
     }
   }
 
@@ -314,6 +336,21 @@ implements Analyzer
       competition = Competition.currentCompetition();
     tsIndex = ts.getFirstEnabled()
         - competition.getDeactivateTimeslotsAhead();
-    summarizeTimeslot();
+    phases.timeslotUpdate(ts);
+  }
+
+  // -----------------------------------
+  // catch the BalanceReport
+  public void handleMessage (BalanceReport rpt)
+  {
+    phases.balanceReport(rpt);
+  }
+
+  // Each TimeslotUpdate ends the previous timeslot
+  @Override
+  public void onPhaseEnd (Phase phase, int ts)
+  {
+    if (Phase.TsUpd == phase)
+      summarizeTimeslot();
   }
 }
@@ -17,8 +17,9 @@ package org.powertac.logtool.example;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.apache.logging.log4j.Logger;
@@ -57,7 +58,17 @@ import org.powertac.logtool.ifc.Analyzer;
  * line per broker
  *  broker-name,c_broker,cr_broker,p_broker,pr_broker,i_broker,i_rms-broker,ir_broker
  * where the fields are per-broker versions of the aggregate data.
- * 
+ *
+ * Usage:
+ * <pre>
+ * ImbalanceSummary [--save stats-file] input-file output-file
+ * ImbalanceSummary --merge output-file stats-file...
+ * </pre>
+ * The figures are kept in an ImbalanceTotals. --save also writes it to a
+ * file, and --merge combines any number of saved files, read in parallel,
+ * into one summary in the same format, with game-id "merged" and the
+ * number of games in place of n_brokers.
+ *
  * @author John Collins
  */
 public class ImbalanceSummary
@@ -70,16 +81,16 @@ implements Analyzer
 
   // Transactions for current timeslot
   private HashMap<Broker, BalancingTransaction> btx = null;
-  private HashMap<Broker, ArrayList<TariffTransaction>> ttx = null;
+  private HashMap<Broker, TimeslotData> ttx = null;
 
-  // hourly data, indexed by timeslot
+  // running totals
   private int timeslot = 0;
-  private ArrayList<TimeslotData> aggregateData;
-  private HashMap<Broker, ArrayList<TimeslotData>> hourlyData;
+  private ImbalanceTotals totals;
 
   // data output file
   private PrintWriter data = null;
   private String dataFilename = "data.txt";
+  private String saveFilename = null;
 
   /**
    * Constructor does nothing. Call setup() before reading a file to
@@ -100,16 +111,30 @@ implements Analyzer
   }
   
   /**
-   * Takes two args, input filename and output filename
+   * Takes two args, input filename and output filename, optionally
+   * preceded by --save stats-file; or --merge, output filename and
+   * stats files.
    */
   private void cli (String[] args)
   {
-    if (args.length != 2) {
-      System.out.println("Usage: <analyzer> input-file output-file");
+    if (args.length >= 3 && args[0].equals("--merge")) {
+      merge(args[1], Arrays.copyOfRange(args, 2, args.length));
       return;
     }
-    dataFilename = args[1];
-    super.cli(args[0], this);
+    int argOffset = 0;
+    if (args.length > 1 && args[0].equals("--save")) {
+      saveFilename = args[1];
+      argOffset = 2;
+    }
+    if (args.length - argOffset != 2) {
+      System.out.println("Usage: <analyzer> [--save stats-file] input-file output-file");
+      System.out.println("       <analyzer> --merge output-file stats-file...");
+      return;
+    }
+    dataFilename = args[argOffset + 1];
+    LogLineFilter.read(args[argOffset],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -121,6 +146,9 @@ implements Analyzer
   public void setup ()
   {
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
+    totals = new ImbalanceTotals();
+    btx = null;
+    timeslot = 0;
     try {
       data = new PrintWriter(new File(dataFilename));
     }
@@ -132,40 +160,61 @@ implements Analyzer
   @Override
   public void report ()
   {
-    TimeslotData totals = new TimeslotData();
-    for (TimeslotData tsData: aggregateData) {
-      totals.add(tsData);
-    }
-    double rms = Math.sqrt(totals.imbalanceSumSq / aggregateData.size());
+    totals.endGame();
+    ImbalanceTotals.Stats market = totals.getMarket();
     System.out.println("Game " + Competition.currentCompetition().getName()
                        + ", " + timeslot + " timeslots");
-    System.out.println("Total imbalance = " + totals.imbalance);
-    System.out.println("RMS imbalance = " + rms);
-    data.print(String.format("%s,%d,",
-                             Competition.currentCompetition().getName(),
-                             hourlyData.size() - 1));
-    data.println(totals.formatWithRms(rms));
+    System.out.println("Total imbalance = " + market.getTotal());
+    System.out.println("RMS imbalance = " + market.getRms());
+    writeSummary(data, Competition.currentCompetition().getName(),
+                 totals.getBrokerNames().size() - 1, totals);
+    data.close();
+    if (null != saveFilename) {
+      try {
+        totals.write(saveFilename);
+      }
+      catch (IOException e) {
+        log.error("Cannot write " + saveFilename + ": " + e.toString());
+      }
+    }
+  }
 
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      reportByBroker(broker);
+  // Combines saved totals from several games
+  private void merge (String outputFilename, String[] statsFiles)
+  {
+    try (PrintWriter out = new PrintWriter(new File(outputFilename))) {
+      ImbalanceTotals merged = ImbalanceTotals.merge(statsFiles);
+      System.out.println(merged.getGames() + " games");
+      System.out.println("Total imbalance = " + merged.getMarket().getTotal());
+      System.out.println("RMS imbalance = " + merged.getMarket().getRms());
+      writeSummary(out, "merged", merged.getGames(), merged);
+    }
+    catch (FileNotFoundException e) {
+      log.error("Cannot open file " + outputFilename);
+    }
+    catch (InterruptedException e) {
+      log.error("Merge interrupted");
     }
-    data.close();
   }
 
-  // Reports individual broker imbalance stats
-  // Results include RMS imbalance, average imbalance,
-  // total imbalance cost, and mean contribution to total
-  // imbalance
-  private void reportByBroker (Broker broker)
+  // Writes the aggregate line and one line per broker
+  private void writeSummary (PrintWriter out, String id, int n,
+                             ImbalanceTotals result)
   {
-    TimeslotData total = new TimeslotData();
-    ArrayList<TimeslotData> brokerData = hourlyData.get(broker);
-    for (TimeslotData tsData: brokerData) {
-      total.add(tsData);
+    out.print(String.format("%s,%d,", id, n));
+    out.println(format(result.getMarket()));
+    for (String broker : result.getBrokerNames()) {
+      out.print(broker + ",");
+      out.println(format(result.getBroker(broker)));
     }
-    double rms = Math.sqrt(total.imbalanceSumSq / brokerData.size());
-    data.print(broker.getUsername() + ",");
-    data.println(total.formatWithRms(rms));
+  }
+
+  private String format (ImbalanceTotals.Stats stats)
+  {
+    return String.format("%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f",
+                         stats.getConsumption(), stats.getIncome(),
+                         stats.getProduction(), stats.getExpense(),
+                         stats.getTotal(), stats.getRms(), stats.getCost());
   }
 
   // Called on timeslotUpdate. Note that there are two of these before
@@ -178,37 +227,36 @@ implements Analyzer
     // skip initial timeslot(s) without data, initialize data structures
     if (null == btx) {
       initData();
-      initTxList();
       return;
     }
 
-    // iterate through the balancing and tariff transactions for each broker
+    // market imbalance first, for the brokers' contributions
+    double marketImbalance = 0.0;
+    double marketCost = 0.0;
     for (Broker broker : brokerRepo.findRetailBrokers()) {
-      TimeslotData tsData = new TimeslotData();
-      hourlyData.get(broker).add(tsData);
-      TimeslotData aggregate = new TimeslotData();
-      aggregateData.add(aggregate);
-      // balancing tx first
       BalancingTransaction bx = btx.get(broker);
       if (null != bx) {
-        tsData.imbalance = bx.getKWh();
-        aggregate.imbalance += bx.getKWh();
-        tsData.imbalanceCost = bx.getCharge();
-        aggregate.imbalanceCost += bx.getCharge();
+        marketImbalance += bx.getKWh();
+        marketCost += bx.getCharge();
       }
-      for (TariffTransaction tx: ttx.get(broker)) {
-        if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
-          tsData.consumption += tx.getKWh();
-          aggregate.consumption += tx.getKWh();
-          tsData.income += tx.getCharge();
-          aggregate.income += tx.getCharge();
-        }
-        else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-          tsData.production += tx.getKWh();
-          aggregate.production += tx.getKWh();
-          tsData.expense += tx.getCharge();
-          aggregate.expense += tx.getCharge();
-        }
+    }
+    ImbalanceTotals.Stats market = totals.getMarket();
+    market.add(marketImbalance, marketCost, marketImbalance);
+
+    // then the balancing and tariff totals for each broker
+    for (Broker broker : brokerRepo.findRetailBrokers()) {
+      ImbalanceTotals.Stats stats = totals.getBroker(broker.getUsername());
+      BalancingTransaction bx = btx.get(broker);
+      if (null != bx)
+        stats.add(bx.getKWh(), bx.getCharge(), marketImbalance);
+      else
+        stats.add(0.0, 0.0, marketImbalance);
+      TimeslotData tsData = ttx.get(broker);
+      if (null != tsData) {
+        stats.addConsumption(tsData.consumption, tsData.income);
+        stats.addProduction(tsData.production, tsData.expense);
+        market.addConsumption(tsData.consumption, tsData.income);
+        market.addProduction(tsData.production, tsData.expense);
       }
     }
     timeslot += 1;
@@ -219,25 +267,23 @@ implements Analyzer
   {
     for (Broker broker : brokerRepo.findRetailBrokers()) {
       btx.put(broker, null);
-      ArrayList<TariffTransaction> txList = ttx.get(broker);
-      if (null == txList) {
-        txList = new ArrayList<TariffTransaction>();
-        ttx.put(broker, txList);
+      TimeslotData tsData = ttx.get(broker);
+      if (null == tsData) {
+        tsData = new TimeslotData();
+        ttx.put(broker, tsData);
       }
-      txList.clear();
+      tsData.clear();
     }
   }
   
   private void initData ()
   {
     btx = new HashMap<Broker, BalancingTransaction>();
-    ttx = new HashMap<Broker, ArrayList<TariffTransaction>>();
+    ttx = new HashMap<Broker, TimeslotData>();
     initTxList();
-    hourlyData = new HashMap<Broker, ArrayList<TimeslotData>>();
     for (Broker broker : brokerRepo.findRetailBrokers()) {
-      hourlyData.put(broker, new ArrayList<TimeslotData>());
+      totals.getBroker(broker.getUsername());
     }
-    aggregateData = new ArrayList<TimeslotData>();
   }
 
   // -------------------------------
@@ -245,6 +291,8 @@ implements Analyzer
   // We assume there is at most one balancing tx per broker in each timeslot.
   public void handleMessage (BalancingTransaction tx)
   {
+    if (null == btx)
+      return;
     btx.put(tx.getBroker(), tx);
   } 
 
@@ -252,14 +300,20 @@ implements Analyzer
   // catch TariffTransactions
   public void handleMessage (TariffTransaction tx)
   {
-    // only include consumption
-    if (tx.getTxType() == TariffTransaction.Type.CONSUME
-        || tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-      ArrayList<TariffTransaction> txList = ttx.get(tx.getBroker());
-      if (null == txList) {
-        System.err.println("Error: null txList");
-      }
-      txList.add(tx);
+    if (null == ttx)
+      return;
+    TimeslotData tsData = ttx.get(tx.getBroker());
+    if (null == tsData) {
+      System.err.println("Error: null txList");
+      return;
+    }
+    if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
+      tsData.consumption += tx.getKWh();
+      tsData.income += tx.getCharge();
+    }
+    else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
+      tsData.production += tx.getKWh();
+      tsData.expense += tx.getCharge();
     }
   } 
 
@@ -271,39 +325,25 @@ implements Analyzer
   }
 
   // --------------------------------------
-  // data holder
+  // tariff totals for one broker in the current timeslot
   class TimeslotData
   {
     double production = 0.0;
     double expense = 0.0;
     double consumption = 0.0;
     double income = 0.0;
-    double imbalance = 0.0;
-    double imbalanceSumSq = 0.0;
-    double imbalanceCost = 0.0;
 
     TimeslotData ()
     {
       super();
     }
 
-    // Aggregates another item with this one
-    void add (TimeslotData data)
-    {
-      production += data.production;
-      expense += data.expense;
-      consumption += data.consumption;
-      income += data.income;
-      imbalance += data.imbalance;
-      imbalanceSumSq += data.imbalance * data.imbalance;
-      imbalanceCost += data.imbalanceCost;
-    }
-
-    public String formatWithRms (double rms)
+    void clear ()
     {
-      return String.format("%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f",
-                           consumption, income, production, expense,
-                           imbalance, rms, imbalanceCost);
+      production = 0.0;
+      expense = 0.0;
+      consumption = 0.0;
+      income = 0.0;
     }
   }
 }
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Imbalance statistics for the whole market and for each broker, kept as
+ * running totals rather than per-timeslot lists. Each Stats holds a
+ * Welford mean and variance of the per-timeslot imbalance, its sum of
+ * squares for RMS, and totals of imbalance cost, contribution to the
+ * market imbalance, and tariff consumption and production.
+ *
+ * Totals from different games merge exactly, in any order, with brokers
+ * matched by name. An analyzer saves its totals with write(); merge()
+ * reads any number of saved files on a thread pool and combines them, so
+ * tournament figures come from one parallel run over the per-game files.
+ */
+public class ImbalanceTotals
+{
+  static private Logger log =
+      LogManager.getLogger(ImbalanceTotals.class.getName());
+
+  private static final long MAGIC = 0x494D42414C31L; // "IMBAL1"
+
+  private int games = 0;
+  private Stats market = new Stats();
+  private LinkedHashMap<String, Stats> brokers = new LinkedHashMap<>();
+
+  public ImbalanceTotals ()
+  {
+    super();
+  }
+
+  /** Stats for the whole market */
+  public Stats getMarket ()
+  {
+    return market;
+  }
+
+  /** Stats for the named broker, created if needed */
+  public Stats getBroker (String name)
+  {
+    Stats result = brokers.get(name);
+    if (null == result) {
+      result = new Stats();
+      brokers.put(name, result);
+    }
+    return result;
+  }
+
+  /** Broker names, in the order they were first seen */
+  public Set<String> getBrokerNames ()
+  {
+    return brokers.keySet();
+  }
+
+  /** Number of games included */
+  public int getGames ()
+  {
+    return games;
+  }
+
+  /** Marks the end of a game */
+  public void endGame ()
+  {
+    games += 1;
+  }
+
+  public void merge (ImbalanceTotals other)
+  {
+    games += other.games;
+    market.merge(other.market);
+    for (String name: other.brokers.keySet()) {
+      getBroker(name).merge(other.brokers.get(name));
+    }
+  }
+
+  public void write (String filename) throws IOException
+  {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+      out.writeLong(MAGIC);
+      out.writeInt(games);
+      market.write(out);
+      out.writeInt(brokers.size());
+      for (String name: brokers.keySet()) {
+        out.writeUTF(name);
+        brokers.get(name).write(out);
+      }
+    }
+  }
+
+  public static ImbalanceTotals read (String filename) throws IOException
+  {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+      if (in.readLong() != MAGIC)
+        throw new IOException(filename + " is not an imbalance stats file");
+      ImbalanceTotals result = new ImbalanceTotals();
+      result.games = in.readInt();
+      result.market.read(in);
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        result.getBroker(name).read(in);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Reads the saved files in parallel and returns their combined totals.
+   * Files that cannot be read are reported and skipped.
+   */
+  public static ImbalanceTotals merge (String[] filenames)
+    throws InterruptedException
+  {
+    return SavedFiles.merge(filenames, ImbalanceTotals::read,
+                            new ImbalanceTotals(), ImbalanceTotals::merge);
+  }
+
+  /**
+   * Running statistics for one broker, or for the market.
+   */
+  public static class Stats
+  {
+    private long count = 0;
+    private double mean = 0.0;
+    private double m2 = 0.0; // sum of squared deviations from the mean
+    private double sum = 0.0;
+    private double sumSquares = 0.0;
+    private double cost = 0.0;
+    private double contribution = 0.0;
+    private double consumption = 0.0;
+    private double income = 0.0;
+    private double production = 0.0;
+    private double expense = 0.0;
+
+    /**
+     * Adds one timeslot's imbalance and its cost. The market imbalance in
+     * the same timeslot gives the contribution: the size of the imbalance,
+     * positive if it has the same sign as the market's, else negative.
+     */
+    public void add (double imbalance, double charge, double marketImbalance)
+    {
+      count += 1;
+      double delta = imbalance - mean;
+      mean += delta / count;
+      m2 += delta * (imbalance - mean);
+      sum += imbalance;
+      sumSquares += imbalance * imbalance;
+      cost += charge;
+      contribution += Math.abs(imbalance)
+          * Math.signum(imbalance) * Math.signum(marketImbalance);
+    }
+
+    public void addConsumption (double kWh, double charge)
+    {
+      consumption += kWh;
+      income += charge;
+    }
+
+    public void addProduction (double kWh, double charge)
+    {
+      production += kWh;
+      expense += charge;
+    }
+
+    // Chan et al. pairwise combination of mean and variance
+    public void merge (Stats other)
+    {
+      if (0 == other.count) {
+        cost += other.cost;
+        addTariff(other);
+        return;
+      }
+      long n = count + other.count;
+      double delta = other.mean - mean;
+      mean += delta * other.count / n;
+      m2 += other.m2 + delta * delta * count * other.count / n;
+      count = n;
+      sum += other.sum;
+      sumSquares += other.sumSquares;
+      cost += other.cost;
+      contribution += other.contribution;
+      addTariff(other);
+    }
+
+    private void addTariff (Stats other)
+    {
+      consumption += other.consumption;
+      income += other.income;
+      production += other.production;
+      expense += other.expense;
+    }
+
+    /** Number of timeslots */
+    public long getCount ()
+    {
+      return count;
+    }
+
+    public double getTotal ()
+    {
+      return sum;
+    }
+
+    public double getMean ()
+    {
+      return (0 == count) ? Double.NaN : mean;
+    }
+
+    /** Population variance of the per-timeslot imbalance */
+    public double getVariance ()
+    {
+      return (0 == count) ? Double.NaN : m2 / count;
+    }
+
+    public double getRms ()
+    {
+      return Math.sqrt(sumSquares / count);
+    }
+
+    public double getCost ()
+    {
+      return cost;
+    }
+
+    public double getContribution ()
+    {
+      return contribution;
+    }
+
+    public double getConsumption ()
+    {
+      return consumption;
+    }
+
+    public double getIncome ()
+    {
+      return income;
+    }
+
+    public double getProduction ()
+    {
+      return production;
+    }
+
+    public double getExpense ()
+    {
+      return expense;
+    }
+
+    void write (DataOutput out) throws IOException
+    {
+      out.writeLong(count);
+      out.writeDouble(mean);
+      out.writeDouble(m2);
+      out.writeDouble(sum);
+      out.writeDouble(sumSquares);
+      out.writeDouble(cost);
+      out.writeDouble(contribution);
+      out.writeDouble(consumption);
+      out.writeDouble(income);
+      out.writeDouble(production);
+      out.writeDouble(expense);
+    }
+
+    void read (DataInput in) throws IOException
+    {
+      count = in.readLong();
+      mean = in.readDouble();
+      m2 = in.readDouble();
+      sum = in.readDouble();
+      sumSquares = in.readDouble();
+      cost = in.readDouble();
+      contribution = in.readDouble();
+      consumption = in.readDouble();
+      income = in.readDouble();
+      production = in.readDouble();
+      expense = in.readDouble();
+    }
+  }
+}
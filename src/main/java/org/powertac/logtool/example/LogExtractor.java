@@ -20,7 +20,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.HashMap;
@@ -67,7 +69,7 @@ import org.powertac.common.WeatherForecastPrediction;
  * 
  * @author John Collins
  */
-public class LogExtractor extends LogtoolContext implements Analyzer {
+public class LogExtractor extends LogtoolContext implements Analyzer, ResidentAnalyzer {
 //	static private Logger log = Logger.getLogger(MktPriceStats.class.getName());
 
 	// service references
@@ -81,12 +83,16 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 	private int ignoreCount = 0;
 	private int indexOffset = 0; // should be
 									// Competition.deactivateTimeslotsAhead - 1
-	public static int numberofbrokers = 0;
+	private int numberofbrokers = 0;
 	private PrintWriter output = null;
 	private PrintWriter debug = null;
 	private String dataFilename = "clearedTrades.arff";
+	private Object listenerReader = null; // reader our listeners are on
 	private String writeAttributes = "0";
 	public double brokerID;
+	private String focalBroker = "SPOT_PP3_BS0";
+	private boolean npy = false;
+	private NpyColumnWriter columns = null;
 
 	//public HashMap<Integer, PredictedClearingPrice> marketClearingPricePredictionV0;
 
@@ -97,24 +103,61 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 	public static void main(String[] args) {
 		System.out.println("I am running");
 		System.gc();
-		new LogExtractor().cli(args);
+		new LogExtractor().cli(args, System.out);
 	}
 
 	/**
-	 * Takes two args, input filename and output filename
+	 * Takes three args, input filename, output filename and 1 to write the
+	 * ARFF header, optionally preceded by --broker name to choose the focal
+	 * broker (default SPOT_PP3_BS0), and by --npy to write the rows as a
+	 * directory of .npy columns (see NpyColumnWriter) instead of ARFF. In
+	 * that case the output filename names the directory, and rows are
+	 * added to any that are already there.
 	 */
-	private void cli(String[] args) {
+	@Override
+	public void cli(String[] args, PrintStream out) {
+		focalBroker = "SPOT_PP3_BS0";
+		npy = false;
+		while (args.length > 0 && args[0].startsWith("--")) {
+			if (args[0].equals("--broker") && args.length > 1) {
+				focalBroker = args[1].toUpperCase();
+				args = Arrays.copyOfRange(args, 2, args.length);
+			}
+			else if (args[0].equals("--npy")) {
+				npy = true;
+				args = Arrays.copyOfRange(args, 1, args.length);
+			}
+			else {
+				break;
+			}
+		}
 		if (args.length != 3) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+			out.println("Usage: <analyzer> [--broker name] [--npy] input-file output-file write-header");
 			return;
 		}
 		dataFilename = args[1];
 		writeAttributes = args[2];
 		if(writeAttributes.equalsIgnoreCase("1"))
-			System.out.println("its true " + writeAttributes);
+			out.println("its true " + writeAttributes);
 		else
-			System.out.println("its false " + writeAttributes);
-		super.cli(args[0], this);
+			out.println("its false " + writeAttributes);
+		// forecasts refer to their predictions, which are logged separately
+		LogLineFilter.read(args[0],
+				LogLineFilter.neededClasses(this,
+					Competition.class, Broker.class, TimeslotUpdate.class,
+					Timeslot.class, WeatherReport.class, Orderbook.class,
+					OrderbookOrder.class, WeatherForecast.class,
+					WeatherForecastPrediction.class),
+				(input) -> super.cli(input, this));
+	}
+
+	@Override
+	public void resetGame() {
+		orderbookCounter = new TreeMap<Integer, Integer>();
+		counter = 0;
+		numberofbrokers = 0;
+		ignoreCount = ignoreInitial;
+		marketData = new TreeMap<Integer, DataPerTimeSlot>();
 	}
 
 	/*
@@ -124,24 +167,53 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 	 */
 	@Override
 	public void setup() {
+		resetGame();
 
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
-		registerNewObjectListener(new CompetitionHandler(), Competition.class);
-		registerNewObjectListener(new BrokerHandler(), Broker.class);
-		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
-		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
-		registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
-		registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
-		registerNewObjectListener(new OrderbookOrderHandler(), OrderbookOrder.class);
-		registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
+		// a kept instance is set up once per game, but its listeners
+		// stay registered with the reader
+		Object reader = getBean("reader");
+		if (reader != listenerReader) {
+			listenerReader = reader;
+			registerNewObjectListener(new CompetitionHandler(), Competition.class);
+			registerNewObjectListener(new BrokerHandler(), Broker.class);
+			registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
+			registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
+			registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
+			registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
+			registerNewObjectListener(new OrderbookOrderHandler(), OrderbookOrder.class);
+			registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
+		}
 
-		ignoreCount = ignoreInitial;
 
-		marketData = new TreeMap<Integer, DataPerTimeSlot>();
 		try {
-			//output = new PrintWriter(new File(dataFilename));
-			FileWriter fw = new FileWriter(dataFilename, true);
-			output = new PrintWriter(new BufferedWriter(fw));
+			if (npy) {
+				// same columns as the ARFF attributes
+				columns = new NpyColumnWriter(dataFilename, true)
+						.column("numberofbrokers", NpyColumnWriter.Dtype.INT32)
+						.column("day_date", NpyColumnWriter.Dtype.INT32)
+						.column("month_date", NpyColumnWriter.Dtype.INT32)
+						.column("day", NpyColumnWriter.Dtype.INT32)
+						.column("hour", NpyColumnWriter.Dtype.INT32)
+						.column("hourAhead", NpyColumnWriter.Dtype.INT32)
+						.column("Temperature", NpyColumnWriter.Dtype.FLOAT64)
+						.column("CloudCover", NpyColumnWriter.Dtype.FLOAT64)
+						.column("WindDirection", NpyColumnWriter.Dtype.FLOAT64)
+						.column("WindSpeed", NpyColumnWriter.Dtype.FLOAT64)
+						.column("PrevHourClearingPrice", NpyColumnWriter.Dtype.FLOAT64)
+						.column("YesterdayClearingPrice", NpyColumnWriter.Dtype.FLOAT64)
+						.column("PrevOneWeekClearingPrice", NpyColumnWriter.Dtype.FLOAT64)
+						.column("aWeekSameHourAverageClearingPrice", NpyColumnWriter.Dtype.FLOAT64)
+						.column("PreviousHourN_1Price", NpyColumnWriter.Dtype.FLOAT64)
+						.column("YesterdayN_1Price", NpyColumnWriter.Dtype.FLOAT64)
+						.column("AWeekAgoN_1Price", NpyColumnWriter.Dtype.FLOAT64)
+						.column("ClearingPrice", NpyColumnWriter.Dtype.FLOAT64);
+			}
+			else {
+				//output = new PrintWriter(new File(dataFilename));
+				FileWriter fw = new FileWriter(dataFilename, true);
+				output = new PrintWriter(new BufferedWriter(fw));
+			}
 			debug =  new PrintWriter(new File("debug.txt"));
 		} catch (Exception e) {
 //			log.error("Cannot open file " + dataFilename);
@@ -156,6 +228,8 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 	@Override
 	public void report() {
 		
+		// running 7-day averages, updated as each timeslot is written
+		SlidingWindowStats weekStats = SlidingWindowStats.daily(24, 7);
 		for (Map.Entry<Integer, DataPerTimeSlot> entry : marketData.entrySet()) {
 			Integer timeslot = entry.getKey();
 			DataPerTimeSlot trades = entry.getValue();
@@ -232,26 +306,11 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 						aWeekAgoNHourN_1AuctionPrice[hourAheadAuction] = pHNA2.arrClearingPrices[hourAheadAuction+1];
 				}
 				
-				
-				int count[] = new int[24];
-				for(int i = 0; i < 7; i++){
-					for(int hourAheadAuction = 0; hourAheadAuction < 24; hourAheadAuction++)
-					{
-						int corresponsingTS = (timeslot-(24*(i+1))) + hourAheadAuction;
-
-						DataPerTimeSlot pHNA = marketData.get(corresponsingTS); 
-						if (pHNA != null){
-							if(pHNA.arrClearingPrices[hourAheadAuction] != 0)
-								count[hourAheadAuction]++;
-							aWeeksNHourNAuctionAverageClearingPrice[hourAheadAuction] += pHNA.arrClearingPrices[hourAheadAuction];
-						}
-					}
-				}
-				for(int j = 0; j < 24; j++)
-				{
-					if(count[j] > 0)
-						aWeeksNHourNAuctionAverageClearingPrice[j] /= count[j]; 
-				}	
+				// same hour, same auction over the previous 7 days, nonzero
+				// prices only
+				for(int hourAheadAuction = 0; hourAheadAuction < 24; hourAheadAuction++)
+					aWeeksNHourNAuctionAverageClearingPrice[hourAheadAuction] =
+							weekStats.getMean(timeslot + hourAheadAuction, hourAheadAuction);
 			}
 			
 			// if (trades.length != 24)
@@ -269,6 +328,17 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 					
 						//System.out.println("Day_date : "+ ts.getStartTime() + " Month " + ts.getStartTime().getMonthOfYear());
 						
+						if (npy) {
+							writeColumns(ts, hourAheadAuction, trades,
+									n_1HourNAuctionPrice[hourAheadAuction],
+									yesterdayNHourNAuctionPrice[hourAheadAuction],
+									aWeekAgoNHourNAuctionPrice[hourAheadAuction],
+									aWeeksNHourNAuctionAverageClearingPrice[hourAheadAuction],
+									nHourN_1AuctionPrice[hourAheadAuction],
+									yesterdayNHourN_1AuctionPrice[hourAheadAuction],
+									aWeekAgoNHourN_1AuctionPrice[hourAheadAuction]);
+							continue;
+						}
 						output.format("%d,%d,%d,%d,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f",//%.2f,%.2f,%.2f,%.2f,%.2f,%.2f",
 								3,
 								ts.getStartTime().getDayOfMonth(), //trades.day_date, 
@@ -298,12 +368,52 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 				}	
 				
 			} 
+			for (int hourAheadAuction = 0; hourAheadAuction < 24; hourAheadAuction++) {
+				double price = (null == trades) ? 0.0 : trades.arrClearingPrices[hourAheadAuction];
+				if (price != 0)
+					weekStats.add(timeslot, hourAheadAuction, price);
+				else
+					weekStats.skip(timeslot, hourAheadAuction);
+			}
+		}
+		if (npy) {
+			try {
+				columns.close();
+			} catch (IOException e) {
+				System.out.println("Cannot write " + dataFilename + ": " + e.toString());
+			}
+		}
+		else {
+			output.close();
 		}
-		output.close(); 
 		debug.close();
 		System.gc();
 	}
 
+	// One row of the ARFF data, as columns
+	private void writeColumns(Timeslot ts, int hourAheadAuction, DataPerTimeSlot trades,
+			double prevHour, double yesterday, double prevWeek, double weekAverage,
+			double prevHourN_1, double yesterdayN_1, double prevWeekN_1) {
+		try {
+			columns.put(3)
+					.put(ts.getStartTime().getDayOfMonth())
+					.put(ts.getStartTime().getMonthOfYear())
+					.put(ts.dayOfWeek())
+					.put(ts.slotInDay())
+					.put(hourAheadAuction)
+					.put(trades.wfTemp[hourAheadAuction+1])
+					.put(trades.wfCloudCover[hourAheadAuction+1])
+					.put(trades.wfWindDir[hourAheadAuction+1])
+					.put(trades.wfWindSpeed[hourAheadAuction+1])
+					.put(prevHour).put(yesterday).put(prevWeek).put(weekAverage)
+					.put(prevHourN_1).put(yesterdayN_1).put(prevWeekN_1)
+					.put(trades.arrClearingPrices[hourAheadAuction])
+					.endRow();
+		} catch (IOException e) {
+			System.out.println("Cannot write " + dataFilename + ": " + e.toString());
+		}
+	}
+
 	// -----------------------------------
 	// catch Broker events
 	class BrokerHandler implements NewObjectListener {
@@ -312,11 +422,11 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 		public void handleNewObject(Object thing) {
 			Broker broker = (Broker) thing;
 			String username = broker.getUsername().toUpperCase();
-			if (username.equals("SPOT_PP3_BS0")) {
+			if (username.equals(focalBroker)) {
 				brokerID = broker.getId();
 				System.out.println("writing attribute : " + writeAttributes);
 
-				if(writeAttributes.equalsIgnoreCase("1")){
+				if(writeAttributes.equalsIgnoreCase("1") && null != output){
 					System.out.println("writing attribute");
 					output.println("@relation SPOT");
 					output.println("@attribute numberofbrokers real"); 
@@ -356,7 +466,7 @@ public class LogExtractor extends LogtoolContext implements Analyzer {
 		public void handleNewObject(Object comp){
 			System.out.println("Inside Competition handler");
 			Competition competition = (Competition) comp;
-			MktPriceStatsPorag.numberofbrokers = competition.getBrokers().size();
+			numberofbrokers = competition.getBrokers().size();
 			System.out.println("Number of brokers : " + competition.getBrokers().size() + " tostring " + competition.toString());
 			
 		}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Drops state-log lines that an analyzer will never see, before the
+ * logtool reads them. Each state-log line starts with
+ * <code>millis:class-name::</code>. Lines whose class is not in the needed
+ * set are skipped with a byte comparison of that prefix, so they are never
+ * turned into Strings or reconstructed by reflection.
+ *
+ * The needed set is the core types that keep the repositories and the
+ * time service current, plus the classes the analyzer handles. Those are
+ * found from its handleMessage() overloads, plus any classes the analyzer
+ * passes to registerNewObjectListener(), which must be given explicitly.
+ * The set is then closed over the Power TAC types that the fields of
+ * those classes refer to, so for example a WeatherForecast keeps its
+ * WeatherForecastPrediction lines. Types referred to only by a numeric id
+ * cannot be found this way, and must also be given explicitly.
+ * Usage in an analyzer's cli():
+ * <pre>
+ * LogLineFilter.read(args[0], LogLineFilter.neededClasses(this, Foo.class),
+ *                    (input) -&gt; super.cli(input, this));
+ * </pre>
+ * Compressed or archived logs are passed through unfiltered.
+ *
+ * The log is memory-mapped in large windows cut at line boundaries, and
+ * lines are examined in place. The windows are filtered in parallel on a
+ * pool shared by the whole JVM, with at most MAX_IN_FLIGHT of them ahead
+ * of the writer. Each filtered window is just a list of the byte ranges to
+ * keep, and those are written to a temporary file straight from the
+ * mapping, in their original order. The logtool then reads that file.
+ * So the heap use of a filter run does not grow with the number of cores
+ * or the size of the log.
+ *
+ * Only the filtering is parallel. Turning the kept lines into objects is
+ * left to the logtool's reader, which must see them in log order on one
+ * thread: each line may refer by id to objects created by earlier lines,
+ * and creating an object updates the shared repositories.
+ */
+public class LogLineFilter
+{
+  static private Logger log =
+      LogManager.getLogger(LogLineFilter.class.getName());
+
+  // Types the logtool core and the repos depend on; always kept
+  private static final String[] CORE_TYPES = {
+      "org.powertac.common.Competition",
+      "org.powertac.common.Broker",
+      "org.powertac.common.CustomerInfo",
+      "org.powertac.common.Timeslot",
+      "org.powertac.common.TimeService",
+      "org.powertac.common.RandomSeed",
+      "org.powertac.common.TariffSpecification",
+      "org.powertac.common.Rate",
+      "org.powertac.common.RegulationRate",
+      "org.powertac.common.Tariff",
+      "org.powertac.common.msg.SimStart",
+      "org.powertac.common.msg.SimEnd",
+      "org.powertac.common.msg.SimPause",
+      "org.powertac.common.msg.SimResume",
+      "org.powertac.common.msg.TimeslotUpdate"};
+
+  // bytes of log filtered as one window
+  static final int BLOCK_SIZE = 16 << 20;
+
+  // windows being filtered ahead of the writer, whatever the core count
+  private static final int MAX_IN_FLIGHT = 8;
+
+  private static ExecutorService pool = null;
+
+  private static final String DOMAIN_PREFIX = "org.powertac.";
+
+  private static final String[] ARCHIVE_SUFFIXES = {
+      ".gz", ".tgz", ".tar", ".bz2", ".zip", ".xz"};
+
+  private LogLineFilter ()
+  {
+    super();
+  }
+
+  /**
+   * Returns the names of the classes the given analyzer needs: the core
+   * types, the parameter types of its handleMessage() methods, and the
+   * given classes, together with the Power TAC types their fields refer
+   * to.
+   */
+  public static Set<String> neededClasses (Object analyzer,
+                                           Class<?>... registered)
+  {
+    Set<String> result = new HashSet<>();
+    for (String name: CORE_TYPES) {
+      try {
+        addWithReferences(Class.forName(name), result);
+      }
+      catch (ClassNotFoundException e) {
+        result.add(name);
+      }
+    }
+    for (Method method: analyzer.getClass().getMethods()) {
+      if (method.getName().equals("handleMessage")
+          && method.getParameterTypes().length == 1) {
+        addWithReferences(method.getParameterTypes()[0], result);
+      }
+    }
+    for (Class<?> clazz: registered) {
+      addWithReferences(clazz, result);
+    }
+    return result;
+  }
+
+  // Adds a Power TAC class and, recursively, the Power TAC types its
+  // instance fields hold, directly, as arrays or as type arguments
+  private static void addWithReferences (Class<?> clazz, Set<String> result)
+  {
+    if (clazz.isArray()) {
+      addWithReferences(clazz.getComponentType(), result);
+      return;
+    }
+    if (clazz.isPrimitive() || !clazz.getName().startsWith(DOMAIN_PREFIX)
+        || !result.add(clazz.getName())) {
+      return;
+    }
+    for (Class<?> c = clazz; null != c && c != Object.class;
+        c = c.getSuperclass()) {
+      for (Field field: c.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers()))
+          addReferences(field.getGenericType(), result);
+      }
+    }
+  }
+
+  private static void addReferences (Type type, Set<String> result)
+  {
+    if (type instanceof Class) {
+      addWithReferences((Class<?>) type, result);
+    }
+    else if (type instanceof ParameterizedType) {
+      ParameterizedType pt = (ParameterizedType) type;
+      addReferences(pt.getRawType(), result);
+      for (Type arg: pt.getActualTypeArguments())
+        addReferences(arg, result);
+    }
+    else if (type instanceof GenericArrayType) {
+      addReferences(((GenericArrayType) type).getGenericComponentType(),
+                    result);
+    }
+    else if (type instanceof WildcardType) {
+      for (Type bound: ((WildcardType) type).getUpperBounds())
+        addReferences(bound, result);
+    }
+  }
+
+  /**
+   * Runs reader on the given state log with only the lines whose class is
+   * in classNames. Typically reader runs the analyzer, as
+   * <code>super.cli(input, this)</code>. The kept lines are written to a
+   * temporary file, reader is passed its path, and the file is deleted
+   * when reader returns. If the log is not a plain file or cannot be
+   * filtered, reader gets inputFilename.
+   */
+  public static void read (String inputFilename, Set<String> classNames,
+                           Consumer<String> reader)
+  {
+    File input = new File(inputFilename);
+    if (!input.isFile() || isArchive(inputFilename)) {
+      log.info("Not filtering {}", inputFilename);
+      reader.accept(inputFilename);
+      return;
+    }
+    File output = null;
+    try {
+      output = File.createTempFile("filtered", ".state");
+      long[] counts = filter(input, output, classNames, BLOCK_SIZE);
+      log.info("Kept {} of {} lines from {}",
+               counts[1], counts[0], inputFilename);
+    }
+    catch (IOException e) {
+      log.warn("Cannot filter {}: {}", inputFilename, e.toString());
+      if (null != output)
+        output.delete();
+      reader.accept(inputFilename);
+      return;
+    }
+    try {
+      reader.accept(output.getPath());
+    }
+    finally {
+      output.delete();
+    }
+  }
+
+  // Writes the kept lines of input to output, in their original order,
+  // in windows of about blockSize bytes. Returns {lines read, lines kept}.
+  // Windows are filtered on the shared pool, at most MAX_IN_FLIGHT ahead
+  // of the writer.
+  static long[] filter (File input, File output, Set<String> classNames,
+                        int blockSize)
+    throws IOException
+  {
+    Matcher matcher = new Matcher(classNames);
+    long[] counts = {0, 0};
+    ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+    try (FileChannel in = FileChannel.open(input.toPath(),
+                                           StandardOpenOption.READ);
+        FileChannel out = new FileOutputStream(output).getChannel()) {
+      BlockReader reader = new BlockReader(in, blockSize);
+      ExecutorService workers = pool();
+      ByteBuffer window = reader.next();
+      while (null != window || !pending.isEmpty()) {
+        while (null != window && pending.size() < MAX_IN_FLIGHT) {
+          final ByteBuffer next = window;
+          pending.add(workers.submit(() -> matcher.filterBlock(next)));
+          window = reader.next();
+        }
+        Block block = take(pending.remove());
+        block.writeTo(out);
+        counts[0] += block.lines;
+        counts[1] += block.kept;
+      }
+    }
+    finally {
+      for (Future<Block> task: pending)
+        task.cancel(true);
+    }
+    return counts;
+  }
+
+  private static Block take (Future<Block> task) throws IOException
+  {
+    try {
+      return task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Filtering interrupted");
+    }
+    catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  // One pool of daemon threads, shared by every filter run in the JVM
+  private static synchronized ExecutorService pool ()
+  {
+    if (null == pool) {
+      int threads = Runtime.getRuntime().availableProcessors();
+      pool = Executors.newFixedThreadPool(threads, r -> {
+        Thread thread = new Thread(r, "log-filter");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return pool;
+  }
+
+  private static boolean isArchive (String filename)
+  {
+    for (String suffix: ARCHIVE_SUFFIXES) {
+      if (filename.endsWith(suffix))
+        return true;
+    }
+    return false;
+  }
+
+  // Decides which lines to keep
+  private static class Matcher
+  {
+
+    // wanted class names by length; read-only once built, so workers
+    // can share it
+    private HashMap<Integer, List<byte[]>> wanted = new HashMap<>();
+
+    Matcher (Set<String> classNames)
+    {
+      for (String name: classNames) {
+        byte[] bytes = name.getBytes(StandardCharsets.ISO_8859_1);
+        wanted.computeIfAbsent(bytes.length, k -> new ArrayList<>())
+            .add(bytes);
+      }
+    }
+
+    // Finds the runs of wanted lines in one window. Nothing is copied;
+    // the block refers back to the window.
+    Block filterBlock (ByteBuffer input)
+    {
+      int length = input.limit();
+      Block result = new Block(input);
+      int start = 0;
+      int runStart = -1;
+      for (int i = 0; i < length; i++) {
+        if (input.get(i) == '\n' || i == length - 1) {
+          result.lines += 1;
+          if (keep(input, start, i)) {
+            if (runStart < 0)
+              runStart = start;
+            result.kept += 1;
+          }
+          else if (runStart >= 0) {
+            result.addRun(runStart, start);
+            runStart = -1;
+          }
+          start = i + 1;
+        }
+      }
+      if (runStart >= 0)
+        result.addRun(runStart, length);
+      return result;
+    }
+
+    // Lines that do not look like millis:class::... are kept
+    boolean keep (ByteBuffer line, int start, int end)
+    {
+      int colon = start;
+      while (colon < end && line.get(colon) != ':')
+        colon += 1;
+      int nameStart = colon + 1;
+      int nameEnd = nameStart;
+      while (nameEnd < end && line.get(nameEnd) != ':')
+        nameEnd += 1;
+      if (nameEnd >= end || nameStart == nameEnd) {
+        return true;
+      }
+      List<byte[]> candidates = wanted.get(nameEnd - nameStart);
+      if (null == candidates) {
+        return false;
+      }
+      for (byte[] name: candidates) {
+        if (matches(name, line, nameStart)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean matches (byte[] name, ByteBuffer line, int offset)
+    {
+      for (int i = 0; i < name.length; i++) {
+        if (name[i] != line.get(offset + i))
+          return false;
+      }
+      return true;
+    }
+  }
+
+  // The kept lines of one window, as runs of byte offsets into it
+  private static class Block
+  {
+    private ByteBuffer window;
+    // start and end of each run, in pairs
+    private int[] runs = new int[16];
+    private int size = 0;
+    long lines = 0;
+    long kept = 0;
+
+    Block (ByteBuffer window)
+    {
+      this.window = window;
+    }
+
+    void addRun (int start, int end)
+    {
+      if (size == runs.length)
+        runs = Arrays.copyOf(runs, size * 2);
+      runs[size++] = start;
+      runs[size++] = end;
+    }
+
+    // Writes the runs straight from the mapped window
+    void writeTo (FileChannel out) throws IOException
+    {
+      ByteBuffer run = window.duplicate();
+      for (int i = 0; i < size; i += 2) {
+        run.limit(runs[i + 1]);
+        run.position(runs[i]);
+        while (run.hasRemaining())
+          out.write(run);
+      }
+    }
+  }
+
+  // Maps the input in windows that end on a line boundary, except
+  // possibly the last one. Nothing is copied; each window is handed out
+  // as a read-only buffer of exactly the lines it holds.
+  private static class BlockReader
+  {
+    private FileChannel channel;
+    private int blockSize;
+    private long size;
+    private long position = 0;
+
+    BlockReader (FileChannel channel, int blockSize) throws IOException
+    {
+      this.channel = channel;
+      this.blockSize = blockSize;
+      this.size = channel.size();
+    }
+
+    ByteBuffer next () throws IOException
+    {
+      if (position >= size)
+        return null;
+      long length = Math.min(blockSize, size - position);
+      while (true) {
+        MappedByteBuffer window =
+            channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int cut = (int) length;
+        if (position + length < size) {
+          while (cut > 0 && window.get(cut - 1) != '\n')
+            cut -= 1;
+          if (0 == cut) {
+            // no line end in this window; try a bigger one
+            length = Math.min(Math.min(length * 2, Integer.MAX_VALUE),
+                              size - position);
+            continue;
+          }
+        }
+        position += cut;
+        window.limit(cut);
+        return window;
+      }
+    }
+  }
+}
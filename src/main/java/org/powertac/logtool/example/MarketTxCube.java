@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+/**
+ * Per-broker wholesale trading totals, indexed by
+ * broker x target timeslot x leadtime x {debit, credit}, each cell holding
+ * a money total and an energy total. Backed by one flat double array that
+ * grows with the timeslot range, so a full game with ten brokers and 24
+ * leadtimes takes a few MB instead of millions of boxed keys and lists.
+ *
+ * Brokers are addressed by dense index (see DenseIndex). Which side a
+ * transaction lands on, and whether energy is stored signed or as an
+ * absolute value, is up to the caller. Analyzers that do not care about
+ * leadtime construct the cube with a single leadtime and pass 0.
+ *
+ * Analyzers that write out each timeslot as it is finalized (see
+ * TimeslotFinalizer) call dropBefore() after it, so the cube only holds
+ * the open trading window.
+ */
+public class MarketTxCube
+{
+  public static final int DEBIT = 0;
+  public static final int CREDIT = 1;
+
+  private static final int INITIAL_ROWS = 512;
+
+  // money and energy for each of two sides
+  private static final int CELL = 4;
+
+  private int brokers;
+  private int leadTimes;
+  private int rowSize; // doubles per timeslot
+  private int base = -1; // timeslot index of row 0
+  private int rows = 0;
+  private int floor = -1; // timeslots before this have been dropped
+  private double[] values;
+
+  public MarketTxCube (int brokers, int leadTimes)
+  {
+    super();
+    this.brokers = brokers;
+    this.leadTimes = leadTimes;
+    this.rowSize = brokers * leadTimes * CELL;
+  }
+
+  public int getBrokerCount ()
+  {
+    return brokers;
+  }
+
+  public int getLeadTimes ()
+  {
+    return leadTimes;
+  }
+
+  /**
+   * Adds money and energy to the given cell.
+   */
+  public void add (int broker, int ts, int lead, int side,
+                   double money, double mwh)
+  {
+    if (ts < floor)
+      return;
+    int i = ensureRow(ts) * rowSize + cellOffset(broker, lead, side);
+    values[i] += money;
+    values[i + 1] += mwh;
+  }
+
+  public double getMoney (int broker, int ts, int lead, int side)
+  {
+    if (!inRange(ts))
+      return 0.0;
+    return values[(ts - base) * rowSize + cellOffset(broker, lead, side)];
+  }
+
+  public double getMWh (int broker, int ts, int lead, int side)
+  {
+    if (!inRange(ts))
+      return 0.0;
+    return values[(ts - base) * rowSize + cellOffset(broker, lead, side) + 1];
+  }
+
+  /**
+   * Money per unit of energy in the given cell, or 0.0 if the cell is
+   * empty. Because the wholesale market clears at a uniform price, this
+   * is the clearing price whenever the cell holds any transactions.
+   */
+  public double getUnitPrice (int broker, int ts, int lead, int side)
+  {
+    double mwh = getMWh(broker, ts, lead, side);
+    if (0.0 == mwh)
+      return 0.0;
+    return getMoney(broker, ts, lead, side) / Math.abs(mwh);
+  }
+
+  /** Money total for broker in timeslot ts over all leadtimes */
+  public double getMoney (int broker, int ts, int side)
+  {
+    double result = 0.0;
+    for (int lead = 0; lead < leadTimes; lead++)
+      result += getMoney(broker, ts, lead, side);
+    return result;
+  }
+
+  /** Energy total for broker in timeslot ts over all leadtimes */
+  public double getMWh (int broker, int ts, int side)
+  {
+    double result = 0.0;
+    for (int lead = 0; lead < leadTimes; lead++)
+      result += getMWh(broker, ts, lead, side);
+    return result;
+  }
+
+  /**
+   * Zeroes out everything stored for timeslot ts.
+   */
+  public void clearTimeslot (int ts)
+  {
+    if (inRange(ts)) {
+      int start = (ts - base) * rowSize;
+      Arrays.fill(values, start, start + rowSize, 0.0);
+    }
+  }
+
+  /**
+   * Drops everything stored for timeslots before ts. Later adds for them
+   * are ignored, and reads return 0.0. Rows are reclaimed once the dropped
+   * ones fill half the array.
+   */
+  public void dropBefore (int ts)
+  {
+    if (ts <= floor)
+      return;
+    floor = ts;
+    if (base >= 0 && (floor - base) * 2 >= rows)
+      compact();
+  }
+
+  // Moves the rows at and after floor to the start of the array
+  private void compact ()
+  {
+    int shift = floor - base;
+    if (shift >= rows) {
+      Arrays.fill(values, 0.0);
+    }
+    else {
+      System.arraycopy(values, shift * rowSize, values, 0,
+                       (rows - shift) * rowSize);
+      Arrays.fill(values, (rows - shift) * rowSize, rows * rowSize, 0.0);
+    }
+    base = floor;
+  }
+
+  private int cellOffset (int broker, int lead, int side)
+  {
+    return ((broker * leadTimes) + lead) * CELL + side * 2;
+  }
+
+  private boolean inRange (int ts)
+  {
+    return base >= 0 && ts >= base && ts >= floor && ts < base + rows;
+  }
+
+  // Returns the row for ts, growing or re-basing the array if needed
+  private int ensureRow (int ts)
+  {
+    if (base < 0) {
+      // leave room below for trades that show up out of order
+      base = Math.max(0, ts - leadTimes);
+      rows = INITIAL_ROWS;
+      values = new double[rows * rowSize];
+    }
+    if (ts < base) {
+      int shift = base - Math.max(0, ts - leadTimes);
+      double[] newValues = new double[(rows + shift) * rowSize];
+      System.arraycopy(values, 0, newValues, shift * rowSize,
+                       rows * rowSize);
+      values = newValues;
+      rows += shift;
+      base -= shift;
+    }
+    else if (ts >= base + rows) {
+      rows = Math.max(rows * 2, ts - base + 1);
+      values = Arrays.copyOf(values, rows * rowSize);
+    }
+    return ts - base;
+  }
+}
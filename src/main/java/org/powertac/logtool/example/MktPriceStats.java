@@ -18,8 +18,6 @@ package org.powertac.logtool.example;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -46,8 +44,11 @@ import org.powertac.logtool.ifc.Analyzer;
  * 24 times.
  * 
  * If the option '--no-headers' is given, the first three fields are omitted.
+ * With '--quantiles report-file', clearing price and MWh distributions by
+ * leadtime and hour of day are also kept; see ClearingPriceSketches.
  * 
- * Usage: MktPriceStats [--no-headers] state-log-filename output-data-filename
+ * Usage: MktPriceStats [--no-headers] [--quantiles report-file]
+ *                      state-log-filename output-data-filename
  * 
  * @author John Collins
  */
@@ -62,12 +63,14 @@ implements Analyzer
   private TimeService timeService;
 
   // Data
-  private TreeMap<Integer, ClearedTrade[]> data;
+  private ClearedTradeMatrix data;
   private int ignoreInitial = 5; // timeslots to ignore at the beginning
   private int ignoreCount = 0;
   private int indexOffset = 0; // should be Competition.deactivateTimeslotsAhead - 1
 
   private boolean omitHeaders = false;
+  private String quantilesFilename = null;
+  private ClearingPriceSketches sketches = null;
   private PrintWriter output = null;
   private String dataFilename = "clearedTrades.data";
   
@@ -85,17 +88,30 @@ implements Analyzer
    */
   private void cli (String[] args)
   {
-    if (args.length != 2) {
-      System.out.println("Usage: <analyzer> [--no-headers] input-file output-file");
-      return;
-    }
     int argOffset = 0;
-    if (args[0].equalsIgnoreCase("--no-headers")) {
-      argOffset = 1;
-      omitHeaders = true;
+    while (argOffset < args.length && args[argOffset].startsWith("--")) {
+      if (args[argOffset].equalsIgnoreCase("--no-headers")) {
+        argOffset += 1;
+        omitHeaders = true;
+      }
+      else if (args[argOffset].equals("--quantiles")
+               && argOffset + 1 < args.length) {
+        quantilesFilename = args[argOffset + 1];
+        argOffset += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length - argOffset != 2) {
+      System.out.println("Usage: <analyzer> [--no-headers] [--quantiles report-file] input-file output-file");
+      return;
     }
     dataFilename = args[argOffset + 1];
-    super.cli(args[argOffset], this);
+    LogLineFilter.read(args[argOffset],
+                       LogLineFilter.neededClasses(this,
+                           TimeslotUpdate.class, ClearedTrade.class),
+                       (input) -> super.cli(input, this));
   }
 
   /* (non-Javadoc)
@@ -111,7 +127,9 @@ implements Analyzer
     registerNewObjectListener(new ClearedTradeHandler(),
                                   ClearedTrade.class);
     ignoreCount = ignoreInitial;
-    data = new TreeMap<Integer, ClearedTrade[]>();
+    data = new ClearedTradeMatrix();
+    if (null != quantilesFilename)
+      sketches = new ClearingPriceSketches();
     try {
       output = new PrintWriter(new File(dataFilename));
     }
@@ -126,32 +144,33 @@ implements Analyzer
   @Override
   public void report ()
   {
-    for (Map.Entry<Integer, ClearedTrade[]> entry : data.entrySet()) {
+    for (int ts = data.getFirstTimeslot(); ts <= data.getLastTimeslot(); ts++) {
+      if (!data.hasTimeslot(ts))
+        continue;
       String delim = "";
       if (!omitHeaders) {
         // add ts,dow,hod,
-        DateTime dt = timeslotRepo.getDateTimeForIndex(entry.getKey());
-        output.format("%d,%d,%d,", entry.getKey(),
+        DateTime dt = timeslotRepo.getDateTimeForIndex(ts);
+        output.format("%d,%d,%d,", ts,
                       dt.get(DateTimeFieldType.dayOfWeek()),
                       dt.get(DateTimeFieldType.hourOfDay()));
       }
-      ClearedTrade[] trades = entry.getValue();
-      if (trades.length != 24)
-        log.error("short array " + trades.length);
-      for (int i = 0; i < trades.length; i++) {
-        if (null == trades[i]) {
+      for (int i = 0; i < data.getLeadTimes(); i++) {
+        if (!data.isCleared(ts, i)) {
           output.print(delim + "0.0,0.0");
         }
         else {
           output.format("%s%.4f,%.4f", delim,
-                        trades[i].getExecutionMWh(),
-                        trades[i].getExecutionPrice());
+                        data.getMWh(ts, i),
+                        data.getPrice(ts, i));
         }
         delim = ",";
       }
       output.println();
     }
     output.close();
+    if (null != sketches)
+      sketches.save(quantilesFilename);
   }
 
   // -----------------------------------
@@ -174,12 +193,9 @@ implements Analyzer
         log.error("ClearedTrade index error: " + offset);
       }
       else {
-        ClearedTrade[] targetArray = data.get(target);
-        if (null == targetArray) {
-          targetArray = new ClearedTrade[24];
-          data.put(target, targetArray);
-        }
-        targetArray[offset] = ct;
+        data.add(ct, offset);
+        if (null != sketches)
+          sketches.add(offset, ct);
       }
     }
   }
@@ -194,10 +210,7 @@ implements Analyzer
     public void handleNewObject (Object thing)
     {
       if (ignoreCount-- <= 0) {
-        int timeslotSerial = timeslotRepo.currentSerialNumber();
-        if (null == data.get(timeslotSerial)) {
-          data.put(timeslotSerial, new ClearedTrade[24]);
-        }
+        data.addTimeslot(timeslotRepo.currentSerialNumber());
       }
     }
   }
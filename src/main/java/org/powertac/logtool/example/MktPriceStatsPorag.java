@@ -20,7 +20,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -35,6 +37,7 @@ import org.powertac.common.ClearedTrade;
 import org.powertac.common.Competition;
 import org.powertac.common.MarketTransaction;
 import org.powertac.common.Orderbook;
+import org.powertac.common.OrderbookOrder;
 import org.powertac.common.TimeService;
 import org.powertac.common.WeatherForecast;
 import org.powertac.common.msg.TimeslotUpdate;
@@ -71,7 +74,7 @@ import org.powertac.common.BankTransaction;
  *
  * @author John Collins
  */
-public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
+public class MktPriceStatsPorag extends LogtoolContext implements Analyzer, ResidentAnalyzer {
 //	static private Logger log = Logger.getLogger(MktPriceStats.class.getName());
 
 	// service references
@@ -87,8 +90,8 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 	private TreeMap<Integer, SimulationDataPerTimeSlot> marketData;
 	TreeMap<Integer, Integer> orderbookCounter = new TreeMap<Integer, Integer>();
 	private int counter = 0;
-	private long[] brokers = new long[12];
-	private String[] brokernames = new String[12];
+	private long[] brokers = new long[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
+	private String[] brokernames = new String[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
 	int brokerCounter = 0;
 
 
@@ -96,11 +99,15 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 	private int ignoreCount = 0;
 	private int indexOffset = 0; // should be
 									// Competition.deactivateTimeslotsAhead - 1
-	public static int numberofbrokers = 0;
+	private int numberofbrokers = 0;
 	private PrintWriter output = null;
 	private PrintWriter debug = null;
 	private String dataFilename = "clearedTrades.arff";
+	private Object listenerReader = null; // reader our listeners are on
 	public double brokerID;
+	private String focalBroker = "SPOT";
+	private String brokerFilter = null; // if set, other brokers are ignored
+	private boolean partitioned = false; // also write one file per broker
 
 
 	/**
@@ -109,19 +116,69 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 	 */
 	public static void main(String[] args) {
 		System.out.println("I am running");
-		new MktPriceStatsPorag().cli(args);
+		new MktPriceStatsPorag().cli(args, System.out);
 	}
 
 	/**
-	 * Takes two args, input filename and output filename
+	 * Takes two args, input filename and output filename, optionally
+	 * preceded by
+	 * <ul>
+	 * <li>--broker name: the focal broker, default SPOT; events for all
+	 *     other brokers are dropped</li>
+	 * <li>--partition: also writes one per-timeslot file per broker, named
+	 *     after the output file (see BrokerPartitions)</li>
+	 * </ul>
 	 */
-	private void cli(String[] args) {
-		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+	@Override
+	public void cli(String[] args, PrintStream out) {
+		focalBroker = "SPOT";
+		brokerFilter = null;
+		partitioned = false;
+		int argOffset = 0;
+		while (argOffset < args.length && args[argOffset].startsWith("--")) {
+			if (args[argOffset].equals("--broker") && argOffset + 1 < args.length) {
+				brokerFilter = args[argOffset + 1].toUpperCase();
+				focalBroker = brokerFilter;
+				argOffset += 2;
+			}
+			else if (args[argOffset].equals("--partition")) {
+				partitioned = true;
+				argOffset += 1;
+			}
+			else {
+				break;
+			}
+		}
+		if (args.length - argOffset != 2) {
+			out.println("Usage: <analyzer> [--broker name] [--partition] input-file output-file");
 			return;
 		}
-		dataFilename = args[1];
-		super.cli(args[0], this);
+		dataFilename = args[argOffset + 1];
+		// forecasts refer to their predictions and orderbooks to their
+		// orders, which are logged separately
+		LogLineFilter.read(args[argOffset],
+				LogLineFilter.neededClasses(this,
+					TariffTransaction.class, CapacityTransaction.class,
+					Competition.class, Broker.class, TimeslotUpdate.class,
+					MarketTransaction.class, BalancingTransaction.class,
+					Timeslot.class, WeatherReport.class, Orderbook.class,
+					WeatherForecast.class, DistributionTransaction.class,
+					CashPosition.class, BankTransaction.class,
+					WeatherForecastPrediction.class, OrderbookOrder.class),
+				(input) -> super.cli(input, this));
+	}
+
+	@Override
+	public void resetGame() {
+		orderbookCounter = new TreeMap<Integer, Integer>();
+		counter = 0;
+		brokers = new long[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
+		brokernames = new String[SimulationDataPerTimeSlot.DEFAULT_BROKER_SLOTS];
+		brokerCounter = 0;
+		numberofbrokers = 0;
+		ignoreCount = ignoreInitial;
+		data = new TreeMap<Integer, ClearedTrade[]>();
+		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
 	}
 
 	/*
@@ -131,30 +188,34 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 	 */
 	@Override
 	public void setup() {
+		resetGame();
 		//dor = (DomainObjectReader) SpringApplicationContext.getBean("reader");
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		timeService = (TimeService) getBean("timeService");
 		brokerRepo = (BrokerRepo) SpringApplicationContext
 				.getBean("brokerRepo");
-		registerNewObjectListener(new TariffTransactionHandler(), TariffTransaction.class);
-		registerNewObjectListener(new CapacityTransactionHandler(), CapacityTransaction.class);
-		registerNewObjectListener(new CompetitionHandler(), Competition.class);
-		registerNewObjectListener(new BrokerHandler(), Broker.class);
-		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
-		registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
-		registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
-		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
-		registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
-		registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
-		registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
-		registerNewObjectListener(new DistributionTransactionHandler(), DistributionTransaction.class);
-		registerNewObjectListener(new CashPositionHandler(), CashPosition.class);
-		registerNewObjectListener(new BankTransactionHandler(), BankTransaction.class);
+		// a kept instance is set up once per game, but its listeners
+		// stay registered with the reader
+		Object reader = getBean("reader");
+		if (reader != listenerReader) {
+			listenerReader = reader;
+			registerNewObjectListener(new TariffTransactionHandler(), TariffTransaction.class);
+			registerNewObjectListener(new CapacityTransactionHandler(), CapacityTransaction.class);
+			registerNewObjectListener(new CompetitionHandler(), Competition.class);
+			registerNewObjectListener(new BrokerHandler(), Broker.class);
+			registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
+			registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
+			registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
+			registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
+			registerNewObjectListener(new WeatherReportHandler(), WeatherReport.class);
+			registerNewObjectListener(new OrderbookHandler(), Orderbook.class);
+			registerNewObjectListener(new WeatherForecastHandler(), WeatherForecast.class);
+			registerNewObjectListener(new DistributionTransactionHandler(), DistributionTransaction.class);
+			registerNewObjectListener(new CashPositionHandler(), CashPosition.class);
+			registerNewObjectListener(new BankTransactionHandler(), BankTransaction.class);
+		}
 
 
-		ignoreCount = ignoreInitial;
-		data = new TreeMap<Integer, ClearedTrade[]>();
-		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
 		try {
 			//output = new PrintWriter(new File(dataFilename));
 			FileWriter fw = new FileWriter(dataFilename, true);
@@ -191,21 +252,31 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 		double overallCost = 0.0;
 		double overallCapacityTransaction = 0.0;
 
-		double arroverallMktNet[] = new double[12];
-		double arroverallBalNet[] = new double[12];
-		double arroverallDistNet[] = new double[12];
-		double arroverallTariffNet[] = new double[12];
-		double arroverallBankNet[] = new double[12];
-		double arroverallCapacityTransaction[] = new double[12];
+		double arroverallMktNet[] = new double[brokers.length];
+		double arroverallBalNet[] = new double[brokers.length];
+		double arroverallDistNet[] = new double[brokers.length];
+		double arroverallTariffNet[] = new double[brokers.length];
+		double arroverallBankNet[] = new double[brokers.length];
+		double arroverallCapacityTransaction[] = new double[brokers.length];
+
+		double arroverallGain[] = new double[brokers.length];
+		double arroverallCost[] = new double[brokers.length];
 
-		double arroverallGain[] = new double[12];
-		double arroverallCost[] = new double[12];
+		double arroverallNet[] = new double[brokers.length];
 
-		double arroverallNet[] = new double[12];
 
+		// running price windows, updated as each timeslot is processed
+		SlidingWindowStats dayStats = SlidingWindowStats.hourly(24, 24);
+		SlidingWindowStats weekStats = SlidingWindowStats.daily(24, 7);
 
 		double cashposition = 0.0;
 		double temp = 0.0;
+		BrokerPartitions partitions = null;
+		if (partitioned) {
+			partitions = new BrokerPartitions(dataFilename,
+					"Timeslot, Wholesale, Tariff, Balancing, Capacity, Bank, Distribution",
+					", ", AsyncRowWriter.INTEGER, 2, 2, 2, 2, 2, 2);
+		}
 		for (Map.Entry<Integer, SimulationDataPerTimeSlot> entry : marketData
 				.entrySet()) {
 			String delim = "";
@@ -216,46 +287,37 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 				prevHourData = marketData.get(timeslot-1);
 			}
 			else {
-				prevHourData = new SimulationDataPerTimeSlot();
+				prevHourData = newSlot();
 			}
 
 			if (timeslot-24 > 360)
 			{
 				yesterdayData = marketData.get(timeslot-24);
 
+				// trailing 24h average at each leadtime
+				previousdayAvg = 0.0;
 				for(int i = 0; i < 24; i++) {
-					yesterdayAvg[i] += marketData.get(timeslot-24).arrClearingPrices[i];
-				}
-
-				for(int i = 0; i < 24; i++) {
-					yesterdayAvg[i] /= 24;
-				}
-				for (int j = 0; j < 24; j++) {
-					previousdayAvg += yesterdayAvg[j];
+					yesterdayAvg[i] = dayStats.getMean(timeslot, i);
+					previousdayAvg += yesterdayAvg[i];
 				}
 				previousdayAvg /= 24;
 			}
 			else {
-				yesterdayData = new SimulationDataPerTimeSlot();
+				yesterdayData = newSlot();
 			}
 
 			if ( timeslot-(24*7) > 360){
 				prevOneWeekData = marketData.get((timeslot-(24*7)));
 
-				for(int i = 0; i < 7; i++){
-					for(int j = 0; j < 24; j++)
-					{
-						averageClearingPrice[j] += marketData.get((timeslot-(24*(i+1)))).arrClearingPrices[j];
-					}
-				}
+				// same hour of day over the previous 7 days
 				for(int j = 0; j < 24; j++)
 				{
-					averageClearingPrice[j] /= 7;
+					averageClearingPrice[j] = weekStats.getMean(timeslot, j);
 				}
 
 			}
 			else {
-				prevOneWeekData = new SimulationDataPerTimeSlot();
+				prevOneWeekData = newSlot();
 			}
 
 			overallMktNet += trades.netPrice;
@@ -279,6 +341,14 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 				arroverallTariffNet[i] += trades.tariff[i];
 				arroverallCapacityTransaction[i] += trades.arrCapacityTransaction[i];
 			}
+			if (null != partitions) {
+				writePartitions(partitions, timeslot, trades);
+			}
+
+			for(int i = 0; i < 24; i++) {
+				dayStats.add(timeslot, i, trades.arrClearingPrices[i]);
+				weekStats.add(timeslot, i, trades.arrClearingPrices[i]);
+			}
 
 			if(trades.cashPosition != 0)
 				cashposition = trades.cashPosition;
@@ -350,7 +420,28 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 		}
 		output.close();
 		debug.close();
+		if (null != partitions) {
+			try {
+				partitions.close();
+			} catch (IOException e) {
+				System.out.println("Cannot write broker files: " + e.toString());
+			}
+		}
+	}
 
+	// One row per broker for this timeslot, each in the broker's own file
+	private void writePartitions(BrokerPartitions partitions, int timeslot,
+			SimulationDataPerTimeSlot trades) {
+		try {
+			for (int i = 1; i <= numberofbrokers; i++) {
+				partitions.get(brokernames[i]).put(timeslot)
+						.put(trades.market[i]).put(trades.tariff[i])
+						.put(trades.balancing[i]).put(trades.arrCapacityTransaction[i])
+						.put(trades.bank[i]).put(trades.distribution[i]).endRow();
+			}
+		} catch (IOException e) {
+			System.out.println("Cannot write broker files: " + e.toString());
+		}
 	}
 
 	// -----------------------------------
@@ -387,7 +478,8 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 		public void handleNewObject(Object comp){
 			// Working System.out.println("2");
 			Competition competition = (Competition) comp;
-			MktPriceStatsPorag.numberofbrokers = competition.getBrokers().size();
+			// numberofbrokers counts only the brokers BrokerHandler indexed,
+			// which is fewer than the competition has when --broker is set
 			System.out.println("Number of brokers : " + competition.getBrokers().size() + " Simulation " + competition.toString());
 
 		}
@@ -411,7 +503,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 				int dayHour = timeslotRepo.currentTimeslot().slotInDay();
 				counter = 0;
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 				cmt.day_date = timeslotRepo.currentTimeslot().getStartTime().getDayOfMonth();
 				cmt.month_date = timeslotRepo.currentTimeslot().getStartTime().getMonthOfYear();
@@ -441,7 +533,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 
 
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 
 				}
 
@@ -490,7 +582,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 				int timeslotSerial = wr.getTimeslotIndex();
 				SimulationDataPerTimeSlot cmt = marketData.get(timeslotSerial);
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 				double temperature = wr.getTemperature();
 				cmt.temp = temperature;
@@ -527,7 +619,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 
 				SimulationDataPerTimeSlot cmt = marketData.get(timeslotSerial);
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 
 				for(int i = 0; i < wf.getPredictions().size(); i++)
@@ -563,7 +655,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 			int target = ct.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 
 			}
 			if (ct.getBroker().getId() == brokerID) {
@@ -591,11 +683,19 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 				// Working System.out.println("7");
 				Broker broker = (Broker) thing;
 				String username = broker.getUsername().toUpperCase();
+				if (null != brokerFilter && !username.equalsIgnoreCase(brokerFilter)) {
+					// not indexed, so its transactions are dropped on arrival
+					return;
+				}
 				System.out.print(broker.getUsername() + " ");
 				brokerCounter++;
-				if (username.equalsIgnoreCase("SPOT")) {
+				if (username.equalsIgnoreCase(focalBroker)) {
 					brokerID = broker.getId();
 				}
+				if (brokerCounter == brokers.length) {
+					brokers = Arrays.copyOf(brokers, brokers.length * 2);
+					brokernames = Arrays.copyOf(brokernames, brokernames.length * 2);
+				}
 
 				//output.println(username + " ");
 				//output.println();
@@ -624,7 +724,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 
 			}
 			if (mt.getBroker().getId() == brokerID) {
@@ -689,7 +789,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (brokerIndex > 0) {
 				if (bt.getCharge() > 0) {
@@ -712,6 +812,11 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 
 		}
 	}
+	// Per-timeslot record with room for every broker seen so far
+	private SimulationDataPerTimeSlot newSlot() {
+		return new SimulationDataPerTimeSlot(brokers.length);
+	}
+
 	public int getBrokerIndex(double brokerid){
 		for(int i = 1; i <= numberofbrokers; i++){
 			if(brokers[i] == brokerid)
@@ -732,7 +837,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 			int target = dt.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (dt.getBroker().getId() == brokerID) {
 				cmt.netDistributionFee += dt.getCharge();
@@ -760,7 +865,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 			int target = tt.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (tt.getBroker().getId() == brokerID){
 
@@ -796,7 +901,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 				int target = cp.getPostedTimeslot().getSerialNumber();
 				SimulationDataPerTimeSlot cmt = marketData.get(target);
 				if (null == cmt) {
-					cmt = new SimulationDataPerTimeSlot();
+					cmt = newSlot();
 				}
 				cmt.cashPosition = cp.getBalance();
 				//System.out.println("Cashposition " + cp.getBalance() + " at timeslot " + target);
@@ -816,7 +921,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 			int target = bt.getPostedTimeslot().getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 			}
 			if (bt.getBroker().getId() == brokerID){
 
@@ -850,7 +955,7 @@ public class MktPriceStatsPorag extends LogtoolContext implements Analyzer {
 			int target = ts.getSerialNumber();
 			SimulationDataPerTimeSlot cmt = marketData.get(target);
 			if (null == cmt) {
-				cmt = new SimulationDataPerTimeSlot();
+				cmt = newSlot();
 
 			}
 			marketData.put(target, cmt);
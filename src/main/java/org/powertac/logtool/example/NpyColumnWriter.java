@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes a table as a directory of NumPy .npy files, one per column, plus
+ * a schema.json listing the columns, their types and the row count.
+ * Values go from the analyzer's primitives straight into little-endian
+ * buffers, with no text formatting, and the result loads without parsing:
+ * <pre>
+ * cols = {c['name']: np.load(dir + '/' + c['file'], mmap_mode='r')
+ *         for c in json.load(open(dir + '/schema.json'))['columns']}
+ * </pre>
+ * Declare the columns, then fill rows in column order:
+ * <pre>
+ * out = new NpyColumnWriter(dir, false)
+ *     .column("hour", Dtype.INT32).column("price", Dtype.FLOAT64);
+ * out.put(hour).put(price).endRow();
+ * out.close();
+ * </pre>
+ * In append mode rows are added to the columns already in the directory,
+ * which must have the same names and types. This allows one training set
+ * to be built up over many games, as the text outputs are.
+ */
+public class NpyColumnWriter implements Closeable
+{
+  static private Logger log =
+      LogManager.getLogger(NpyColumnWriter.class.getName());
+
+  public enum Dtype
+  {
+    INT32("<i4", 4), INT64("<i8", 8), FLOAT64("<f8", 8);
+
+    private final String descr;
+    private final int size;
+
+    Dtype (String descr, int size)
+    {
+      this.descr = descr;
+      this.size = size;
+    }
+
+    public String getDescr ()
+    {
+      return descr;
+    }
+  }
+
+  // fixed header size, so that the row count can be rewritten in place
+  private static final int HEADER_SIZE = 128;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+  private static final Pattern SHAPE = Pattern.compile("'shape': \\((\\d+),\\)");
+
+  private File directory;
+  private boolean append;
+  private ArrayList<Column> columns = new ArrayList<>();
+  private boolean started = false;
+  private boolean closed = false;
+  private long rows = 0;
+  private int next = 0; // next column of the current row
+
+  public NpyColumnWriter (String directory, boolean append)
+  {
+    super();
+    this.directory = new File(directory);
+    this.append = append;
+  }
+
+  /**
+   * Adds a column. All columns must be declared before the first value.
+   */
+  public NpyColumnWriter column (String name, Dtype type)
+  {
+    if (started) {
+      throw new IllegalStateException("Column " + name + " added after data");
+    }
+    columns.add(new Column(name, type));
+    return this;
+  }
+
+  /** Sets the next column of the current row */
+  public NpyColumnWriter put (double value) throws IOException
+  {
+    Column column = nextColumn();
+    switch (column.type) {
+    case FLOAT64:
+      column.buffer.putDouble(value);
+      break;
+    case INT64:
+      column.buffer.putLong((long) value);
+      break;
+    default:
+      column.buffer.putInt((int) value);
+    }
+    return this;
+  }
+
+  /** Sets the next column of the current row */
+  public NpyColumnWriter put (long value) throws IOException
+  {
+    Column column = nextColumn();
+    switch (column.type) {
+    case FLOAT64:
+      column.buffer.putDouble(value);
+      break;
+    case INT64:
+      column.buffer.putLong(value);
+      break;
+    default:
+      column.buffer.putInt((int) value);
+    }
+    return this;
+  }
+
+  /**
+   * Completes the current row.
+   * @throws IllegalStateException if the row does not have one value per
+   *         column
+   */
+  public void endRow ()
+  {
+    if (next != columns.size()) {
+      throw new IllegalStateException("Row has " + next + " values, expected "
+                                      + columns.size());
+    }
+    next = 0;
+    rows += 1;
+  }
+
+  /** Rows in the table, including any that were already there */
+  public long getRowCount ()
+  {
+    return rows;
+  }
+
+  private Column nextColumn () throws IOException
+  {
+    if (!started) {
+      start();
+    }
+    Column column = columns.get(next);
+    if (column.buffer.remaining() < column.type.size) {
+      column.flush();
+    }
+    next += 1;
+    return column;
+  }
+
+  // Opens the column files, picking up the existing row count in append
+  // mode
+  private void start () throws IOException
+  {
+    started = true;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+    long existing = -1;
+    for (Column column: columns) {
+      File file = new File(directory, column.filename);
+      if (append && file.length() > 0) {
+        column.channel = FileChannel.open(file.toPath(),
+                                          StandardOpenOption.READ,
+                                          StandardOpenOption.WRITE);
+        long count = readRowCount(column);
+        if (existing >= 0 && count != existing) {
+          throw new IOException("Column " + column.name + " has " + count
+                                + " rows, expected " + existing);
+        }
+        existing = count;
+        column.channel.position(column.channel.size());
+      }
+      else {
+        if (existing > 0) {
+          throw new IOException("Column " + column.name + " is missing from "
+                                + directory);
+        }
+        existing = 0;
+        column.channel = FileChannel.open(file.toPath(),
+                                          StandardOpenOption.CREATE,
+                                          StandardOpenOption.TRUNCATE_EXISTING,
+                                          StandardOpenOption.WRITE);
+        column.channel.write(header(column.type, 0));
+      }
+    }
+    rows = Math.max(existing, 0);
+  }
+
+  // Checks that an existing column file is one of ours, of the right type,
+  // and returns its row count
+  private long readRowCount (Column column) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+    column.channel.read(buffer, 0);
+    String text = new String(buffer.array(), MAGIC.length + 2,
+                             HEADER_SIZE - MAGIC.length - 2,
+                             StandardCharsets.ISO_8859_1);
+    Matcher shape = SHAPE.matcher(text);
+    if (!text.contains("'descr': '" + column.type.descr + "'")
+        || !shape.find()) {
+      throw new IOException("Cannot append to " + column.filename
+                            + ": not a " + column.type.descr + " vector");
+    }
+    long count = Long.parseLong(shape.group(1));
+    if (column.channel.size() != HEADER_SIZE + count * column.type.size) {
+      throw new IOException("Cannot append to " + column.filename
+                            + ": size does not match header");
+    }
+    return count;
+  }
+
+  // Version 1.0 header padded to HEADER_SIZE, as the format requires the
+  // data to start on a 64-byte boundary
+  private ByteBuffer header (Dtype type, long count)
+  {
+    StringBuilder dict = new StringBuilder();
+    dict.append("{'descr': '").append(type.descr)
+        .append("', 'fortran_order': False, 'shape': (")
+        .append(count).append(",), }");
+    while (dict.length() < HEADER_SIZE - MAGIC.length - 3)
+      dict.append(' ');
+    dict.append('\n');
+    ByteBuffer result =
+        ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    result.put(MAGIC);
+    result.putShort((short) dict.length());
+    result.put(dict.toString().getBytes(StandardCharsets.ISO_8859_1));
+    result.flip();
+    return result;
+  }
+
+  /**
+   * Writes out buffered values, fixes up the row counts in the column
+   * headers and writes schema.json. A partial last row is dropped. May be
+   * called more than once.
+   */
+  @Override
+  public void close () throws IOException
+  {
+    if (closed)
+      return;
+    closed = true;
+    if (!started) {
+      start();
+    }
+    if (next != 0) {
+      log.warn("Dropping incomplete last row in {}", directory);
+    }
+    for (Column column: columns) {
+      column.flush();
+      column.channel.truncate(HEADER_SIZE + rows * column.type.size);
+      column.channel.write(header(column.type, rows), 0);
+      column.channel.close();
+    }
+    writeSchema();
+    log.info("Wrote {} rows to {}", rows, directory);
+  }
+
+  private void writeSchema () throws IOException
+  {
+    try (PrintWriter schema =
+        new PrintWriter(new File(directory, "schema.json"), "UTF-8")) {
+      schema.println("{");
+      schema.println("  \"rows\": " + rows + ",");
+      schema.println("  \"columns\": [");
+      for (int i = 0; i < columns.size(); i++) {
+        Column column = columns.get(i);
+        schema.print("    {\"name\": \"" + column.name
+                     + "\", \"dtype\": \"" + column.type.descr
+                     + "\", \"file\": \"" + column.filename + "\"}");
+        schema.println(i < columns.size() - 1 ? "," : "");
+      }
+      schema.println("  ]");
+      schema.println("}");
+    }
+  }
+
+  private static class Column
+  {
+    String name;
+    String filename;
+    Dtype type;
+    FileChannel channel;
+    ByteBuffer buffer;
+
+    Column (String name, Dtype type)
+    {
+      this.name = name;
+      this.type = type;
+      filename = name.replaceAll("[^A-Za-z0-9_-]", "_") + ".npy";
+      buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void flush () throws IOException
+    {
+      buffer.flip();
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+      buffer.clear();
+    }
+  }
+}
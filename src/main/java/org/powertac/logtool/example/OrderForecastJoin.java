@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.ArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.Order;
+import org.powertac.common.WeatherForecastPrediction;
+
+/**
+ * Joins Orders with the WeatherForecastPrediction for the same target
+ * timeslot and hour-ahead while the log is read. A pair is passed to the
+ * JoinListener as soon as both sides are present: an Order that arrives
+ * after its forecast is joined at once, and one that arrives first waits
+ * for it. When a target timeslot closes, its keys are dropped, and any
+ * Orders still waiting are reported as unmatched.
+ *
+ * Keys are held in a ring of target timeslots, each with one cell per
+ * hour-ahead, and the cells are reused, so memory is bounded by the
+ * trading window rather than the length of the game.
+ * <pre>
+ * join = new OrderForecastJoin(listener);
+ * forecast for target, ha -&gt; join.addForecast(target, ha, prediction)
+ * order for target, ha -&gt; join.addOrder(target, ha, order)
+ * TimeslotUpdate -&gt; join.closeBefore(tsu.getFirstEnabled())
+ * report() -&gt; join.closeAll()
+ * </pre>
+ */
+public class OrderForecastJoin
+{
+  static private Logger log =
+      LogManager.getLogger(OrderForecastJoin.class.getName());
+
+  public static final int HOURS_AHEAD = 24;
+  private static final int RING = 32;
+
+  private JoinListener listener;
+
+  // ring of target timeslots, -1 if unused
+  private int[] targets = new int[RING];
+  private WeatherForecastPrediction[][] forecasts =
+      new WeatherForecastPrediction[RING][HOURS_AHEAD];
+  private ArrayList<ArrayList<Order>> waiting = new ArrayList<>();
+  private int oldest = Integer.MAX_VALUE; // oldest target in the ring
+
+  public OrderForecastJoin (JoinListener listener)
+  {
+    super();
+    this.listener = listener;
+    for (int i = 0; i < RING; i++) {
+      targets[i] = -1;
+      for (int ha = 0; ha < HOURS_AHEAD; ha++)
+        waiting.add(new ArrayList<Order>());
+    }
+  }
+
+  public void addForecast (int target, int hourAhead,
+                           WeatherForecastPrediction prediction)
+  {
+    if (!inRange(target, hourAhead))
+      return;
+    int slot = claim(target);
+    forecasts[slot][hourAhead] = prediction;
+    ArrayList<Order> orders = waiting.get(slot * HOURS_AHEAD + hourAhead);
+    for (Order order: orders)
+      listener.joined(target, hourAhead, order, prediction);
+    orders.clear();
+  }
+
+  public void addOrder (int target, int hourAhead, Order order)
+  {
+    if (!inRange(target, hourAhead))
+      return;
+    int slot = claim(target);
+    WeatherForecastPrediction prediction = forecasts[slot][hourAhead];
+    if (null != prediction)
+      listener.joined(target, hourAhead, order, prediction);
+    else
+      waiting.get(slot * HOURS_AHEAD + hourAhead).add(order);
+  }
+
+  /**
+   * Closes all target timeslots before firstOpen.
+   */
+  public void closeBefore (int firstOpen)
+  {
+    if (oldest >= firstOpen)
+      return;
+    int next = Integer.MAX_VALUE;
+    for (int slot = 0; slot < RING; slot++) {
+      if (targets[slot] < 0)
+        continue;
+      if (targets[slot] < firstOpen)
+        evict(slot);
+      else
+        next = Math.min(next, targets[slot]);
+    }
+    oldest = next;
+  }
+
+  /** Closes every target timeslot, at the end of the game */
+  public void closeAll ()
+  {
+    closeBefore(Integer.MAX_VALUE);
+  }
+
+  private boolean inRange (int target, int hourAhead)
+  {
+    if (target < 0 || hourAhead < 0 || hourAhead >= HOURS_AHEAD) {
+      log.warn("Ignoring target {}, hour-ahead {}", target, hourAhead);
+      return false;
+    }
+    return true;
+  }
+
+  // Returns the ring slot for target, evicting whatever was there
+  private int claim (int target)
+  {
+    int slot = target % RING;
+    if (targets[slot] != target) {
+      if (targets[slot] >= 0) {
+        log.warn("Target {} still open at {}", targets[slot], target);
+        evict(slot);
+      }
+      targets[slot] = target;
+      oldest = Math.min(oldest, target);
+    }
+    return slot;
+  }
+
+  private void evict (int slot)
+  {
+    int target = targets[slot];
+    for (int ha = 0; ha < HOURS_AHEAD; ha++) {
+      ArrayList<Order> orders = waiting.get(slot * HOURS_AHEAD + ha);
+      if (!orders.isEmpty()) {
+        listener.unmatched(target, ha, orders);
+        orders.clear();
+      }
+      forecasts[slot][ha] = null;
+    }
+    targets[slot] = -1;
+  }
+
+  /**
+   * Receives the output of the join.
+   */
+  public interface JoinListener
+  {
+    /** An order and the forecast for its target and hour-ahead */
+    public void joined (int target, int hourAhead, Order order,
+                        WeatherForecastPrediction prediction);
+
+    /**
+     * Orders for a target and hour-ahead that closed without a forecast.
+     * The list is cleared after the call.
+     */
+    public void unmatched (int target, int hourAhead, ArrayList<Order> orders);
+  }
+}
@@ -120,7 +120,11 @@ public class PerHourDemand extends LogtoolContext implements Analyzer {
 			return;
 		}
 		dataFilename = args[1];
-		super.cli(args[0], this);
+		LogLineFilter.read(args[0],
+				LogLineFilter.neededClasses(this,
+					TariffTransaction.class, BalancingTransaction.class,
+					TimeslotUpdate.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/*
@@ -101,7 +101,9 @@ implements Analyzer
       byBroker = true;
     }
     dataFilename = args[argOffset + 1];
-    super.cli(args[argOffset], this);
+    LogLineFilter.read(args[argOffset],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
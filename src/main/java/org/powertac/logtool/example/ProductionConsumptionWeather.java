@@ -15,9 +15,7 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.HashMap;
 
 import org.apache.logging.log4j.LogManager;
@@ -62,7 +60,7 @@ implements Analyzer
   private HashMap<Integer, WeatherReport> weatherReports;
 
   // data output file
-  private PrintWriter data = null;
+  private AsyncRowWriter data = null;
   private String dataFilename = "data.txt";
   private boolean dataInit = false;
 
@@ -97,7 +95,11 @@ implements Analyzer
       return;
     }
     dataFilename = args[1];
-    super.cli(args[0], this);
+    LogLineFilter.read(args[0],
+                       LogLineFilter.neededClasses(this,
+                           TimeslotUpdate.class, TariffTransaction.class,
+                           WeatherReport.class),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -117,9 +119,13 @@ implements Analyzer
                                   WeatherReport.class);
     try {
       System.out.println("Writing to " + dataFilename);
-      data = new PrintWriter(new File(dataFilename));
+      data = new AsyncRowWriter(dataFilename,
+                                "slot, dow, hour, production, consumption, temp, wind, cloud",
+                                ", ",
+                                AsyncRowWriter.INTEGER, AsyncRowWriter.INTEGER,
+                                AsyncRowWriter.INTEGER, 3, 3, 3, 3, 3);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       System.out.println("Data output failed: " + e.toString());
       e.printStackTrace();
     }
@@ -130,7 +136,12 @@ implements Analyzer
   @Override
   public void report ()
   {
-    data.close();
+    try {
+      data.close();
+    }
+    catch (IOException e) {
+      log.error("Cannot write " + dataFilename + ": " + e.toString());
+    }
   }
 
   // Called on timeslotUpdate. Note that there are two of these before
@@ -141,8 +152,7 @@ implements Analyzer
   private void summarizeTimeslot (Instant instant)
   {
     if (!dataInit) {
-      // first time through nothing to but print header
-      data.println("slot, dow, hour, production, consumption, temp, wind, cloud");
+      // first time through nothing to do, header is already written
       //gameId = Competition.currentCompetition().getName();
       dataInit = true;
       return;
@@ -152,19 +162,16 @@ implements Analyzer
     if (0.0 == produced && 0.0 == used)
       return;
 
-    // print timeslot, dow, hod,
-    data.print(String.format("%d, %d, %d, ",
-                             timeslot,
-                             instant.get(DateTimeFieldType.dayOfWeek()),
-                             instant.get(DateTimeFieldType.hourOfDay())));
-    // print customer production, consumption, 
-    data.print(String.format("%.3f, %.3f, ",
-                             produced, used));
-    // look up the weather report, print the data
+    // timeslot, dow, hod, customer production, consumption, then the
+    // weather report for the timeslot
     WeatherReport wr = weatherReports.get(timeslot);
-    data.println(String.format("%.3f, %.3f, %.3f",
-                               wr.getTemperature(), wr.getWindSpeed(),
-                               wr.getCloudCover()));
+    data.put(timeslot)
+        .put(instant.get(DateTimeFieldType.dayOfWeek()))
+        .put(instant.get(DateTimeFieldType.hourOfDay()))
+        .put(produced).put(used)
+        .put(wr.getTemperature()).put(wr.getWindSpeed())
+        .put(wr.getCloudCover())
+        .endRow();
     weatherReports.remove(timeslot);
     produced = 0.0;
     used = 0.0;
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+/**
+ * Fixed set of quantity/cost accumulators held in flat primitive arrays,
+ * addressed by a dense int slot. Callers map their keys onto slots, for
+ * example broker index * leadtimes + leadtime, or timeslot modulo a ring
+ * size for data that is only needed until its timeslot closes. Slots are
+ * cleared in place, so steady-state use allocates nothing.
+ */
+public class QtyCostAccumulator
+{
+  private double[] qty;
+  private double[] cost;
+  private int[] count;
+
+  public QtyCostAccumulator (int size)
+  {
+    super();
+    qty = new double[size];
+    cost = new double[size];
+    count = new int[size];
+  }
+
+  public int size ()
+  {
+    return qty.length;
+  }
+
+  /**
+   * Grows the accumulator to at least newSize slots, keeping contents.
+   */
+  public void ensureSize (int newSize)
+  {
+    if (newSize > qty.length) {
+      qty = Arrays.copyOf(qty, newSize);
+      cost = Arrays.copyOf(cost, newSize);
+      count = Arrays.copyOf(count, newSize);
+    }
+  }
+
+  public void add (int slot, double quantity, double money)
+  {
+    qty[slot] += quantity;
+    cost[slot] += money;
+    count[slot] += 1;
+  }
+
+  public double getQty (int slot)
+  {
+    return qty[slot];
+  }
+
+  public double getCost (int slot)
+  {
+    return cost[slot];
+  }
+
+  /** Number of add() calls since the slot was last cleared */
+  public int getCount (int slot)
+  {
+    return count[slot];
+  }
+
+  public boolean isEmpty (int slot)
+  {
+    return 0 == count[slot];
+  }
+
+  public void clear (int slot)
+  {
+    qty[slot] = 0.0;
+    cost[slot] = 0.0;
+    count[slot] = 0;
+  }
+
+  public void clear ()
+  {
+    Arrays.fill(qty, 0.0);
+    Arrays.fill(cost, 0.0);
+    Arrays.fill(count, 0);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming quantile estimates with bounded relative error, in the manner
+ * of DDSketch. Values are counted in logarithmically sized buckets, one
+ * set for positive and one for negative values, so any quantile is
+ * returned within the given relative accuracy of a value that was added.
+ * Sketches with the same accuracy merge exactly by adding bucket counts,
+ * so per-game sketches can be combined in any order.
+ *
+ * Magnitudes below MIN_VALUE count as zero, and magnitudes above
+ * MAX_VALUE go in the top bucket. With 1% accuracy a sketch holds at most
+ * a few thousand counters, however many values are added, and usually
+ * far fewer, since the buckets grow to cover only the range seen.
+ */
+public class QuantileSketch
+{
+  public static final double MIN_VALUE = 1e-6;
+  public static final double MAX_VALUE = 1e9;
+
+  private double accuracy;
+  private double gamma;
+  private double logGamma;
+  private int maxIndex;
+
+  private Buckets positive = new Buckets();
+  private Buckets negative = new Buckets();
+  private long zeros = 0;
+  private long count = 0;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /**
+   * Creates a sketch with the given relative accuracy, for example 0.01.
+   */
+  public QuantileSketch (double accuracy)
+  {
+    super();
+    this.accuracy = accuracy;
+    gamma = (1.0 + accuracy) / (1.0 - accuracy);
+    logGamma = Math.log(gamma);
+    maxIndex = index(MAX_VALUE);
+  }
+
+  public void add (double value)
+  {
+    if (Double.isNaN(value))
+      return;
+    count += 1;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    double magnitude = Math.abs(value);
+    if (magnitude < MIN_VALUE) {
+      zeros += 1;
+    }
+    else if (value > 0) {
+      positive.add(Math.min(index(magnitude), maxIndex), 1);
+    }
+    else {
+      negative.add(Math.min(index(magnitude), maxIndex), 1);
+    }
+  }
+
+  /**
+   * Adds the counts of another sketch to this one.
+   * @throws IllegalArgumentException if the accuracies differ
+   */
+  public void merge (QuantileSketch other)
+  {
+    if (other.accuracy != accuracy) {
+      throw new IllegalArgumentException("Cannot merge sketches of accuracy "
+                                         + accuracy + " and " + other.accuracy);
+    }
+    positive.merge(other.positive);
+    negative.merge(other.negative);
+    zeros += other.zeros;
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public long getCount ()
+  {
+    return count;
+  }
+
+  /** Smallest value added, or NaN if the sketch is empty */
+  public double getMin ()
+  {
+    return (0 == count) ? Double.NaN : min;
+  }
+
+  /** Largest value added, or NaN if the sketch is empty */
+  public double getMax ()
+  {
+    return (0 == count) ? Double.NaN : max;
+  }
+
+  /**
+   * Estimated q-quantile, 0 &lt;= q &lt;= 1, or NaN if the sketch is empty.
+   */
+  public double getQuantile (double q)
+  {
+    if (0 == count)
+      return Double.NaN;
+    if (q <= 0.0)
+      return min;
+    if (q >= 1.0)
+      return max;
+    long rank = (long) (q * (count - 1));
+    double result;
+    if (rank < negative.total) {
+      // negative buckets, from the most negative
+      int i = negative.indexOfRank(negative.total - 1 - rank);
+      result = -value(i);
+    }
+    else if (rank < negative.total + zeros) {
+      result = 0.0;
+    }
+    else {
+      int i = positive.indexOfRank(rank - negative.total - zeros);
+      result = value(i);
+    }
+    return Math.max(min, Math.min(max, result));
+  }
+
+  public void write (DataOutput out) throws IOException
+  {
+    out.writeDouble(accuracy);
+    out.writeLong(count);
+    out.writeLong(zeros);
+    out.writeDouble(min);
+    out.writeDouble(max);
+    positive.write(out);
+    negative.write(out);
+  }
+
+  public static QuantileSketch read (DataInput in) throws IOException
+  {
+    QuantileSketch result = new QuantileSketch(in.readDouble());
+    result.count = in.readLong();
+    result.zeros = in.readLong();
+    result.min = in.readDouble();
+    result.max = in.readDouble();
+    result.positive.read(in);
+    result.negative.read(in);
+    return result;
+  }
+
+  private int index (double magnitude)
+  {
+    return (int) Math.ceil(Math.log(magnitude) / logGamma);
+  }
+
+  // midpoint of bucket i, within accuracy of everything in it
+  private double value (int i)
+  {
+    return 2.0 * Math.pow(gamma, i) / (gamma + 1.0);
+  }
+
+  // Counts for a contiguous range of bucket indices, grown as needed
+  private static class Buckets
+  {
+    int offset = 0; // bucket index of counts[0]
+    long[] counts = new long[0];
+    long total = 0;
+
+    void add (int index, long n)
+    {
+      if (0 == counts.length) {
+        offset = index;
+        counts = new long[16];
+      }
+      else if (index < offset) {
+        int shift = Math.max(offset - index, counts.length);
+        long[] grown = new long[counts.length + shift];
+        System.arraycopy(counts, 0, grown, shift, counts.length);
+        counts = grown;
+        offset -= shift;
+      }
+      else if (index >= offset + counts.length) {
+        counts = Arrays.copyOf(counts,
+                               Math.max(counts.length * 2,
+                                        index - offset + 1));
+      }
+      counts[index - offset] += n;
+      total += n;
+    }
+
+    void merge (Buckets other)
+    {
+      for (int i = 0; i < other.counts.length; i++) {
+        if (other.counts[i] > 0)
+          add(other.offset + i, other.counts[i]);
+      }
+    }
+
+    // Bucket index holding the value of the given rank, counting up from
+    // the smallest magnitude
+    int indexOfRank (long rank)
+    {
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen > rank)
+          return offset + i;
+      }
+      return offset + counts.length - 1;
+    }
+
+    void write (DataOutput out) throws IOException
+    {
+      int first = 0;
+      int last = counts.length - 1;
+      while (first <= last && 0 == counts[first])
+        first += 1;
+      while (last >= first && 0 == counts[last])
+        last -= 1;
+      out.writeInt(offset + first);
+      out.writeInt(last - first + 1);
+      for (int i = first; i <= last; i++)
+        out.writeLong(counts[i]);
+    }
+
+    void read (DataInput in) throws IOException
+    {
+      int first = in.readInt();
+      int length = in.readInt();
+      for (int i = 0; i < length; i++) {
+        long n = in.readLong();
+        if (n > 0)
+          add(first + i, n);
+      }
+    }
+  }
+}
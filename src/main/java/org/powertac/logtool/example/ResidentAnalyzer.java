@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.PrintStream;
+
+/**
+ * An analyzer that AnalysisDaemon keeps between jobs. The daemon creates
+ * one instance per class and runs every job for that class on it, so the
+ * instance's logtool context stays warm. Before each job the daemon
+ * recycles the repos and calls resetGame() (see GameRecycler.prepare()).
+ * Listeners registered in setup() stay with the logtool's reader, so they
+ * are registered once per reader, not once per game.
+ *
+ * cli() takes the same args as the analyzer's main(). Options that are
+ * not given must take their defaults, even if an earlier job set them.
+ * Messages go to out rather than System.out, which belongs to the whole
+ * JVM.
+ */
+public interface ResidentAnalyzer extends GameLifecycle
+{
+  /**
+   * Runs one job with the given command-line args.
+   */
+  public void cli (String[] args, PrintStream out);
+}
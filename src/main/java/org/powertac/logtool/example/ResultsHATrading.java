@@ -17,6 +17,8 @@ package org.powertac.logtool.example;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -65,6 +67,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author Porag Chowdhurys
  */
 public class ResultsHATrading
+implements ResidentAnalyzer
 {
 	static private Logger log = LogManager.getLogger(MktPriceStats.class.getName());
 
@@ -72,6 +75,7 @@ public class ResultsHATrading
 	private HashMap <String, Data> brokerDr;
 	private HashMap <Integer, String> brokerID;
 	private PrintWriter output = null;
+	private PrintStream out = System.out;
 	private String inputFilename = "";
 	private String outputFilename = "clearedTrades.data";
 	
@@ -88,7 +92,32 @@ public class ResultsHATrading
 	 */
 	public static void main (String[] args)
 	{
-		new ResultsHATrading().run2(args);
+		new ResultsHATrading().cli(args, System.out);
+	}
+
+	/**
+	 * Takes two args, the csv input file or directory and the output
+	 * filename. Console tables and messages go to out.
+	 */
+	@Override
+	public void cli (String[] args, PrintStream out)
+	{
+		this.out = out;
+		if(args.length != 2){
+			out.println("Usage: ResultsHATrading input-file output-file");
+			return;
+		}
+		run2(args);
+	}
+
+	@Override
+	public void resetGame ()
+	{
+		brokerDr = new HashMap<String, Data>();
+		brokerID = new HashMap<>();
+		N = 0.0;
+		n = 0;
+		firstTime = true;
 	}
 	
 	/*
@@ -104,424 +133,498 @@ public class ResultsHATrading
 	
 	}
 	
-	
+	/*
+	 * The input may be a single csv file or a directory of them, e.g. one per
+	 * game of a tournament. Files are read in parallel, and their totals are
+	 * merged by broker name before reporting.
+	 */
 	public void analyseBAl(){
-		double ts = 0;
 		try{
+			List<File> files = inputFiles(new File(inputFilename));
+			BalancingTotals totals = readAll(files);
+			n = totals.brokers.size();
+			for(int i = 0; i < n; i++)
+				brokerID.put(i, totals.brokers.get(i).name);
 			output = new PrintWriter(new File("Results."+outputFilename));
-			File file = new File(inputFilename); 
-			Scanner sc = new Scanner(file); 
-			String bName = "";
-			String bDrPrice = "";
-			String bDrMWh = "";
-			String bCrPrice = "";
-			String bCrMWh = "";
-			
-			// Start reading the file and CALCULATE AVG
-			
-			double [] deficitTS = new double[10];
-			double [] surplusTS = new double[10];
-			double [] zeroTS = new double[10];
-			double [] perfectTS = new double[10];
-			double brokerTx$AllTS[][] = new double [2][10];
-			double brokerTxWAllTS[][] = new double [2][10];
-			
-			double brokerDrAllTS[][] = new double [2][10];
-			double brokerCrAllTS[][] = new double [2][10];
-			double brokerDrDiffAllTS[][] = new double [2][10];
-			double brokerTxDrAllTS[][] = new double [2][10];
-			double brokerCrDiffAllTS[][] = new double [2][10];
-			double brokerTxCrAllTS[][] = new double [2][10];
-			double brokerTxCrBalAllTS[] = new double [10];
-			double brokerTxDrBalAllTS[] = new double [10];
-			
-			
-			double brokerDrUOneTS[][] = new double [2][10];
-			double brokerTxDrOneTS[][] = new double [2][10];
-			double brokerCrUOneTS[][] = new double [2][10];
-			double brokerTxCrOneTS[][] = new double [2][10];
-			double TOTAL_DR_VOL[] = {0,0};
-			double TOTAL_CR_VOL[] = {0,0};
-			while (sc.hasNextLine()){
-				String line = sc.nextLine();
-				if(!line.equalsIgnoreCase("")){
-					String [] arrVals = line.split(",",-1);
-					if(firstTime)
-					{
-						int length = arrVals.length;
-						n = length/ITEMS;
-						firstTime = false;
-					}
-					
-					int index = 0;
-					for(int i = 0; i < n; i++){
+			reportBalancing(totals);
+			output.close();
+		}
+		catch(Exception ex){
+			out.println(ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
 
-						// Get the broker name
-						bName = arrVals[index];
-						index++;
-						String name = brokerID.get(i);
-						if(name == null)
-							brokerID.put(i, bName);
-						
-						double [] dr$ = {0.0, 0.0};
-						double [] drTx = {0.0, 0.0};
-						
-						double [] cr$ = {0.0, 0.0};
-						double [] crTx = {0.0, 0.0};
-						
-						for(int j=0;j<HA;j++)
-						{
-							double drpr = 0.0;
-							double drmwh = 0.0;
-							double crpr = 0.0;
-							double crmwh = 0.0;
-							
-							// get price debit
-							bDrPrice = arrVals[index];
-							index++;
-							if(!bDrPrice.equals("")){
-								drpr = Double.parseDouble(bDrPrice);
-							}
+	// A directory stands for all the csv files in it, in name order
+	private List<File> inputFiles(File input){
+		List<File> result = new ArrayList<>();
+		File[] contents = input.listFiles();
+		if(contents == null) {
+			result.add(input);
+			return result;
+		}
+		for(File file : contents) {
+			if(file.isFile() && file.getName().toLowerCase().endsWith(".csv"))
+				result.add(file);
+		}
+		Collections.sort(result);
+		return result;
+	}
 
-							// get Mwh debit    				
-							bDrMWh = arrVals[index];
-							index++;
-							if(!bDrMWh.equals("")){
-								drmwh = Double.parseDouble(bDrMWh);
-							}
-							
-							// get price credit
-							bCrPrice = arrVals[index];
-							index++;
-							if(!bCrPrice.equals("")){
-								crpr = Double.parseDouble(bCrPrice);
-							}
+	// Reads the files in parallel and merges them in file order (see
+	// SavedFiles). A file that cannot be read is reported and skipped.
+	private BalancingTotals readAll(List<File> files) throws InterruptedException {
+		String[] filenames = new String[files.size()];
+		for(int i = 0; i < filenames.length; i++)
+			filenames[i] = files.get(i).getPath();
+		return SavedFiles.merge(filenames,
+				(filename) -> readBalancing(new File(filename)),
+				new BalancingTotals(), BalancingTotals::merge);
+	}
 
-							// get Mwh credit    				
-							bCrMWh = arrVals[index];
-							index++;
-							if(!bCrMWh.equals("")){
-								crmwh = Double.parseDouble(bCrMWh);
-							}
-							
-							
-							dr$[0] = dr$[0] + (drpr*Math.abs(drmwh)); 
-							cr$[0] = cr$[0] + (crpr*Math.abs(crmwh));
-							drTx[0] = drTx[0] + drmwh; 
-							crTx[0] = crTx[0] + crmwh;
-							
-							if(j > 0){ // Restrict 0 HourAhead auctions
-								dr$[1] = dr$[1] + (drpr*Math.abs(drmwh)); 
-								cr$[1] = cr$[1] + (crpr*Math.abs(crmwh));
-								drTx[1] = drTx[1] + drmwh; 
-								crTx[1] = crTx[1] + crmwh;
-							}
-							
-						} // Finished one timeslot for a broker
-						
-						double balDrV = 0;
-						double balDrP = 0;
-						double balCrV = 0;
-						double balCrP = 0;
-						
-						String balDr = arrVals[index];
-						index++;
-						if(!balDr.equals("") && !balDr.equalsIgnoreCase("NaN")){
-							balDrP = Double.parseDouble(balDr);
-						}
-						
-						String balDrVol = arrVals[index];
-						index++;
-						if(!balDrVol.equals("") && !balDrVol.equalsIgnoreCase("NaN")){
-							balDrV = Double.parseDouble(balDrVol);
-							surplusTS[i]++;
-							brokerTxDrBalAllTS[i] += balDrV;
-						}
-						
-						String balCr = arrVals[index];
-						index++;
-						if(!balCr.equals("") && !balCr.equalsIgnoreCase("NaN")){
-							balCrP = Double.parseDouble(balCr);
-						}
-						
-						String balCrVol = arrVals[index];
-						index++;
-						if(!balCrVol.equals("") && !balCrVol.equalsIgnoreCase("NaN")){
-							balCrV = Double.parseDouble(balCrVol);
-							deficitTS[i]++;
-							brokerTxCrBalAllTS[i] += balCrV;
-						}
-						
-						if(balCrV == 0 && balDrV == 0) {
-							if(drTx[0] == 0 && crTx[0] == 0) // zerodemand
-								zeroTS[i]++;
-							else
-								perfectTS[i]++;
-							
-						}
-						
-						// Comment to ignore balancing market
-						dr$[0] = dr$[0] + balDrP;
-						cr$[0] = cr$[0] + balCrP;
-						drTx[0] = drTx[0] + balDrV;
-						crTx[0] = crTx[0] + balCrV;
-						
-						brokerTx$AllTS[0][i] += dr$[0] + cr$[0];
-						brokerTxWAllTS[0][i] += drTx[0] + crTx[0];
-						brokerTx$AllTS[1][i] += dr$[1] + cr$[1];
-						brokerTxWAllTS[1][i] += drTx[1] + crTx[1];
-						
-						// Update the cost Dr
-						brokerDrUOneTS[0][i] = 0;
-						brokerDrUOneTS[1][i] = 0;
-						brokerTxDrOneTS[0][i] = 0;
-						brokerTxDrOneTS[1][i] = 0;
-						if(drTx[0] < 0){
-							brokerDrUOneTS[0][i] = dr$[0] / Math.abs(drTx[0]); 
-							brokerTxDrOneTS[0][i] = drTx[0];
-						}
-						else{
-							if(drTx[0] > 0){
-								System.out.println("ERROR: drTx positive!");
-								System.exit(0);
-							}
-						}
-						
-						if(drTx[1] < 0){
-							brokerDrUOneTS[1][i] = dr$[1] / Math.abs(drTx[1]); 
-							brokerTxDrOneTS[1][i] = drTx[1];
-						}
-						else{
-							if(drTx[1] > 0){
-								System.out.println("ERROR: drTx positive!");
-								System.exit(0);
-							}
-						}
-						
-						// Update the cost Cr
-						brokerCrUOneTS[0][i] = 0; 
-						brokerTxCrOneTS[0][i] = 0;
-						brokerCrUOneTS[1][i] = 0; 
-						brokerTxCrOneTS[1][i] = 0;
-						
-						if(crTx[0] > 0){
-							brokerCrUOneTS[0][i] = cr$[0] / Math.abs(crTx[0]); 
-							brokerTxCrOneTS[0][i] = crTx[0];
-						}
-						else{
-							if(crTx[0] < 0){
-								System.out.println("ERROR: crTx negative!");
-								System.exit(0);
-							}
-						}
-						
-						if(crTx[1] > 0){
-							brokerCrUOneTS[1][i] = cr$[1] / Math.abs(crTx[1]); 
-							brokerTxCrOneTS[1][i] = crTx[1];
-						}
-						else{
-							if(crTx[1] < 0){
-								System.out.println("ERROR: crTx negative!");
-								System.exit(0);
-							}
-						}
-					}
-					
-					// Update the brokerDrUOneTS[n-1] & brokerCrUOneTS[n-1]
-					brokerTxDrOneTS[0][n-1] = 0;
-					brokerTxCrOneTS[0][n-1] = 0;
-					brokerDrUOneTS[0][n-1] = 0;
-					brokerCrUOneTS[0][n-1] = 0;
-					brokerTxDrOneTS[1][n-1] = 0;
-					brokerTxCrOneTS[1][n-1] = 0;
-					brokerDrUOneTS[1][n-1] = 0;
-					brokerCrUOneTS[1][n-1] = 0;
-					
-					for(int l = 0; l < n-1; l++){
-						for(int x = 0; x < 2; x++){
-							brokerTxDrOneTS[x][n-1] += brokerTxDrOneTS[x][l];
-							brokerTxCrOneTS[x][n-1] += brokerTxCrOneTS[x][l];
-							brokerDrUOneTS[x][n-1] += Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][l];
-							brokerCrUOneTS[x][n-1] += Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][l];
-						}
-					}
-					brokerDrUOneTS[0][n-1] /= Math.abs(brokerTxDrOneTS[0][n-1]);
-					brokerDrUOneTS[1][n-1] /= Math.abs(brokerTxDrOneTS[1][n-1]);
-					brokerCrUOneTS[0][n-1] /= Math.abs(brokerTxCrOneTS[0][n-1]);
-					brokerCrUOneTS[1][n-1] /= Math.abs(brokerTxCrOneTS[1][n-1]);
-					
-					if(brokerTxDrOneTS[0][n-1] == 0)
-						brokerDrUOneTS[0][n-1] = 0;
-					
-					if(brokerTxDrOneTS[1][n-1] == 0)
-						brokerDrUOneTS[1][n-1] = 0;
-					
-					if(brokerTxCrOneTS[0][n-1] == 0)
-						brokerCrUOneTS[0][n-1] = 0;
-					
-					if(brokerTxCrOneTS[1][n-1] == 0)
-						brokerCrUOneTS[1][n-1] = 0;
-					
-					// After one TS
-					for(int l = 0; l < n; l++){
-						for(int x = 0; x < 2; x++){
-							brokerDrAllTS[x][l] += Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][l];
-							brokerCrAllTS[x][l] += Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][l];
-							
-							// Sell
-							brokerDrDiffAllTS[x][l] += (Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][l]) - (Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][n-1]);
-							brokerTxDrAllTS[x][l] += brokerTxDrOneTS[x][l]; 
-							
-							if(l<n-1)
-								TOTAL_DR_VOL[x] += brokerTxDrOneTS[x][l];
-							
-							// Buy
-							brokerCrDiffAllTS[x][l] += (Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][n-1]) - (Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][l]);
-							brokerTxCrAllTS[x][l] += brokerTxCrOneTS[x][l]; 
-								
-							if(l<n-1)
-								TOTAL_CR_VOL[x] += brokerTxCrOneTS[x][l]; 
-							
-							// reset values for one ts
-							brokerDrUOneTS[x][l] = 0;
-							brokerTxDrOneTS[x][l] = 0;
-							brokerCrUOneTS[x][l] = 0;
-							brokerTxCrOneTS[x][l] = 0;
-						}
-					}
-					ts++;
+	/*
+	 * Partial sums for one file. Each line is one timeslot, with ITEMS
+	 * columns per broker: name, 24 x (debit price, debit MWh, credit price,
+	 * credit MWh), then balancing debit and credit money and volume. The
+	 * last broker column is the average broker.
+	 */
+	BalancingTotals readBalancing(File file) throws IOException {
+		BalancingAccumulator accumulator = new BalancingAccumulator();
+		String[] names = null;
+		double[][] values = null;
+		try (DelimitedFileReader reader = new DelimitedFileReader(file, ',')) {
+			while (reader.nextRecord()){
+				if(names == null)
+				{
+					int n = reader.getFieldCount()/ITEMS;
+					names = new String[n];
+					values = new double[n][BalancingAccumulator.VALUES];
 				}
-			} // End While
-			System.out.println("UNIT DR Energy COMPARISON (SELL) without Balancing and 0 HourAhead Auction");
-			output.println("UNIT DR Energy COMPARISON (SELL) without Balancing and 0 HourAhead Auction");
-			output.println("Broker,UnitDr(Sell$),Gain-$(+ve),Sold-MW(-ve),%");
-			for(int i =0; i<n; i++)
-			{
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitDr(Sell$)\t" + brokerDrAllTS[1][i]/Math.abs(brokerTxDrAllTS[1][i]) + "\tGain-$(+ve)\t" + brokerDrAllTS[1][i] + "\tSold-MW(-ve)\t" + brokerTxDrAllTS[1][i] + "("+ (brokerTxDrAllTS[1][i]*100)/TOTAL_DR_VOL[1] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerDrAllTS[1][i]/Math.abs(brokerTxDrAllTS[1][i])+","+brokerDrAllTS[1][i]+","+brokerTxDrAllTS[1][i]+","+(brokerTxDrAllTS[1][i]*100)/TOTAL_DR_VOL[1]);
+				int index = 0;
+				for(int i = 0; i < names.length; i++){
+					// Get the broker name
+					if(names[i] == null)
+						names[i] = reader.getString(index);
+					index++;
+					for(int k = 0; k < 4*HA; k++)
+						values[i][k] = reader.getDouble(index++, 0.0);
+					// blank means no balancing transaction
+					for(int k = 4*HA; k < BalancingAccumulator.VALUES; k++)
+						values[i][k] = reader.getDouble(index++, Double.NaN);
+				}
+				accumulator.addTimeslot(names, values);
 			}
+		}
+		return accumulator.getTotals();
+	}
 
-			System.out.println("\nUNIT DR Energy COMPARISON (SELL)");
-			output.println("\nUNIT DR Energy COMPARISON (SELL)");
+	/**
+	 * Writes the Results.&lt;outputFilename&gt; report for totals that were
+	 * accumulated elsewhere, for example in-process by HourAheadTradingV2.
+	 */
+	public void writeResults(BalancingTotals totals, String outputFilename){
+		this.outputFilename = outputFilename;
+		try {
+			output = new PrintWriter(new File("Results."+outputFilename));
+			reportBalancing(totals);
+			output.close();
+		}
+		catch (FileNotFoundException e) {
+			log.error("Cannot open file Results." + outputFilename);
+		}
+	}
+
+	private void reportBalancing(BalancingTotals totals){
+		List<BrokerTotals> brokers = totals.brokers;
+		int n = brokers.size();
+		double ts = totals.ts;
+		double[] TOTAL_DR_VOL = totals.totalDrVol;
+		double[] TOTAL_CR_VOL = totals.totalCrVol;
+
+		String[] sellTitles = {
+				"UNIT DR Energy COMPARISON (SELL)",
+				"UNIT DR Energy COMPARISON (SELL) without Balancing and 0 HourAhead Auction"};
+		for(int x = 1; x >= 0; x--){
+			String title = (x == 1 ? "" : "\n") + sellTitles[x];
+			out.println(title);
+			output.println(title);
 			output.println("Broker,UnitDr(Sell$),Gain-$(+ve),Sold-MW(-ve),%");
 			for(int i =0; i<n; i++)
 			{
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitDr(Sell$)\t" + brokerDrAllTS[0][i]/Math.abs(brokerTxDrAllTS[0][i]) + "\tGain-$(+ve)\t" + brokerDrAllTS[0][i] + "\tSold-MW(-ve)\t" + brokerTxDrAllTS[0][i] + "("+ (brokerTxDrAllTS[0][i]*100)/TOTAL_DR_VOL[0] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerDrAllTS[0][i]/Math.abs(brokerTxDrAllTS[0][i])+","+brokerDrAllTS[0][i]+","+brokerTxDrAllTS[0][i]+","+(brokerTxDrAllTS[0][i]*100)/TOTAL_DR_VOL[0]);
-			}
-			
-			System.out.println("\nUNIT CR ENERGY COMPARISON (BUY) without Balancing and 0 HourAhead Auction");
-			output.println("\nUNIT CR ENERGY COMPARISON (BUY) without Balancing and 0 HourAhead Auction");
-			output.println("Broker,UnitCr(Buy$),Cost-$(-ve),Buy-MW(+ve),%");
-			for(int i =0; i<n; i++)
-			{
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitCr(Buy$)\t" + brokerCrAllTS[1][i]/Math.abs(brokerTxCrAllTS[1][i]) + "\tSpent-$(-ve)\t" + brokerCrAllTS[1][i] + "\tBought-MW(+ve)\t" + brokerTxCrAllTS[1][i] + "("+ (brokerTxCrAllTS[1][i]*100)/TOTAL_CR_VOL[1] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerCrAllTS[1][i]/Math.abs(brokerTxCrAllTS[1][i])+","+brokerCrAllTS[1][i]+","+brokerTxCrAllTS[1][i]+","+(brokerTxCrAllTS[1][i]*100)/TOTAL_CR_VOL[1]);
+				BrokerTotals b = brokers.get(i);
+				String id = b.name.substring(0, 4);
+				out.println(id + "\tunitDr(Sell$)\t" + b.dr[x]/Math.abs(b.txDr[x]) + "\tGain-$(+ve)\t" + b.dr[x] + "\tSold-MW(-ve)\t" + b.txDr[x] + "("+ (b.txDr[x]*100)/TOTAL_DR_VOL[x] +"%)");
+				output.println(id+","+b.dr[x]/Math.abs(b.txDr[x])+","+b.dr[x]+","+b.txDr[x]+","+(b.txDr[x]*100)/TOTAL_DR_VOL[x]);
 			}
-			
-			System.out.println("\nUNIT CR ENERGY COMPARISON (BUY)");
-			output.println("\nUNIT CR ENERGY COMPARISON (BUY)");
+		}
+
+		String[] buyTitles = {
+				"\nUNIT CR ENERGY COMPARISON (BUY)",
+				"\nUNIT CR ENERGY COMPARISON (BUY) without Balancing and 0 HourAhead Auction"};
+		for(int x = 1; x >= 0; x--){
+			out.println(buyTitles[x]);
+			output.println(buyTitles[x]);
 			output.println("Broker,UnitCr(Buy$),Cost-$(-ve),Buy-MW(+ve),%");
 			for(int i =0; i<n; i++)
 			{
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitCr(Buy$)\t" + brokerCrAllTS[0][i]/Math.abs(brokerTxCrAllTS[0][i]) + "\tSpent-$(-ve)\t" + brokerCrAllTS[0][i] + "\tBought-MW(+ve)\t" + brokerTxCrAllTS[0][i] + "("+ (brokerTxCrAllTS[0][i]*100)/TOTAL_CR_VOL[0] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerCrAllTS[0][i]/Math.abs(brokerTxCrAllTS[0][i])+","+brokerCrAllTS[0][i]+","+brokerTxCrAllTS[0][i]+","+(brokerTxCrAllTS[0][i]*100)/TOTAL_CR_VOL[0]);
-			}
-			
-			System.out.println("\nFOR All TX without Balancing and 0 HourAhead Auction");
-			output.println("\nFOR All TX without Balancing and 0 HourAhead Auction");
-			output.println("Broker,Unit($),Tot-$,Tot-MW");
-			for(int i = 0; i<n; i++) {
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunit$(Tot$)\t" + brokerTx$AllTS[1][i]/Math.abs(brokerTxWAllTS[1][i]) + "\tTotal-$\t" + brokerTx$AllTS[1][i] + "\tTotal-Trade-MW\t" + brokerTxWAllTS[1][i]);
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerTx$AllTS[1][i]/Math.abs(brokerTxWAllTS[1][i])+","+brokerTx$AllTS[1][i]+","+brokerTxWAllTS[1][i]);
+				BrokerTotals b = brokers.get(i);
+				String id = b.name.substring(0, 4);
+				out.println(id + "\tunitCr(Buy$)\t" + b.cr[x]/Math.abs(b.txCr[x]) + "\tSpent-$(-ve)\t" + b.cr[x] + "\tBought-MW(+ve)\t" + b.txCr[x] + "("+ (b.txCr[x]*100)/TOTAL_CR_VOL[x] +"%)");
+				output.println(id+","+b.cr[x]/Math.abs(b.txCr[x])+","+b.cr[x]+","+b.txCr[x]+","+(b.txCr[x]*100)/TOTAL_CR_VOL[x]);
 			}
-			
-			System.out.println("\nFOR All TX ");
-			output.println("\nFOR All TX");
+		}
+
+		String[] allTitles = {
+				"\nFOR All TX",
+				"\nFOR All TX without Balancing and 0 HourAhead Auction"};
+		for(int x = 1; x >= 0; x--){
+			out.println(allTitles[x] + (x == 0 ? " " : ""));
+			output.println(allTitles[x]);
 			output.println("Broker,Unit($),Tot-$,Tot-MW");
 			for(int i = 0; i<n; i++) {
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunit$(Tot$)\t" + brokerTx$AllTS[0][i]/Math.abs(brokerTxWAllTS[0][i]) + "\tTotal-$\t" + brokerTx$AllTS[0][i] + "\tTotal-Trade-MW\t" + brokerTxWAllTS[0][i]);
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerTx$AllTS[0][i]/Math.abs(brokerTxWAllTS[0][i])+","+brokerTx$AllTS[0][i]+","+brokerTxWAllTS[0][i]);
-			}
-			
-			System.out.println("\nComparison with Average Broker Debit(Sell) without Balancing and 0 HourAhead Auction");
-			output.println("\nComparison with Average Broker Debit(Sell) without Balancing and 0 HourAhead Auction");
-			output.println("Broker,UnitDr($),Gain-$,Sold-MW,%");
-			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitDrDiffWithAvgB\t" + brokerDrDiffAllTS[1][i]/Math.abs(brokerTxDrAllTS[1][i]) + "\tSell-diff\t" + brokerDrDiffAllTS[1][i] + "\tSold-MW\t" + brokerTxDrAllTS[1][i] + "("+ (brokerTxDrAllTS[1][i]*100)/TOTAL_DR_VOL[1] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerDrDiffAllTS[1][i]/Math.abs(brokerTxDrAllTS[1][i])+","+brokerDrDiffAllTS[1][i]+","+brokerTxDrAllTS[1][i]+","+(brokerTxDrAllTS[1][i]*100)/TOTAL_DR_VOL[1]);
+				BrokerTotals b = brokers.get(i);
+				String id = b.name.substring(0, 4);
+				out.println(id + "\tunit$(Tot$)\t" + b.tx$[x]/Math.abs(b.txW[x]) + "\tTotal-$\t" + b.tx$[x] + "\tTotal-Trade-MW\t" + b.txW[x]);
+				output.println(id+","+b.tx$[x]/Math.abs(b.txW[x])+","+b.tx$[x]+","+b.txW[x]);
 			}
-			
-			System.out.println("\nComparison with Average Broker Debit(Sell)");
-			output.println("\nComparison with Average Broker Debit(Sell)");
+		}
+
+		String[] sellDiffTitles = {
+				"\nComparison with Average Broker Debit(Sell)",
+				"\nComparison with Average Broker Debit(Sell) without Balancing and 0 HourAhead Auction"};
+		for(int x = 1; x >= 0; x--){
+			out.println(sellDiffTitles[x]);
+			output.println(sellDiffTitles[x]);
 			output.println("Broker,UnitDr($),Gain-$,Sold-MW,%");
 			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitDrDiffWithAvgB\t" + brokerDrDiffAllTS[0][i]/Math.abs(brokerTxDrAllTS[0][i]) + "\tSell-diff\t" + brokerDrDiffAllTS[0][i] + "\tSold-MW\t" + brokerTxDrAllTS[0][i] + "("+ (brokerTxDrAllTS[0][i]*100)/TOTAL_DR_VOL[0] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerDrDiffAllTS[0][i]/Math.abs(brokerTxDrAllTS[0][i])+","+brokerDrDiffAllTS[0][i]+","+brokerTxDrAllTS[0][i]+","+(brokerTxDrAllTS[0][i]*100)/TOTAL_DR_VOL[0]);
+				BrokerTotals b = brokers.get(i);
+				String id = b.name.substring(0, 4);
+				out.println(id + "\tunitDrDiffWithAvgB\t" + b.drDiff[x]/Math.abs(b.txDr[x]) + "\tSell-diff\t" + b.drDiff[x] + "\tSold-MW\t" + b.txDr[x] + "("+ (b.txDr[x]*100)/TOTAL_DR_VOL[x] +"%)");
+				output.println(id+","+b.drDiff[x]/Math.abs(b.txDr[x])+","+b.drDiff[x]+","+b.txDr[x]+","+(b.txDr[x]*100)/TOTAL_DR_VOL[x]);
 			}
+		}
 
-			System.out.println("\nComparison with Average Broker Credit(Buy) without Balancing and 0 HourAhead Auction");
-			output.println("\nComparison with Average Broker Credit(Buy) without Balancing and 0 HourAhead Auction");
-			output.println("Broker,UnitCr($),Cost-$,Buy-MW,%");
-			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitCrDiffWithAvg\t" + brokerCrDiffAllTS[1][i]/Math.abs(brokerTxCrAllTS[1][i]) + "\tBuy-diff\t" + brokerCrDiffAllTS[1][i] + "\tBough-MW\t" + brokerTxCrAllTS[1][i] + "("+ (brokerTxCrAllTS[1][i]*100)/TOTAL_CR_VOL[1] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerCrDiffAllTS[1][i]/Math.abs(brokerTxCrAllTS[1][i])+","+brokerCrDiffAllTS[1][i]+","+brokerTxCrAllTS[1][i]+","+(brokerTxCrAllTS[1][i]*100)/TOTAL_CR_VOL[1]);
-			}
-			
-			System.out.println("\nComparison with Average Broker Credit(Buy)");
-			output.println("\nComparison with Average Broker Credit(Buy)");
+		String[] buyDiffTitles = {
+				"\nComparison with Average Broker Credit(Buy)",
+				"\nComparison with Average Broker Credit(Buy) without Balancing and 0 HourAhead Auction"};
+		for(int x = 1; x >= 0; x--){
+			out.println(buyDiffTitles[x]);
+			output.println(buyDiffTitles[x]);
 			output.println("Broker,UnitCr($),Cost-$,Buy-MW,%");
 			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitCrDiffWithAvg\t" + brokerCrDiffAllTS[0][i]/Math.abs(brokerTxCrAllTS[0][i]) + "\tBuy-diff\t" + brokerCrDiffAllTS[0][i] + "\tBough-MW\t" + brokerTxCrAllTS[0][i] + "("+ (brokerTxCrAllTS[0][i]*100)/TOTAL_CR_VOL[0] +"%)");
-				output.println(brokerID.get(i).substring(0, 4)+","+brokerCrDiffAllTS[0][i]/Math.abs(brokerTxCrAllTS[0][i])+","+brokerCrDiffAllTS[0][i]+","+brokerTxCrAllTS[0][i]+","+(brokerTxCrAllTS[0][i]*100)/TOTAL_CR_VOL[0]);
+				BrokerTotals b = brokers.get(i);
+				String id = b.name.substring(0, 4);
+				out.println(id + "\tunitCrDiffWithAvg\t" + b.crDiff[x]/Math.abs(b.txCr[x]) + "\tBuy-diff\t" + b.crDiff[x] + "\tBough-MW\t" + b.txCr[x] + "("+ (b.txCr[x]*100)/TOTAL_CR_VOL[x] +"%)");
+				output.println(id+","+b.crDiff[x]/Math.abs(b.txCr[x])+","+b.crDiff[x]+","+b.txCr[x]+","+(b.txCr[x]*100)/TOTAL_CR_VOL[x]);
 			}
-			
-			System.out.println("\nDeficit How Many Times? i.e. getting energy from the balancing market");
-			output.println("\nDeficit How Many Times? i.e. getting energy from the balancing market");
-			output.println("Broker,times%,vol%");
-			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tt%\t" + (deficitTS[i]/ts)*100 + "\tvolume%\t" + (brokerTxCrBalAllTS[i]/brokerTxCrAllTS[0][i])*100);
-				output.println(brokerID.get(i).substring(0, 4)+","+(deficitTS[i]/ts)*100 + ","+(brokerTxCrBalAllTS[i]/brokerTxCrAllTS[0][i])*100);
+		}
+
+		out.println("\nDeficit How Many Times? i.e. getting energy from the balancing market");
+		output.println("\nDeficit How Many Times? i.e. getting energy from the balancing market");
+		output.println("Broker,times%,vol%");
+		for(int i = 0; i < n-1; i++){
+			BrokerTotals b = brokers.get(i);
+			String id = b.name.substring(0, 4);
+			out.println(id + "\tt%\t" + (b.deficitTS/ts)*100 + "\tvolume%\t" + (b.txCrBal/b.txCr[0])*100);
+			output.println(id+","+(b.deficitTS/ts)*100 + ","+(b.txCrBal/b.txCr[0])*100);
+		}
+
+		out.println("\nSurplus How Many Times? i.e. giving away energy in the balancing market");
+		output.println("\nSurplus How Many Times? i.e. giving away energy in the balancing market");
+		output.println("Broker,%,vol%");
+		for(int i = 0; i < n-1; i++){
+			BrokerTotals b = brokers.get(i);
+			String id = b.name.substring(0, 4);
+			out.println(id + "\tPercent\t" + (b.surplusTS/ts)*100 + "\tvolume%\t" + (b.txDrBal/b.txDr[0])*100);
+			output.println(id+","+(b.surplusTS/ts)*100 + ","+(b.txDrBal/b.txDr[0])*100);
+		}
+
+		out.println("\nZero Imbalance How Many Times? i.e. Zero customers");
+		output.println("\nZero Imbalance How Many Times? i.e. Zero customers");
+		output.println("Broker,%");
+		for(int i = 0; i < n-1; i++){
+			BrokerTotals b = brokers.get(i);
+			String id = b.name.substring(0, 4);
+			out.println(id + "\tPercent\t" + (b.zeroTS/ts)*100);
+			output.println(id+","+(b.zeroTS/ts)*100);
+		}
+
+		out.println("\nZero Imbalance How Many Times? i.e. Perfect Imbalances");
+		output.println("\nPerfect Imbalances How Many Times?");
+		output.println("Broker,%");
+		for(int i = 0; i < n-1; i++){
+			BrokerTotals b = brokers.get(i);
+			String id = b.name.substring(0, 4);
+			out.println(id + "\tPercent\t" + (b.perfectTS/ts)*100);
+			output.println(id+","+(b.perfectTS/ts)*100);
+		}
+	}
+
+	/**
+	 * Accumulates debit/credit comparisons one timeslot at a time. Each
+	 * call gives the broker names and, for each broker, VALUES numbers:
+	 * 24 x (debit unit price, debit MWh, credit unit price, credit MWh),
+	 * then balancing debit money, debit MWh, credit money and credit MWh,
+	 * where NaN means there was no balancing transaction. The last broker
+	 * is the average broker. Fed either from the csv written by
+	 * HourAheadTradingV2 or directly by HourAheadTradingV2 itself.
+	 */
+	public static class BalancingAccumulator {
+		static final int HA = 24;
+		static final int VALUES = 4*HA + 4;
+
+		private BalancingTotals result = new BalancingTotals();
+		private int n = 0;
+
+		// per-timeslot unit prices and volumes, [0] all, [1] without
+		// balancing and 0 HourAhead auction
+		private double brokerDrUOneTS[][];
+		private double brokerTxDrOneTS[][];
+		private double brokerCrUOneTS[][];
+		private double brokerTxCrOneTS[][];
+
+		public BalancingTotals getTotals(){
+			return result;
+		}
+
+		public void addTimeslot(String[] names, double[][] values){
+			if(n == 0)
+			{
+				n = names.length;
+				for(int i = 0; i < n; i++)
+					result.brokers.add(new BrokerTotals(names[i]));
+				brokerDrUOneTS = new double [2][n];
+				brokerTxDrOneTS = new double [2][n];
+				brokerCrUOneTS = new double [2][n];
+				brokerTxCrOneTS = new double [2][n];
 			}
-			
-			System.out.println("\nSurplus How Many Times? i.e. giving away energy in the balancing market");
-			output.println("\nSurplus How Many Times? i.e. giving away energy in the balancing market");
-			output.println("Broker,%,vol%");
-			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tPercent\t" + (surplusTS[i]/ts)*100 + "\tvolume%\t" + (brokerTxDrBalAllTS[i]/brokerTxDrAllTS[0][i])*100);
-				output.println(brokerID.get(i).substring(0, 4)+","+(surplusTS[i]/ts)*100 + ","+(brokerTxDrBalAllTS[i]/brokerTxDrAllTS[0][i])*100);
+
+			for(int i = 0; i < n; i++){
+				BrokerTotals broker = result.brokers.get(i);
+				double[] row = values[i];
+
+				double [] dr$ = {0.0, 0.0};
+				double [] drTx = {0.0, 0.0};
+
+				double [] cr$ = {0.0, 0.0};
+				double [] crTx = {0.0, 0.0};
+
+				for(int j=0;j<HA;j++)
+				{
+					double drpr = row[4*j];
+					double drmwh = row[4*j+1];
+					double crpr = row[4*j+2];
+					double crmwh = row[4*j+3];
+
+					dr$[0] = dr$[0] + (drpr*Math.abs(drmwh));
+					cr$[0] = cr$[0] + (crpr*Math.abs(crmwh));
+					drTx[0] = drTx[0] + drmwh;
+					crTx[0] = crTx[0] + crmwh;
+
+					if(j > 0){ // Restrict 0 HourAhead auctions
+						dr$[1] = dr$[1] + (drpr*Math.abs(drmwh));
+						cr$[1] = cr$[1] + (crpr*Math.abs(crmwh));
+						drTx[1] = drTx[1] + drmwh;
+						crTx[1] = crTx[1] + crmwh;
+					}
+
+				} // Finished one timeslot for a broker
+
+				double balDrP = row[4*HA];
+				double balDrV = row[4*HA+1];
+				double balCrP = row[4*HA+2];
+				double balCrV = row[4*HA+3];
+				if(Double.isNaN(balDrP))
+					balDrP = 0;
+				if(Double.isNaN(balDrV))
+					balDrV = 0;
+				else {
+					broker.surplusTS++;
+					broker.txDrBal += balDrV;
+				}
+				if(Double.isNaN(balCrP))
+					balCrP = 0;
+				if(Double.isNaN(balCrV))
+					balCrV = 0;
+				else {
+					broker.deficitTS++;
+					broker.txCrBal += balCrV;
+				}
+
+				if(balCrV == 0 && balDrV == 0) {
+					if(drTx[0] == 0 && crTx[0] == 0) // zerodemand
+						broker.zeroTS++;
+					else
+						broker.perfectTS++;
+
+				}
+
+				// Comment to ignore balancing market
+				dr$[0] = dr$[0] + balDrP;
+				cr$[0] = cr$[0] + balCrP;
+				drTx[0] = drTx[0] + balDrV;
+				crTx[0] = crTx[0] + balCrV;
+
+				for(int x = 0; x < 2; x++){
+					broker.tx$[x] += dr$[x] + cr$[x];
+					broker.txW[x] += drTx[x] + crTx[x];
+
+					// Update the cost Dr
+					brokerDrUOneTS[x][i] = 0;
+					brokerTxDrOneTS[x][i] = 0;
+					if(drTx[x] < 0){
+						brokerDrUOneTS[x][i] = dr$[x] / Math.abs(drTx[x]);
+						brokerTxDrOneTS[x][i] = drTx[x];
+					}
+					else if(drTx[x] > 0){
+						throw new IllegalStateException("drTx positive!");
+					}
+
+					// Update the cost Cr
+					brokerCrUOneTS[x][i] = 0;
+					brokerTxCrOneTS[x][i] = 0;
+					if(crTx[x] > 0){
+						brokerCrUOneTS[x][i] = cr$[x] / Math.abs(crTx[x]);
+						brokerTxCrOneTS[x][i] = crTx[x];
+					}
+					else if(crTx[x] < 0){
+						throw new IllegalStateException("crTx negative!");
+					}
+				}
 			}
-			
-			System.out.println("\nZero Imbalance How Many Times? i.e. Zero customers");
-			output.println("\nZero Imbalance How Many Times? i.e. Zero customers");
-			output.println("Broker,%");
-			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tPercent\t" + (zeroTS[i]/ts)*100);
-				output.println(brokerID.get(i).substring(0, 4)+","+(zeroTS[i]/ts)*100);
+
+			// Update the brokerDrUOneTS[n-1] & brokerCrUOneTS[n-1]
+			for(int x = 0; x < 2; x++){
+				brokerTxDrOneTS[x][n-1] = 0;
+				brokerTxCrOneTS[x][n-1] = 0;
+				brokerDrUOneTS[x][n-1] = 0;
+				brokerCrUOneTS[x][n-1] = 0;
+				for(int l = 0; l < n-1; l++){
+					brokerTxDrOneTS[x][n-1] += brokerTxDrOneTS[x][l];
+					brokerTxCrOneTS[x][n-1] += brokerTxCrOneTS[x][l];
+					brokerDrUOneTS[x][n-1] += Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][l];
+					brokerCrUOneTS[x][n-1] += Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][l];
+				}
+				if(brokerTxDrOneTS[x][n-1] == 0)
+					brokerDrUOneTS[x][n-1] = 0;
+				else
+					brokerDrUOneTS[x][n-1] /= Math.abs(brokerTxDrOneTS[x][n-1]);
+
+				if(brokerTxCrOneTS[x][n-1] == 0)
+					brokerCrUOneTS[x][n-1] = 0;
+				else
+					brokerCrUOneTS[x][n-1] /= Math.abs(brokerTxCrOneTS[x][n-1]);
 			}
-			
-			System.out.println("\nZero Imbalance How Many Times? i.e. Perfect Imbalances");
-			output.println("\nPerfect Imbalances How Many Times?");
-			output.println("Broker,%");
-			for(int i = 0; i < n-1; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tPercent\t" + (perfectTS[i]/ts)*100);
-				output.println(brokerID.get(i).substring(0, 4)+","+(perfectTS[i]/ts)*100);
+
+			// After one TS
+			for(int l = 0; l < n; l++){
+				BrokerTotals broker = result.brokers.get(l);
+				for(int x = 0; x < 2; x++){
+					broker.dr[x] += Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][l];
+					broker.cr[x] += Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][l];
+
+					// Sell
+					broker.drDiff[x] += (Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][l]) - (Math.abs(brokerTxDrOneTS[x][l])*brokerDrUOneTS[x][n-1]);
+					broker.txDr[x] += brokerTxDrOneTS[x][l];
+
+					if(l<n-1)
+						result.totalDrVol[x] += brokerTxDrOneTS[x][l];
+
+					// Buy
+					broker.crDiff[x] += (Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][n-1]) - (Math.abs(brokerTxCrOneTS[x][l])*brokerCrUOneTS[x][l]);
+					broker.txCr[x] += brokerTxCrOneTS[x][l];
+
+					if(l<n-1)
+						result.totalCrVol[x] += brokerTxCrOneTS[x][l];
+				}
 			}
+			result.ts++;
+		}
+	}
 
-			output.close();
+	/*
+	 * Totals for one broker column. Two-element arrays hold [0] all
+	 * transactions and [1] without balancing and the 0 HourAhead auction.
+	 */
+	static class BrokerTotals {
+		String name;
+		double deficitTS = 0, surplusTS = 0, zeroTS = 0, perfectTS = 0;
+		double txCrBal = 0, txDrBal = 0;
+		double[] tx$ = new double[2];
+		double[] txW = new double[2];
+		double[] dr = new double[2];
+		double[] cr = new double[2];
+		double[] drDiff = new double[2];
+		double[] txDr = new double[2];
+		double[] crDiff = new double[2];
+		double[] txCr = new double[2];
+
+		BrokerTotals(String name){
+			this.name = name;
 		}
-		catch(Exception ex){
-			System.out.println(ex.getMessage());
-			ex.printStackTrace();
+
+		void add(BrokerTotals other){
+			deficitTS += other.deficitTS;
+			surplusTS += other.surplusTS;
+			zeroTS += other.zeroTS;
+			perfectTS += other.perfectTS;
+			txCrBal += other.txCrBal;
+			txDrBal += other.txDrBal;
+			for(int x = 0; x < 2; x++){
+				tx$[x] += other.tx$[x];
+				txW[x] += other.txW[x];
+				dr[x] += other.dr[x];
+				cr[x] += other.cr[x];
+				drDiff[x] += other.drDiff[x];
+				txDr[x] += other.txDr[x];
+				crDiff[x] += other.crDiff[x];
+				txCr[x] += other.txCr[x];
+			}
+		}
+	}
+
+	/*
+	 * Totals for one or more files. The average broker is always last.
+	 */
+	static class BalancingTotals {
+		double ts = 0;
+		double[] totalDrVol = new double[2];
+		double[] totalCrVol = new double[2];
+		List<BrokerTotals> brokers = new ArrayList<>();
+
+		// Adds in another partial result, matching brokers by name
+		void merge(BalancingTotals other){
+			ts += other.ts;
+			for(int x = 0; x < 2; x++){
+				totalDrVol[x] += other.totalDrVol[x];
+				totalCrVol[x] += other.totalCrVol[x];
+			}
+			if(other.brokers.isEmpty())
+				return;
+			if(brokers.isEmpty()){
+				brokers.addAll(other.brokers);
+				return;
+			}
+			BrokerTotals average = brokers.remove(brokers.size()-1);
+			average.add(other.brokers.get(other.brokers.size()-1));
+			for(int i = 0; i < other.brokers.size()-1; i++){
+				BrokerTotals theirs = other.brokers.get(i);
+				BrokerTotals mine = null;
+				for(BrokerTotals b : brokers){
+					if(b.name.equals(theirs.name)){
+						mine = b;
+						break;
+					}
+				}
+				if(mine == null)
+					brokers.add(theirs);
+				else
+					mine.add(theirs);
+			}
+			brokers.add(average);
 		}
-		
-		
 	}
 
-	
-	
-	
-	
 	public void analyseWSandBAl(){
 		try{
 			output = new PrintWriter(new File("Results."+outputFilename));
@@ -673,8 +776,7 @@ public class ResultsHATrading
 						}
 						else{
 							if(drTx > 0){
-								System.out.println("drTx positive!");
-								System.exit(0);
+								throw new IllegalStateException("drTx positive!");
 							}
 						}
 						
@@ -687,8 +789,7 @@ public class ResultsHATrading
 						}
 						else{
 							if(crTx < 0){
-								System.out.println("crTx negative!");
-								System.exit(0);
+								throw new IllegalStateException("crTx negative!");
 							}
 						}
 					}
@@ -721,52 +822,52 @@ public class ResultsHATrading
 					ts++;
 				}
 			} // End While
-			System.out.println("UNIT DR Energy COMPARISON (SELL)");
+			out.println("UNIT DR Energy COMPARISON (SELL)");
 			output.println("UNIT DR Energy COMPARISON (SELL)");
 			output.println("Broker,UnitDr(Sell$),Gain-$(+ve),Sold-MW(-ve),%");
 			for(int i =0; i<n; i++)
 			{
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitDr(Sell$)\t" + brokerDrAllTS[i]/Math.abs(brokerTxDrAllTS[i]) + "\tGain-$(+ve)\t" + brokerDrAllTS[i] + "\tSold-MW(-ve)\t" + brokerTxDrAllTS[i] + "("+ (brokerTxDrAllTS[i]*100)/TOTAL_DR_VOL +"%)");
+				out.println(brokerID.get(i).substring(0, 4) + "\tunitDr(Sell$)\t" + brokerDrAllTS[i]/Math.abs(brokerTxDrAllTS[i]) + "\tGain-$(+ve)\t" + brokerDrAllTS[i] + "\tSold-MW(-ve)\t" + brokerTxDrAllTS[i] + "("+ (brokerTxDrAllTS[i]*100)/TOTAL_DR_VOL +"%)");
 				output.println(brokerID.get(i).substring(0, 4)+","+brokerDrAllTS[i]/Math.abs(brokerTxDrAllTS[i])+","+brokerDrAllTS[i]+","+brokerTxDrAllTS[i]+","+(brokerTxDrAllTS[i]*100)/TOTAL_DR_VOL);
 			}
 			
-			System.out.println("\nUNIT CR ENERGY COMPARISON (BUY)");
+			out.println("\nUNIT CR ENERGY COMPARISON (BUY)");
 			output.println("\nUNIT CR ENERGY COMPARISON (BUY)");
 			output.println("Broker,UnitCr(Buy$),Cost-$(-ve),Buy-MW(+ve),%");
 			for(int i =0; i<n; i++)
 			{
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitCr(Buy$)\t" + brokerCrAllTS[i]/Math.abs(brokerTxCrAllTS[i]) + "\tSpent-$(-ve)\t" + brokerCrAllTS[i] + "\tBought-MW(+ve)\t" + brokerTxCrAllTS[i] + "("+ (brokerTxCrAllTS[i]*100)/TOTAL_CR_VOL +"%)");
+				out.println(brokerID.get(i).substring(0, 4) + "\tunitCr(Buy$)\t" + brokerCrAllTS[i]/Math.abs(brokerTxCrAllTS[i]) + "\tSpent-$(-ve)\t" + brokerCrAllTS[i] + "\tBought-MW(+ve)\t" + brokerTxCrAllTS[i] + "("+ (brokerTxCrAllTS[i]*100)/TOTAL_CR_VOL +"%)");
 				output.println(brokerID.get(i).substring(0, 4)+","+brokerCrAllTS[i]/Math.abs(brokerTxCrAllTS[i])+","+brokerCrAllTS[i]+","+brokerTxCrAllTS[i]+","+(brokerTxCrAllTS[i]*100)/TOTAL_CR_VOL);
 			}
 			
-			System.out.println("\nFOR All TX");
+			out.println("\nFOR All TX");
 			output.println("\nFOR All TX");
 			output.println("Broker,Unit($),Tot-$,Tot-MW");
 			for(int i = 0; i<n; i++) {
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunit$(Tot$)\t" + brokerTx$AllTS[i]/Math.abs(brokerTxWAllTS[i]) + "\tTotal-$\t" + brokerTx$AllTS[i] + "\tTotal-Trade-MW\t" + brokerTxWAllTS[i]);
+				out.println(brokerID.get(i).substring(0, 4) + "\tunit$(Tot$)\t" + brokerTx$AllTS[i]/Math.abs(brokerTxWAllTS[i]) + "\tTotal-$\t" + brokerTx$AllTS[i] + "\tTotal-Trade-MW\t" + brokerTxWAllTS[i]);
 				output.println(brokerID.get(i).substring(0, 4)+","+brokerTx$AllTS[i]/Math.abs(brokerTxWAllTS[i])+","+brokerTx$AllTS[i]+","+brokerTxWAllTS[i]);
 			}
 			
-			System.out.println("\nComparison with Average Broker Debit(Sell)");
+			out.println("\nComparison with Average Broker Debit(Sell)");
 			output.println("\nComparison with Average Broker Debit(Sell)");
 			output.println("Broker,UnitDr($),Gain-$,Sold-MW,%");
 			for(int i = 0; i < n; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitDrDiffWithAvgB\t" + brokerDrDiffAllTS[i]/Math.abs(brokerTxDrAllTS[i]) + "\tSell-diff\t" + brokerDrDiffAllTS[i] + "\tSold-MW\t" + brokerTxDrAllTS[i] + "("+ (brokerTxDrAllTS[i]*100)/TOTAL_DR_VOL +"%)");
+				out.println(brokerID.get(i).substring(0, 4) + "\tunitDrDiffWithAvgB\t" + brokerDrDiffAllTS[i]/Math.abs(brokerTxDrAllTS[i]) + "\tSell-diff\t" + brokerDrDiffAllTS[i] + "\tSold-MW\t" + brokerTxDrAllTS[i] + "("+ (brokerTxDrAllTS[i]*100)/TOTAL_DR_VOL +"%)");
 				output.println(brokerID.get(i).substring(0, 4)+","+brokerDrDiffAllTS[i]/Math.abs(brokerTxDrAllTS[i])+","+brokerDrDiffAllTS[i]+","+brokerTxDrAllTS[i]+","+(brokerTxDrAllTS[i]*100)/TOTAL_DR_VOL);
 			}
 
-			System.out.println("\nComparison with Average Broker Credit(Buy)");
+			out.println("\nComparison with Average Broker Credit(Buy)");
 			output.println("\nComparison with Average Broker Credit(Buy)");
 			output.println("Broker,UnitCr($),Cost-$,Buy-MW,%");
 			for(int i = 0; i < n; i++){
-				System.out.println(brokerID.get(i).substring(0, 4) + "\tunitCrDiffWithAvg\t" + brokerCrDiffAllTS[i]/Math.abs(brokerTxDrAllTS[i]) + "\tBuy-diff\t" + brokerCrDiffAllTS[i] + "\tBough-MW\t" + brokerTxCrAllTS[i] + "("+ (brokerTxCrAllTS[i]*100)/TOTAL_CR_VOL +"%)");
+				out.println(brokerID.get(i).substring(0, 4) + "\tunitCrDiffWithAvg\t" + brokerCrDiffAllTS[i]/Math.abs(brokerTxDrAllTS[i]) + "\tBuy-diff\t" + brokerCrDiffAllTS[i] + "\tBough-MW\t" + brokerTxCrAllTS[i] + "("+ (brokerTxCrAllTS[i]*100)/TOTAL_CR_VOL +"%)");
 				output.println(brokerID.get(i).substring(0, 4)+","+brokerCrDiffAllTS[i]/Math.abs(brokerTxCrAllTS[i])+","+brokerCrDiffAllTS[i]+","+brokerTxCrAllTS[i]+","+(brokerTxCrAllTS[i]*100)/TOTAL_CR_VOL);
 			}
 			
 			output.close();
 		}
 		catch(Exception ex){
-			System.out.println(ex.getMessage());
+			out.println(ex.getMessage());
 			ex.printStackTrace();
 		}
 		
@@ -921,9 +1022,9 @@ public class ResultsHATrading
 			
 			/*********************************************************/
 			// Now print results
-			System.out.println("********************************");
-			System.out.println("************UnitPrices**********");
-			System.out.println("********************************");
+			out.println("********************************");
+			out.println("************UnitPrices**********");
+			out.println("********************************");
 			
 			output.println("****************************************");
 			output.println("*********UnitPrices Hour Ahead**********");
@@ -937,41 +1038,41 @@ public class ResultsHATrading
 					continue;
 				
 				output.format("%s,", brokerName);
-				System.out.printf("%s,", brokerName);
+				out.printf("%s,", brokerName);
 				
 				// Loops for avg unit price hour ahead and Print
 				for(int j = 0; j < 24; j++){
 					output.format(",%.4f", brokerData.drSum[j]);
-					System.out.printf(",%.4f", brokerData.drSum[j]);
+					out.printf(",%.4f", brokerData.drSum[j]);
 				}
 				// Loops for avg vol hour ahead and Print
 				for(int j = 0; j < 24; j++){
 					output.format(",%.4f", brokerData.drVolSum[j]);
-					System.out.printf(",%.4f", brokerData.drVolSum[j]);
+					out.printf(",%.4f", brokerData.drVolSum[j]);
 				}
 				output.println();
-				System.out.println();
+				out.println();
 			}
 			
 			output.format("AvgBroker,");
-			System.out.printf("AvgBroker,");
+			out.printf("AvgBroker,");
 			
 			// Loops for avg unit price hour ahead and Print
 			for(int j = 0; j < 24; j++){
 				output.format(",%.4f", avgprc[j]);
-				System.out.printf(",%.4f", avgprc[j]);
+				out.printf(",%.4f", avgprc[j]);
 			}
 			// Loops for avg vol hour ahead and Print
 			for(int j = 0; j < 24; j++){
 				output.format(",%.4f", avgdemand[j]);
-				System.out.printf(",%.4f", avgdemand[j]);
+				out.printf(",%.4f", avgdemand[j]);
 			}
 			output.println();
-			System.out.println();
+			out.println();
 			
-			System.out.println("********************************");
-			System.out.println("************Cost**********");
-			System.out.println("********************************");
+			out.println("********************************");
+			out.println("************Cost**********");
+			out.println("********************************");
 			
 			output.println("****************************************");
 			output.println("*********Cost Comparison**********");
@@ -988,7 +1089,7 @@ public class ResultsHATrading
 					continue;
 				
 				output.format("%s,", brokerName);
-				System.out.printf("%s,", brokerName);
+				out.printf("%s,", brokerName);
 				
 				// Loops for avg unit price hour ahead and Print
 				double cost = 0;
@@ -997,12 +1098,12 @@ public class ResultsHATrading
 						cost +=((avgprc[j]-brokerData.drSum[j])*spotdemand[j]);
 					}
 					else{
-						System.out.println("0 price at HA " + j);
+						out.println("0 price at HA " + j);
 					}
 					totspotdemand += spotdemand[j];
 				}
 				output.format(",%.4f\n", cost/totspotdemand);
-				System.out.printf(",%.4f\n", cost/totspotdemand);
+				out.printf(",%.4f\n", cost/totspotdemand);
 			}
 			/*
 			// double[] avgdemand = brokerDr.get("AvgBroker").drVolSum;
@@ -1035,7 +1136,7 @@ public class ResultsHATrading
 					double stdSumVol = brokerData.drSTDVol[i];
 					double stdVolCount = brokerData.drSTDVolCount[i];
 					if(count==0){
-						System.out.println(brokerName + ": 0 prices at " + i + " HA replacing stdSum " + stdSum +" with " + brokerDr.get("AvgBroker").drSTD[i]);
+						out.println(brokerName + ": 0 prices at " + i + " HA replacing stdSum " + stdSum +" with " + brokerDr.get("AvgBroker").drSTD[i]);
 						stdSum = brokerDr.get("AvgBroker").drSTD[i];
 						stdCount = brokerDr.get("AvgBroker").drSTDCount[i];
 						stdSumVol = brokerDr.get("AvgBroker").drSTDVol[i];
@@ -1083,9 +1184,9 @@ public class ResultsHATrading
 				}
 			}
 			
-			System.out.println("********************************");
-			System.out.println("************UnitPrices**********");
-			System.out.println("********************************");
+			out.println("********************************");
+			out.println("************UnitPrices**********");
+			out.println("********************************");
 			
 			output.println("****************************************");
 			output.println("*********UnitPrices Hour Ahead**********");
@@ -1095,62 +1196,62 @@ public class ResultsHATrading
 				// Output the avg values to a file for all brokers
 				String brokerName = entry.getKey();
 				output.format("%s,", brokerName);
-				System.out.printf("%s,", brokerName);
+				out.printf("%s,", brokerName);
 				Data brokerData = entry.getValue();
 				
 				// Loops for avg unit price hour ahead and Print
 				for(int j = 0; j < 24; j++){
 					output.format(",%.4f", brokerData.drSum[j]);
-					System.out.printf(",%.4f", brokerData.drSum[j]);
+					out.printf(",%.4f", brokerData.drSum[j]);
 				}
 				// Loops for avg vol hour ahead and Print
 				for(int j = 0; j < 24; j++){
 					output.format(",%.4f", brokerData.drVolSum[j]);
-					System.out.printf(",%.4f", brokerData.drVolSum[j]);
+					out.printf(",%.4f", brokerData.drVolSum[j]);
 				}
 				output.println();
-				System.out.println();
+				out.println();
 				output.format("%s Err,", brokerName);
-				System.out.printf("%s Err,", brokerName);
+				out.printf("%s Err,", brokerName);
 				// Loop for error bound on hour ahead prices
 				for(int j = 0; j < 24; j++){
 					output.format(",%.4f", brokerData.drErr[j]);
-					System.out.printf(",%.4f", brokerData.drErr[j]);
+					out.printf(",%.4f", brokerData.drErr[j]);
 				}
 				// // Loop for error bound on hour ahead demands
 				for(int j = 0; j < 24; j++){
 					output.format(",%.4f", brokerData.drErrVol[j]);
-					System.out.printf(",%.4f", brokerData.drErrVol[j]);
+					out.printf(",%.4f", brokerData.drErrVol[j]);
 				}
 				output.println();
-				System.out.println();
+				out.println();
 			}
 			
-			System.out.println("**********************************");
-			System.out.println("************Final Result**********");
-			System.out.println("**********************************");
+			out.println("**********************************");
+			out.println("************Final Result**********");
+			out.println("**********************************");
 			
 			output.println("****************************************");
 			output.println("*********Final Result*******************");
 			output.println("****************************************");
 			
-			System.out.println("Broker, UtPr23SPOTD, UtPr24SPOTD, UtPr23AVGBD, UtPr24AVGBD, Err23, Err24");
+			out.println("Broker, UtPr23SPOTD, UtPr24SPOTD, UtPr23AVGBD, UtPr24AVGBD, Err23, Err24");
 			output.println("Broker, UtPr23SPOTD, UtPr24SPOTD, UtPr23AVGBD, UtPr24AVGBD, Err23, Err24");
 			for (Map.Entry<String, Data> entry : brokerDr.entrySet()){
 				// Output the avg values to a file for all brokers
 				String brokerName = entry.getKey();
 				Data d = entry.getValue();
-				System.out.printf("%s,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f", brokerName, d.avgUnitPriceSPOTD23, d.avgUnitPriceSPOTD24, d.avgUnitPriceAVGBD23, d.avgUnitPriceAVGBD24, d.avgUnitError23, d.avgUnitError24);;
+				out.printf("%s,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f", brokerName, d.avgUnitPriceSPOTD23, d.avgUnitPriceSPOTD24, d.avgUnitPriceAVGBD23, d.avgUnitPriceAVGBD24, d.avgUnitError23, d.avgUnitError24);;
 				output.format("%s,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f", brokerName, d.avgUnitPriceSPOTD23, d.avgUnitPriceSPOTD24, d.avgUnitPriceAVGBD23, d.avgUnitPriceAVGBD24, d.avgUnitError23, d.avgUnitError24);
 				output.println();
-				System.out.println();
+				out.println();
 			}
 			
 			*/
 			sc.close();
 		}
 		catch(Exception ex){
-			System.out.println(ex.getMessage());
+			out.println(ex.getMessage());
 			ex.printStackTrace();
 		}
 		
@@ -1163,11 +1264,11 @@ public class ResultsHATrading
 		n = length/ITEMS;
 		int index = 0;
 		String bName = "";
-		//System.out.println("n="+n+" Myline: "+ line);
-		//System.out.println("1"+arrVals[0]+" 2 "+ arrVals[49]+ " 3 " + arrVals[49+49]);
+		//out.println("n="+n+" Myline: "+ line);
+		//out.println("1"+arrVals[0]+" 2 "+ arrVals[49]+ " 3 " + arrVals[49+49]);
 		for(int i = 0; i < n; i++){
 			bName = arrVals[index];
-			//System.out.println("Broker "+i+" "+bName);
+			//out.println("Broker "+i+" "+bName);
 			brokerDr.put(bName, new Data());
 			index+=ITEMS;
 		}
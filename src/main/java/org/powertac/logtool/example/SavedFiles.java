@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Combines results that analyzers saved from single games, such as
+ * ImbalanceTotals, ClearingPriceSketches and the ForecastErrorStats
+ * accumulators. The files are read in parallel, one per thread, and
+ * merged into the total in file order as they arrive, so the total is
+ * the same as a sequential merge.
+ */
+public class SavedFiles
+{
+  static private Logger log =
+      LogManager.getLogger(SavedFiles.class.getName());
+
+  private SavedFiles ()
+  {
+    super();
+  }
+
+  /**
+   * Reads one saved file.
+   */
+  public interface Reader<T>
+  {
+    public T read (String filename) throws IOException;
+  }
+
+  /**
+   * Reads each of the files with reader, merges each result into total
+   * with merger, and returns total. Files that cannot be read are reported
+   * and skipped.
+   */
+  public static <T> T merge (String[] filenames, Reader<T> reader, T total,
+                             BiConsumer<T, T> merger)
+    throws InterruptedException
+  {
+    int threads = Math.max(1, Math.min(filenames.length,
+                           Runtime.getRuntime().availableProcessors()));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<T>> results = new ArrayList<>();
+      for (String filename: filenames) {
+        results.add(pool.submit(() -> reader.read(filename)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        try {
+          merger.accept(total, results.get(i).get());
+        }
+        catch (ExecutionException e) {
+          log.error("Cannot read " + filenames[i] + ": " + e.getCause());
+          System.out.println("Skipping " + filenames[i] + ": " + e.getCause());
+        }
+      }
+      return total;
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+}
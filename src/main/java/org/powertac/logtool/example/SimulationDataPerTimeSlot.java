@@ -3,6 +3,8 @@ package org.powertac.logtool.example;
 import java.util.Arrays;
 
 class SimulationDataPerTimeSlot {
+	static final int DEFAULT_BROKER_SLOTS = 12;
+
 	int month_date;
 	int day_date;
 	int timeslotIndex;
@@ -15,24 +17,24 @@ class SimulationDataPerTimeSlot {
 	double marketCost;
 	double marketGain;
 	
-	double [] arrenergyBought = new double[12];
-	double [] arrenergySold= new double[12];
-	double [] arrnetEnergy= new double[12];
-	double [] arrnetPrice= new double[12];
-	double [] arrmarketCost= new double[12];
-	double [] arrmarketGain= new double[12];
-	double [] arrcashPosition = new double[12];
+	double [] arrenergyBought;
+	double [] arrenergySold;
+	double [] arrnetEnergy;
+	double [] arrnetPrice;
+	double [] arrmarketCost;
+	double [] arrmarketGain;
+	double [] arrcashPosition;
 	
 	double boughtprice;
 	double soldprice;
 	double marketOverallBalance;
 	int count;
-	double soldPriceB [] = new double[12];
-	double boughtPriceB [] = new double[12];
-	double netPriceB [] = new double[12];
-	double balEngDefct [] = new double[12];
-	double balEngSurpls [] = new double[12];
-	double balancingKWH [] = new double[12]; 
+	double soldPriceB [];
+	double boughtPriceB [];
+	double netPriceB [];
+	double balEngDefct [];
+	double balEngSurpls [];
+	double balancingKWH []; 
 	
 	double netDistributionFee;
 	double tariffGain;
@@ -58,22 +60,57 @@ class SimulationDataPerTimeSlot {
 	double bankGain;
 	double tariffCost;
 	double tariffGains;
-	double market[] = new double[12];
-	double tariff[] = new double[12];
-	double tariffUsage[] = new double[12];
-	double distribution[] = new double[12];
-	double balancing[] = new double[12];
-	double bank[] = new double[12];
-	double arrMarketBuy[] = new double[12];
-	double arrMarketSell[] = new double[12];
-	double arrMarketBuyMWh[] = new double[12];
-	double arrMarketSellMWh[] = new double[12];
-	double arrTradeCount[] = new double[12];
-	double arrTradeCountBuy[] = new double[12];
-	double arrTradeCountSell[] = new double[12];
-	double arrCapacityTransaction[] = new double[12];
+	double market[];
+	double tariff[];
+	double tariffUsage[];
+	double distribution[];
+	double balancing[];
+	double bank[];
+	double arrMarketBuy[];
+	double arrMarketSell[];
+	double arrMarketBuyMWh[];
+	double arrMarketSellMWh[];
+	double arrTradeCount[];
+	double arrTradeCountBuy[];
+	double arrTradeCountSell[];
+	double arrCapacityTransaction[];
 	
 	SimulationDataPerTimeSlot() {
+		this(DEFAULT_BROKER_SLOTS);
+	}
+
+	/**
+	 * Creates a record whose per-broker arrays hold brokerSlots entries,
+	 * indexed the way the analyzer numbers its brokers.
+	 */
+	SimulationDataPerTimeSlot(int brokerSlots) {
+		arrenergyBought = new double[brokerSlots];
+		arrenergySold = new double[brokerSlots];
+		arrnetEnergy = new double[brokerSlots];
+		arrnetPrice = new double[brokerSlots];
+		arrmarketCost = new double[brokerSlots];
+		arrmarketGain = new double[brokerSlots];
+		arrcashPosition = new double[brokerSlots];
+		soldPriceB = new double[brokerSlots];
+		boughtPriceB = new double[brokerSlots];
+		netPriceB = new double[brokerSlots];
+		balEngDefct = new double[brokerSlots];
+		balEngSurpls = new double[brokerSlots];
+		balancingKWH = new double[brokerSlots];
+		market = new double[brokerSlots];
+		tariff = new double[brokerSlots];
+		tariffUsage = new double[brokerSlots];
+		distribution = new double[brokerSlots];
+		balancing = new double[brokerSlots];
+		bank = new double[brokerSlots];
+		arrMarketBuy = new double[brokerSlots];
+		arrMarketSell = new double[brokerSlots];
+		arrMarketBuyMWh = new double[brokerSlots];
+		arrMarketSellMWh = new double[brokerSlots];
+		arrTradeCount = new double[brokerSlots];
+		arrTradeCountBuy = new double[brokerSlots];
+		arrTradeCountSell = new double[brokerSlots];
+		arrCapacityTransaction = new double[brokerSlots];
 		month_date = 0;
 		day_date = 0;
 		timeslotIndex = 0;
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+/**
+ * Running window statistics over a per-timeslot, per-leadtime series such
+ * as clearing prices. Values are added by (key, leadtime), where key is
+ * usually a timeslot index. Keys are grouped into slots of key % period,
+ * and each (slot, leadtime) cell keeps its last <code>window</code>
+ * periods of key / period. So
+ * <ul>
+ * <li>period 1, window 1 gives the previous value (1h lag),</li>
+ * <li>period 1, window 24 gives a trailing 24h window,</li>
+ * <li>period 24, window 7 gives the same hour of day over the last
+ *     7 days.</li>
+ * </ul>
+ * A query at key covers the <code>window</code> periods before key's own,
+ * and key's own value if it has been added. So to get lag features for a
+ * row, query before adding the row's own values. Values that are too old
+ * for the key asked about are left out even if nothing newer was added
+ * since, as after a gap in the keys. Sum, count, mean and last value are
+ * maintained as values arrive; min and max are kept in monotonic queues.
+ * All of them cost amortized O(1) to read.
+ *
+ * Keys for each cell must be added, and queried, in non-decreasing order.
+ * Adding a key again replaces its earlier value; keys older than the
+ * newest one in their cell are ignored.
+ */
+public class SlidingWindowStats
+{
+  private static final int EMPTY = Integer.MIN_VALUE;
+
+  private int period;
+  private int leadTimes;
+  private int window;
+
+  // ring of window values per cell
+  private double[] values;
+  private int[] stamps;
+
+  // per-cell running aggregates
+  private int[] newest;
+  private double[] sum;
+  private int[] count;
+  private double[] last;
+
+  // per-cell candidates for the window min and max
+  private MonotonicQueues mins;
+  private MonotonicQueues maxes;
+
+  public SlidingWindowStats (int period, int leadTimes, int window)
+  {
+    super();
+    this.period = period;
+    this.leadTimes = leadTimes;
+    this.window = window;
+    int cells = period * leadTimes;
+    values = new double[cells * window];
+    stamps = new int[cells * window];
+    newest = new int[cells];
+    sum = new double[cells];
+    count = new int[cells];
+    last = new double[cells];
+    mins = new MonotonicQueues(cells, window, true);
+    maxes = new MonotonicQueues(cells, window, false);
+    clear();
+  }
+
+  /** Trailing window of the given number of hours at each leadtime */
+  public static SlidingWindowStats hourly (int leadTimes, int hours)
+  {
+    return new SlidingWindowStats(1, leadTimes, hours);
+  }
+
+  /** Same hour of day over the given number of days at each leadtime */
+  public static SlidingWindowStats daily (int leadTimes, int days)
+  {
+    return new SlidingWindowStats(24, leadTimes, days);
+  }
+
+  public void add (int key, int lead, double value)
+  {
+    int cell = cell(key, lead);
+    boolean again = (newest[cell] == Math.floorDiv(key, period));
+    int r = advance(key, lead);
+    if (r < 0) {
+      return;
+    }
+    values[r] = value;
+    stamps[r] = newest[cell];
+    sum[cell] += value;
+    count[cell] += 1;
+    last[cell] = value;
+    if (again) {
+      // the replaced value may have hidden older candidates
+      rebuildQueues(cell);
+    }
+    else {
+      mins.push(cell, newest[cell], value);
+      maxes.push(cell, newest[cell], value);
+    }
+  }
+
+  private void rebuildQueues (int cell)
+  {
+    mins.clear(cell);
+    maxes.clear(cell);
+    int base = cell * window;
+    for (int e = newest[cell] - window + 1; e <= newest[cell]; e++) {
+      int r = base + Math.floorMod(e, window);
+      if (EMPTY != stamps[r]) {
+        mins.push(cell, e, values[r]);
+        maxes.push(cell, e, values[r]);
+      }
+    }
+  }
+
+  /**
+   * Moves the window of the (key, lead) cell forward to key without adding
+   * a value, so that a missing or ignored value still ages out older ones.
+   */
+  public void skip (int key, int lead)
+  {
+    int cell = cell(key, lead);
+    boolean again = (newest[cell] == Math.floorDiv(key, period));
+    if (advance(key, lead) >= 0 && again) {
+      rebuildQueues(cell);
+    }
+  }
+
+  // Slides the window to end at key and frees its ring position, which is
+  // returned. Returns -1 if key is older than the window.
+  private int advance (int key, int lead)
+  {
+    int cell = cell(key, lead);
+    int p = Math.floorDiv(key, period);
+    if (EMPTY != newest[cell] && p < newest[cell]) {
+      return -1;
+    }
+    int base = cell * window;
+    if (EMPTY == newest[cell] || p > newest[cell]) {
+      // evict whatever falls out of the window ending at p
+      int start = p - window + 1;
+      if (EMPTY != newest[cell])
+        start = Math.max(start, newest[cell] + 1);
+      for (int e = start; e <= p; e++) {
+        evict(cell, base + Math.floorMod(e, window));
+      }
+      newest[cell] = p;
+      mins.dropBefore(cell, p - window + 1);
+      maxes.dropBefore(cell, p - window + 1);
+    }
+    int r = base + Math.floorMod(p, window);
+    evict(cell, r);
+    return r;
+  }
+
+  // Drops values too old for a query at key, which may be later than the
+  // newest key of its cell, and returns the cell
+  private int expire (int key, int lead)
+  {
+    int cell = cell(key, lead);
+    int p = Math.floorDiv(key, period);
+    if (EMPTY != newest[cell] && p > newest[cell] + 1) {
+      int oldest = p - window;
+      int base = cell * window;
+      for (int e = newest[cell] - window + 1;
+          e < oldest && e <= newest[cell]; e++) {
+        evict(cell, base + Math.floorMod(e, window));
+      }
+      mins.dropBefore(cell, oldest);
+      maxes.dropBefore(cell, oldest);
+    }
+    return cell;
+  }
+
+  private void evict (int cell, int r)
+  {
+    if (EMPTY != stamps[r]) {
+      sum[cell] -= values[r];
+      count[cell] -= 1;
+      stamps[r] = EMPTY;
+    }
+  }
+
+  public int getCount (int key, int lead)
+  {
+    return count[expire(key, lead)];
+  }
+
+  public double getSum (int key, int lead)
+  {
+    return sum[expire(key, lead)];
+  }
+
+  /** Mean over the window, or 0.0 if it's empty */
+  public double getMean (int key, int lead)
+  {
+    int cell = expire(key, lead);
+    if (0 == count[cell])
+      return 0.0;
+    return sum[cell] / count[cell];
+  }
+
+  /** Most recently added value, or 0.0 if the window is empty */
+  public double getLast (int key, int lead)
+  {
+    int cell = expire(key, lead);
+    if (0 == count[cell])
+      return 0.0;
+    return last[cell];
+  }
+
+  /** Smallest value in the window, or 0.0 if it's empty */
+  public double getMin (int key, int lead)
+  {
+    int cell = expire(key, lead);
+    return (0 == count[cell]) ? 0.0 : mins.first(cell);
+  }
+
+  /** Largest value in the window, or 0.0 if it's empty */
+  public double getMax (int key, int lead)
+  {
+    int cell = expire(key, lead);
+    return (0 == count[cell]) ? 0.0 : maxes.first(cell);
+  }
+
+  public void clear ()
+  {
+    Arrays.fill(stamps, EMPTY);
+    Arrays.fill(newest, EMPTY);
+    Arrays.fill(sum, 0.0);
+    Arrays.fill(count, 0);
+    Arrays.fill(last, 0.0);
+    mins.clear();
+    maxes.clear();
+  }
+
+  private int cell (int key, int lead)
+  {
+    return Math.floorMod(key, period) * leadTimes + lead;
+  }
+
+  /**
+   * One deque of (period, value) per cell, oldest first. Each value is
+   * kept only while no newer value in the window is at least as small
+   * (for min) or as large (for max), so the values are monotonic and the
+   * first one is the window's min or max.
+   */
+  private static class MonotonicQueues
+  {
+    private int capacity;
+    private boolean min;
+    private int[] stamps;
+    private double[] values;
+    private int[] head;
+    private int[] size;
+
+    MonotonicQueues (int cells, int capacity, boolean min)
+    {
+      this.capacity = capacity;
+      this.min = min;
+      stamps = new int[cells * capacity];
+      values = new double[cells * capacity];
+      head = new int[cells];
+      size = new int[cells];
+    }
+
+    // Adds the newest value of a cell. Its window holds fewer than
+    // capacity periods before this one, so there is room.
+    void push (int cell, int stamp, double value)
+    {
+      while (size[cell] > 0) {
+        double back = values[index(cell, size[cell] - 1)];
+        if (min ? back < value : back > value)
+          break;
+        size[cell] -= 1;
+      }
+      int i = index(cell, size[cell]);
+      stamps[i] = stamp;
+      values[i] = value;
+      size[cell] += 1;
+    }
+
+    // Drops the entries older than stamp
+    void dropBefore (int cell, int stamp)
+    {
+      while (size[cell] > 0 && stamps[index(cell, 0)] < stamp) {
+        head[cell] = (head[cell] + 1) % capacity;
+        size[cell] -= 1;
+      }
+    }
+
+    double first (int cell)
+    {
+      return values[index(cell, 0)];
+    }
+
+    void clear (int cell)
+    {
+      head[cell] = 0;
+      size[cell] = 0;
+    }
+
+    void clear ()
+    {
+      Arrays.fill(head, 0);
+      Arrays.fill(size, 0);
+    }
+
+    private int index (int cell, int offset)
+    {
+      return cell * capacity + (head[cell] + offset) % capacity;
+    }
+  }
+}
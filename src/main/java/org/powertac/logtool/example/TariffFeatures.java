@@ -89,7 +89,10 @@ public class TariffFeatures
             return;
         }
         dataFilename = args[1];
-        super.cli(args[0], this);
+        LogLineFilter.read(args[0],
+                           LogLineFilter.neededClasses(this,
+                               TimeslotUpdate.class, TariffTransaction.class),
+                           (input) -> super.cli(input, this));
     }
 
     /**
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.Broker;
+import org.powertac.common.TariffSpecification;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.enumerations.PowerType;
+
+/**
+ * Running tariff subscription counts and usage, updated as each
+ * TariffTransaction is read. Subscriptions are counted per broker and per
+ * tariff: SIGNUP adds and WITHDRAW subtracts the transaction's customer
+ * count. CONSUME and PUBLISH transactions add to per-broker kWh and charge
+ * totals for the current timeslot.
+ *
+ * Brokers are kept in a DenseIndex and tariffs in a long-keyed table, and
+ * all counts are in primitive arrays, so adding a transaction does not
+ * allocate once the brokers and tariffs are known.
+ *
+ * At the end of each timeslot, closeTimeslot() passes the ledger to the
+ * registered listeners, which read the snapshot through the getters, and
+ * then clears the per-timeslot changes and usage. Several analyzers may
+ * share one ledger; a transaction that is offered more than once in
+ * succession is counted once.
+ */
+public class TariffLedger
+{
+  static private Logger log =
+      LogManager.getLogger(TariffLedger.class.getName());
+
+  private DenseIndex<Broker> brokers = new DenseIndex<>();
+  private long[] brokerCustomers = new long[8];
+  private double[] brokerKWh = new double[8];
+  private double[] brokerCharge = new double[8];
+  private boolean[] brokerUsed = new boolean[8];
+
+  // tariffs, by slot in order of first appearance
+  private TariffTable tariffSlots = new TariffTable();
+  private long[] tariffIds = new long[64];
+  private int[] tariffBroker = new int[64];
+  private PowerType[] tariffPowerType = new PowerType[64];
+  private long[] tariffCustomers = new long[64];
+  private int tariffCount = 0;
+
+  // tariffs whose subscriptions changed this timeslot, in order of change
+  private int[] changed = new int[64];
+  private boolean[] isChanged = new boolean[64];
+  private int changedCount = 0;
+
+  private int timeslot = -1;
+  private Object lastTx = null;
+  private List<LedgerListener> listeners = new ArrayList<>();
+
+  public TariffLedger ()
+  {
+    super();
+  }
+
+  public void addListener (LedgerListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /**
+   * Adds the brokers in order, so their indices match a fixed column
+   * order. Brokers not added here are added as they first appear.
+   */
+  public void addBrokers (List<Broker> list)
+  {
+    for (Broker broker: list) {
+      brokerIndex(broker);
+    }
+  }
+
+  /**
+   * Adds a transaction to the ledger. Types other than SIGNUP, WITHDRAW,
+   * CONSUME and PUBLISH are ignored.
+   */
+  public void add (TariffTransaction tx)
+  {
+    if (tx == lastTx)
+      return;
+    lastTx = tx;
+    TariffTransaction.Type type = tx.getTxType();
+    if (type == TariffTransaction.Type.SIGNUP
+        || type == TariffTransaction.Type.WITHDRAW) {
+      long delta = tx.getCustomerCount();
+      if (type == TariffTransaction.Type.WITHDRAW)
+        delta = -delta;
+      int b = brokerIndex(tx.getBroker());
+      brokerCustomers[b] += delta;
+      int t = tariffSlot(tx.getTariffSpec(), b);
+      tariffCustomers[t] += delta;
+      if (!isChanged[t]) {
+        isChanged[t] = true;
+        changed[changedCount++] = t;
+      }
+    }
+    else if (type == TariffTransaction.Type.CONSUME
+             || type == TariffTransaction.Type.PUBLISH) {
+      int b = brokerIndex(tx.getBroker());
+      brokerKWh[b] += tx.getKWh();
+      brokerCharge[b] += tx.getCharge();
+      brokerUsed[b] = true;
+    }
+  }
+
+  /**
+   * Ends the given timeslot: listeners see its snapshot, then the
+   * per-timeslot changes and usage are cleared. A second call for the
+   * same timeslot does nothing.
+   */
+  public void closeTimeslot (int ts)
+  {
+    if (ts == timeslot)
+      return;
+    timeslot = ts;
+    for (LedgerListener listener: listeners) {
+      listener.timeslotClosed(ts, this);
+    }
+    for (int i = 0; i < changedCount; i++)
+      isChanged[changed[i]] = false;
+    changedCount = 0;
+    int n = brokers.size();
+    Arrays.fill(brokerKWh, 0, n, 0.0);
+    Arrays.fill(brokerCharge, 0, n, 0.0);
+    Arrays.fill(brokerUsed, 0, n, false);
+  }
+
+  // -------------------------------
+  // brokers
+
+  public int getBrokerCount ()
+  {
+    return brokers.size();
+  }
+
+  public Broker getBroker (int b)
+  {
+    return brokers.get(b);
+  }
+
+  /** Index of the broker, or -1 if it has not been seen */
+  public int indexOf (Broker broker)
+  {
+    return brokers.indexOf(broker);
+  }
+
+  /** Customers subscribed to the broker's tariffs */
+  public long getCustomers (int b)
+  {
+    return brokerCustomers[b];
+  }
+
+  /** Sum of getCustomers() over all brokers */
+  public long getTotalCustomers ()
+  {
+    long result = 0;
+    for (int b = 0; b < brokers.size(); b++)
+      result += brokerCustomers[b];
+    return result;
+  }
+
+  /** True if the broker had CONSUME or PUBLISH transactions this timeslot */
+  public boolean hasUsage (int b)
+  {
+    return brokerUsed[b];
+  }
+
+  public double getKWh (int b)
+  {
+    return brokerKWh[b];
+  }
+
+  public double getCharge (int b)
+  {
+    return brokerCharge[b];
+  }
+
+  // -------------------------------
+  // tariffs
+
+  public int getTariffCount ()
+  {
+    return tariffCount;
+  }
+
+  /** Number of tariffs with subscription changes this timeslot */
+  public int getChangedCount ()
+  {
+    return changedCount;
+  }
+
+  /** Slot of the i-th tariff changed this timeslot */
+  public int getChanged (int i)
+  {
+    return changed[i];
+  }
+
+  public long getTariffId (int t)
+  {
+    return tariffIds[t];
+  }
+
+  /** Broker index of the tariff's owner */
+  public int getTariffBroker (int t)
+  {
+    return tariffBroker[t];
+  }
+
+  public PowerType getTariffPowerType (int t)
+  {
+    return tariffPowerType[t];
+  }
+
+  public long getTariffCustomers (int t)
+  {
+    return tariffCustomers[t];
+  }
+
+  private int brokerIndex (Broker broker)
+  {
+    int b = brokers.add(broker);
+    if (b >= brokerCustomers.length) {
+      int size = brokerCustomers.length * 2;
+      brokerCustomers = Arrays.copyOf(brokerCustomers, size);
+      brokerKWh = Arrays.copyOf(brokerKWh, size);
+      brokerCharge = Arrays.copyOf(brokerCharge, size);
+      brokerUsed = Arrays.copyOf(brokerUsed, size);
+    }
+    return b;
+  }
+
+  private int tariffSlot (TariffSpecification spec, int b)
+  {
+    long id = spec.getId();
+    int t = tariffSlots.get(id);
+    if (t >= 0)
+      return t;
+    t = tariffCount++;
+    if (t >= tariffIds.length) {
+      int size = tariffIds.length * 2;
+      tariffIds = Arrays.copyOf(tariffIds, size);
+      tariffBroker = Arrays.copyOf(tariffBroker, size);
+      tariffPowerType = Arrays.copyOf(tariffPowerType, size);
+      tariffCustomers = Arrays.copyOf(tariffCustomers, size);
+      changed = Arrays.copyOf(changed, size);
+      isChanged = Arrays.copyOf(isChanged, size);
+    }
+    tariffIds[t] = id;
+    tariffBroker[t] = b;
+    tariffPowerType[t] = spec.getPowerType();
+    tariffSlots.put(id, t);
+    log.debug("Tariff {} of {} in slot {}", id, brokers.get(b).getUsername(), t);
+    return t;
+  }
+
+  /**
+   * Analyzers implement this to read the ledger at the end of each
+   * timeslot.
+   */
+  public interface LedgerListener
+  {
+    public void timeslotClosed (int timeslot, TariffLedger ledger);
+  }
+
+  // Open-addressing map from tariff id to slot, with no boxing
+  private static class TariffTable
+  {
+    private long[] keys = new long[128];
+    private int[] values = new int[128];
+    private boolean[] used = new boolean[128];
+    private int size = 0;
+
+    int get (long key)
+    {
+      int mask = keys.length - 1;
+      for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+        if (keys[i] == key)
+          return values[i];
+      }
+      return -1;
+    }
+
+    void put (long key, int value)
+    {
+      if ((size + 1) * 2 > keys.length)
+        grow();
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (used[i] && keys[i] != key)
+        i = (i + 1) & mask;
+      if (!used[i]) {
+        used[i] = true;
+        keys[i] = key;
+        size += 1;
+      }
+      values[i] = value;
+    }
+
+    private void grow ()
+    {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      boolean[] oldUsed = used;
+      keys = new long[oldKeys.length * 2];
+      values = new int[oldKeys.length * 2];
+      used = new boolean[oldKeys.length * 2];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldUsed[i])
+          put(oldKeys[i], oldValues[i]);
+      }
+    }
+
+    private static int hash (long key)
+    {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+}
@@ -19,7 +19,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 
 //import org.apache.log4j.Logger;
 import org.powertac.common.BalancingTransaction;
@@ -57,9 +57,9 @@ implements Analyzer
 
   private BrokerRepo brokerRepo;
 
-  // list of TariffTransactions for current timeslot
-  private ArrayList<TariffTransaction> ttx;
-  private HashMap<Broker, Integer> customerCounts;
+  // running subscription counts
+  private TariffLedger ledger;
+  private ShareWriter output;
 
   // output array, indexed by timeslot
   private ArrayList<Broker> brokers = null;
@@ -96,7 +96,10 @@ implements Analyzer
       return;
     }
     dataFilename = args[1];
-    super.cli(args[0], this);
+    LogLineFilter.read(args[0],
+                       LogLineFilter.neededClasses(this,
+                           TimeslotUpdate.class, TariffTransaction.class),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -109,7 +112,7 @@ implements Analyzer
   {
     //dor = (DomainObjectReader) SpringApplicationContext.getBean("reader");
     brokerRepo = (BrokerRepo) SpringApplicationContext.getBean("brokerRepo");
-    ttx = new ArrayList<TariffTransaction>();
+    ledger = new TariffLedger();
 
     registerNewObjectListener(new TimeslotUpdateHandler(),
                                   TimeslotUpdate.class);
@@ -121,6 +124,8 @@ implements Analyzer
     catch (FileNotFoundException e) {
 //      log.error("Cannot open file " + dataFilename);
     }
+    output = new ShareWriter(data);
+    ledger.addListener(output);
   }
 
   @Override
@@ -141,41 +146,59 @@ implements Analyzer
     if (null == brokers) {
       // first time through
       brokers = new ArrayList<Broker>();
-      customerCounts = new HashMap<Broker, Integer>();
-      data.print("ts, ");
       for (Broker broker : brokerRepo.findRetailBrokers()) {
         brokers.add(broker);
-        customerCounts.put(broker, 0);
+      }
+      output.start(brokers);
+      ledger.addBrokers(brokers);
+    }
+    ledger.closeTimeslot(currentTimeslot);
+  }
+
+  /**
+   * Writes the market share lines from a ledger, which may be shared with
+   * other analyzers.
+   */
+  static class ShareWriter implements TariffLedger.LedgerListener
+  {
+    private PrintWriter data;
+    private List<Broker> brokers;
+
+    ShareWriter (PrintWriter data)
+    {
+      super();
+      this.data = data;
+    }
+
+    // Writes the header, with one column for each broker in order
+    void start (List<Broker> brokers)
+    {
+      this.brokers = brokers;
+      data.print("ts, ");
+      for (Broker broker : brokers) {
         data.print(broker.getUsername());
         data.print(", ");
       }
       data.println("total");
     }
 
-    if (ttx.size() > 0) {
-      // there are some signups and withdraws here
-      for (TariffTransaction tx : ttx) {
-        Broker broker = tx.getBroker();
-        int pop = 0;
-        if (tx.getTxType() == TariffTransaction.Type.SIGNUP)
-          pop = tx.getCustomerCount();
-        else if (tx.getTxType() == TariffTransaction.Type.WITHDRAW)
-          pop = -tx.getCustomerCount();
-        customerCounts.put(broker, customerCounts.get(broker) + pop);
-      }
-      // print results for this timeslot
-      data.print(currentTimeslot);
+    // Prints the counts for a timeslot with signups or withdrawals
+    @Override
+    public void timeslotClosed (int timeslot, TariffLedger counts)
+    {
+      if (0 == counts.getChangedCount())
+        return;
+      data.print(timeslot);
       data.print(", ");
-      int sum = 0;
+      long sum = 0;
       for (Broker broker: brokers) {
-        int count = customerCounts.get(broker);
+        long count = counts.getCustomers(counts.indexOf(broker));
         data.print(count);
         sum += count;
         data.print(", ");
       }
       data.println(sum);
     }
-    ttx.clear();
   }
 
   // -----------------------------------
@@ -189,7 +212,7 @@ implements Analyzer
       // only include SIGNUP and WITHDRAW
       if (tx.getTxType() == TariffTransaction.Type.SIGNUP ||
           tx.getTxType() == TariffTransaction.Type.WITHDRAW) {
-        ttx.add(tx);
+        ledger.add(tx);
       }
     } 
   }
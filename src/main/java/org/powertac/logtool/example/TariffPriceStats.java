@@ -19,9 +19,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 
 //import org.apache.log4j.Logger;
 import org.powertac.common.BalancingTransaction;
@@ -35,7 +32,6 @@ import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
 import org.powertac.logtool.ifc.Analyzer;
-import org.powertac.util.Pair;
 
 /**
  * Example analysis class.
@@ -54,19 +50,18 @@ extends LogtoolContext
 implements Analyzer
 {
 //	static private Logger log = Logger.getLogger(TariffPriceStats.class.getName());
-	private final String separator = ",";
+	private static final String separator = ",";
 
 	private DomainObjectReader dor;
 
 	private BrokerRepo brokerRepo;
 
-	// list of TariffTransactions for current timeslot
-	private ArrayList<TariffTransaction> ttx;
-	private HashMap<Broker, Integer> customerCounts;
+	// per-broker usage for the current timeslot
+	private TariffLedger ledger;
+	private UsageWriter output;
 
 	// output array, indexed by timeslot
 	private ArrayList<Broker> brokers = null;
-	private HashMap<Integer,HashMap<Broker, Pair<Double, Double>>> usage = null;
 
 	// data output file
 	private PrintWriter data = null;
@@ -102,7 +97,10 @@ implements Analyzer
 			return;
 		}
 		dataFilename = args[1];
-		super.cli(args[0], this);
+		LogLineFilter.read(args[0],
+				LogLineFilter.neededClasses(this,
+					TimeslotUpdate.class, TariffTransaction.class),
+				(input) -> super.cli(input, this));
 	}
 
 	/**
@@ -115,8 +113,7 @@ implements Analyzer
 	{
 		//dor = (DomainObjectReader) SpringApplicationContext.getBean("reader");
 		brokerRepo = (BrokerRepo) SpringApplicationContext.getBean("brokerRepo");
-		ttx = new ArrayList<TariffTransaction>();
-		usage = new HashMap<Integer,HashMap<Broker, Pair<Double, Double>>>(2000);
+		ledger = new TariffLedger();
 
 		registerNewObjectListener(new TimeslotUpdateHandler(),TimeslotUpdate.class);
 		registerNewObjectListener(new TariffTxHandler(),TariffTransaction.class);
@@ -128,24 +125,13 @@ implements Analyzer
 		{
 //			log.error("Cannot open file " + dataFilename);
 		}
-		data.println("timeslot" + separator + "broker" + separator + "totalKWh" + separator + "totalCharge");
+		output = new UsageWriter(data);
+		ledger.addListener(output);
 	}
 
 	@Override
 	public void report ()
 	{
-		for (Entry<Integer, HashMap<Broker, Pair<Double, Double>>> timeslot : usage.entrySet())
-		{
-			int time = timeslot.getKey(); 
-			HashMap<Broker, Pair<Double, Double>> thisTimeslot = timeslot.getValue();
-			for (Entry<Broker, Pair<Double, Double>> brokerSet : thisTimeslot.entrySet())
-			{
-				data.println(time + separator +
-						brokerSet.getKey().getUsername() + separator +
-						brokerSet.getValue().car() + separator +
-						brokerSet.getValue().cdr());
-			}
-		}
 		data.close();
 	}
 
@@ -166,33 +152,40 @@ implements Analyzer
 			{
 				brokers.add(broker);
 			}
+			ledger.addBrokers(brokers);
 		}
+		ledger.closeTimeslot(currentTimeslot);
+	}
 
-		if (ttx.size() > 0)
+	/**
+	 * Writes the per-broker usage lines from a ledger, which may be shared
+	 * with other analyzers. The header is written when it is created.
+	 */
+	static class UsageWriter implements TariffLedger.LedgerListener
+	{
+		private PrintWriter data;
+
+		UsageWriter (PrintWriter data)
 		{
-			// there are some signups and withdraws here
-			for (TariffTransaction tx : ttx)
+			super();
+			this.data = data;
+			data.println("timeslot" + separator + "broker" + separator + "totalKWh" + separator + "totalCharge");
+		}
+
+		// Writes the usage of each broker with transactions in the timeslot
+		@Override
+		public void timeslotClosed (int time, TariffLedger totals)
+		{
+			for (int b = 0; b < totals.getBrokerCount(); b++)
 			{
-				Broker broker = tx.getBroker();
-				double thisKWh;
-				double thisCharge;
-				if (!usage.containsKey(currentTimeslot))
-					usage.put(currentTimeslot, new HashMap<Broker, Pair<Double, Double>>());
-				if (!usage.get(currentTimeslot).containsKey(broker))
-				{
-					HashMap<Broker, Pair<Double, Double>> thisTimeslot = usage.get(currentTimeslot);
-					thisTimeslot.put(broker, new Pair<Double, Double>(0.0, 0.0));
-				}
-				HashMap<Broker, Pair<Double, Double>> thisUsage = usage.get(currentTimeslot);
-				thisKWh = thisUsage.get(broker).car();
-				thisCharge = thisUsage.get(broker).cdr();
-				thisKWh += tx.getKWh();
-				thisCharge += tx.getCharge();
-				thisUsage.put(broker, new Pair<Double, Double>(thisKWh, thisCharge));
-				usage.put(currentTimeslot, thisUsage);
+				if (!totals.hasUsage(b))
+					continue;
+				data.println(time + separator +
+						totals.getBroker(b).getUsername() + separator +
+						totals.getKWh(b) + separator +
+						totals.getCharge(b));
 			}
 		}
-		ttx.clear();
 	}
 
 	// -----------------------------------
@@ -206,7 +199,7 @@ implements Analyzer
 			// only include SIGNUP and WITHDRAW
 			if (tx.getTxType() == TariffTransaction.Type.CONSUME || tx.getTxType() == TariffTransaction.Type.PUBLISH)
 			{
-				ttx.add(tx);
+				ledger.add(tx);
 			}
 		} 
 	}
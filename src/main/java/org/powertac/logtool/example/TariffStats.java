@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.Broker;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.msg.TimeslotUpdate;
+import org.powertac.common.repo.BrokerRepo;
+import org.powertac.common.spring.SpringApplicationContext;
+import org.powertac.logtool.LogtoolContext;
+import org.powertac.logtool.common.NewObjectListener;
+import org.powertac.logtool.ifc.Analyzer;
+
+/**
+ * Runs TariffMktShare, TariffSubscriptions and TariffPriceStats in one
+ * pass over a log. All three read one TariffLedger, so each
+ * TariffTransaction is decoded and counted once, and the three output
+ * files are the same as those of the separate analyzers.
+ *
+ * Usage:
+ * <pre>
+ * TariffStats input-file share-file subscriptions-file price-file
+ * </pre>
+ */
+public class TariffStats
+extends LogtoolContext
+implements Analyzer
+{
+  static private Logger log =
+      LogManager.getLogger(TariffStats.class.getName());
+
+  private BrokerRepo brokerRepo;
+
+  // one ledger for all three outputs
+  private TariffLedger ledger;
+  private TariffMktShare.ShareWriter shares;
+  private TariffSubscriptions.SubscriptionWriter subscriptions;
+
+  private List<Broker> brokers = null;
+
+  // output files, in the order of the args
+  private String[] filenames;
+  private PrintWriter[] data = new PrintWriter[3];
+
+  /**
+   * Constructor does nothing. Call setup() before reading a file to
+   * get this to work.
+   */
+  public TariffStats ()
+  {
+    super();
+  }
+
+  public static void main (String[] args)
+  {
+    new TariffStats().cli(args);
+  }
+
+  /**
+   * Takes four args, the input filename and the three output filenames
+   */
+  private void cli (String[] args)
+  {
+    if (args.length != 4) {
+      System.out.println("Usage: <analyzer> input-file share-file subscriptions-file price-file");
+      return;
+    }
+    filenames = new String[] {args[1], args[2], args[3]};
+    LogLineFilter.read(args[0],
+                       LogLineFilter.neededClasses(this,
+                           TimeslotUpdate.class, TariffTransaction.class),
+                       (input) -> super.cli(input, this));
+  }
+
+  @Override
+  public void setup ()
+  {
+    brokerRepo = (BrokerRepo) SpringApplicationContext.getBean("brokerRepo");
+    brokers = null;
+    try {
+      for (int i = 0; i < data.length; i++) {
+        data[i] = new PrintWriter(new File(filenames[i]));
+      }
+    }
+    catch (FileNotFoundException e) {
+      log.error("Cannot open file " + e.getMessage());
+    }
+    ledger = new TariffLedger();
+    shares = new TariffMktShare.ShareWriter(data[0]);
+    subscriptions = new TariffSubscriptions.SubscriptionWriter(data[1]);
+    ledger.addListener(shares);
+    ledger.addListener(subscriptions);
+    ledger.addListener(new TariffPriceStats.UsageWriter(data[2]));
+
+    registerNewObjectListener(new TimeslotUpdateHandler(),
+                              TimeslotUpdate.class);
+    registerNewObjectListener(new TariffTxHandler(),
+                              TariffTransaction.class);
+  }
+
+  @Override
+  public void report ()
+  {
+    for (PrintWriter out: data) {
+      if (null != out)
+        out.close();
+    }
+  }
+
+  // Timeslot numbering as in the separate analyzers
+  private void summarizeTimeslot (TimeslotUpdate ts)
+  {
+    int currentTimeslot = ts.getFirstEnabled() - 2;
+    if (null == brokers) {
+      brokers = new ArrayList<>(brokerRepo.findRetailBrokers());
+      shares.start(brokers);
+      subscriptions.start();
+      ledger.addBrokers(brokers);
+    }
+    ledger.closeTimeslot(currentTimeslot);
+  }
+
+  // -----------------------------------
+  // catch TariffTransactions; the ledger ignores types none of the
+  // outputs use
+  class TariffTxHandler implements NewObjectListener
+  {
+    @Override
+    public void handleNewObject (Object thing)
+    {
+      ledger.add((TariffTransaction) thing);
+    }
+  }
+
+  // -----------------------------------
+  // catch TimeslotUpdate events
+  class TimeslotUpdateHandler implements NewObjectListener
+  {
+    @Override
+    public void handleNewObject (Object thing)
+    {
+      summarizeTimeslot((TimeslotUpdate) thing);
+    }
+  }
+}
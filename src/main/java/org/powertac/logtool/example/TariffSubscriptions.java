@@ -19,7 +19,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 //import org.apache.commons.lang.ObjectUtils;
 //import org.apache.log4j.Logger;
@@ -39,12 +38,12 @@ import org.powertac.util.Pair;
 /**
  * Example analysis class.
  * Extracts TariffTransactions, looks for SIGNUP and WITHDRAW transactions,
- * computes market share by broker and total customer count.
+ * computes the customer count of each tariff.
  *
- * First line lists brokers. Remaining lines are emitted for each timeslot
- * in which SIGNUP or WITHDRAW transactions occur, format is
- *   timeslot, customer-count, ..., total-customer-count
- * with one customer-count field for each broker.
+ * First line is a header. Remaining lines are emitted for each tariff
+ * with SIGNUP or WITHDRAW transactions in a timeslot, format is
+ *   timeslot, broker, tariff-id, power-type, customer-count
+ * where customer-count is the tariff's total after the transactions.
  *
  * @author John Collins
  */
@@ -58,10 +57,9 @@ public class TariffSubscriptions
 
     private BrokerRepo brokerRepo;
 
-    // list of TariffTransactions for current timeslot
-    private ArrayList<TariffTransaction> ttx;
-    //private HashMap<Broker, Integer> customerCounts;
-    private HashMap<Broker, HashMap<Long, Integer>> brokerTariffCounts;
+    // running subscription counts by tariff
+    private TariffLedger ledger;
+    private SubscriptionWriter output;
 
     // output array, indexed by timeslot
     private ArrayList<Broker> brokers = null;
@@ -98,7 +96,10 @@ public class TariffSubscriptions
             return;
         }
         dataFilename = args[1];
-        super.cli(args[0], this);
+        LogLineFilter.read(args[0],
+                           LogLineFilter.neededClasses(this,
+                               TimeslotUpdate.class, TariffTransaction.class),
+                           (input) -> super.cli(input, this));
     }
 
     /**
@@ -111,7 +112,7 @@ public class TariffSubscriptions
     {
         //dor = (DomainObjectReader) SpringApplicationContext.getBean("reader");
         brokerRepo = (BrokerRepo) SpringApplicationContext.getBean("brokerRepo");
-        ttx = new ArrayList<TariffTransaction>();
+        ledger = new TariffLedger();
 
         registerNewObjectListener(new TimeslotUpdateHandler(),
                 TimeslotUpdate.class);
@@ -123,6 +124,8 @@ public class TariffSubscriptions
         catch (FileNotFoundException e) {
            // log.error("Cannot open file " + dataFilename);
         }
+        output = new SubscriptionWriter(data);
+        ledger.addListener(output);
     }
 
     @Override
@@ -143,69 +146,53 @@ public class TariffSubscriptions
         if (null == brokers) {
             // first time through
             brokers = new ArrayList<Broker>();
-            //customerCounts = new HashMap<Broker, Integer>();
-            brokerTariffCounts = new HashMap<Broker, HashMap<Long, Integer>>();
 
+            output.start();
+            for (Broker broker : brokerRepo.findRetailBrokers()) {
+                brokers.add(broker);
+            }
+            ledger.addBrokers(brokers);
+        }
+        ledger.closeTimeslot(currentTimeslot);
+    }
+
+    /**
+     * Writes the per-tariff subscription lines from a ledger, which may be
+     * shared with other analyzers.
+     */
+    static class SubscriptionWriter implements TariffLedger.LedgerListener
+    {
+        private PrintWriter data;
+
+        SubscriptionWriter (PrintWriter data)
+        {
+            super();
+            this.data = data;
+        }
+
+        void start ()
+        {
             data.print("ts, ");
             data.print("broker, ");
             data.print("tariff id, ");
             data.print("power type, ");
             data.println("customers");
-            for (Broker broker : brokerRepo.findRetailBrokers()) {
-                brokers.add(broker);
-                //customerCounts.put(broker, 0);
-                brokerTariffCounts.put(broker, new HashMap<Long, Integer>());
-                //data.print(broker.getUsername());
-                //data.print(", ");
-            }
-            //data.println("total");
         }
 
-        if (ttx.size() > 0) {
-            // there are some signups and withdraws here
-            data.print(currentTimeslot + ", ");
-            for (TariffTransaction tx : ttx) {
-                Broker broker = tx.getBroker();
-                data.print(broker.getUsername() + ", ");
-                long tariffID = tx.getId();
-                data.print(tariffID + ", ");
-                data.print(tx.getTariffSpec().getPowerType());
-                int pop = 0;
-                if (tx.getTxType() == TariffTransaction.Type.SIGNUP)
-                    pop = tx.getCustomerCount();
-                else if (tx.getTxType() == TariffTransaction.Type.WITHDRAW)
-                    pop = -tx.getCustomerCount();
-                HashMap<Long, Integer> brokerMap;
-                if (brokerTariffCounts.get(broker).get(tariffID) == null)
-                {
-                    brokerMap = new HashMap<Long, Integer>();
-                }
-                else
-                {
-                    brokerMap = brokerTariffCounts.get(broker);
-                }
-				try{
-					brokerMap.put(tariffID, pop + brokerMap.get(tariffID));
-                }
-				catch(Exception ex){
-					System.out.println("Nullpointer exception : Line 188");
-				}
-				brokerTariffCounts.put(broker, brokerMap);
-                data.println(brokerMap.get(tariffID));
-                //customerCounts.put(broker, customerCounts.get(broker) + pop);
-            }
-            // print results for this timeslot
-
-            /*int sum = 0;
-            for (Broker broker: brokers) {
-                int count = customerCounts.get(broker);
-                data.print(count);
-                sum += count;
-                data.print(", ");
+        // One line for each tariff with signups or withdrawals in the
+        // timeslot, giving its customer count after them
+        @Override
+        public void timeslotClosed (int timeslot, TariffLedger counts)
+        {
+            for (int i = 0; i < counts.getChangedCount(); i++) {
+                int t = counts.getChanged(i);
+                data.print(timeslot + ", ");
+                data.print(counts.getBroker(counts.getTariffBroker(t)).getUsername() + ", ");
+                data.print(counts.getTariffId(t) + ", ");
+                data.print(counts.getTariffPowerType(t) + ", ");
+                data.println(counts.getTariffCustomers(t));
             }
-            data.println(sum);*/
         }
-        ttx.clear();
     }
 
     // -----------------------------------
@@ -219,7 +206,7 @@ public class TariffSubscriptions
             // only include SIGNUP and WITHDRAW
             if (tx.getTxType() == TariffTransaction.Type.SIGNUP ||
                     tx.getTxType() == TariffTransaction.Type.WITHDRAW) {
-                ttx.add(tx);
+                ledger.add(tx);
             }
         }
     }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Tells analyzers when a timeslot is final. A timeslot is final once it has
+ * been deactivated and its balancing has settled; in the state log, that
+ * is when the TimeslotUpdate that starts the next timeslot arrives. After
+ * that, nothing more is posted for it, so an analyzer can write out what
+ * it collected for the timeslot and drop it, and hold only the open
+ * trading window rather than the whole game.
+ * <pre>
+ * finalizer = new TimeslotFinalizer();
+ * finalizer.addListener(listener);
+ * TimeslotUpdate -&gt; finalizer.startTimeslot(current timeslot)
+ * SimEnd or report() -&gt; finalizer.finish()
+ * </pre>
+ * Analyzers that use a TimeslotPhaseTracker can instead add the finalizer
+ * to it as a PhaseListener.
+ *
+ * State kept in a map keyed by timeslot can be written out and removed
+ * with emitThrough().
+ */
+public class TimeslotFinalizer
+implements TimeslotPhaseTracker.PhaseListener
+{
+  static private Logger log =
+      LogManager.getLogger(TimeslotFinalizer.class.getName());
+
+  private int current = -1;
+  private int finalized = -1;
+  private List<FinalizeListener> listeners = new ArrayList<>();
+
+  public TimeslotFinalizer ()
+  {
+    super();
+  }
+
+  public void addListener (FinalizeListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /** Returns the current timeslot, or -1 before the first one */
+  public int getCurrent ()
+  {
+    return current;
+  }
+
+  /** Returns the last timeslot finalized, or -1 if there is none */
+  public int getFinalized ()
+  {
+    return finalized;
+  }
+
+  /**
+   * Starts timeslot ts, and finalizes the previous current one. Timeslots
+   * in between were never started, as when a log is missing some
+   * TimeslotUpdates, so they are not finalized and analyzers write no
+   * rows for them. The first call finalizes nothing, and a call for a
+   * timeslot that is not later than the current one is ignored.
+   */
+  public void startTimeslot (int ts)
+  {
+    if (ts <= current) {
+      if (ts < current)
+        log.warn("Timeslot {} started after {}", ts, current);
+      return;
+    }
+    if (current >= 0 && ts > current + 1)
+      log.warn("Timeslots {} to {} were never started", current + 1, ts - 1);
+    finalizeCurrent();
+    current = ts;
+  }
+
+  /**
+   * Finalizes the current timeslot at the end of the game. Further calls
+   * do nothing.
+   */
+  public void finish ()
+  {
+    finalizeCurrent();
+  }
+
+  /** Forgets all timeslots, for the next game */
+  public void reset ()
+  {
+    current = -1;
+    finalized = -1;
+  }
+
+  /**
+   * The end of the TsUpd phase starts a new timeslot.
+   */
+  @Override
+  public void onPhaseEnd (TimeslotPhaseTracker.Phase phase, int timeslot)
+  {
+    if (phase == TimeslotPhaseTracker.Phase.TsUpd)
+      startTimeslot(timeslot);
+  }
+
+  private void finalizeCurrent ()
+  {
+    if (current < 0 || current <= finalized)
+      return;
+    finalized = current;
+    for (FinalizeListener listener: listeners) {
+      listener.timeslotFinalized(current);
+    }
+  }
+
+  /**
+   * Passes each entry of map with a timeslot no later than ts to emitter,
+   * in timeslot order, and removes it. The emitter may be null, to just
+   * evict.
+   */
+  public static <V> void emitThrough (NavigableMap<Integer, V> map, int ts,
+                                      Emitter<V> emitter)
+  {
+    Iterator<Map.Entry<Integer, V>> entries =
+        map.headMap(ts, true).entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<Integer, V> entry = entries.next();
+      if (null != emitter)
+        emitter.emit(entry.getKey(), entry.getValue());
+      entries.remove();
+    }
+  }
+
+  /**
+   * Analyzers implement this to be told when a timeslot is final.
+   */
+  public interface FinalizeListener
+  {
+    /**
+     * Called once for each timeslot that was started, in order, when
+     * nothing more will be posted for it. Any state kept for timeslots up
+     * to this one can be dropped.
+     */
+    public void timeslotFinalized (int timeslot);
+  }
+
+  /**
+   * Writes out the state held for one timeslot, before it is evicted.
+   */
+  public interface Emitter<V>
+  {
+    public void emit (int timeslot, V value);
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.powertac.common.BalancingTransaction;
+import org.powertac.common.MarketTransaction;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.msg.BalanceReport;
+import org.powertac.common.msg.TimeslotUpdate;
+
+/**
+ * Classifies state-log events into the settlement phases of a timeslot.
+ * Within each timeslot the server produces, in order,
+ * <ol>
+ * <li>a TimeslotUpdate,</li>
+ * <li>MarketTransactions for wholesale commitments,</li>
+ * <li>TariffTransactions for customer production and consumption,</li>
+ * <li>after the BalanceReport (server 1.2 and later), TariffTransactions
+ *     for regulation by balancing controls,</li>
+ * <li>BalancingTransactions for the remaining imbalance.</li>
+ * </ol>
+ * Analyzers pass each relevant event to the tracker and get back the phase
+ * it belongs to, or null if it arrived out of order or before the first
+ * TimeslotUpdate. Registered PhaseListeners are told when each phase ends.
+ * The end of the TsUpd phase marks the start of a new timeslot.
+ *
+ * Several analyzers may share one tracker; an event that is offered more
+ * than once in succession is classified only once.
+ */
+public class TimeslotPhaseTracker
+{
+  static private Logger log =
+      LogManager.getLogger(TimeslotPhaseTracker.class.getName());
+
+  public enum Phase {TsUpd, MktTx, CustTx, RegTx, BalTx}
+
+  private Phase phase = Phase.TsUpd;
+  private int timeslot = -1;
+  private List<PhaseListener> listeners = new ArrayList<>();
+
+  // last event seen, for sharing among analyzers
+  private Object lastEvent = null;
+  private Phase lastPhase = null;
+
+  public TimeslotPhaseTracker ()
+  {
+    super();
+  }
+
+  public void addListener (PhaseListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /** Returns the phase we are currently in */
+  public Phase getPhase ()
+  {
+    return phase;
+  }
+
+  /**
+   * Returns the current timeslot index, one less than the first enabled
+   * timeslot in the most recent TimeslotUpdate, or -1 before the first one.
+   */
+  public int getTimeslot ()
+  {
+    return timeslot;
+  }
+
+  /**
+   * Ends the current timeslot and starts the next one.
+   */
+  public Phase timeslotUpdate (TimeslotUpdate msg)
+  {
+    if (msg == lastEvent) {
+      return lastPhase;
+    }
+    if (timeslot >= 0 && phase != Phase.TsUpd) {
+      fireEnd(phase);
+    }
+    timeslot = msg.getFirstEnabled() - 1;
+    phase = Phase.TsUpd;
+    fireEnd(Phase.TsUpd);
+    phase = Phase.MktTx;
+    log.debug("Timeslot {}", timeslot);
+    return remember(msg, Phase.TsUpd);
+  }
+
+  public Phase marketTransaction (MarketTransaction tx)
+  {
+    if (tx == lastEvent) {
+      return lastPhase;
+    }
+    if (phase != Phase.MktTx) {
+      log.error("incorrect state for mkt tx " + phase);
+      return remember(tx, null);
+    }
+    return remember(tx, Phase.MktTx);
+  }
+
+  /**
+   * TariffTransactions are customer transactions until the BalanceReport,
+   * and regulation transactions after it.
+   */
+  public Phase tariffTransaction (TariffTransaction tx)
+  {
+    if (tx == lastEvent) {
+      return lastPhase;
+    }
+    if (phase == Phase.MktTx) {
+      advance(Phase.CustTx);
+    }
+    if (phase == Phase.CustTx || phase == Phase.RegTx) {
+      return remember(tx, phase);
+    }
+    return remember(tx, null);
+  }
+
+  // Note that BalanceReport exists in logs starting with server release 1.2.
+  // For earlier logs, we depend on BalancingTransaction to detect the
+  // state change.
+  public Phase balanceReport (BalanceReport rpt)
+  {
+    if (rpt == lastEvent) {
+      return lastPhase;
+    }
+    if (phase != Phase.CustTx) {
+      log.error("Bad state for balance report: " + phase);
+      return remember(rpt, null);
+    }
+    advance(Phase.RegTx);
+    return remember(rpt, Phase.RegTx);
+  }
+
+  public Phase balancingTransaction (BalancingTransaction tx)
+  {
+    if (tx == lastEvent) {
+      return lastPhase;
+    }
+    if (phase == Phase.CustTx || phase == Phase.RegTx) {
+      advance(Phase.BalTx);
+    }
+    if (phase != Phase.BalTx) {
+      log.warn("Bad state for Bal TX " + tx.getId() + ": " + phase);
+      return remember(tx, null);
+    }
+    return remember(tx, Phase.BalTx);
+  }
+
+  // Moves forward to the target phase, ending each phase passed through
+  private void advance (Phase target)
+  {
+    while (phase.ordinal() < target.ordinal()) {
+      fireEnd(phase);
+      phase = Phase.values()[phase.ordinal() + 1];
+    }
+    log.debug("Set state to " + phase);
+  }
+
+  private void fireEnd (Phase ended)
+  {
+    for (PhaseListener listener: listeners) {
+      listener.onPhaseEnd(ended, timeslot);
+    }
+  }
+
+  private Phase remember (Object event, Phase result)
+  {
+    lastEvent = event;
+    lastPhase = result;
+    return result;
+  }
+
+  /**
+   * Analyzers implement this to be told when a phase is complete.
+   */
+  public interface PhaseListener
+  {
+    /**
+     * Called when the given phase of the given timeslot is complete.
+     * For Phase.TsUpd, the timeslot is the one just starting.
+     */
+    public void onPhaseEnd (Phase phase, int timeslot);
+  }
+}
@@ -15,12 +15,11 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -44,11 +43,14 @@ import org.powertac.logtool.ifc.Analyzer;
  * Output is one row per timeslot:
  *   timeslot index, day of week, hour, total consumption, external demand
  *
+ * Each row is written when its timeslot is finalized, and the wholesale
+ * positions for it are then dropped.
+ *
  * @author John Collins
  */
 public class TotalDemand
 extends LogtoolContext
-implements Analyzer
+implements Analyzer, TimeslotFinalizer.FinalizeListener
 {
   static private Logger log = LogManager.getLogger(TotalDemand.class.getName());
 
@@ -56,15 +58,15 @@ implements Analyzer
   private Competition competition = null;
   //private String gameId = null;
   private boolean started = false;
-  private int skip = 1;
+  private TimeslotFinalizer finalizer = null;
+  private Instant posted = null;
 
   // data collectors for current timeslot
-  private int timeslot;
   private double intDemand = 0.0;
-  HashMap<Broker, HashMap<Integer, Double>> wholesalePosn;
+  HashMap<Broker, TreeMap<Integer, Double>> wholesalePosn;
 
   // data output file
-  private PrintWriter data = null;
+  private AsyncRowWriter data = null;
   private String dataFilename = "data.txt";
 
   /**
@@ -96,7 +98,9 @@ implements Analyzer
       return;
     }
     dataFilename = args[1];
-    super.cli(args[0], this);
+    LogLineFilter.read(args[0],
+                       LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /**
@@ -107,10 +111,16 @@ implements Analyzer
   @Override
   public void setup ()
   {
+    finalizer = new TimeslotFinalizer();
+    finalizer.addListener(this);
     try {
-      data = new PrintWriter(new File(dataFilename));
+      data = new AsyncRowWriter(dataFilename,
+                                "slot, dow, hour, int_demand, ext_demand",
+                                ", ",
+                                AsyncRowWriter.INTEGER, AsyncRowWriter.INTEGER,
+                                AsyncRowWriter.INTEGER, 3, 3);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       e.printStackTrace();
     }
   }
@@ -118,13 +128,12 @@ implements Analyzer
   // one-time initialization happens on SimStart
   private void initData ()
   {
-    // first time through nothing to but print header
-    data.println("slot, dow, hour, int_demand, ext_demand");
+    // header is written when the output file is opened
     competition = Competition.currentCompetition();
     BrokerRepo brokerRepo = (BrokerRepo)getBean("brokerRepo");
     wholesalePosn = new HashMap<>();
     brokerRepo.findWholesaleBrokers().forEach((b) -> {
-      wholesalePosn.put(b, new HashMap<>());
+      wholesalePosn.put(b, new TreeMap<>());
     });
     //gameId = competition.getName();
   }
@@ -132,31 +141,39 @@ implements Analyzer
   @Override
   public void report ()
   {
-    data.close();
+    try {
+      data.close();
+    }
+    catch (IOException e) {
+      log.error("Cannot write " + dataFilename + ": " + e.toString());
+    }
   }
 
-  // Called on timeslotUpdate. Note that there are two of these before
+  // Called on timeslotUpdate, when the previous timeslot is finalized.
+  // Note that there are two of these before
   // the first "real" timeslot. Incoming tariffs are published at the end of
   // the second timeslot (the third call to this method), and so customer
   // consumption against non-default broker tariffs first occurs after
   // four calls.
-  private void summarizeTimeslot (Instant instant)
+  @Override
+  public void timeslotFinalized (int timeslot)
   {
+    Instant instant = posted;
     // output format depends on options
     // print timeslot, dow, hod, production, consumption
-    data.printf("%d, %d, %d",
-                timeslot,
-                instant.get(DateTimeFieldType.dayOfWeek()),
-                instant.get(DateTimeFieldType.hourOfDay()));
+    data.put(timeslot)
+        .put(instant.get(DateTimeFieldType.dayOfWeek()))
+        .put(instant.get(DateTimeFieldType.hourOfDay()));
     double extDemand = 0.0;
     for (Broker b: wholesalePosn.keySet()) {
-      HashMap<Integer, Double> tsMap = wholesalePosn.get(b);
+      TreeMap<Integer, Double> tsMap = wholesalePosn.get(b);
       Double qty = tsMap.get(timeslot);
       if (null != qty && qty > 0.0)
         extDemand += qty;
+      TimeslotFinalizer.emitThrough(tsMap, timeslot, null);
     }
     // print customer usage
-    data.printf(", %.3f, %.3f\n", intDemand, extDemand);
+    data.put(intDemand).put(extDemand).endRow();
     intDemand = 0.0;
   }
 
@@ -171,20 +188,15 @@ implements Analyzer
   }
 
   // -----------------------------------
-  // catch TimeslotUpdate events
+  // catch TimeslotUpdate events; the first one after SimStart only
+  // starts a timeslot, each one after that also finalizes the previous one
   public void handleMessage (TimeslotUpdate msg)
   {
     if (!started)
       return;
-    if (skip > 0) {
-      skip -= 1;
-      timeslot = msg.getFirstEnabled() - 1;
-    }
-    else {
-      summarizeTimeslot(msg.getPostedTime());
-      timeslot = msg.getFirstEnabled() - 1;
-      log.info("Start timeslot " + timeslot);
-    }
+    posted = msg.getPostedTime();
+    finalizer.startTimeslot(msg.getFirstEnabled() - 1);
+    log.info("Start timeslot " + finalizer.getCurrent());
   }
 
   // -----------------------------------
@@ -206,7 +218,7 @@ implements Analyzer
   // per timeslot
   public void handleMessage (MarketTransaction tx)
   {
-    HashMap<Integer, Double> brokerMap = wholesalePosn.get(tx.getBroker());
+    TreeMap<Integer, Double> brokerMap = wholesalePosn.get(tx.getBroker());
     if (null != brokerMap) {
       int ts = tx.getTimeslotIndex();
       Double value = brokerMap.get(ts);
@@ -23,9 +23,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -88,8 +86,9 @@ implements Analyzer
 
 	// Data
 	private List<Broker> brokerList;
-	private HashMap<Broker, TreeMap<Integer, ArrayList<MarketTransaction>>> data;
-	private HashMap<Broker, BrokerData> brokerData;
+	private MarketTxCube data;
+	private DenseIndex<Broker> brokerIndex;
+	private BrokerData[] brokerData;
 
 	private boolean started = false;
 	private boolean firstTx = false;
@@ -123,7 +122,9 @@ implements Analyzer
 			return;
 		}
 		dataFilename = args[1 + offset];
-		super.cli(args[offset], this);
+		LogLineFilter.read(args[offset],
+				LogLineFilter.neededClasses(this),
+				(input) -> super.cli(input, this));
 	}
 
 	/* (non-Javadoc)
@@ -135,7 +136,7 @@ implements Analyzer
 		brokerRepo = (BrokerRepo) getBean("brokerRepo");
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		brokerList = new ArrayList<>();
-		data = new HashMap<>();
+		brokerIndex = new DenseIndex<>();
 		try {
 			//FileWriter fw = new FileWriter(dataFilename, true);
 			//output = new PrintWriter(new BufferedWriter(fw));
@@ -151,9 +152,11 @@ implements Analyzer
 	private void firstLine ()
 	{
 		brokerList = brokerRepo.findRetailBrokers();
-		brokerData = new HashMap<>();
-		for (Broker broker: brokerList) {
-			brokerData.put(broker, new BrokerData());
+		brokerIndex = new DenseIndex<>(brokerList);
+		brokerData = new BrokerData[brokerIndex.size()];
+		data = new MarketTxCube(brokerIndex.size(), 1);
+		for (int b = 0; b < brokerData.length; b++) {
+			brokerData[b] = new BrokerData();
 		}
 		if (perBroker) {
 			output.println("ts,dow,hod,broker,ttx-sc,ttx-sd,ttx-uc,ttx-ud,mtx-c,mtx-d,btx-c,btx-d,dtx-c,dtx-d,ctx-c,ctx-d,bce-c,bce-d,bank-c,bank-d,cash");
@@ -222,31 +225,12 @@ implements Analyzer
 
 	private void dumpDataSimEnd(Broker broker){
 		output.format("%s",broker.getUsername());
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[brokerIndex.indexOf(broker)];
 		// TariffTransaction, state and usage
 		output.format(",%.4f,%.4f,%.4f,%.4f",
 				bd.ttxSC, bd.ttxSD, bd.ttxUC, bd.ttxUD);
 		// Handle deferred market transactions for this timeslot
-		TreeMap<Integer, ArrayList<MarketTransaction>> brokerTxMap =
-				data.get(broker);
-		double mtxD = 0.0;
-		double mtxC = 0.0;
-		if (null != brokerTxMap) {
-			List<MarketTransaction> txList = brokerTxMap.get(timeslot);
-			if (null != txList) {
-				for (MarketTransaction tx: txList) {
-					double money = Math.abs(tx.getMWh()) * tx.getPrice();
-					if (money >= 0.0){
-						bd.mtxC += money;
-						bd.mtxCVol += Math.abs(tx.getMWh());
-					}
-					else{
-						bd.mtxD += money;
-						bd.mtxDVol += Math.abs(tx.getMWh());
-					}
-				}
-			}
-		}
+		addMarketTotals(broker, bd);
 
 		output.format(",%.4f,%.4f", bd.mtxC, bd.mtxD);
 		output.format(",%.4f,%.4f", bd.mtxC/bd.mtxCVol, bd.mtxD/bd.mtxDVol);
@@ -262,34 +246,27 @@ implements Analyzer
 
 	}
 
+	// Adds market transaction totals for the current timeslot to bd
+	private void addMarketTotals (Broker broker, BrokerData bd)
+	{
+		int b = brokerIndex.indexOf(broker);
+		bd.mtxC += data.getMoney(b, timeslot, 0, MarketTxCube.CREDIT);
+		bd.mtxCVol += data.getMWh(b, timeslot, 0, MarketTxCube.CREDIT);
+		bd.mtxD += data.getMoney(b, timeslot, 0, MarketTxCube.DEBIT);
+		bd.mtxDVol += data.getMWh(b, timeslot, 0, MarketTxCube.DEBIT);
+	}
+
 	private void dumpData (Broker broker)
 	{
 		//    output.format(",%s",broker.getUsername());
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[brokerIndex.indexOf(broker)];
 		// TariffTransaction, state and usage
 		//    output.format(",%.4f,%.4f,%.4f,%.4f",
 		//                  bd.ttxSC, bd.ttxSD, bd.ttxUC, bd.ttxUD);
 		// Handle deferred market transactions for this timeslot
-		TreeMap<Integer, ArrayList<MarketTransaction>> brokerTxMap =
-				data.get(broker);
 		//    double mtxD = 0.0;
 		//    double mtxC = 0.0;
-		if (null != brokerTxMap) {
-			List<MarketTransaction> txList = brokerTxMap.get(timeslot);
-			if (null != txList) {
-				for (MarketTransaction tx: txList) {
-					double money = Math.abs(tx.getMWh()) * tx.getPrice();
-					if (money >= 0.0){
-						bd.mtxC += money;
-						bd.mtxCVol += Math.abs(tx.getMWh());
-					}
-					else{
-						bd.mtxD += money;
-						bd.mtxDVol += Math.abs(tx.getMWh());
-					}
-				}
-			}
-		}
+		addMarketTotals(broker, bd);
 
 		//output.format(",%.4f,%.4f", bd.mtxC, bd.mtxD);
 		//    output.format(",%.4f,%.4f", bd.totmtxC, bd.totmtxD);
@@ -346,9 +323,10 @@ implements Analyzer
 	public void handleMessage (TariffTransaction tx)
 	{
 		Broker broker = tx.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(broker);
+		if (b < 0)
 			return;
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[b];
 		double amount = tx.getCharge();
 		// separate state from produce/consume tx
 		if (tx.getTxType() == Type.PRODUCE || tx.getTxType() == Type.CONSUME) {
@@ -370,25 +348,17 @@ implements Analyzer
 	public void handleMessage (MarketTransaction tx)
 	{
 
-		Broker broker = tx.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(tx.getBroker());
+		if (b < 0)
 			return;
 		//System.out.printf("Market tx %s, ts %d, mwh %.4f, price %.4f\n",
 		//                  tx.getBroker().getUsername(), tx.getTimeslotIndex(),
 		//                  tx.getMWh(), tx.getPrice());
-		Integer target = tx.getTimeslotIndex();
-		TreeMap<Integer, ArrayList<MarketTransaction>> bData =
-				data.get(broker);
-		if (null == bData) {
-			bData = new TreeMap<>();
-			data.put(broker, bData);
-		}
-		ArrayList<MarketTransaction> list = bData.get(target);
-		if (null == list) {
-			list = new ArrayList<>();
-			bData.put(target, list);
-		}
-		list.add(tx);
+		double money = Math.abs(tx.getMWh()) * tx.getPrice();
+		int side = MarketTxCube.DEBIT;
+		if (money >= 0.0)
+			side = MarketTxCube.CREDIT;
+		data.add(b, tx.getTimeslotIndex(), 0, side, money, Math.abs(tx.getMWh()));
 		/*    
   	BrokerData bd = brokerData.get(broker);
     double money = Math.abs(tx.getMWh()) * tx.getPrice();
@@ -404,9 +374,10 @@ implements Analyzer
 	public void handleMessage (BalancingTransaction bt)
 	{
 		Broker broker = bt.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(broker);
+		if (b < 0)
 			return;
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[b];
 		double amount = bt.getCharge();
 		if (amount < 0.0)
 			bd.btxD += amount;
@@ -419,9 +390,10 @@ implements Analyzer
 	public void handleMessage (DistributionTransaction dt)
 	{
 		Broker broker = dt.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(broker);
+		if (b < 0)
 			return;
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[b];
 		double amount = dt.getCharge();
 		if (amount < 0.0)
 			bd.dtxD += amount;
@@ -434,9 +406,10 @@ implements Analyzer
 	public void handleMessage (CapacityTransaction ct)
 	{
 		Broker broker = ct.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(broker);
+		if (b < 0)
 			return;
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[b];
 		double amount = ct.getCharge();
 		if (amount < 0.0)
 			bd.ctxD += amount;
@@ -449,9 +422,10 @@ implements Analyzer
 	public void handleMessage (BalancingControlEvent bce)
 	{
 		Broker broker = bce.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(broker);
+		if (b < 0)
 			return;
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[b];
 		double amount = bce.getPayment();
 		if (amount < 0.0)
 			bd.bceD += amount;
@@ -464,9 +438,10 @@ implements Analyzer
 	public void handleMessage (BankTransaction bt)
 	{
 		Broker broker = bt.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(broker);
+		if (b < 0)
 			return;
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[b];
 		double amount = bt.getAmount();
 		if (amount < 0.0)
 			bd.bankD += amount;
@@ -479,9 +454,10 @@ implements Analyzer
 	public void handleMessage (CashPosition cp)
 	{
 		Broker broker = cp.getBroker();
-		if (!brokerList.contains(broker))
+		int b = brokerIndex.indexOf(broker);
+		if (b < 0)
 			return;
-		BrokerData bd = brokerData.get(broker);
+		BrokerData bd = brokerData[b];
 		bd.cash = cp.getBalance();
 	}
 
@@ -15,15 +15,12 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.IOException;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
-import org.joda.time.Instant;
+import org.powertac.common.Competition;
 import org.powertac.common.WeatherForecast;
 import org.powertac.common.WeatherForecastPrediction;
 import org.powertac.common.WeatherReport;
@@ -32,11 +29,22 @@ import org.powertac.logtool.ifc.Analyzer;
 
 /**
  * Pulls out weather reports and forecasts, creates two output files, one
- * for temperature data and one for wind data. Each file consists of lines
+ * for temperature data and one for wind data, and optionally two more for
+ * cloud cover and wind direction. Each file consists of lines
  * with the following format
  * timeslot obs fc-1 fc-2 ... fc-24
+ * Forecasts that were never made are written as 0.
+ *
+ * Observations and forecasts are kept in a WeatherStore, sized for the
+ * whole game up front. A line is written as soon as its observation
+ * arrives, by a background writer, so nothing is held back until the end
+ * of the game. With --npy, the same data is also written as a directory of
+ * .npy columns, one per variable and leadtime, named for example
+ * temperature_0 for the observation and temperature_24 for the 24h
+ * forecast (see NpyColumnWriter). Missing values are NaN there.
  * 
- * Invoke as WeatherForecastStats 
+ * Invoke as WeatherForecastStats [--npy dir] input-file temp-data
+ * wind-data [cloud-data direction-data]
  * 
  * @author John Collins
  */
@@ -46,15 +54,18 @@ implements Analyzer
 {
   static private Logger log = LogManager.getLogger(WeatherForecastStats.class.getName());
 
-  // data output file
-  private PrintWriter temp = null;
-  private PrintWriter wind = null;
-  private String tempFilename = "temp.txt";
-  private String windFilename = "wind.txt";
+  private static final String[] VARIABLE_NAMES =
+    {"temperature", "windSpeed", "windDirection", "cloudCover"};
+
+  // data output files, by WeatherStore variable
+  private AsyncRowWriter[] outputs = new AsyncRowWriter[WeatherStore.VARIABLES];
+  private String[] filenames = new String[WeatherStore.VARIABLES];
+  private String npyDirectory = null;
+  private NpyColumnWriter columns = null;
 
   // data accumulation
-  private int tsOffset = 0; 
-  private ArrayList<Element> data;
+  private WeatherStore weather;
+  private int nextRow = -1; // next timeslot to write
 
   /**
    * Default constructor
@@ -74,20 +85,36 @@ implements Analyzer
   }
   
   /**
-   * Takes three args:
-   *     input_filename (or -) temp-data_filename, wind-data_filename 
+   * Takes three or five args:
+   *     input_filename (or -) temp-data_filename, wind-data_filename
+   *     [cloud-data_filename, direction-data_filename]
+   * optionally preceded by --npy dir.
    * In each output file, each line starts with an observation followed by
    * 24 predictions, with the first being 1h out, the last 24h out.
    */
   private void cli (String[] args)
   {
-    if (args.length != 3) {
-      System.out.println("Usage: <analyzer> input-file temp-data wind-data");
+    int argOffset = 0;
+    if (args.length > 1 && args[0].equals("--npy")) {
+      npyDirectory = args[1];
+      argOffset = 2;
+    }
+    int files = args.length - argOffset - 1;
+    if (files != 2 && files != 4) {
+      System.out.println("Usage: <analyzer> [--npy dir] input-file temp-data wind-data [cloud-data direction-data]");
       return;
     }
-    tempFilename = args[1];
-    windFilename = args[2];
-    super.cli(args[0], this);
+    filenames[WeatherStore.TEMPERATURE] = args[argOffset + 1];
+    filenames[WeatherStore.WIND_SPEED] = args[argOffset + 2];
+    if (files == 4) {
+      filenames[WeatherStore.CLOUD_COVER] = args[argOffset + 3];
+      filenames[WeatherStore.WIND_DIRECTION] = args[argOffset + 4];
+    }
+    // forecasts refer to their predictions, which are logged separately
+    LogLineFilter.read(args[argOffset],
+                       LogLineFilter.neededClasses(this,
+                           WeatherForecastPrediction.class),
+                       (input) -> super.cli(input, this));
   }
 
   /* (non-Javadoc)
@@ -96,12 +123,30 @@ implements Analyzer
   @Override
   public void setup ()
   {
+    weather = null;
+    nextRow = -1;
+    int[] decimals = new int[WeatherStore.HORIZON + 2];
+    decimals[0] = AsyncRowWriter.INTEGER;
+    for (int i = 1; i < decimals.length; i++)
+      decimals[i] = 3;
     try {
-      temp = new PrintWriter(new File(tempFilename));
-      wind= new PrintWriter(new File(windFilename));
+      for (int v = 0; v < WeatherStore.VARIABLES; v++) {
+        if (null != filenames[v])
+          outputs[v] = new AsyncRowWriter(filenames[v], null, " ", decimals);
+      }
+      if (null != npyDirectory) {
+        columns = new NpyColumnWriter(npyDirectory, false)
+            .column("timeslot", NpyColumnWriter.Dtype.INT32);
+        for (int v = 0; v < WeatherStore.VARIABLES; v++) {
+          for (int lead = 0; lead <= WeatherStore.HORIZON; lead++) {
+            columns.column(VARIABLE_NAMES[v] + "_" + lead,
+                           NpyColumnWriter.Dtype.FLOAT64);
+          }
+        }
+      }
     }
-    catch (FileNotFoundException e) {
-      log.error("Cannot open file");
+    catch (IOException e) {
+      log.error("Cannot open file: " + e.toString());
     }
   }
 
@@ -111,80 +156,89 @@ implements Analyzer
   @Override
   public void report ()
   {
-    for (Element el : data) {
-      wind.format("%d %.3f ", el.timeslot, el.reportedWind);
-      for (double fcw : el.forecastWind) {
-        wind.format("%.3f ", fcw);
-      }
-      wind.println();
-      temp.format("%d %.3f ", el.timeslot, el.reportedTemp);
-      for (double fct : el.forecastTemp) {
-        temp.format("%.3f ", fct);
+    if (null != weather) {
+      // forecasts for timeslots past the end of the game
+      writeRows(weather.getLastTimeslot());
+    }
+    try {
+      for (AsyncRowWriter output: outputs) {
+        if (null != output)
+          output.close();
       }
-      temp.println();
+      if (null != columns)
+        columns.close();
+    }
+    catch (IOException e) {
+      log.error("Cannot write output: " + e.toString());
     }
-    wind.close();
-    temp.close();
-    return;
   }
 
-  // Returns the Element corresponding to timeslot n
-  private Element getElementForTs (int n)
+  // Writes the rows for timeslots nextRow through last that have any data
+  private void writeRows (int last)
   {
-    if (null == data) {
-      // need to initialize
-      data = new ArrayList<Element>();
-      tsOffset = n;
+    try {
+      for (; nextRow <= last; nextRow++) {
+        if (!hasData(nextRow))
+          continue;
+        for (int v = 0; v < WeatherStore.VARIABLES; v++) {
+          AsyncRowWriter output = outputs[v];
+          if (null == output)
+            continue;
+          output.put(nextRow).put(zeroIfMissing(weather.getObservation(nextRow, v)));
+          for (int lead = 1; lead <= WeatherStore.HORIZON; lead++)
+            output.put(zeroIfMissing(weather.getForecast(nextRow, lead, v)));
+          output.endRow();
+        }
+        if (null != columns) {
+          columns.put(nextRow);
+          for (int v = 0; v < WeatherStore.VARIABLES; v++) {
+            for (int lead = 0; lead <= WeatherStore.HORIZON; lead++)
+              columns.put(weather.getForecast(nextRow, lead, v));
+          }
+          columns.endRow();
+        }
+      }
     }
-    // compute index into array
-    int index = n - tsOffset;
-    // populate array if necessary
-    while (data.size() < index + 1) {
-      data.add(new Element(n));
-      System.out.println("add " + n);
+    catch (IOException e) {
+      log.error("Cannot write " + npyDirectory + ": " + e.toString());
     }
-    return data.get(index);
   }
 
-  // -------------------------------
-  // catch WeatherReports
-  Instant currentDay = null;
+  private boolean hasData (int ts)
+  {
+    for (int lead = 0; lead <= WeatherStore.HORIZON; lead++) {
+      if (!Double.isNaN(weather.getForecast(ts, lead, WeatherStore.TEMPERATURE)))
+        return true;
+    }
+    return false;
+  }
 
-  public void handleMessage (WeatherReport rpt)
+  private double zeroIfMissing (double value)
   {
-    Element el = getElementForTs(rpt.getTimeslotIndex());
-    el.reportedTemp = rpt.getTemperature();
-    el.reportedWind = rpt.getWindSpeed();
+    return Double.isNaN(value) ? 0.0 : value;
   }
 
-  public void handleMessage (WeatherForecast fcst)
+  private void start (int ts)
   {
-    int ts = fcst.getTimeslotIndex();
-    int index = ts + 1;
-    for (WeatherForecastPrediction pred : fcst.getPredictions()) {
-      Element el = getElementForTs(index);
-      int lead = index - ts - 1;
-      el.forecastTemp[lead] = pred.getTemperature();
-      el.forecastWind[lead] = pred.getWindSpeed();
-      index += 1;
+    if (null == weather) {
+      weather = WeatherStore.forGame(Competition.currentCompetition());
+      nextRow = ts;
     }
   }
 
-  // Data storage element
-  class Element
+  // -------------------------------
+  // catch WeatherReports; everything up to the observed timeslot is
+  // complete once its observation is in
+  public void handleMessage (WeatherReport rpt)
+  {
+    start(rpt.getTimeslotIndex());
+    weather.add(rpt);
+    writeRows(rpt.getTimeslotIndex());
+  }
+
+  public void handleMessage (WeatherForecast fcst)
   {
-    int timeslot;
-    double reportedTemp;
-    double reportedWind;
-    double[] forecastTemp;
-    double[] forecastWind;
-
-    Element (int ts)
-    {
-      super();
-      timeslot = ts;
-      forecastTemp = new double[24];
-      forecastWind = new double[24];
-    }
+    start(fcst.getTimeslotIndex() + 1);
+    weather.add(fcst);
   }
 }
@@ -75,7 +75,9 @@ implements Analyzer
       return;
     }
     dataFilename = args[1];
-    super.cli(args[0], this);
+    // only WeatherReport lines are of interest
+    LogLineFilter.read(args[0], LogLineFilter.neededClasses(this),
+                       (input) -> super.cli(input, this));
   }
 
   /* (non-Javadoc)
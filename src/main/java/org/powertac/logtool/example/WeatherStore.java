@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+import org.powertac.common.Competition;
+import org.powertac.common.WeatherForecast;
+import org.powertac.common.WeatherForecastPrediction;
+import org.powertac.common.WeatherReport;
+
+/**
+ * The weather of one game, observations and forecasts, in a flat array
+ * indexed by target timeslot x leadtime x variable. Leadtime 0 is the
+ * observation, leadtimes 1..24 are the forecasts made that many hours
+ * earlier. Missing values are NaN. The array is sized for the whole game
+ * up front, so it is not copied as the game goes on.
+ *
+ * Usage from an analyzer:
+ * <pre>
+ * handleMessage(Competition c) -&gt; weather = WeatherStore.forGame(c)
+ * handleMessage(WeatherReport r) -&gt; weather.add(r)
+ * handleMessage(WeatherForecast f) -&gt; weather.add(f)
+ * report() -&gt; read weather.getObservation(), getForecast()
+ * </pre>
+ */
+public class WeatherStore
+{
+  public static final int TEMPERATURE = 0;
+  public static final int WIND_SPEED = 1;
+  public static final int WIND_DIRECTION = 2;
+  public static final int CLOUD_COVER = 3;
+  public static final int VARIABLES = 4;
+
+  /** Longest forecast leadtime */
+  public static final int HORIZON = 24;
+
+  private static final int ROW_SIZE = (HORIZON + 1) * VARIABLES;
+  private static final int INITIAL_ROWS = 512;
+
+  private int base = -1; // timeslot of row 0
+  private int rows = 0;
+  private double[] values = new double[0];
+  private int expectedLast = -1; // for sizing the array up front
+
+  WeatherStore (int expectedLast)
+  {
+    super();
+    this.expectedLast = expectedLast;
+  }
+
+  /**
+   * Returns an empty store with room for the weather of the given game.
+   */
+  public static WeatherStore forGame (Competition competition)
+  {
+    return new WeatherStore(competition.getBootstrapTimeslotCount()
+                            + competition.getBootstrapDiscardedTimeslots()
+                            + competition.getExpectedTimeslotCount()
+                            + HORIZON);
+  }
+
+  public void add (WeatherReport report)
+  {
+    int i = offset(report.getTimeslotIndex(), 0);
+    values[i + TEMPERATURE] = report.getTemperature();
+    values[i + WIND_SPEED] = report.getWindSpeed();
+    values[i + WIND_DIRECTION] = report.getWindDirection();
+    values[i + CLOUD_COVER] = report.getCloudCover();
+  }
+
+  public void add (WeatherForecast forecast)
+  {
+    int ts = forecast.getTimeslotIndex();
+    for (WeatherForecastPrediction prediction: forecast.getPredictions()) {
+      int lead = prediction.getForecastTime();
+      if (lead < 1 || lead > HORIZON)
+        continue;
+      int i = offset(ts + lead, lead);
+      values[i + TEMPERATURE] = prediction.getTemperature();
+      values[i + WIND_SPEED] = prediction.getWindSpeed();
+      values[i + WIND_DIRECTION] = prediction.getWindDirection();
+      values[i + CLOUD_COVER] = prediction.getCloudCover();
+    }
+  }
+
+  /** First target timeslot with any data, or -1 if there is none */
+  public int getFirstTimeslot ()
+  {
+    return base;
+  }
+
+  /** Last target timeslot with room for data, or -2 if there is none */
+  public int getLastTimeslot ()
+  {
+    return base + rows - 1;
+  }
+
+  /** Observed value of the variable in timeslot ts, or NaN */
+  public double getObservation (int ts, int variable)
+  {
+    return get(ts, 0, variable);
+  }
+
+  /**
+   * Forecast of the variable for timeslot ts, made lead hours earlier,
+   * or NaN.
+   */
+  public double getForecast (int ts, int lead, int variable)
+  {
+    return get(ts, lead, variable);
+  }
+
+  private double get (int ts, int lead, int variable)
+  {
+    if (base < 0 || ts < base || ts >= base + rows)
+      return Double.NaN;
+    return values[(ts - base) * ROW_SIZE + lead * VARIABLES + variable];
+  }
+
+  // Returns the array offset of (ts, lead), growing the array if needed
+  private int offset (int ts, int lead)
+  {
+    if (base < 0) {
+      // room for the whole game, if we know how long it will be
+      base = Math.max(0, ts - HORIZON);
+      rows = Math.max(INITIAL_ROWS, expectedLast - base + 1);
+      values = new double[rows * ROW_SIZE];
+      Arrays.fill(values, Double.NaN);
+    }
+    if (ts < base) {
+      int shift = base - Math.max(0, ts - HORIZON);
+      double[] newValues = new double[(rows + shift) * ROW_SIZE];
+      Arrays.fill(newValues, 0, shift * ROW_SIZE, Double.NaN);
+      System.arraycopy(values, 0, newValues, shift * ROW_SIZE,
+                       rows * ROW_SIZE);
+      values = newValues;
+      rows += shift;
+      base -= shift;
+    }
+    else if (ts >= base + rows) {
+      int newRows = Math.max(rows * 2, ts - base + 1);
+      values = Arrays.copyOf(values, newRows * ROW_SIZE);
+      Arrays.fill(values, rows * ROW_SIZE, newRows * ROW_SIZE, Double.NaN);
+      rows = newRows;
+    }
+    return (ts - base) * ROW_SIZE + lead * VARIABLES;
+  }
+}
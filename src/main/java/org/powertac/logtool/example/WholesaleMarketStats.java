@@ -20,9 +20,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.apache.commons.lang3.StringUtils;
@@ -69,7 +71,7 @@ import org.powertac.common.BankTransaction;
  * 
  * @author John Collins
  */
-public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
+public class WholesaleMarketStats extends LogtoolContext implements Analyzer, ResidentAnalyzer {
 	//static private Logger log = Logger.getLogger(WholesaleMarketStats.class.getName());
 
 	// service references
@@ -81,7 +83,6 @@ public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
 	private BrokerRepo brokerRepo;
 
 	// Data
-	private TreeMap<Integer, ClearedTrade[]> data;
 	private TreeMap<Integer, SimulationDataPerTimeSlot> marketData;
 	TreeMap<Integer, Integer> orderbookCounter = new TreeMap<Integer, Integer>();
 	private int counter = 0;
@@ -94,12 +95,15 @@ public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
 	private int ignoreCount = 0;
 	private int indexOffset = 0; // should be
 									// Competition.deactivateTimeslotsAhead - 1
-	public static int numberofbrokers = 0;
+	private int numberofbrokers = 0;
 	private PrintWriter output = null;
 	private PrintWriter debug = null;
 	private String dataFilename = "clearedTrades.arff";
+	private Object listenerReader = null; // reader our listeners are on
 	public double brokerID;
 	public ArrayList<String> brokernames = new ArrayList<String>();
+	private String quantilesFilename = null;
+	private ClearingPriceSketches sketches = null;
 
 	/**
 	 * Main method just creates an instance and passes command-line args to its
@@ -107,19 +111,50 @@ public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
 	 */
 	public static void main(String[] args) {
 		System.out.println("I am running");
-		new WholesaleMarketStats().cli(args);
+		new WholesaleMarketStats().cli(args, System.out);
 	}
 
 	/**
-	 * Takes two args, input filename and output filename
+	 * Takes two args, input filename and output filename, optionally
+	 * preceded by --quantiles report-file to also write clearing price and
+	 * MWh quantiles by leadtime and hour (see ClearingPriceSketches).
 	 */
-	private void cli(String[] args) {
-		if (args.length != 2) {
-			System.out.println("Usage: <analyzer> input-file output-file");
+	@Override
+	public void cli(String[] args, PrintStream out) {
+		quantilesFilename = null;
+		int argOffset = 0;
+		if (args.length > 1 && args[0].equals("--quantiles")) {
+			quantilesFilename = args[1];
+			argOffset = 2;
+		}
+		if (args.length - argOffset != 2) {
+			out.println("Usage: <analyzer> [--quantiles report-file] input-file output-file");
 			return;
 		}
-		dataFilename = args[1];
-		super.cli(args[0], this);
+		dataFilename = args[argOffset + 1];
+		// cleared trades are only read for the quantiles
+		Set<String> needed = LogLineFilter.neededClasses(this,
+				Competition.class, Broker.class, TimeslotUpdate.class,
+				MarketTransaction.class, Timeslot.class);
+		if (quantilesFilename != null)
+			needed.addAll(LogLineFilter.neededClasses(this, ClearedTrade.class));
+		LogLineFilter.read(args[argOffset], needed,
+				(input) -> super.cli(input, this));
+	}
+
+	@Override
+	public void resetGame() {
+		orderbookCounter = new TreeMap<Integer, Integer>();
+		counter = 0;
+		brokers = new ArrayList<Long>();
+		brokernames = new ArrayList<String>();
+		brokerCounter = 0;
+		numberofbrokers = 0;
+		ignoreCount = ignoreInitial;
+		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
+		sketches = null;
+		if (quantilesFilename != null)
+			sketches = new ClearingPriceSketches();
 	}
 
 	/*
@@ -129,21 +164,26 @@ public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
 	 */
 	@Override
 	public void setup() {
+		resetGame();
 		timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
 		timeService = (TimeService) getBean("timeService");
 		brokerRepo = (BrokerRepo) SpringApplicationContext
 				.getBean("brokerRepo");
-		registerNewObjectListener(new CompetitionHandler(), Competition.class);
-		registerNewObjectListener(new BrokerHandler(), Broker.class);
-		registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
-		registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
-		//registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
-		registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
-		//registerNewObjectListener(new OrderbookHandler(), Orderbook.class);		
+		// a kept instance is set up once per game, but its listeners
+		// stay registered with the reader
+		Object reader = getBean("reader");
+		if (reader != listenerReader) {
+			listenerReader = reader;
+			registerNewObjectListener(new CompetitionHandler(), Competition.class);
+			registerNewObjectListener(new BrokerHandler(), Broker.class);
+			registerNewObjectListener(new TimeslotUpdateHandler(), TimeslotUpdate.class);
+			registerNewObjectListener(new MarketTransactionHandler(), MarketTransaction.class);
+			//registerNewObjectListener(new BalancingTransactionHandler(), BalancingTransaction.class);
+			registerNewObjectListener(new TimeslotHandler(), Timeslot.class);
+			//registerNewObjectListener(new OrderbookHandler(), Orderbook.class);		
+			registerNewObjectListener(new ClearedTradeHandler(), ClearedTrade.class);
+		}
 		
-		ignoreCount = ignoreInitial;
-		data = new TreeMap<Integer, ClearedTrade[]>();
-		marketData = new TreeMap<Integer, SimulationDataPerTimeSlot>();
 		try {
 			//output = new PrintWriter(new File(dataFilename));
 			FileWriter fw = new FileWriter(dataFilename, true);
@@ -236,16 +276,19 @@ public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
 		
 		output.close(); 
 		debug.close();
+		if (sketches != null)
+			sketches.save(quantilesFilename);
 	}
 
 	// -----------------------------------
-	// catch ClearedTrade messages
+	// catch ClearedTrade messages, for the quantiles only; the main output
+	// comes from MarketTransactions
 	class ClearedTradeHandler implements NewObjectListener {
 
 		@Override
 		public void handleNewObject(Object thing) {
-			if (ignoreCount > 0) {
-				return; // nothing to do yet
+			if (sketches == null || ignoreCount > 0) {
+				return; // not asked for, or nothing to do yet
 			}
 			ClearedTrade ct = (ClearedTrade) thing;
 			int target = ct.getTimeslot().getSerialNumber();
@@ -256,12 +299,7 @@ public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
 				// problem
 				//log.error("ClearedTrade index error: " + offset);
 			} else {
-				ClearedTrade[] targetArray = data.get(target);
-				if (null == targetArray) {
-					targetArray = new ClearedTrade[24];
-					data.put(target, targetArray);
-				}
-				targetArray[offset] = ct;
+				sketches.add(offset, ct);
 			}
 		}
 	}
@@ -270,7 +308,7 @@ public class WholesaleMarketStats extends LogtoolContext implements Analyzer {
 		@Override
 		public void handleNewObject(Object comp){
 			Competition competition = (Competition) comp;
-			WholesaleMarketStats.numberofbrokers = competition.getBrokers().size();
+			numberofbrokers = competition.getBrokers().size();
 			System.out.println("Number of brokers : " + competition.getBrokers().size() + " Simulation " + competition.toString());
 			
 		}
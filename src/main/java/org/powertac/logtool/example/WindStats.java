@@ -18,12 +18,12 @@ package org.powertac.logtool.example;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import org.joda.time.Instant;
+import org.powertac.common.Competition;
 import org.powertac.common.TimeService;
 import org.powertac.common.WeatherForecast;
 import org.powertac.common.WeatherForecastPrediction;
@@ -53,8 +53,9 @@ implements Analyzer
   private String dataFilename = "winds.txt";
 
   // data collector
-  private TreeMap<Integer, Double[]> wind;
+  private WeatherStore weather;
   private int firstIndex = -1;
+  private int lastIndex = -1;
   private int horizon = 24;
 
   /**
@@ -84,7 +85,11 @@ implements Analyzer
       return;
     }
     dataFilename = args[1];
-    super.cli(args[0], this);
+    // forecasts refer to their predictions, which are logged separately
+    LogLineFilter.read(args[0],
+                       LogLineFilter.neededClasses(this,
+                           WeatherForecastPrediction.class),
+                       (input) -> super.cli(input, this));
   }
 
   /* (non-Javadoc)
@@ -93,7 +98,9 @@ implements Analyzer
   @Override
   public void setup ()
   {
-    wind = new TreeMap<Integer, Double[]>();
+    weather = null;
+    firstIndex = -1;
+    lastIndex = -1;
     try {
       data = new PrintWriter(new File(dataFilename));
     }
@@ -108,16 +115,16 @@ implements Analyzer
   @Override
   public void report ()
   {
-    for (Integer index : wind.keySet()) {
-      Double[] speeds = wind.get(index);
-      if (null == speeds) {
-        System.out.println("null array for index " + index);
-      }
+    for (int index = firstIndex; firstIndex >= 0 && index <= lastIndex; index++) {
+      // predictions from horizon hours out down to 1h, then the observation
       String delim = "";
-      for (int i = 0; i < speeds.length; i++) {
-        data.format("%s%.2f", delim, speeds[i]);
+      for (int lead = horizon; lead > 0; lead--) {
+        data.format("%s%.2f", delim,
+                    weather.getForecast(index, lead, WeatherStore.WIND_SPEED));
         delim = " ";
       }
+      data.format("%s%.2f", delim,
+                  weather.getObservation(index, WeatherStore.WIND_SPEED));
       data.println();
     }
     data.close();
@@ -128,37 +135,22 @@ implements Analyzer
   public void handleMessage (WeatherReport rpt)
   {
     if (firstIndex < 0) return;
-    int tsIndex = rpt.getTimeslotIndex();
-    Double[] speeds = wind.get(tsIndex);
-    if (null == speeds) {
-      System.out.println("Cannot find array for ts " + tsIndex);
-    }
-    else {
-      speeds[horizon] = rpt.getWindSpeed();
-    }
+    weather.add(rpt);
   }
 
   // -------------------------------
-  // catch WeatherReports
+  // catch WeatherForecasts
   public void handleMessage (WeatherForecast fcst)
   {
     int ts = fcst.getTimeslotIndex();
     if (firstIndex < 0) {
       // initialization
-      horizon = fcst.getPredictions().size();
+      horizon = Math.min(fcst.getPredictions().size(), WeatherStore.HORIZON);
       System.out.println("Horizon = " + horizon);
       firstIndex = ts + horizon;
+      weather = WeatherStore.forGame(Competition.currentCompetition());
     }
-    for (WeatherForecastPrediction wfp : fcst.getPredictions()) {
-      int index = ts + wfp.getForecastTime();
-      if (index >= firstIndex) {
-        Double[] speeds = wind.get(index);
-        if (null == speeds) {
-          speeds = new Double[horizon + 1];
-          wind.put(index, speeds);
-        }
-        speeds[horizon - wfp.getForecastTime()] = wfp.getWindSpeed();
-      }
-    }
+    lastIndex = ts + horizon;
+    weather.add(fcst);
   }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnalysisDaemonTest
+{
+  private static final String ECHO = EchoResidentAnalyzer.class.getName();
+
+  private AnalysisDaemon daemon;
+  private ByteArrayOutputStream bytes;
+  private PrintStream out;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    daemon = new AnalysisDaemon();
+    bytes = new ByteArrayOutputStream();
+    out = new PrintStream(bytes, true, "UTF-8");
+    EchoResidentAnalyzer.last = null;
+    EchoResidentAnalyzer.created = 0;
+  }
+
+  @Test
+  public void testParseJob ()
+  {
+    assertNull(AnalysisDaemon.parseJob(null));
+    assertNull(AnalysisDaemon.parseJob(""));
+    assertNull(AnalysisDaemon.parseJob(" \t "));
+    assertArrayEquals(new String[] {"a.B"},
+                      AnalysisDaemon.parseJob("a.B"));
+    assertArrayEquals(new String[] {"a.B", "in.state", "out.txt"},
+                      AnalysisDaemon.parseJob("a.B\tin.state\tout.txt"));
+    // args may contain spaces, and empty args in between are kept
+    assertArrayEquals(new String[] {"a.B", "my game.state", "", "x"},
+                      AnalysisDaemon.parseJob(" a.B\tmy game.state\t\tx"));
+  }
+
+  @Test
+  public void testAllowedClass ()
+  {
+    assertSame(EchoResidentAnalyzer.class, AnalysisDaemon.allowedClass(ECHO));
+    String pkg = "org.powertac.logtool.example.";
+    // not a ResidentAnalyzer, or not a class that can be created
+    assertNull(AnalysisDaemon.allowedClass(pkg + "AnalysisDaemon"));
+    assertNull(AnalysisDaemon.allowedClass(pkg + "SavedFiles"));
+    assertNull(AnalysisDaemon.allowedClass(pkg + "ResidentAnalyzer"));
+    assertNull(AnalysisDaemon.allowedClass(pkg + "NoSuchAnalyzer"));
+    // outside this package, in a sub-package, or nested
+    assertNull(AnalysisDaemon.allowedClass("java.lang.Runtime"));
+    assertNull(AnalysisDaemon.allowedClass(pkg + "sub.EchoResidentAnalyzer"));
+    assertNull(AnalysisDaemon.allowedClass(pkg + "LogLineFilterTest$Analyzer"));
+    assertNull(AnalysisDaemon.allowedClass("org.powertac.logtool.exampleX.Foo"));
+  }
+
+  @Test
+  public void testInstanceKeptBetweenJobs ()
+  {
+    String status = daemon.runJob(ECHO, new String[] {"a", "b"}, out);
+    assertTrue(status, status.startsWith("OK "));
+    status = daemon.runJob(ECHO, new String[] {"c"}, out);
+    assertTrue(status, status.startsWith("OK "));
+
+    assertEquals(1, EchoResidentAnalyzer.created);
+    EchoResidentAnalyzer analyzer = EchoResidentAnalyzer.last;
+    assertEquals(2, analyzer.jobs);
+    // reset before every job
+    assertEquals(2, analyzer.resets);
+    assertEquals("job 1 a,b\njob 2 c\n", output());
+  }
+
+  @Test
+  public void testFailedJob ()
+  {
+    String status = daemon.runJob(ECHO, new String[] {"fail"}, out);
+    assertEquals("FAILED java.lang.IllegalStateException: bad input", status);
+    // the instance is still used for the next job
+    status = daemon.runJob(ECHO, new String[] {"ok"}, out);
+    assertTrue(status, status.startsWith("OK "));
+    assertEquals(1, EchoResidentAnalyzer.created);
+    assertEquals("job 2 ok\n", output());
+  }
+
+  @Test
+  public void testRefusedJob ()
+  {
+    assertEquals("FAILED no analyzer java.lang.Runtime",
+                 daemon.runJob("java.lang.Runtime", new String[0], out));
+    assertEquals("", output());
+  }
+
+  private String output ()
+  {
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8)
+        .replace("\r\n", "\n");
+  }
+}
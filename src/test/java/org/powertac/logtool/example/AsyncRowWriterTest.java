@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AsyncRowWriterTest
+{
+  // more than the ring holds, so it wraps around several times
+  private static final int ROWS = 50000;
+
+  @Test
+  public void testFormatAndWraparound () throws Exception
+  {
+    File file = File.createTempFile("rows", ".csv");
+    try {
+      AsyncRowWriter data =
+          new AsyncRowWriter(file.getPath(), "n, half, neg", ", ",
+                             AsyncRowWriter.INTEGER, 1, 3);
+      for (int i = 0; i < ROWS; i++) {
+        data.put(i).put(i / 2.0).put(-i / 1000.0).endRow();
+      }
+      data.close();
+      // a second close does nothing
+      data.close();
+
+      List<String> lines =
+          Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      assertEquals(ROWS + 1, lines.size());
+      assertEquals("n, half, neg", lines.get(0));
+      for (int i = 0; i < ROWS; i++) {
+        assertEquals(String.format("%d, %.1f, %.3f", i, i / 2.0, -i / 1000.0),
+                     lines.get(i + 1));
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testIncompleteRow () throws Exception
+  {
+    AsyncRowWriter data =
+        new AsyncRowWriter(new StringWriter(), null, ",", 0, 0);
+    data.put(1);
+    try {
+      data.endRow();
+      fail("expected IllegalStateException");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+    data.close();
+  }
+
+  @Test(timeout = 20000)
+  public void testProducerWaitsForSpace () throws Exception
+  {
+    BlockingWriter target = new BlockingWriter();
+    AsyncRowWriter data =
+        new AsyncRowWriter(target, null, ",", AsyncRowWriter.INTEGER);
+    // the writer thread is held on its first row, so the ring fills up
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < ROWS; i++) {
+        data.put(i).endRow();
+      }
+    });
+    producer.start();
+    waitUntilParked(producer);
+    target.release.countDown();
+    producer.join();
+    data.close();
+    assertRows(ROWS, target.toString());
+  }
+
+  @Test(timeout = 20000)
+  public void testCloseWhileFull () throws Exception
+  {
+    BlockingWriter target = new BlockingWriter();
+    AsyncRowWriter data =
+        new AsyncRowWriter(target, null, ",", AsyncRowWriter.INTEGER);
+    for (int i = 0; i < AsyncRowWriter.RING_ROWS; i++) {
+      data.put(i).endRow();
+    }
+    IOException[] failure = new IOException[1];
+    Thread closer = new Thread(() -> {
+      try {
+        data.close();
+      }
+      catch (IOException e) {
+        failure[0] = e;
+      }
+    });
+    closer.start();
+    waitUntilParked(closer);
+    target.release.countDown();
+    closer.join();
+    assertNull(failure[0]);
+    assertRows(AsyncRowWriter.RING_ROWS, target.toString());
+  }
+
+  @Test(timeout = 20000)
+  public void testWriteFailure () throws Exception
+  {
+    FailingWriter target = new FailingWriter(10);
+    AsyncRowWriter data =
+        new AsyncRowWriter(target, null, ",", AsyncRowWriter.INTEGER);
+    // far more rows than fit in the ring: the producer must not block
+    for (int i = 0; i < ROWS; i++) {
+      data.put(i).endRow();
+    }
+    try {
+      data.close();
+      fail("expected IOException");
+    }
+    catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    assertTrue(target.closed);
+  }
+
+  private static void assertRows (int count, String text)
+  {
+    String[] lines = text.split("\n");
+    assertEquals(count, lines.length);
+    for (int i = 0; i < count; i++) {
+      assertEquals(Integer.toString(i), lines[i]);
+    }
+  }
+
+  // Waits until a thread blocks for good, as when it parks
+  private static void waitUntilParked (Thread thread) throws Exception
+  {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (thread.getState() != Thread.State.WAITING) {
+      assertTrue("thread did not wait", System.nanoTime() < deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  // Holds the first write until released
+  static class BlockingWriter extends StringWriter
+  {
+    CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public StringWriter append (CharSequence text)
+    {
+      try {
+        release.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.append(text);
+    }
+  }
+
+  // Fails after a number of writes
+  static class FailingWriter extends Writer
+  {
+    int writes;
+    boolean closed = false;
+
+    FailingWriter (int writes)
+    {
+      super();
+      this.writes = writes;
+    }
+
+    @Override
+    public void write (char[] buffer, int off, int len) throws IOException
+    {
+      if (--writes < 0)
+        throw new IOException("disk full");
+    }
+
+    @Override
+    public void flush ()
+    {
+    }
+
+    @Override
+    public void close ()
+    {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.powertac.logtool.example.ResultsHATrading.BalancingAccumulator;
+import org.powertac.logtool.example.ResultsHATrading.BalancingTotals;
+import org.powertac.logtool.example.ResultsHATrading.BrokerTotals;
+
+public class BalancingAccumulatorTest
+{
+  private static final int HA = BalancingAccumulator.HA;
+  private static final double DELTA = 1e-9;
+
+  private String[] names = {"alice", "bob", "AvgBroker"};
+
+  // alice buys 2 MWh at 10 an hour ahead; bob buys 1 MWh at 30 in the
+  // 0 hour-ahead auction and pays 5 for 1 MWh of balancing
+  private double[][] timeslot ()
+  {
+    double[][] values = empty();
+    values[0][4] = 10.0;
+    values[0][5] = -2.0;
+    values[1][0] = 30.0;
+    values[1][1] = -1.0;
+    values[1][4*HA] = 5.0;
+    values[1][4*HA + 1] = -1.0;
+    return values;
+  }
+
+  // all zero, with no balancing transactions
+  private double[][] empty ()
+  {
+    double[][] values = new double[names.length][BalancingAccumulator.VALUES];
+    for (double[] row: values) {
+      Arrays.fill(row, 4*HA, BalancingAccumulator.VALUES, Double.NaN);
+    }
+    return values;
+  }
+
+  @Test
+  public void testOneTimeslot ()
+  {
+    BalancingAccumulator accumulator = new BalancingAccumulator();
+    accumulator.addTimeslot(names, timeslot());
+    BalancingTotals totals = accumulator.getTotals();
+    assertEquals(1.0, totals.ts, 0.0);
+    assertEquals(3, totals.brokers.size());
+    BrokerTotals alice = totals.brokers.get(0);
+    BrokerTotals bob = totals.brokers.get(1);
+    BrokerTotals average = totals.brokers.get(2);
+    assertEquals("alice", alice.name);
+
+    // timeslot classification
+    assertEquals(1.0, alice.perfectTS, 0.0);
+    assertEquals(0.0, alice.surplusTS, 0.0);
+    assertEquals(1.0, bob.surplusTS, 0.0);
+    assertEquals(-1.0, bob.txDrBal, DELTA);
+    assertEquals(0.0, bob.perfectTS, 0.0);
+    assertEquals(1.0, average.zeroTS, 0.0);
+
+    // [0] all transactions, [1] without balancing and 0 hour-ahead
+    assertEquals(20.0, alice.dr[0], DELTA);
+    assertEquals(20.0, alice.dr[1], DELTA);
+    assertEquals(35.0, bob.dr[0], DELTA);
+    assertEquals(0.0, bob.dr[1], DELTA);
+    assertEquals(-2.0, bob.txDr[0], DELTA);
+    assertEquals(0.0, bob.txDr[1], DELTA);
+
+    // the average broker's unit price is the volume-weighted mean, 13.75
+    assertEquals(55.0, average.dr[0], DELTA);
+    assertEquals(-4.0, average.txDr[0], DELTA);
+    assertEquals(20.0 - 2 * 13.75, alice.drDiff[0], DELTA);
+    assertEquals(35.0 - 2 * 13.75, bob.drDiff[0], DELTA);
+    assertEquals(0.0, alice.drDiff[1], DELTA);
+    assertEquals(-4.0, totals.totalDrVol[0], DELTA);
+    assertEquals(-2.0, totals.totalDrVol[1], DELTA);
+    assertEquals(0.0, totals.totalCrVol[0], DELTA);
+  }
+
+  @Test
+  public void testMergeMatchesOnePass ()
+  {
+    double[][] second = timeslot();
+    second[0][6] = 12.0;
+    second[0][7] = 4.0;
+    second[1][4*HA + 2] = 3.0;
+    second[1][4*HA + 3] = 2.0;
+
+    BalancingAccumulator both = new BalancingAccumulator();
+    both.addTimeslot(names, timeslot());
+    both.addTimeslot(names, second);
+
+    BalancingAccumulator first = new BalancingAccumulator();
+    first.addTimeslot(names, timeslot());
+    BalancingAccumulator last = new BalancingAccumulator();
+    last.addTimeslot(names, second);
+    BalancingTotals merged = new BalancingTotals();
+    merged.merge(first.getTotals());
+    merged.merge(last.getTotals());
+
+    assertSameTotals(both.getTotals(), merged);
+    assertEquals(1.0, merged.brokers.get(1).deficitTS, 0.0);
+  }
+
+  @Test
+  public void testReadBalancing () throws Exception
+  {
+    double[][] values = timeslot();
+    File file = File.createTempFile("balancing", ".csv");
+    try {
+      try (PrintWriter out = new PrintWriter(file)) {
+        for (int ts = 0; ts < 3; ts++) {
+          StringBuilder line = new StringBuilder();
+          for (int i = 0; i < names.length; i++) {
+            if (i > 0)
+              line.append(',');
+            line.append(names[i]);
+            for (double value: values[i]) {
+              line.append(',');
+              // blank for no balancing transaction
+              if (!Double.isNaN(value))
+                line.append(value);
+            }
+          }
+          out.println(line);
+        }
+      }
+      BalancingAccumulator expected = new BalancingAccumulator();
+      for (int ts = 0; ts < 3; ts++)
+        expected.addTimeslot(names, values);
+      assertSameTotals(expected.getTotals(),
+                       new ResultsHATrading().readBalancing(file));
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPositiveDebit ()
+  {
+    double[][] values = empty();
+    values[0][1] = 1.0;
+    new BalancingAccumulator().addTimeslot(names, values);
+  }
+
+  private void assertSameTotals (BalancingTotals expected,
+                                 BalancingTotals actual)
+  {
+    assertEquals(expected.ts, actual.ts, 0.0);
+    assertArrayEquals(expected.totalDrVol, actual.totalDrVol, DELTA);
+    assertArrayEquals(expected.totalCrVol, actual.totalCrVol, DELTA);
+    assertEquals(expected.brokers.size(), actual.brokers.size());
+    for (int i = 0; i < expected.brokers.size(); i++) {
+      BrokerTotals a = expected.brokers.get(i);
+      BrokerTotals b = actual.brokers.get(i);
+      assertEquals(a.name, b.name);
+      assertEquals(a.deficitTS, b.deficitTS, 0.0);
+      assertEquals(a.surplusTS, b.surplusTS, 0.0);
+      assertEquals(a.zeroTS, b.zeroTS, 0.0);
+      assertEquals(a.perfectTS, b.perfectTS, 0.0);
+      assertEquals(a.txCrBal, b.txCrBal, DELTA);
+      assertEquals(a.txDrBal, b.txDrBal, DELTA);
+      assertArrayEquals(a.tx$, b.tx$, DELTA);
+      assertArrayEquals(a.txW, b.txW, DELTA);
+      assertArrayEquals(a.dr, b.dr, DELTA);
+      assertArrayEquals(a.cr, b.cr, DELTA);
+      assertArrayEquals(a.drDiff, b.drDiff, DELTA);
+      assertArrayEquals(a.txDr, b.txDr, DELTA);
+      assertArrayEquals(a.crDiff, b.crDiff, DELTA);
+      assertArrayEquals(a.txCr, b.txCr, DELTA);
+    }
+  }
+}
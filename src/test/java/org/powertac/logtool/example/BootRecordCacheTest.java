@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powertac.common.Competition;
+import org.powertac.common.CustomerInfo;
+import org.powertac.common.enumerations.PowerType;
+import org.powertac.common.msg.CustomerBootstrapData;
+import org.powertac.common.repo.BootstrapDataRepo;
+
+public class BootRecordCacheTest
+{
+  private File dir;
+  private String oldCacheDir;
+  private CountingRepo repo;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    dir = Files.createTempDirectory("bootcache").toFile();
+    oldCacheDir = System.getProperty("logtool.bootcache");
+    System.setProperty("logtool.bootcache",
+                       new File(dir, "cache").getPath());
+    BootRecordCache.clear();
+    repo = new CountingRepo();
+    repo.usage.add(usage("village", 1.0, 2.0, 3.0));
+    repo.usage.add(usage("solar", -4.0, 0.0, -1.0));
+  }
+
+  @After
+  public void tearDown () throws Exception
+  {
+    BootRecordCache.clear();
+    if (null == oldCacheDir)
+      System.clearProperty("logtool.bootcache");
+    else
+      System.setProperty("logtool.bootcache", oldCacheDir);
+    delete(dir);
+  }
+
+  @Test
+  public void testSummary () throws Exception
+  {
+    BootRecordCache.BootRecord record =
+        BootRecordCache.get(bootFile("a.xml", "boot A"), repo);
+    assertEquals(1, repo.reads);
+    assertEquals(360, record.getBootstrapTimeslotCount());
+    assertEquals(24, record.getBootstrapDiscardedTimeslots());
+    assertArrayEquals(new String[] {"village", "solar"},
+                      record.getCustomerNames());
+    assertArrayEquals(new double[] {-4.0, 0.0, -1.0},
+                      record.getCustomerNetUsage()[1], 0.0);
+    // net demand is the negated total usage
+    assertArrayEquals(new double[] {3.0, -2.0, -2.0},
+                      record.getNetDemand(), 0.0);
+    assertEquals(3, record.getRunningCount());
+    assertEquals(-1.0 / 3.0, record.getRunningMean(), 1e-12);
+    assertEquals(Math.sqrt(25.0 / 3.0), record.getRunningSigma(), 1e-12);
+  }
+
+  // The same bytes under another name are parsed once
+  @Test
+  public void testSameContent () throws Exception
+  {
+    BootRecordCache.BootRecord first =
+        BootRecordCache.get(bootFile("a.xml", "boot A"), repo);
+    BootRecordCache.BootRecord second =
+        BootRecordCache.get(bootFile("b.xml", "boot A"), repo);
+    assertSame(first, second);
+    assertEquals(1, repo.reads);
+    BootRecordCache.get(bootFile("c.xml", "boot C"), repo);
+    assertEquals(2, repo.reads);
+  }
+
+  @Test
+  public void testDiskCache () throws Exception
+  {
+    URL boot = bootFile("a.xml", "boot A");
+    BootRecordCache.BootRecord parsed = BootRecordCache.get(boot, repo);
+    BootRecordCache.clear();
+    BootRecordCache.BootRecord loaded = BootRecordCache.get(boot, repo);
+    assertEquals(1, repo.reads);
+    assertNotSame(parsed, loaded);
+    assertEquals(parsed.getBootstrapTimeslotCount(),
+                 loaded.getBootstrapTimeslotCount());
+    assertEquals(parsed.getBootstrapDiscardedTimeslots(),
+                 loaded.getBootstrapDiscardedTimeslots());
+    assertArrayEquals(parsed.getCustomerNames(), loaded.getCustomerNames());
+    for (int c = 0; c < parsed.getCustomerNames().length; c++) {
+      assertArrayEquals(parsed.getCustomerNetUsage()[c],
+                        loaded.getCustomerNetUsage()[c], 0.0);
+    }
+    assertArrayEquals(parsed.getNetDemand(), loaded.getNetDemand(), 0.0);
+    assertEquals(parsed.getRunningCount(), loaded.getRunningCount());
+    assertEquals(parsed.getRunningMean(), loaded.getRunningMean(), 0.0);
+    assertEquals(parsed.getRunningVar(), loaded.getRunningVar(), 0.0);
+    assertEquals(parsed.getRunningSigma(), loaded.getRunningSigma(), 0.0);
+  }
+
+  // A cache file in another format is ignored and replaced
+  @Test
+  public void testStaleCacheFile () throws Exception
+  {
+    File cache = new File(dir, "cache");
+    assertTrue(cache.mkdirs());
+    File stale = new File(cache, sha256("boot A") + ".boot");
+    try (DataOutputStream out =
+        new DataOutputStream(new FileOutputStream(stale))) {
+      out.writeInt(0);
+      out.writeInt(99);
+    }
+    URL boot = bootFile("a.xml", "boot A");
+    assertEquals(360, BootRecordCache.get(boot, repo).getBootstrapTimeslotCount());
+    assertEquals(1, repo.reads);
+    BootRecordCache.clear();
+    assertEquals(360, BootRecordCache.get(boot, repo).getBootstrapTimeslotCount());
+    assertEquals(1, repo.reads);
+  }
+
+  // A boot session has no customer data
+  @Test
+  public void testNoCustomers () throws Exception
+  {
+    repo.usage.clear();
+    BootRecordCache.BootRecord record =
+        BootRecordCache.get(bootFile("a.xml", "boot A"), repo);
+    assertEquals(0, record.getCustomerNames().length);
+    assertEquals(0, record.getNetDemand().length);
+    assertEquals(0, record.getRunningCount());
+  }
+
+  // Failures are not cached, so the record is tried again
+  @Test
+  public void testParseFailure () throws Exception
+  {
+    URL boot = bootFile("a.xml", "boot A");
+    repo.fail = true;
+    assertNull(BootRecordCache.get(boot, repo));
+    repo.fail = false;
+    repo.competition = null;
+    assertNull(BootRecordCache.get(boot, repo));
+    assertEquals(2, repo.reads);
+    assertFalse(new File(dir, "cache/" + sha256("boot A") + ".boot").exists());
+    repo.competition = competition();
+    assertNotNull(BootRecordCache.get(boot, repo));
+    assertEquals(3, repo.reads);
+  }
+
+  // A record that cannot be hashed is left to the repo, and not cached
+  @Test
+  public void testUnreadableRecord () throws Exception
+  {
+    URL missing = new File(dir, "missing.xml").toURI().toURL();
+    repo.competition = null;
+    assertNull(BootRecordCache.get(missing, repo));
+    assertEquals(1, repo.reads);
+    assertFalse(new File(dir, "cache").exists());
+  }
+
+  private URL bootFile (String name, String content) throws Exception
+  {
+    File file = new File(dir, name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file.toURI().toURL();
+  }
+
+  private static CustomerBootstrapData usage (String name, double... values)
+  {
+    return new CustomerBootstrapData(new CustomerInfo(name, 1),
+                                     PowerType.CONSUMPTION, values);
+  }
+
+  private static Competition competition ()
+  {
+    return Competition.newInstance("boot")
+        .withBootstrapTimeslotCount(360)
+        .withBootstrapDiscardedTimeslots(24);
+  }
+
+  private static String sha256 (String content) throws Exception
+  {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    StringBuilder sb = new StringBuilder();
+    for (byte b: digest.digest(content.getBytes(StandardCharsets.UTF_8))) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  private static void delete (File file)
+  {
+    File[] children = file.listFiles();
+    if (null != children) {
+      for (File child: children)
+        delete(child);
+    }
+    file.delete();
+  }
+
+  // Stands in for the XML parse, counting the records read
+  static class CountingRepo extends BootstrapDataRepo
+  {
+    int reads = 0;
+    boolean fail = false;
+    Competition competition = competition();
+    List<Object> usage = new ArrayList<>();
+
+    @Override
+    public void readBootRecord (URL bootLoc)
+    {
+      reads += 1;
+      if (fail)
+        throw new IllegalArgumentException("bad record");
+    }
+
+    @Override
+    public Competition getBootstrapCompetition ()
+    {
+      return competition;
+    }
+
+    @Override
+    public List<Object> getData (Class<?> type)
+    {
+      return usage;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BrokerPartitionsTest
+{
+  private File dir;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    dir = Files.createTempDirectory("partitions").toFile();
+  }
+
+  @After
+  public void tearDown ()
+  {
+    for (File file: dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testPartitionFilename ()
+  {
+    assertEquals("game.SPOT.csv",
+                 BrokerPartitions.partitionFilename("game.csv", "SPOT"));
+    assertEquals("out/game.a.b.SPOT.csv",
+                 BrokerPartitions.partitionFilename("out/game.a.b.csv", "SPOT"));
+    // no extension, or a dot only in a directory name
+    assertEquals("game.SPOT",
+                 BrokerPartitions.partitionFilename("game", "SPOT"));
+    assertEquals("my.dir/game.SPOT",
+                 BrokerPartitions.partitionFilename("my.dir/game", "SPOT"));
+    assertEquals(".hidden.SPOT",
+                 BrokerPartitions.partitionFilename(".hidden", "SPOT"));
+    // broker names cannot leave the directory
+    assertEquals("game.___x_y.csv",
+                 BrokerPartitions.partitionFilename("game.csv", "../x y"));
+  }
+
+  @Test
+  public void testOneFilePerBroker () throws Exception
+  {
+    String base = new File(dir, "game.csv").getPath();
+    BrokerPartitions partitions =
+        new BrokerPartitions(base, "slot, cash", ", ",
+                             AsyncRowWriter.INTEGER, 2);
+    for (int slot = 360; slot < 363; slot++) {
+      partitions.get("B").put(slot).put(-slot / 4.0).endRow();
+      partitions.get("A").put(slot).put(slot * 1.5).endRow();
+    }
+    partitions.get("A").put(363).put(0).endRow();
+    assertSame(partitions.get("A"), partitions.get("A"));
+    assertEquals(Arrays.asList("B", "A"),
+                 Arrays.asList(partitions.getBrokers().toArray()));
+    partitions.close();
+
+    assertEquals(Arrays.asList("slot, cash", "360, 540.00", "361, 541.50",
+                               "362, 543.00", "363, 0.00"),
+                 read(BrokerPartitions.partitionFilename(base, "A")));
+    assertEquals(Arrays.asList("slot, cash", "360, -90.00", "361, -90.25",
+                               "362, -90.50"),
+                 read(BrokerPartitions.partitionFilename(base, "B")));
+    assertEquals(2, dir.listFiles().length);
+  }
+
+  @Test
+  public void testNothingWritten () throws Exception
+  {
+    BrokerPartitions partitions =
+        new BrokerPartitions(new File(dir, "game.csv").getPath(), "h", ",", 0);
+    partitions.close();
+    assertEquals(0, dir.listFiles().length);
+  }
+
+  private static List<String> read (String filename) throws Exception
+  {
+    return Files.readAllLines(new File(filename).toPath(),
+                              StandardCharsets.UTF_8);
+  }
+}
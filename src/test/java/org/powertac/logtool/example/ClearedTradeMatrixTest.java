@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClearedTradeMatrixTest
+{
+  private ClearedTradeMatrix matrix;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    matrix = new ClearedTradeMatrix(24);
+  }
+
+  @Test
+  public void testEmpty ()
+  {
+    assertEquals(Integer.MAX_VALUE, matrix.getFirstTimeslot());
+    assertEquals(-1, matrix.getLastTimeslot());
+    assertFalse(matrix.hasTimeslot(400));
+    assertEquals(0.0, matrix.getPrice(400, 0), 0.0);
+  }
+
+  @Test
+  public void testAdd ()
+  {
+    matrix.addTimeslot(399);
+    matrix.add(400, 3, 42.0, 10.0);
+    matrix.add(400, 3, 43.0, 11.0); // replaces
+    assertTrue(matrix.hasTimeslot(399));
+    assertFalse(matrix.isCleared(399, 3));
+    assertTrue(matrix.isCleared(400, 3));
+    assertFalse(matrix.isCleared(400, 4));
+    assertEquals(43.0, matrix.getPrice(400, 3), 0.0);
+    assertEquals(11.0, matrix.getMWh(400, 3), 0.0);
+    assertEquals(399, matrix.getFirstTimeslot());
+    assertEquals(400, matrix.getLastTimeslot());
+  }
+
+  @Test
+  public void testDropBefore ()
+  {
+    for (int ts = 400; ts < 410; ts++)
+      matrix.add(ts, 0, ts, 1.0);
+    matrix.dropBefore(405);
+    assertEquals(405, matrix.getFirstTimeslot());
+    assertEquals(409, matrix.getLastTimeslot());
+    assertFalse(matrix.hasTimeslot(404));
+    assertFalse(matrix.isCleared(404, 0));
+    assertEquals(0.0, matrix.getPrice(404, 0), 0.0);
+    assertEquals(405.0, matrix.getPrice(405, 0), 0.0);
+
+    // adds below the floor are ignored
+    matrix.add(403, 0, 1.0, 1.0);
+    assertFalse(matrix.hasTimeslot(403));
+    assertEquals(405, matrix.getFirstTimeslot());
+
+    // dropping past the last row empties the matrix
+    matrix.dropBefore(420);
+    assertEquals(Integer.MAX_VALUE, matrix.getFirstTimeslot());
+    assertEquals(-1, matrix.getLastTimeslot());
+  }
+
+  @Test
+  public void testCompaction ()
+  {
+    for (int ts = 400; ts < 3000; ts++) {
+      matrix.add(ts, 5, ts * 0.5, ts);
+      if (ts >= 424) {
+        int done = ts - 24;
+        assertEquals(done * 0.5, matrix.getPrice(done, 5), 0.0);
+        matrix.dropBefore(done + 1);
+      }
+    }
+    assertFalse(matrix.hasTimeslot(2975));
+    for (int ts = 2976; ts < 3000; ts++) {
+      assertTrue(matrix.isCleared(ts, 5));
+      assertEquals(ts * 0.5, matrix.getPrice(ts, 5), 0.0);
+      assertEquals(ts, matrix.getMWh(ts, 5), 0.0);
+    }
+    assertEquals(2976, matrix.getFirstTimeslot());
+    assertEquals(2999, matrix.getLastTimeslot());
+  }
+}
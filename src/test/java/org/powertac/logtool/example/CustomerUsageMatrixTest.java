@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powertac.common.CustomerInfo;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.enumerations.PowerType;
+
+public class CustomerUsageMatrixTest
+{
+  // one week of rows for two customers
+  private static final long BLOCK_BYTES = 168L * 2 * CustomerUsageMatrix.QUANTITIES * 8;
+
+  private CustomerInfo village;
+  private CustomerInfo solar;
+  private CustomerUsageMatrix matrix;
+
+  @Before
+  public void setUp ()
+  {
+    village = new CustomerInfo("village", 100);
+    solar = new CustomerInfo("solar", 1).withPowerType(PowerType.PRODUCTION);
+  }
+
+  @After
+  public void tearDown () throws Exception
+  {
+    if (null != matrix)
+      matrix.close();
+  }
+
+  @Test
+  public void testQuantities ()
+  {
+    matrix = new CustomerUsageMatrix();
+    matrix.addCustomer(village);
+    matrix.addCustomer(solar);
+    matrix.add(360, tx(village, TariffTransaction.Type.CONSUME, -10.0, false));
+    matrix.add(360, tx(village, TariffTransaction.Type.CONSUME, -5.0, false));
+    matrix.add(360, tx(village, TariffTransaction.Type.CONSUME, -2.0, true));
+    matrix.add(361, tx(solar, TariffTransaction.Type.PRODUCE, 7.0, false));
+    matrix.add(361, tx(solar, TariffTransaction.Type.PRODUCE, 1.0, true));
+    matrix.add(361, tx(solar, TariffTransaction.Type.SIGNUP, 1.0, false));
+
+    assertEquals(360, matrix.getFirstTimeslot());
+    assertEquals(361, matrix.getLastTimeslot());
+    assertEquals(-15.0, matrix.get(360, 0, CustomerUsageMatrix.CONSUMPTION), 0.0);
+    assertEquals(-2.0, matrix.get(360, 0, CustomerUsageMatrix.DOWN_REGULATION), 0.0);
+    assertEquals(7.0, matrix.get(361, 1, CustomerUsageMatrix.PRODUCTION), 0.0);
+    assertEquals(1.0, matrix.get(361, 1, CustomerUsageMatrix.UP_REGULATION), 0.0);
+    assertEquals(0.0, matrix.get(400, 1, CustomerUsageMatrix.PRODUCTION), 0.0);
+    assertEquals(0.0, matrix.get(359, 1, CustomerUsageMatrix.PRODUCTION), 0.0);
+
+    assertArrayEquals(new int[] {1}, matrix.ofType(PowerType.PRODUCTION));
+    assertArrayEquals(new int[] {0}, matrix.named(Arrays.asList("village")));
+    assertEquals(-15.0, matrix.sum(360, matrix.all(), CustomerUsageMatrix.CONSUMPTION), 0.0);
+  }
+
+  @Test
+  public void testLateCustomerIgnored ()
+  {
+    matrix = new CustomerUsageMatrix();
+    matrix.addCustomer(village);
+    matrix.add(360, tx(village, TariffTransaction.Type.CONSUME, -10.0, false));
+    assertEquals(-1, matrix.addCustomer(solar));
+    matrix.add(360, tx(solar, TariffTransaction.Type.PRODUCE, 7.0, false));
+    assertEquals(1, matrix.getCustomerCount());
+    assertEquals(0.0, matrix.get(360, 1, CustomerUsageMatrix.PRODUCTION), 0.0);
+  }
+
+  @Test
+  public void testDirectOnly () throws Exception
+  {
+    matrix = new CustomerUsageMatrix();
+    fill(0, 3 * 168);
+    assertNull(matrix.getSpillFile());
+    check(0, 3 * 168);
+  }
+
+  // With room for one direct block, later weeks go to the spill file,
+  // which close() removes
+  @Test
+  public void testSpillToMappedFile () throws Exception
+  {
+    matrix = new CustomerUsageMatrix(BLOCK_BYTES);
+    fill(0, 168);
+    assertNull(matrix.getSpillFile());
+    fill(168, 4 * 168);
+    File spill = matrix.getSpillFile();
+    assertNotNull(spill);
+    assertTrue(spill.isFile());
+    assertEquals(3 * BLOCK_BYTES, spill.length());
+    check(0, 4 * 168);
+
+    matrix.close();
+    assertFalse(spill.exists());
+    assertNull(matrix.getSpillFile());
+    assertEquals(0.0, matrix.get(200, 0, CustomerUsageMatrix.CONSUMPTION), 0.0);
+    matrix = null;
+  }
+
+  // Every row of a block past the limit, including its last, is mapped
+  @Test
+  public void testLimitBetweenBlocks () throws Exception
+  {
+    matrix = new CustomerUsageMatrix(2 * BLOCK_BYTES - 1);
+    fill(0, 168);
+    assertNull(matrix.getSpillFile());
+    fill(168, 169);
+    assertEquals(BLOCK_BYTES, matrix.getSpillFile().length());
+    fill(335, 336);
+    check(0, 169);
+    check(335, 336);
+  }
+
+  private void fill (int from, int to)
+  {
+    if (0 == matrix.getCustomerCount()) {
+      matrix.addCustomer(village);
+      matrix.addCustomer(solar);
+    }
+    for (int ts = from; ts < to; ts++) {
+      matrix.add(ts, tx(village, TariffTransaction.Type.CONSUME, -ts, false));
+      matrix.add(ts, tx(solar, TariffTransaction.Type.PRODUCE, ts + 0.5, false));
+    }
+  }
+
+  private void check (int from, int to)
+  {
+    for (int ts = from; ts < to; ts++) {
+      assertEquals(-ts, matrix.get(ts, 0, CustomerUsageMatrix.CONSUMPTION), 0.0);
+      assertEquals(ts + 0.5, matrix.get(ts, 1, CustomerUsageMatrix.PRODUCTION), 0.0);
+      assertEquals(0.0, matrix.get(ts, 1, CustomerUsageMatrix.CONSUMPTION), 0.0);
+    }
+  }
+
+  private static TariffTransaction tx (CustomerInfo customer,
+                                       TariffTransaction.Type type,
+                                       double kWh, boolean regulation)
+  {
+    return new TariffTransaction(null, 0, type, null, customer, 1, kWh,
+                                 0.0, regulation);
+  }
+}
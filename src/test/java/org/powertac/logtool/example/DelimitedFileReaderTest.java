@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DelimitedFileReaderTest
+{
+  private File file;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    file = File.createTempFile("delimited", ".csv");
+  }
+
+  @After
+  public void tearDown () throws Exception
+  {
+    file.delete();
+  }
+
+  @Test
+  public void testRecords () throws Exception
+  {
+    write("a,b,c\r\n\n1,,3,\n  \nlast");
+    try (DelimitedFileReader reader = new DelimitedFileReader(file, ',')) {
+      assertTrue(reader.nextRecord());
+      assertEquals(3, reader.getFieldCount());
+      assertEquals("c", reader.getString(2));
+      assertEquals(1, reader.getLineNumber());
+
+      // blank line skipped, empty fields kept, trailing delimiter counts
+      assertTrue(reader.nextRecord());
+      assertEquals(3, reader.getLineNumber());
+      assertEquals(4, reader.getFieldCount());
+      assertEquals(1.0, reader.getDouble(0, -1.0), 0.0);
+      assertTrue(reader.isEmpty(1));
+      assertEquals(-1.0, reader.getDouble(1, -1.0), 0.0);
+      assertTrue(Double.isNaN(reader.getDouble(1, Double.NaN)));
+      assertEquals("", reader.getString(3));
+      assertEquals(7.0, reader.getDouble(3, 7.0), 0.0);
+
+      // whitespace is not a blank line
+      assertTrue(reader.nextRecord());
+      assertEquals("  ", reader.getString(0));
+
+      assertTrue(reader.nextRecord());
+      assertEquals("last", reader.getString(0));
+      assertFalse(reader.nextRecord());
+      assertEquals(0, reader.getFieldCount());
+    }
+  }
+
+  @Test
+  public void testManyFields () throws Exception
+  {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 300; i++)
+      line.append(i).append('\t');
+    write(line.toString());
+    try (DelimitedFileReader reader = new DelimitedFileReader(file, '\t')) {
+      assertTrue(reader.nextRecord());
+      assertEquals(301, reader.getFieldCount());
+      assertEquals(299.0, reader.getDouble(299, 0.0), 0.0);
+    }
+  }
+
+  // Values on either side of the 15-digit and 1e22 limits of the direct
+  // conversion must come out exactly as from Double.parseDouble()
+  @Test
+  public void testFallbackBoundaries () throws Exception
+  {
+    String[] values = {
+        "123456789012345", "1234567890123456", "12345678901234567",
+        "0.123456789012345", "0.1234567890123456",
+        "9007199254740993", "000000000000000001234",
+        "1.00000000000000000", "1e22", "1e23", "1e-22", "1e-23",
+        "123456789012345e22", "123456789012345e-22", "1.5E+22", "1.5e+23",
+        "-0", "-0.0", "+0", "0e99", "-0e-400", "-1e-400", "1e400",
+        "-12.75", "+3.", ".25", "-.5", "1e0", "1e+0", "2.5e-3",
+        "NaN", "-Infinity", "1d", "0x1p3"};
+    write(String.join(",", values));
+    try (DelimitedFileReader reader = new DelimitedFileReader(file, ',')) {
+      assertTrue(reader.nextRecord());
+      assertEquals(values.length, reader.getFieldCount());
+      for (int i = 0; i < values.length; i++) {
+        double expected = Double.parseDouble(values[i]);
+        double actual = reader.getDouble(i, 99.0);
+        assertEquals(values[i], Double.doubleToRawLongBits(expected),
+                     Double.doubleToRawLongBits(actual));
+      }
+    }
+  }
+
+  @Test
+  public void testNegativeZero () throws Exception
+  {
+    write("-0,0,-0.000");
+    try (DelimitedFileReader reader = new DelimitedFileReader(file, ',')) {
+      assertTrue(reader.nextRecord());
+      assertEquals(Double.doubleToRawLongBits(-0.0),
+                   Double.doubleToRawLongBits(reader.getDouble(0, 1.0)));
+      assertEquals(Double.doubleToRawLongBits(0.0),
+                   Double.doubleToRawLongBits(reader.getDouble(1, 1.0)));
+      assertEquals(Double.doubleToRawLongBits(-0.0),
+                   Double.doubleToRawLongBits(reader.getDouble(2, 1.0)));
+    }
+  }
+
+  @Test
+  public void testRandomValues () throws Exception
+  {
+    Random random = new Random(32);
+    String[] values = new String[2000];
+    for (int i = 0; i < values.length; i++) {
+      switch (i % 4) {
+      case 0:
+        values[i] = Double.toString(random.nextGaussian() * 1000.0);
+        break;
+      case 1:
+        values[i] = Double.toString(random.nextDouble()
+                                    * Math.pow(10, random.nextInt(60) - 30));
+        break;
+      case 2:
+        values[i] = String.format("%.4f", random.nextDouble() * 200 - 100);
+        break;
+      default:
+        values[i] = Long.toString(random.nextLong() >> random.nextInt(64));
+      }
+    }
+    write(String.join(",", values));
+    try (DelimitedFileReader reader = new DelimitedFileReader(file, ',')) {
+      assertTrue(reader.nextRecord());
+      for (int i = 0; i < values.length; i++) {
+        assertEquals(values[i], Double.parseDouble(values[i]),
+                     reader.getDouble(i, 0.0), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testNotANumber () throws Exception
+  {
+    String[] values = {"abc", "1e", "1e+", "-", ".", "1.2.3", "1,5"};
+    write(String.join(";", values));
+    try (DelimitedFileReader reader = new DelimitedFileReader(file, ';')) {
+      assertTrue(reader.nextRecord());
+      for (int i = 0; i < values.length; i++) {
+        try {
+          reader.getDouble(i, 0.0);
+          fail("parsed " + values[i]);
+        }
+        catch (NumberFormatException e) {
+          // expected
+        }
+      }
+    }
+  }
+
+  private void write (String content) throws Exception
+  {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+  }
+}
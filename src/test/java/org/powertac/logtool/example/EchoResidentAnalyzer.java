@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.PrintStream;
+
+/**
+ * ResidentAnalyzer for AnalysisDaemonTest. Echoes its args, and fails on
+ * a first arg of "fail".
+ */
+public class EchoResidentAnalyzer implements ResidentAnalyzer
+{
+  static EchoResidentAnalyzer last = null;
+  static int created = 0;
+
+  int jobs = 0;
+  int resets = 0;
+
+  public EchoResidentAnalyzer ()
+  {
+    super();
+    created += 1;
+    last = this;
+  }
+
+  @Override
+  public void resetGame ()
+  {
+    resets += 1;
+  }
+
+  @Override
+  public void cli (String[] args, PrintStream out)
+  {
+    jobs += 1;
+    if (args.length > 0 && args[0].equals("fail"))
+      throw new IllegalStateException("bad input");
+    out.println("job " + jobs + " " + String.join(",", args));
+  }
+}
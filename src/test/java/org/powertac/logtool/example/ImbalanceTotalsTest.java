@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImbalanceTotalsTest
+{
+  private Random random;
+  private List<File> files;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    random = new Random(17);
+    files = new ArrayList<>();
+  }
+
+  @After
+  public void tearDown () throws Exception
+  {
+    for (File file: files)
+      file.delete();
+  }
+
+  @Test
+  public void testStatsMergeMatchesSingle ()
+  {
+    ImbalanceTotals.Stats all = new ImbalanceTotals.Stats();
+    ImbalanceTotals.Stats first = new ImbalanceTotals.Stats();
+    ImbalanceTotals.Stats second = new ImbalanceTotals.Stats();
+    for (int i = 0; i < 1000; i++) {
+      double imbalance = random.nextGaussian() * 200.0 + 50.0;
+      double charge = -Math.abs(imbalance) * 0.05;
+      double market = random.nextGaussian() * 1000.0;
+      all.add(imbalance, charge, market);
+      (i < 300 ? first : second).add(imbalance, charge, market);
+    }
+    first.merge(second);
+    assertEquals(all.getCount(), first.getCount());
+    assertEquals(all.getTotal(), first.getTotal(), 1e-6);
+    assertEquals(all.getMean(), first.getMean(), 1e-9);
+    assertEquals(all.getVariance(), first.getVariance(), 1e-6);
+    assertEquals(all.getRms(), first.getRms(), 1e-9);
+    assertEquals(all.getCost(), first.getCost(), 1e-6);
+    assertEquals(all.getContribution(), first.getContribution(), 1e-6);
+  }
+
+  @Test
+  public void testStatsMergeEmpty ()
+  {
+    ImbalanceTotals.Stats stats = new ImbalanceTotals.Stats();
+    stats.add(10.0, -1.0, 20.0);
+    ImbalanceTotals.Stats empty = new ImbalanceTotals.Stats();
+    empty.addConsumption(500.0, 25.0);
+    stats.merge(empty);
+    assertEquals(1, stats.getCount());
+    assertEquals(10.0, stats.getMean(), 0.0);
+    assertEquals(500.0, stats.getConsumption(), 0.0);
+
+    ImbalanceTotals.Stats other = new ImbalanceTotals.Stats();
+    assertTrue(Double.isNaN(other.getMean()));
+    other.merge(stats);
+    assertEquals(1, other.getCount());
+    assertEquals(10.0, other.getMean(), 0.0);
+    assertEquals(0.0, other.getVariance(), 0.0);
+  }
+
+  @Test
+  public void testMergeByBrokerName ()
+  {
+    ImbalanceTotals game1 = totals("alice", "bob");
+    ImbalanceTotals game2 = totals("bob", "carol");
+    long bobCount = game1.getBroker("bob").getCount()
+        + game2.getBroker("bob").getCount();
+    game1.merge(game2);
+    assertEquals(2, game1.getGames());
+    assertEquals(bobCount, game1.getBroker("bob").getCount());
+    Iterator<String> names = game1.getBrokerNames().iterator();
+    assertEquals("alice", names.next());
+    assertEquals("bob", names.next());
+    assertEquals("carol", names.next());
+    assertFalse(names.hasNext());
+  }
+
+  @Test
+  public void testWriteRead () throws Exception
+  {
+    ImbalanceTotals totals = totals("alice", "bob");
+    File file = tempFile();
+    totals.write(file.getPath());
+    ImbalanceTotals copy = ImbalanceTotals.read(file.getPath());
+    assertEquals(totals.getGames(), copy.getGames());
+    assertEquals(totals.getBrokerNames(), copy.getBrokerNames());
+    assertEquals(totals.getMarket().getVariance(),
+                 copy.getMarket().getVariance(), 0.0);
+    assertEquals(totals.getBroker("bob").getContribution(),
+                 copy.getBroker("bob").getContribution(), 0.0);
+  }
+
+  @Test
+  public void testMergeFiles () throws Exception
+  {
+    ImbalanceTotals expected = new ImbalanceTotals();
+    String[] filenames = new String[5];
+    for (int i = 0; i < 4; i++) {
+      ImbalanceTotals game = totals("alice", "bob");
+      expected.merge(game);
+      File file = tempFile();
+      game.write(file.getPath());
+      filenames[i] = file.getPath();
+    }
+    // an unreadable file is skipped
+    File bad = tempFile();
+    try (FileOutputStream out = new FileOutputStream(bad)) {
+      out.write(new byte[] {1, 2, 3});
+    }
+    filenames[4] = bad.getPath();
+
+    ImbalanceTotals merged = ImbalanceTotals.merge(filenames);
+    assertEquals(4, merged.getGames());
+    assertEquals(expected.getMarket().getCount(),
+                 merged.getMarket().getCount());
+    assertEquals(expected.getMarket().getVariance(),
+                 merged.getMarket().getVariance(), 0.0);
+    assertEquals(expected.getBroker("alice").getCost(),
+                 merged.getBroker("alice").getCost(), 0.0);
+  }
+
+  // One game's totals with random imbalance for the named brokers
+  private ImbalanceTotals totals (String... names)
+  {
+    ImbalanceTotals result = new ImbalanceTotals();
+    for (int ts = 0; ts < 50 + random.nextInt(50); ts++) {
+      double market = 0.0;
+      double[] imbalance = new double[names.length];
+      for (int b = 0; b < names.length; b++) {
+        imbalance[b] = random.nextGaussian() * 100.0;
+        market += imbalance[b];
+      }
+      result.getMarket().add(market, -Math.abs(market) * 0.04, market);
+      for (int b = 0; b < names.length; b++)
+        result.getBroker(names[b]).add(imbalance[b],
+                                       -Math.abs(imbalance[b]) * 0.05, market);
+    }
+    result.endGame();
+    return result;
+  }
+
+  private File tempFile () throws Exception
+  {
+    File file = File.createTempFile("imbalance", ".bin");
+    files.add(file);
+    return file;
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogLineFilterTest
+{
+  private static final String KEEP = "org.powertac.common.Kept";
+  private static final String DROP = "org.powertac.common.Dropped";
+
+  private File input;
+  private File output;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    input = File.createTempFile("filter-in", ".state");
+    output = File.createTempFile("filter-out", ".state");
+  }
+
+  @After
+  public void tearDown () throws Exception
+  {
+    input.delete();
+    output.delete();
+  }
+
+  // Domain types for neededClasses(); this package starts with org.powertac.
+  static class BaseRef {}
+  static class Ref { Handled back; }
+  static class Listed {}
+  static class Arrayed {}
+  static class Wild {}
+  static class Statics {}
+  static class Registered {}
+  static class Unused {}
+  static class Base { BaseRef baseRef; }
+  static class Handled extends Base
+  {
+    Ref ref;
+    List<Listed> listed;
+    Arrayed[][] arrayed;
+    Map<String, ? extends Wild> wild;
+    static Statics statics;
+    String name;
+    int count;
+  }
+
+  public static class Analyzer
+  {
+    public void handleMessage (Handled msg) {}
+    public void handleMessage (String ignored, Unused notOneArg) {}
+  }
+
+  @Test
+  public void testNeededClasses ()
+  {
+    Set<String> needed =
+        LogLineFilter.neededClasses(new Analyzer(), Registered.class);
+    assertTrue(needed.contains(Handled.class.getName()));
+    assertTrue(needed.contains(Registered.class.getName()));
+    assertTrue(needed.contains("org.powertac.common.msg.TimeslotUpdate"));
+    assertTrue(needed.contains("org.powertac.common.Competition"));
+    assertFalse(needed.contains(Unused.class.getName()));
+    assertFalse(needed.contains(String.class.getName()));
+  }
+
+  @Test
+  public void testFieldClosure ()
+  {
+    Set<String> needed = LogLineFilter.neededClasses(new Analyzer());
+    // direct, inherited, cyclic, array, type-argument and wildcard fields
+    assertTrue(needed.contains(Ref.class.getName()));
+    assertTrue(needed.contains(BaseRef.class.getName()));
+    assertTrue(needed.contains(Listed.class.getName()));
+    assertTrue(needed.contains(Arrayed.class.getName()));
+    assertTrue(needed.contains(Wild.class.getName()));
+    // static fields and non-domain types are not followed
+    assertFalse(needed.contains(Statics.class.getName()));
+    assertFalse(needed.contains(List.class.getName()));
+    assertFalse(needed.contains(Map.class.getName()));
+  }
+
+  @Test
+  public void testLinesAcrossBlocks () throws Exception
+  {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      String cls = (i % 3 == 0) ? DROP : KEEP;
+      lines.add(i + ":" + cls + "::" + i + "::new::" + pad(i % 17));
+    }
+    // not in millis:class:: form, so kept
+    lines.add(100, "no class here");
+    lines.add(150, "");
+    String text = String.join("\n", lines) + "\n";
+    // blocks far smaller than the log, so most lines straddle a boundary
+    for (int blockSize: new int[] {16, 61, 64, 1000}) {
+      long[] counts = filter(text, blockSize);
+      assertEquals(expected(lines, true), read(output));
+      assertEquals(lines.size(), counts[0]);
+      assertEquals(kept(lines), counts[1]);
+    }
+  }
+
+  @Test
+  public void testLineLongerThanBlock () throws Exception
+  {
+    List<String> lines = Arrays.asList("1:" + KEEP + "::1::new",
+                                       "2:" + KEEP + "::2::new::" + pad(500),
+                                       "3:" + DROP + "::3::new::" + pad(300),
+                                       "4:" + KEEP + "::4::new");
+    filter(String.join("\n", lines) + "\n", 32);
+    assertEquals(expected(lines, true), read(output));
+  }
+
+  @Test
+  public void testNoFinalNewline () throws Exception
+  {
+    List<String> lines = Arrays.asList("1:" + KEEP + "::1::new",
+                                       "2:" + DROP + "::2::new",
+                                       "3:" + KEEP + "::3::new");
+    long[] counts = filter(String.join("\n", lines), 20);
+    assertEquals(expected(lines, false), read(output));
+    assertEquals(3, counts[0]);
+    assertEquals(2, counts[1]);
+
+    // a dropped last line leaves the kept lines whole
+    lines = Arrays.asList("1:" + KEEP + "::1::new",
+                          "2:" + DROP + "::2::new");
+    filter(String.join("\n", lines), 20);
+    assertEquals("1:" + KEEP + "::1::new\n", read(output));
+  }
+
+  @Test
+  public void testOrderAcrossWorkers () throws Exception
+  {
+    // many more windows than are filtered at once, on several workers
+    List<String> lines = numbered(20000, 0);
+    String text = String.join("\n", lines) + "\n";
+    long[] counts = filter(text, 256);
+    assertEquals(expected(lines, true), read(output));
+    assertEquals(lines.size(), counts[0]);
+  }
+
+  @Test
+  public void testLineAcrossFullSizeWindow () throws Exception
+  {
+    // a kept line that starts just before the end of the first window
+    int size = LogLineFilter.BLOCK_SIZE;
+    String head = "1:" + DROP + "::1::new::";
+    String filler = head + pad(size - 40 - head.length());
+    String straddle = "2:" + KEEP + "::2::new::" + pad(100);
+    List<String> lines = new ArrayList<>();
+    lines.add(filler);
+    lines.add(straddle);
+    lines.addAll(numbered(400000, 3));
+    String text = String.join("\n", lines) + "\n";
+    assertTrue(text.length() > 2 * size);
+    int start = filler.length() + 1;
+    assertTrue(start < size && start + straddle.length() > size);
+
+    long[] counts = filter(text, size);
+    String result = read(output);
+    assertTrue(result.startsWith(straddle + "\n"));
+    assertEquals(expected(lines, true), result);
+    assertEquals(lines.size(), counts[0]);
+    assertEquals(kept(lines), counts[1]);
+  }
+
+  @Test
+  public void testEmptyLog () throws Exception
+  {
+    long[] counts = filter("", 64);
+    assertEquals("", read(output));
+    assertEquals(0, counts[0]);
+  }
+
+  @Test
+  public void testReadPassesFilteredCopy () throws Exception
+  {
+    Files.write(input.toPath(),
+                ("1:" + KEEP + "::1::new\n2:" + DROP + "::2::new\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+    String[] seen = new String[2];
+    LogLineFilter.read(input.getPath(), names(), (path) -> {
+      seen[0] = path;
+      try {
+        seen[1] = read(new File(path));
+      }
+      catch (Exception e) {
+        fail(e.toString());
+      }
+    });
+    assertFalse(input.getPath().equals(seen[0]));
+    assertEquals("1:" + KEEP + "::1::new\n", seen[1]);
+    assertFalse(new File(seen[0]).exists());
+    // the original is untouched
+    assertTrue(read(input).contains(DROP));
+  }
+
+  @Test
+  public void testReadPassesThrough () throws Exception
+  {
+    String[] seen = new String[1];
+    String missing = new File(input.getParentFile(), "no-such.state").getPath();
+    LogLineFilter.read(missing, names(), (path) -> seen[0] = path);
+    assertEquals(missing, seen[0]);
+    String archive = "game.state.gz";
+    LogLineFilter.read(archive, names(), (path) -> seen[0] = path);
+    assertEquals(archive, seen[0]);
+  }
+
+  // Lines with increasing numbers, every third one dropped
+  private static List<String> numbered (int count, int first)
+  {
+    List<String> result = new ArrayList<>(count);
+    for (int i = first; i < first + count; i++) {
+      String cls = (i % 3 == 0) ? DROP : KEEP;
+      result.add(i + ":" + cls + "::" + i + "::new::" + pad(i % 23));
+    }
+    return result;
+  }
+
+  private long[] filter (String text, int blockSize) throws Exception
+  {
+    Files.write(input.toPath(), text.getBytes(StandardCharsets.ISO_8859_1));
+    return LogLineFilter.filter(input, output, names(), blockSize);
+  }
+
+  private Set<String> names ()
+  {
+    return new HashSet<>(Arrays.asList(KEEP));
+  }
+
+  private static String expected (List<String> lines, boolean finalNewline)
+  {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (!line.contains(DROP)) {
+        result.append(line);
+        if (finalNewline || i < lines.size() - 1)
+          result.append('\n');
+      }
+    }
+    return result.toString();
+  }
+
+  private static int kept (List<String> lines)
+  {
+    int result = 0;
+    for (String line: lines) {
+      if (!line.contains(DROP))
+        result += 1;
+    }
+    return result;
+  }
+
+  private static String read (File file) throws Exception
+  {
+    return new String(Files.readAllBytes(file.toPath()),
+                      StandardCharsets.ISO_8859_1);
+  }
+
+  private static String pad (int length)
+  {
+    char[] chars = new char[length];
+    Arrays.fill(chars, 'x');
+    return new String(chars);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MarketTxCubeTest
+{
+  private MarketTxCube cube;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    cube = new MarketTxCube(3, 24);
+  }
+
+  @Test
+  public void testAdd ()
+  {
+    cube.add(1, 400, 5, MarketTxCube.DEBIT, -10.0, 2.0);
+    cube.add(1, 400, 5, MarketTxCube.DEBIT, -5.0, 1.0);
+    cube.add(1, 400, 6, MarketTxCube.CREDIT, 8.0, 0.5);
+    assertEquals(-15.0, cube.getMoney(1, 400, 5, MarketTxCube.DEBIT), 1e-9);
+    assertEquals(3.0, cube.getMWh(1, 400, 5, MarketTxCube.DEBIT), 1e-9);
+    assertEquals(-5.0, cube.getUnitPrice(1, 400, 5, MarketTxCube.DEBIT), 1e-9);
+    assertEquals(8.0, cube.getMoney(1, 400, MarketTxCube.CREDIT), 1e-9);
+    assertEquals(0.0, cube.getMoney(0, 400, MarketTxCube.CREDIT), 0.0);
+    assertEquals(0.0, cube.getMoney(1, 401, MarketTxCube.DEBIT), 0.0);
+  }
+
+  @Test
+  public void testDropBefore ()
+  {
+    for (int ts = 400; ts < 410; ts++)
+      cube.add(2, ts, 0, MarketTxCube.CREDIT, ts, 1.0);
+    cube.dropBefore(405);
+    for (int ts = 400; ts < 405; ts++)
+      assertEquals(0.0, cube.getMoney(2, ts, 0, MarketTxCube.CREDIT), 0.0);
+    for (int ts = 405; ts < 410; ts++)
+      assertEquals(ts, cube.getMoney(2, ts, 0, MarketTxCube.CREDIT), 0.0);
+
+    // adds below the floor are ignored, and dropping is never undone
+    cube.add(2, 403, 0, MarketTxCube.CREDIT, 1.0, 1.0);
+    assertEquals(0.0, cube.getMoney(2, 403, 0, MarketTxCube.CREDIT), 0.0);
+    cube.dropBefore(401);
+    assertEquals(0.0, cube.getMoney(2, 404, 0, MarketTxCube.CREDIT), 0.0);
+    assertEquals(405.0, cube.getMoney(2, 405, 0, MarketTxCube.CREDIT), 0.0);
+  }
+
+  @Test
+  public void testCompaction ()
+  {
+    // a long game with a sliding window, well past the initial array size
+    for (int ts = 400; ts < 3000; ts++) {
+      cube.add(0, ts, 1, MarketTxCube.DEBIT, -ts, 2.0);
+      if (ts >= 424) {
+        int done = ts - 24;
+        assertEquals(-done, cube.getMoney(0, done, 1, MarketTxCube.DEBIT), 0.0);
+        cube.dropBefore(done + 1);
+      }
+    }
+    assertEquals(0.0, cube.getMoney(0, 2975, 1, MarketTxCube.DEBIT), 0.0);
+    for (int ts = 2976; ts < 3000; ts++) {
+      assertEquals(-ts, cube.getMoney(0, ts, 1, MarketTxCube.DEBIT), 0.0);
+      assertEquals(2.0, cube.getMWh(0, ts, 1, MarketTxCube.DEBIT), 0.0);
+    }
+  }
+
+  @Test
+  public void testDropEverything ()
+  {
+    cube.add(0, 400, 0, MarketTxCube.DEBIT, -1.0, 1.0);
+    cube.dropBefore(2000);
+    assertEquals(0.0, cube.getMoney(0, 400, 0, MarketTxCube.DEBIT), 0.0);
+    cube.add(0, 2000, 0, MarketTxCube.DEBIT, -2.0, 1.0);
+    assertEquals(-2.0, cube.getMoney(0, 2000, 0, MarketTxCube.DEBIT), 0.0);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NpyColumnWriterTest
+{
+  private File dir;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    dir = Files.createTempDirectory("npy").toFile();
+  }
+
+  @After
+  public void tearDown () throws Exception
+  {
+    File[] files = dir.listFiles();
+    if (null != files) {
+      for (File file: files)
+        file.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testHeader () throws Exception
+  {
+    NpyColumnWriter out = newWriter(false);
+    out.put(7).put(1.5).endRow();
+    out.put(8).put(-2.25).endRow();
+    out.close();
+
+    byte[] bytes = Files.readAllBytes(new File(dir, "hour.npy").toPath());
+    assertEquals(128 + 2 * 4, bytes.length);
+    // magic string and version 1.0
+    assertEquals((byte) 0x93, bytes[0]);
+    assertEquals("NUMPY", new String(bytes, 1, 5, StandardCharsets.ISO_8859_1));
+    assertEquals(1, bytes[6]);
+    assertEquals(0, bytes[7]);
+    // little-endian header length; data starts on a 64-byte boundary
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int headerLength = buffer.getShort(8);
+    assertEquals(0, (10 + headerLength) % 64);
+    assertEquals(128, 10 + headerLength);
+    String dict = new String(bytes, 10, headerLength, StandardCharsets.ISO_8859_1);
+    assertTrue(dict.startsWith("{'descr': '<i4', 'fortran_order': False, 'shape': (2,), }"));
+    assertTrue(dict.endsWith("\n"));
+    assertEquals(7, buffer.getInt(128));
+    assertEquals(8, buffer.getInt(132));
+
+    bytes = Files.readAllBytes(new File(dir, "price.npy").toPath());
+    assertEquals(128 + 2 * 8, bytes.length);
+    buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    String header = new String(bytes, 10, 118, StandardCharsets.ISO_8859_1);
+    assertTrue(header.contains("'descr': '<f8'"));
+    assertEquals(1.5, buffer.getDouble(128), 0.0);
+    assertEquals(-2.25, buffer.getDouble(136), 0.0);
+  }
+
+  @Test
+  public void testSchema () throws Exception
+  {
+    NpyColumnWriter out = newWriter(false);
+    out.put(1).put(1.0).endRow();
+    out.close();
+    String schema = new String(Files.readAllBytes(new File(dir, "schema.json").toPath()),
+                               StandardCharsets.UTF_8);
+    assertTrue(schema.contains("\"rows\": 1,"));
+    assertTrue(schema.contains("{\"name\": \"hour\", \"dtype\": \"<i4\", \"file\": \"hour.npy\"}"));
+    assertTrue(schema.contains("{\"name\": \"price\", \"dtype\": \"<f8\", \"file\": \"price.npy\"}"));
+  }
+
+  @Test
+  public void testAppend () throws Exception
+  {
+    NpyColumnWriter out = newWriter(false);
+    out.put(1).put(1.0).endRow();
+    out.close();
+    out = newWriter(true);
+    out.put(2).put(2.0).endRow();
+    out.put(3).put(3.0).endRow();
+    assertEquals(3, out.getRowCount());
+    out.close();
+
+    byte[] bytes = Files.readAllBytes(new File(dir, "hour.npy").toPath());
+    assertEquals(128 + 3 * 4, bytes.length);
+    String header = new String(bytes, 10, 118, StandardCharsets.ISO_8859_1);
+    assertTrue(header.contains("'shape': (3,)"));
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(1, buffer.getInt(128));
+    assertEquals(3, buffer.getInt(136));
+  }
+
+  @Test(expected = IOException.class)
+  public void testAppendWrongType () throws Exception
+  {
+    NpyColumnWriter out = newWriter(false);
+    out.put(1).put(1.0).endRow();
+    out.close();
+    out = new NpyColumnWriter(dir.getPath(), true)
+        .column("hour", NpyColumnWriter.Dtype.FLOAT64);
+    out.put(1.0);
+  }
+
+  @Test
+  public void testIncompleteLastRow () throws Exception
+  {
+    NpyColumnWriter out = newWriter(false);
+    out.put(1).put(1.0).endRow();
+    out.put(2);
+    out.close();
+    assertEquals(128 + 4, new File(dir, "hour.npy").length());
+    assertEquals(128 + 8, new File(dir, "price.npy").length());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testShortRow () throws Exception
+  {
+    NpyColumnWriter out = newWriter(false);
+    out.put(1).endRow();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testColumnAfterData () throws Exception
+  {
+    NpyColumnWriter out = newWriter(false);
+    out.put(1);
+    out.column("late", NpyColumnWriter.Dtype.INT64);
+  }
+
+  private NpyColumnWriter newWriter (boolean append)
+  {
+    return new NpyColumnWriter(dir.getPath(), append)
+        .column("hour", NpyColumnWriter.Dtype.INT32)
+        .column("price", NpyColumnWriter.Dtype.FLOAT64);
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.powertac.common.Broker;
+import org.powertac.common.Order;
+import org.powertac.common.WeatherForecastPrediction;
+
+public class OrderForecastJoinTest
+{
+  private Broker broker;
+  private OrderForecastJoin join;
+  private List<String> joined;
+  private List<String> unmatched;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    broker = new Broker("Sample");
+    joined = new ArrayList<>();
+    unmatched = new ArrayList<>();
+    join = new OrderForecastJoin(new OrderForecastJoin.JoinListener() {
+      @Override
+      public void joined (int target, int hourAhead, Order order,
+                          WeatherForecastPrediction prediction)
+      {
+        joined.add(target + ":" + hourAhead);
+        assertEquals(hourAhead, prediction.getForecastTime());
+        assertEquals(target, order.getMWh().intValue());
+      }
+
+      @Override
+      public void unmatched (int target, int hourAhead, ArrayList<Order> orders)
+      {
+        unmatched.add(target + ":" + hourAhead + "x" + orders.size());
+      }
+    });
+  }
+
+  @Test
+  public void testForecastFirst ()
+  {
+    join.addForecast(400, 3, prediction(3));
+    join.addOrder(400, 3, order(400));
+    join.addOrder(400, 3, order(400));
+    assertEquals(2, joined.size());
+    assertEquals("400:3", joined.get(0));
+  }
+
+  @Test
+  public void testOrderFirst ()
+  {
+    join.addOrder(400, 3, order(400));
+    join.addOrder(400, 3, order(400));
+    join.addOrder(400, 4, order(400));
+    assertTrue(joined.isEmpty());
+    join.addForecast(400, 3, prediction(3));
+    assertEquals(2, joined.size());
+    // waiting orders are passed on only once
+    join.addForecast(400, 3, prediction(3));
+    assertEquals(2, joined.size());
+  }
+
+  @Test
+  public void testCloseBefore ()
+  {
+    join.addOrder(400, 1, order(400));
+    join.addOrder(401, 2, order(401));
+    join.addOrder(401, 2, order(401));
+    join.closeBefore(401);
+    assertEquals(1, unmatched.size());
+    assertEquals("400:1x1", unmatched.get(0));
+    // a closed target starts over
+    join.addForecast(400, 1, prediction(1));
+    assertTrue(joined.isEmpty());
+    join.closeAll();
+    assertEquals(2, unmatched.size());
+    assertEquals("401:2x2", unmatched.get(1));
+  }
+
+  @Test
+  public void testRingReuse ()
+  {
+    // targets far apart share ring slots without mixing their keys
+    for (int target = 400; target < 1400; target++) {
+      join.addForecast(target, target % 24, prediction(target % 24));
+      join.addOrder(target, target % 24, order(target));
+      join.closeBefore(target - 23);
+    }
+    join.closeAll();
+    assertEquals(1000, joined.size());
+    assertTrue(unmatched.isEmpty());
+  }
+
+  @Test
+  public void testOutOfRange ()
+  {
+    join.addOrder(400, 24, order(400));
+    join.addOrder(-1, 0, order(-1));
+    join.addForecast(400, -1, prediction(0));
+    join.closeAll();
+    assertTrue(joined.isEmpty());
+    assertTrue(unmatched.isEmpty());
+  }
+
+  // the order's MWh carries its target, for checking the pairing
+  private Order order (int target)
+  {
+    return new Order(broker, target, target, null);
+  }
+
+  private WeatherForecastPrediction prediction (int hourAhead)
+  {
+    return new WeatherForecastPrediction(hourAhead, 10.0, 5.0, 180.0, 0.5);
+  }
+}
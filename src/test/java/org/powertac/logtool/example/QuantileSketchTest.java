@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QuantileSketchTest
+{
+  private static final double ACCURACY = 0.01;
+  private static final double[] QS = {0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99};
+
+  private Random random;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    random = new Random(42);
+  }
+
+  @Test
+  public void testEmpty ()
+  {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY);
+    assertEquals(0, sketch.getCount());
+    assertTrue(Double.isNaN(sketch.getMin()));
+    assertTrue(Double.isNaN(sketch.getMax()));
+    assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+  }
+
+  @Test
+  public void testNaNIgnored ()
+  {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY);
+    sketch.add(Double.NaN);
+    assertEquals(0, sketch.getCount());
+  }
+
+  @Test
+  public void testRelativeError ()
+  {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY);
+    double[] values = new double[10000];
+    for (int i = 0; i < values.length; i++) {
+      // mixed signs, several orders of magnitude
+      values[i] = (random.nextDouble() - 0.3) * Math.pow(10, random.nextInt(5));
+      sketch.add(values[i]);
+    }
+    Arrays.sort(values);
+    assertEquals(values.length, sketch.getCount());
+    assertEquals(values[0], sketch.getMin(), 0.0);
+    assertEquals(values[values.length - 1], sketch.getMax(), 0.0);
+    for (double q: QS) {
+      double exact = values[(int) (q * (values.length - 1))];
+      assertEquals("q=" + q, exact, sketch.getQuantile(q),
+                   Math.abs(exact) * ACCURACY + 1e-9);
+    }
+  }
+
+  @Test
+  public void testZeros ()
+  {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY);
+    for (int i = 0; i < 10; i++) {
+      sketch.add(-1.0);
+      sketch.add(0.0);
+      sketch.add(1.0);
+    }
+    assertEquals(0.0, sketch.getQuantile(0.5), 0.0);
+    assertEquals(-1.0, sketch.getQuantile(0.1), ACCURACY);
+    assertEquals(1.0, sketch.getQuantile(0.9), ACCURACY);
+  }
+
+  @Test
+  public void testMergeMatchesSingleSketch ()
+  {
+    QuantileSketch all = new QuantileSketch(ACCURACY);
+    QuantileSketch first = new QuantileSketch(ACCURACY);
+    QuantileSketch second = new QuantileSketch(ACCURACY);
+    for (int i = 0; i < 5000; i++) {
+      double value = random.nextGaussian() * 40.0 + 10.0;
+      all.add(value);
+      if (i % 3 == 0)
+        first.add(value);
+      else
+        second.add(value);
+    }
+    first.merge(second);
+    assertEquals(all.getCount(), first.getCount());
+    assertEquals(all.getMin(), first.getMin(), 0.0);
+    assertEquals(all.getMax(), first.getMax(), 0.0);
+    for (double q: QS) {
+      assertEquals(all.getQuantile(q), first.getQuantile(q), 0.0);
+    }
+  }
+
+  @Test
+  public void testMergeEmpty ()
+  {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY);
+    sketch.add(5.0);
+    sketch.merge(new QuantileSketch(ACCURACY));
+    assertEquals(1, sketch.getCount());
+    assertEquals(5.0, sketch.getQuantile(0.5), 5.0 * ACCURACY);
+
+    QuantileSketch empty = new QuantileSketch(ACCURACY);
+    empty.merge(sketch);
+    assertEquals(1, empty.getCount());
+    assertEquals(5.0, empty.getMin(), 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeAccuracyMismatch ()
+  {
+    new QuantileSketch(0.01).merge(new QuantileSketch(0.02));
+  }
+
+  @Test
+  public void testWriteRead () throws Exception
+  {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY);
+    for (int i = 0; i < 1000; i++)
+      sketch.add(random.nextGaussian() * 100.0);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sketch.write(new DataOutputStream(bytes));
+    QuantileSketch copy = QuantileSketch.read(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(sketch.getCount(), copy.getCount());
+    for (double q: QS) {
+      assertEquals(sketch.getQuantile(q), copy.getQuantile(q), 0.0);
+    }
+  }
+}
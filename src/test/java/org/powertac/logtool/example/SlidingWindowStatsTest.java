@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class SlidingWindowStatsTest
+{
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testTrailingWindow ()
+  {
+    SlidingWindowStats stats = SlidingWindowStats.hourly(1, 3);
+    for (int ts = 10; ts < 15; ts++) {
+      stats.add(ts, 0, ts);
+    }
+    // before 15 is added: 12, 13, 14
+    assertEquals(3, stats.getCount(15, 0));
+    assertEquals(13.0, stats.getMean(15, 0), DELTA);
+    assertEquals(12.0, stats.getMin(15, 0), DELTA);
+    assertEquals(14.0, stats.getMax(15, 0), DELTA);
+    assertEquals(14.0, stats.getLast(15, 0), DELTA);
+    // and at the newest key itself: 12, 13, 14
+    assertEquals(39.0, stats.getSum(14, 0), DELTA);
+  }
+
+  @Test
+  public void testGapLeavesOutStaleValues ()
+  {
+    SlidingWindowStats stats = SlidingWindowStats.hourly(1, 3);
+    stats.add(10, 0, 1.0);
+    stats.add(11, 0, 2.0);
+    stats.add(12, 0, 3.0);
+    // window for 14 is 11..13
+    assertEquals(2, stats.getCount(14, 0));
+    assertEquals(2.5, stats.getMean(14, 0), DELTA);
+    assertEquals(2.0, stats.getMin(14, 0), DELTA);
+    // nothing is recent enough for 20
+    assertEquals(0, stats.getCount(20, 0));
+    assertEquals(0.0, stats.getMean(20, 0), 0.0);
+    assertEquals(0.0, stats.getMin(20, 0), 0.0);
+    assertEquals(0.0, stats.getMax(20, 0), 0.0);
+    assertEquals(0.0, stats.getLast(20, 0), 0.0);
+    stats.add(20, 0, 7.0);
+    assertEquals(7.0, stats.getMean(21, 0), DELTA);
+  }
+
+  @Test
+  public void testDailyCells ()
+  {
+    SlidingWindowStats stats = SlidingWindowStats.daily(2, 7);
+    for (int day = 0; day < 10; day++) {
+      stats.add(day * 24 + 5, 1, day);
+      stats.add(day * 24 + 6, 1, 100 + day);
+    }
+    // hour 5 over days 3..9, hour 6 is separate
+    assertEquals(6.0, stats.getMean(10 * 24 + 5, 1), DELTA);
+    assertEquals(106.0, stats.getMean(10 * 24 + 6, 1), DELTA);
+    assertEquals(0, stats.getCount(10 * 24 + 5, 0));
+  }
+
+  @Test
+  public void testReplaceAndOlderKeys ()
+  {
+    SlidingWindowStats stats = SlidingWindowStats.hourly(1, 4);
+    stats.add(10, 0, 5.0);
+    stats.add(11, 0, 1.0);
+    // the replaced minimum must not hide the older 5.0 for the max
+    stats.add(11, 0, 9.0);
+    stats.add(11, 0, 3.0);
+    assertEquals(2, stats.getCount(11, 0));
+    assertEquals(3.0, stats.getMin(11, 0), DELTA);
+    assertEquals(5.0, stats.getMax(11, 0), DELTA);
+    // older than the newest key, ignored
+    stats.add(10, 0, 100.0);
+    assertEquals(8.0, stats.getSum(11, 0), DELTA);
+  }
+
+  @Test
+  public void testSkipAgesOut ()
+  {
+    SlidingWindowStats stats = SlidingWindowStats.hourly(1, 2);
+    stats.add(10, 0, 4.0);
+    stats.skip(11, 0);
+    assertEquals(4.0, stats.getMean(11, 0), DELTA);
+    stats.skip(12, 0);
+    assertEquals(0, stats.getCount(12, 0));
+  }
+
+  @Test
+  public void testClear ()
+  {
+    SlidingWindowStats stats = SlidingWindowStats.hourly(1, 3);
+    stats.add(10, 0, 4.0);
+    stats.clear();
+    assertEquals(0, stats.getCount(11, 0));
+    stats.add(5, 0, 2.0);
+    assertEquals(2.0, stats.getMax(6, 0), DELTA);
+  }
+
+  @Test
+  public void testAgainstRecomputation ()
+  {
+    Random random = new Random(31);
+    int period = 24;
+    int window = 7;
+    SlidingWindowStats stats = new SlidingWindowStats(period, 1, window);
+    // per cell: period index -> value, and the newest period reached
+    Map<Integer, TreeMap<Integer, Double>> added = new HashMap<>();
+    Map<Integer, Integer> newest = new HashMap<>();
+    int key = 0;
+    for (int step = 0; step < 20000; step++) {
+      // mostly consecutive keys, with some gaps and repeats
+      int r = random.nextInt(20);
+      if (r == 0)
+        key += 24 * (1 + random.nextInt(10));
+      else if (r > 2)
+        key += 1;
+      int cell = Math.floorMod(key, period);
+      int p = Math.floorDiv(key, period);
+      TreeMap<Integer, Double> values =
+          added.computeIfAbsent(cell, c -> new TreeMap<>());
+
+      // query first, as for lag features
+      double[] expected = recompute(values, newest.get(cell), p, window);
+      assertEquals((int) expected[0], stats.getCount(key, 0));
+      assertEquals(expected[1], stats.getSum(key, 0), 1e-6);
+      assertEquals(expected[2], stats.getMin(key, 0), 0.0);
+      assertEquals(expected[3], stats.getMax(key, 0), 0.0);
+
+      if (random.nextInt(10) == 0) {
+        stats.skip(key, 0);
+        values.remove(p);
+      }
+      else {
+        double value = random.nextInt(1000) - 500;
+        stats.add(key, 0, value);
+        values.put(p, value);
+      }
+      newest.put(cell, p);
+    }
+  }
+
+  // count, sum, min and max of the values in the window queried at p
+  private static double[] recompute (TreeMap<Integer, Double> values,
+                                     Integer newest, int p, int window)
+  {
+    double[] result = {0.0, 0.0, 0.0, 0.0};
+    if (null == newest)
+      return result;
+    int low = Math.max(newest - window + 1, p - window);
+    int high = Math.min(p, newest);
+    if (low > high)
+      return result;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (double value: values.subMap(low, true, high, true).values()) {
+      result[0] += 1;
+      result[1] += value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    if (result[0] > 0) {
+      result[2] = min;
+      result[3] = max;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.powertac.common.Broker;
+import org.powertac.common.TariffSpecification;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.enumerations.PowerType;
+
+public class TariffLedgerTest
+{
+  private Broker alice;
+  private Broker bob;
+  private TariffSpecification aliceTariff;
+  private TariffSpecification bobTariff;
+  private TariffLedger ledger;
+
+  @Before
+  public void setUp ()
+  {
+    alice = new Broker("alice");
+    bob = new Broker("bob");
+    aliceTariff = new TariffSpecification(alice, PowerType.CONSUMPTION);
+    bobTariff = new TariffSpecification(bob, PowerType.PRODUCTION);
+    ledger = new TariffLedger();
+    ledger.addBrokers(Arrays.asList(alice, bob));
+  }
+
+  @Test
+  public void testSubscriptions ()
+  {
+    ledger.add(tx(alice, TariffTransaction.Type.SIGNUP, aliceTariff, 10, 0.0, 0.0));
+    ledger.add(tx(bob, TariffTransaction.Type.SIGNUP, bobTariff, 4, 0.0, 0.0));
+    ledger.add(tx(alice, TariffTransaction.Type.WITHDRAW, aliceTariff, 3, 0.0, 0.0));
+    assertEquals(7, ledger.getCustomers(ledger.indexOf(alice)));
+    assertEquals(4, ledger.getCustomers(ledger.indexOf(bob)));
+    assertEquals(11, ledger.getTotalCustomers());
+    assertEquals(2, ledger.getTariffCount());
+    assertEquals(2, ledger.getChangedCount());
+    int t = ledger.getChanged(0);
+    assertEquals(aliceTariff.getId(), ledger.getTariffId(t));
+    assertEquals(ledger.indexOf(alice), ledger.getTariffBroker(t));
+    assertEquals(PowerType.CONSUMPTION, ledger.getTariffPowerType(t));
+    assertEquals(7, ledger.getTariffCustomers(t));
+
+    // counts carry over, changes do not
+    ledger.closeTimeslot(5);
+    assertEquals(0, ledger.getChangedCount());
+    assertEquals(11, ledger.getTotalCustomers());
+  }
+
+  @Test
+  public void testUsage ()
+  {
+    ledger.add(tx(alice, TariffTransaction.Type.CONSUME, aliceTariff, 1, -20.0, 3.0));
+    ledger.add(tx(alice, TariffTransaction.Type.PUBLISH, aliceTariff, 0, 0.0, -1.0));
+    ledger.add(tx(bob, TariffTransaction.Type.PRODUCE, bobTariff, 1, 5.0, -2.0));
+    int a = ledger.indexOf(alice);
+    int b = ledger.indexOf(bob);
+    assertTrue(ledger.hasUsage(a));
+    assertEquals(-20.0, ledger.getKWh(a), 1e-9);
+    assertEquals(2.0, ledger.getCharge(a), 1e-9);
+    // PRODUCE is not counted
+    assertFalse(ledger.hasUsage(b));
+    ledger.closeTimeslot(5);
+    assertFalse(ledger.hasUsage(a));
+    assertEquals(0.0, ledger.getKWh(a), 0.0);
+  }
+
+  @Test
+  public void testRepeatsCountedOnce ()
+  {
+    List<Integer> closed = new ArrayList<>();
+    ledger.addListener((ts, counts) -> closed.add(ts));
+    TariffTransaction signup =
+        tx(alice, TariffTransaction.Type.SIGNUP, aliceTariff, 10, 0.0, 0.0);
+    ledger.add(signup);
+    ledger.add(signup);
+    assertEquals(10, ledger.getTotalCustomers());
+    ledger.closeTimeslot(5);
+    ledger.closeTimeslot(5);
+    assertEquals(Arrays.asList(5), closed);
+  }
+
+  @Test
+  public void testSharedLedgerMatchesSeparate ()
+  {
+    Random random = new Random(46);
+    List<Broker> brokers = Arrays.asList(alice, bob, new Broker("carol"));
+    List<TariffSpecification> tariffs = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      tariffs.add(new TariffSpecification(brokers.get(i % 3),
+                                          (i % 2 == 0)
+                                              ? PowerType.CONSUMPTION
+                                              : PowerType.PRODUCTION));
+    }
+    TariffTransaction.Type[] types = TariffTransaction.Type.values();
+
+    // each analyzer on its own ledger, fed only the types it handles
+    TariffLedger shareLedger = new TariffLedger();
+    TariffLedger subscriptionLedger = new TariffLedger();
+    TariffLedger usageLedger = new TariffLedger();
+    StringWriter shareOut = new StringWriter();
+    StringWriter subscriptionOut = new StringWriter();
+    StringWriter usageOut = new StringWriter();
+    TariffMktShare.ShareWriter share =
+        new TariffMktShare.ShareWriter(new PrintWriter(shareOut));
+    TariffSubscriptions.SubscriptionWriter subscription =
+        new TariffSubscriptions.SubscriptionWriter(new PrintWriter(subscriptionOut));
+    shareLedger.addListener(share);
+    subscriptionLedger.addListener(subscription);
+    usageLedger.addListener(new TariffPriceStats.UsageWriter(new PrintWriter(usageOut)));
+
+    // all three on one ledger, as in TariffStats
+    TariffLedger shared = new TariffLedger();
+    StringWriter sharedShareOut = new StringWriter();
+    StringWriter sharedSubscriptionOut = new StringWriter();
+    StringWriter sharedUsageOut = new StringWriter();
+    TariffMktShare.ShareWriter sharedShare =
+        new TariffMktShare.ShareWriter(new PrintWriter(sharedShareOut));
+    TariffSubscriptions.SubscriptionWriter sharedSubscription =
+        new TariffSubscriptions.SubscriptionWriter(new PrintWriter(sharedSubscriptionOut));
+    shared.addListener(sharedShare);
+    shared.addListener(sharedSubscription);
+    shared.addListener(new TariffPriceStats.UsageWriter(new PrintWriter(sharedUsageOut)));
+
+    share.start(brokers);
+    subscription.start();
+    sharedShare.start(brokers);
+    sharedSubscription.start();
+    for (TariffLedger each: Arrays.asList(shareLedger, subscriptionLedger,
+                                          usageLedger, shared)) {
+      each.addBrokers(brokers);
+    }
+
+    long customers = 0;
+    for (int ts = 0; ts < 200; ts++) {
+      int n = random.nextInt(8);
+      for (int i = 0; i < n; i++) {
+        TariffSpecification spec = tariffs.get(random.nextInt(tariffs.size()));
+        TariffTransaction.Type type = types[random.nextInt(types.length)];
+        TariffTransaction tx =
+            tx(spec.getBroker(), type, spec, 1 + random.nextInt(20),
+               random.nextInt(100) - 50, random.nextInt(10) - 5);
+        if (type == TariffTransaction.Type.SIGNUP
+            || type == TariffTransaction.Type.WITHDRAW) {
+          shareLedger.add(tx);
+          subscriptionLedger.add(tx);
+          customers += (type == TariffTransaction.Type.SIGNUP ? 1 : -1)
+              * tx.getCustomerCount();
+        }
+        if (type == TariffTransaction.Type.CONSUME
+            || type == TariffTransaction.Type.PUBLISH) {
+          usageLedger.add(tx);
+        }
+        shared.add(tx);
+      }
+      for (TariffLedger each: Arrays.asList(shareLedger, subscriptionLedger,
+                                            usageLedger, shared)) {
+        each.closeTimeslot(ts);
+      }
+    }
+
+    assertEquals(customers, shared.getTotalCustomers());
+    assertEquals(shareLedger.getTotalCustomers(), shared.getTotalCustomers());
+    for (int t = 0; t < shared.getTariffCount(); t++) {
+      long id = shared.getTariffId(t);
+      int s = -1;
+      for (int u = 0; u < subscriptionLedger.getTariffCount(); u++) {
+        if (subscriptionLedger.getTariffId(u) == id)
+          s = u;
+      }
+      assertTrue(s >= 0);
+      assertEquals(subscriptionLedger.getTariffCustomers(s),
+                   shared.getTariffCustomers(t));
+    }
+    assertEquals(shareOut.toString(), sharedShareOut.toString());
+    assertEquals(subscriptionOut.toString(), sharedSubscriptionOut.toString());
+    assertEquals(usageOut.toString(), sharedUsageOut.toString());
+    assertTrue(shareOut.toString().split("\n").length > 100);
+    assertTrue(usageOut.toString().split("\n").length > 100);
+  }
+
+  private static TariffTransaction tx (Broker broker,
+                                       TariffTransaction.Type type,
+                                       TariffSpecification spec, int count,
+                                       double kWh, double charge)
+  {
+    return new TariffTransaction(broker, 0, type, spec, null, count, kWh,
+                                 charge);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeslotFinalizerTest
+{
+  private TimeslotFinalizer finalizer;
+  private List<Integer> finalized;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    finalizer = new TimeslotFinalizer();
+    finalized = new ArrayList<>();
+    finalizer.addListener(ts -> finalized.add(ts));
+  }
+
+  @Test
+  public void testFirstTimeslot ()
+  {
+    assertEquals(-1, finalizer.getCurrent());
+    assertEquals(-1, finalizer.getFinalized());
+    finalizer.startTimeslot(5);
+    assertEquals(5, finalizer.getCurrent());
+    assertTrue(finalized.isEmpty());
+  }
+
+  @Test
+  public void testFinalizeInOrder ()
+  {
+    finalizer.startTimeslot(5);
+    finalizer.startTimeslot(6);
+    assertEquals(list(5), finalized);
+    // timeslots that were never started are not finalized
+    finalizer.startTimeslot(9);
+    assertEquals(list(5, 6), finalized);
+    assertEquals(6, finalizer.getFinalized());
+    assertEquals(9, finalizer.getCurrent());
+    finalizer.finish();
+    assertEquals(list(5, 6, 9), finalized);
+  }
+
+  @Test
+  public void testRepeatedAndEarlierIgnored ()
+  {
+    finalizer.startTimeslot(5);
+    finalizer.startTimeslot(6);
+    finalizer.startTimeslot(6);
+    finalizer.startTimeslot(4);
+    assertEquals(list(5), finalized);
+    assertEquals(6, finalizer.getCurrent());
+  }
+
+  @Test
+  public void testFinish ()
+  {
+    finalizer.finish();
+    assertTrue(finalized.isEmpty());
+    finalizer.startTimeslot(5);
+    finalizer.startTimeslot(6);
+    finalizer.finish();
+    assertEquals(list(5, 6), finalized);
+    finalizer.finish();
+    assertEquals(list(5, 6), finalized);
+  }
+
+  @Test
+  public void testReset ()
+  {
+    finalizer.startTimeslot(5);
+    finalizer.startTimeslot(6);
+    finalizer.reset();
+    assertEquals(-1, finalizer.getCurrent());
+    assertEquals(-1, finalizer.getFinalized());
+    finalizer.startTimeslot(2);
+    finalizer.startTimeslot(3);
+    assertEquals(list(5, 2), finalized);
+  }
+
+  @Test
+  public void testPhaseEnd ()
+  {
+    finalizer.onPhaseEnd(TimeslotPhaseTracker.Phase.TsUpd, 5);
+    finalizer.onPhaseEnd(TimeslotPhaseTracker.Phase.BalTx, 5);
+    assertTrue(finalized.isEmpty());
+    finalizer.onPhaseEnd(TimeslotPhaseTracker.Phase.TsUpd, 6);
+    assertEquals(list(5), finalized);
+  }
+
+  @Test
+  public void testEmitThrough ()
+  {
+    TreeMap<Integer, String> map = new TreeMap<>();
+    for (int ts = 1; ts <= 5; ts++)
+      map.put(ts, "v" + ts);
+    List<String> emitted = new ArrayList<>();
+    TimeslotFinalizer.emitThrough(map, 3,
+                                  (ts, value) -> emitted.add(ts + value));
+    assertEquals(3, emitted.size());
+    assertEquals("1v1", emitted.get(0));
+    assertEquals("3v3", emitted.get(2));
+    assertEquals(2, map.size());
+    assertEquals(Integer.valueOf(4), map.firstKey());
+
+    // null emitter just evicts
+    TimeslotFinalizer.emitThrough(map, 4, null);
+    assertEquals(1, map.size());
+    assertEquals(Integer.valueOf(5), map.firstKey());
+  }
+
+  private List<Integer> list (Integer... values)
+  {
+    List<Integer> result = new ArrayList<>();
+    for (Integer value: values)
+      result.add(value);
+    return result;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.Instant;
+import org.junit.Before;
+import org.junit.Test;
+import org.powertac.common.BalancingTransaction;
+import org.powertac.common.Broker;
+import org.powertac.common.MarketTransaction;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.msg.BalanceReport;
+import org.powertac.common.msg.TimeslotUpdate;
+import org.powertac.logtool.example.TimeslotPhaseTracker.Phase;
+
+public class TimeslotPhaseTrackerTest
+{
+  private TimeslotPhaseTracker tracker;
+  private List<String> ended;
+  private Broker broker;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    tracker = new TimeslotPhaseTracker();
+    ended = new ArrayList<>();
+    tracker.addListener((phase, ts) -> ended.add(phase + "@" + ts));
+    broker = new Broker("Sample");
+  }
+
+  @Test
+  public void testBeforeFirstTimeslot ()
+  {
+    // not part of any timeslot, so analyzers drop them
+    assertNull(tracker.tariffTransaction(tariffTx()));
+    assertNull(tracker.marketTransaction(marketTx()));
+    assertNull(tracker.balancingTransaction(balancingTx()));
+    assertEquals(-1, tracker.getTimeslot());
+    assertTrue(ended.isEmpty());
+
+    assertEquals(Phase.TsUpd, tracker.timeslotUpdate(update(362)));
+    assertEquals(361, tracker.getTimeslot());
+    assertEquals(Arrays.asList("TsUpd@361"), ended);
+    assertEquals(Phase.CustTx, tracker.tariffTransaction(tariffTx()));
+  }
+
+  @Test
+  public void testPhasesInOrder ()
+  {
+    tracker.timeslotUpdate(update(362));
+    assertEquals(Phase.MktTx, tracker.getPhase());
+    assertEquals(Phase.MktTx, tracker.marketTransaction(marketTx()));
+    assertEquals(Phase.CustTx, tracker.tariffTransaction(tariffTx()));
+    assertEquals(Phase.RegTx, tracker.balanceReport(new BalanceReport(361)));
+    assertEquals(Phase.RegTx, tracker.tariffTransaction(tariffTx()));
+    assertEquals(Phase.BalTx, tracker.balancingTransaction(balancingTx()));
+    assertEquals(Phase.TsUpd, tracker.timeslotUpdate(update(363)));
+    assertEquals(362, tracker.getTimeslot());
+    assertEquals(Arrays.asList("TsUpd@361", "MktTx@361", "CustTx@361",
+                               "RegTx@361", "BalTx@361", "TsUpd@362"),
+                 ended);
+  }
+
+  @Test
+  public void testWithoutBalanceReport ()
+  {
+    // logs from servers before 1.2
+    tracker.timeslotUpdate(update(362));
+    assertEquals(Phase.CustTx, tracker.tariffTransaction(tariffTx()));
+    assertEquals(Phase.BalTx, tracker.balancingTransaction(balancingTx()));
+    assertEquals(Arrays.asList("TsUpd@361", "MktTx@361", "CustTx@361",
+                               "RegTx@361"),
+                 ended);
+  }
+
+  @Test
+  public void testOutOfOrder ()
+  {
+    tracker.timeslotUpdate(update(362));
+    assertNull(tracker.balanceReport(new BalanceReport(361)));
+    assertNull(tracker.balancingTransaction(balancingTx()));
+    tracker.tariffTransaction(tariffTx());
+    assertNull(tracker.marketTransaction(marketTx()));
+    tracker.balancingTransaction(balancingTx());
+    assertNull(tracker.tariffTransaction(tariffTx()));
+    assertEquals(Phase.BalTx, tracker.getPhase());
+  }
+
+  @Test
+  public void testSharedEvent ()
+  {
+    tracker.timeslotUpdate(update(362));
+    TariffTransaction tx = tariffTx();
+    assertEquals(Phase.CustTx, tracker.tariffTransaction(tx));
+    // a second analyzer offers the same events
+    assertEquals(Phase.CustTx, tracker.tariffTransaction(tx));
+    TimeslotUpdate next = update(363);
+    tracker.timeslotUpdate(next);
+    int count = ended.size();
+    assertEquals(Phase.TsUpd, tracker.timeslotUpdate(next));
+    assertEquals(count, ended.size());
+    assertEquals(362, tracker.getTimeslot());
+  }
+
+  private static TimeslotUpdate update (int firstEnabled)
+  {
+    return new TimeslotUpdate(new Instant(0L), firstEnabled,
+                              firstEnabled + 23);
+  }
+
+  private TariffTransaction tariffTx ()
+  {
+    return new TariffTransaction(broker, 0, TariffTransaction.Type.CONSUME,
+                                 null, null, 1, -10.0, 1.0);
+  }
+
+  private MarketTransaction marketTx ()
+  {
+    return new MarketTransaction(broker, 0, 365, 1.0, -20.0);
+  }
+
+  private BalancingTransaction balancingTx ()
+  {
+    return new BalancingTransaction(broker, 0, 5.0, -1.0);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.powertac.common.WeatherForecast;
+import org.powertac.common.WeatherForecastPrediction;
+import org.powertac.common.WeatherReport;
+
+public class WeatherStoreTest
+{
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testEmpty ()
+  {
+    WeatherStore weather = new WeatherStore(1000);
+    assertEquals(-1, weather.getFirstTimeslot());
+    assertTrue(Double.isNaN(weather.getObservation(400, WeatherStore.TEMPERATURE)));
+    assertTrue(Double.isNaN(weather.getForecast(400, 3, WeatherStore.TEMPERATURE)));
+  }
+
+  @Test
+  public void testObservationsAndForecasts ()
+  {
+    WeatherStore weather = new WeatherStore(1000);
+    weather.add(new WeatherReport(400, 12.5, 3.0, 180.0, 0.25));
+    weather.add(forecast(400, 1, 24));
+
+    assertEquals(12.5, weather.getObservation(400, WeatherStore.TEMPERATURE), DELTA);
+    assertEquals(3.0, weather.getObservation(400, WeatherStore.WIND_SPEED), DELTA);
+    assertEquals(180.0, weather.getObservation(400, WeatherStore.WIND_DIRECTION), DELTA);
+    assertEquals(0.25, weather.getObservation(400, WeatherStore.CLOUD_COVER), DELTA);
+    // forecasts are stored by their target timeslot
+    for (int lead = 1; lead <= 24; lead++) {
+      assertEquals(value(400, lead, WeatherStore.TEMPERATURE),
+                   weather.getForecast(400 + lead, lead, WeatherStore.TEMPERATURE),
+                   DELTA);
+      assertEquals(value(400, lead, WeatherStore.CLOUD_COVER),
+                   weather.getForecast(400 + lead, lead, WeatherStore.CLOUD_COVER),
+                   DELTA);
+    }
+    // nothing else was reported
+    assertTrue(Double.isNaN(weather.getObservation(401, WeatherStore.TEMPERATURE)));
+    assertTrue(Double.isNaN(weather.getForecast(400, 1, WeatherStore.TEMPERATURE)));
+    assertTrue(Double.isNaN(weather.getForecast(402, 1, WeatherStore.TEMPERATURE)));
+  }
+
+  @Test
+  public void testSizedForGame ()
+  {
+    WeatherStore weather = new WeatherStore(2000);
+    weather.add(new WeatherReport(400, 1, 2, 3, 4));
+    assertEquals(400 - WeatherStore.HORIZON, weather.getFirstTimeslot());
+    assertEquals(2000, weather.getLastTimeslot());
+  }
+
+  @Test
+  public void testGrowsBothWays ()
+  {
+    WeatherStore weather = new WeatherStore(-1);
+    weather.add(new WeatherReport(1000, 1, 2, 3, 4));
+    int first = weather.getFirstTimeslot();
+    // past the end, then before the start
+    weather.add(new WeatherReport(5000, 5, 6, 7, 8));
+    weather.add(forecast(100, 1, 24));
+    assertTrue(weather.getFirstTimeslot() < first);
+    assertTrue(weather.getLastTimeslot() >= 5000);
+
+    assertEquals(1.0, weather.getObservation(1000, WeatherStore.TEMPERATURE), DELTA);
+    assertEquals(8.0, weather.getObservation(5000, WeatherStore.CLOUD_COVER), DELTA);
+    assertEquals(value(100, 5, WeatherStore.WIND_SPEED),
+                 weather.getForecast(105, 5, WeatherStore.WIND_SPEED), DELTA);
+    assertTrue(Double.isNaN(weather.getObservation(3000, WeatherStore.TEMPERATURE)));
+  }
+
+  @Test
+  public void testLeadOutOfRange ()
+  {
+    WeatherStore weather = new WeatherStore(1000);
+    List<WeatherForecastPrediction> predictions = new ArrayList<>();
+    predictions.add(new WeatherForecastPrediction(0, 1, 1, 1, 1));
+    predictions.add(new WeatherForecastPrediction(25, 2, 2, 2, 2));
+    predictions.add(new WeatherForecastPrediction(3, 3, 3, 3, 3));
+    weather.add(new WeatherForecast(400, predictions));
+    // the observation slot is not overwritten by a lead-0 forecast
+    assertTrue(Double.isNaN(weather.getObservation(400, WeatherStore.TEMPERATURE)));
+    assertEquals(3.0, weather.getForecast(403, 3, WeatherStore.TEMPERATURE), DELTA);
+  }
+
+  // A forecast issued in timeslot ts with leads first..last
+  private static WeatherForecast forecast (int ts, int first, int last)
+  {
+    List<WeatherForecastPrediction> predictions = new ArrayList<>();
+    for (int lead = first; lead <= last; lead++) {
+      predictions.add(new WeatherForecastPrediction(lead,
+          value(ts, lead, WeatherStore.TEMPERATURE),
+          value(ts, lead, WeatherStore.WIND_SPEED),
+          value(ts, lead, WeatherStore.WIND_DIRECTION),
+          value(ts, lead, WeatherStore.CLOUD_COVER)));
+    }
+    return new WeatherForecast(ts, predictions);
+  }
+
+  private static double value (int ts, int lead, int variable)
+  {
+    return ts + lead / 100.0 + variable / 10000.0;
+  }
+}